@@ -0,0 +1,86 @@
+#!/usr/bin/env bash
+# Замер времени старта и RSS приложения в режимах jvm, cds (AOT + AppCDS) и native.
+#
+#   mvn -Pfast-startup package -DskipTests      # jar, target/app/ с application.jsa
+#   mvn -Pnative native:compile -DskipTests     # опционально, нужен GraalVM
+#   scripts/measure-startup.sh [запусков] [аргументы приложения...]
+#
+# Приложению нужна БД из application.properties; аргументы после числа запусков передаются
+# приложению (например --spring.datasource.url=...). Отчет: target/startup-report.md
+set -euo pipefail
+
+cd "$(dirname "$0")/.."
+
+RUNS="${1:-5}"
+shift || true
+APP_ARGS=("$@")
+JAVA="${JAVA_HOME:+$JAVA_HOME/bin/}java"
+NAME=demo-0.0.1-SNAPSHOT
+REPORT=target/startup-report.md
+TIMEOUT_SECONDS=120
+
+# Печатает "<время старта, с> <RSS, МБ>" для одного запуска команды
+measure_once() {
+  local log
+  log=$(mktemp)
+  "$@" "${APP_ARGS[@]}" >"$log" 2>&1 &
+  local pid=$!
+  local waited=0
+  until grep -q "Started HospitalBackendApplication" "$log"; do
+    if ! kill -0 "$pid" 2>/dev/null || [ "$waited" -ge $((TIMEOUT_SECONDS * 10)) ]; then
+      echo "Приложение не стартовало, лог: $log" >&2
+      kill "$pid" 2>/dev/null || true
+      return 1
+    fi
+    sleep 0.1
+    waited=$((waited + 1))
+  done
+  local started rss
+  started=$(grep -o "Started HospitalBackendApplication in [0-9.]* seconds" "$log" | grep -o "[0-9.]*" | head -1)
+  rss=$(awk '/VmRSS/ {printf "%.0f", $2 / 1024}' "/proc/$pid/status")
+  kill "$pid"
+  wait "$pid" 2>/dev/null || true
+  rm -f "$log"
+  echo "$started $rss"
+}
+
+# Медиана и минимум по RUNS запускам
+measure_mode() {
+  local mode=$1
+  shift
+  local results=()
+  for ((i = 1; i <= RUNS; i++)); do
+    results+=("$(measure_once "$@")")
+  done
+  local starts rss
+  starts=$(printf '%s\n' "${results[@]}" | awk '{print $1}' | sort -n)
+  rss=$(printf '%s\n' "${results[@]}" | awk '{print $2}' | sort -n)
+  local mid=$(((RUNS + 1) / 2))
+  printf '| %s | %d | %s | %s | %s |\n' "$mode" "$RUNS" \
+    "$(sed -n "${mid}p" <<<"$starts")" "$(head -1 <<<"$starts")" "$(sed -n "${mid}p" <<<"$rss")"
+}
+
+rows=()
+if [ -f "target/$NAME.jar" ]; then
+  rows+=("$(measure_mode jvm "$JAVA" -jar "target/$NAME.jar")")
+fi
+if [ -f target/app/application.jsa ]; then
+  rows+=("$(measure_mode cds "$JAVA" -XX:SharedArchiveFile=target/app/application.jsa -Dspring.aot.enabled=true \
+    -jar "target/app/$NAME.jar")")
+fi
+if [ -x "target/demo" ]; then
+  rows+=("$(measure_mode native target/demo)")
+fi
+
+if [ ${#rows[@]} -eq 0 ]; then
+  echo "Нет собранных артефактов: mvn -Pfast-startup package -DskipTests" >&2
+  exit 1
+fi
+
+{
+  echo "# Старт приложения ($(date '+%Y-%m-%d %H:%M'), $("$JAVA" -version 2>&1 | head -1))"
+  echo
+  echo "| Режим | Запусков | Старт, медиана, с | Старт, мин., с | RSS, медиана, МБ |"
+  echo "|---|---|---|---|---|"
+  printf '%s\n' "${rows[@]}"
+} | tee "$REPORT"
@@ -0,0 +1,48 @@
+package com.example.entity;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PatientProfileBenchmark {
+
+    // Количество GUID в old_client_guid; у большинства пациентов один, у объединенных карт несколько
+    @Param({"1", "3"})
+    public int guidCount;
+
+    private PatientProfile patient;
+
+    @Setup
+    public void setUp() {
+        StringBuilder guids = new StringBuilder();
+        for (int i = 0; i < guidCount; i++) {
+            if (i > 0) {
+                guids.append(", ");
+            }
+            guids.append(String.format("%08X-5A1B-4C2D-8E3F-%012X", i, (long) i * 7919));
+        }
+        patient = new PatientProfile(1L, "John", "Doe", guids.toString(), (short) 200);
+    }
+
+    @Benchmark
+    public List<String> getOldClientGuids() {
+        return patient.getOldClientGuids();
+    }
+}
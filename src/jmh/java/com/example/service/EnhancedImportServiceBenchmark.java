@@ -0,0 +1,220 @@
+package com.example.service;
+
+import com.example.config.ImportConfigProperties;
+import com.example.dto.LegacyNote;
+import com.example.entity.CompanyUser;
+import com.example.entity.PatientNote;
+import com.example.entity.PatientProfile;
+import com.example.model.LegacyClientIndex;
+import com.example.model.ImportStatistics;
+import com.example.monitoring.ImportMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.observation.ObservationRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.AbstractPlatformTransactionManager;
+import org.springframework.transaction.support.DefaultTransactionStatus;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+// parseDateTime, importSingleNote и нарезка пациентов на пачки (processBatches) целиком, с репозиториями в памяти
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EnhancedImportServiceBenchmark {
+
+    private static final LocalDateTime OLD_MODIFIED = LocalDateTime.of(2020, 1, 1, 0, 0);
+    private static final LocalDateTime NEW_MODIFIED = LocalDateTime.of(2030, 1, 1, 0, 0);
+
+    private EnhancedImportService service;
+
+    @Setup
+    public void setUp() {
+        service = newService(new InMemoryRepositories());
+    }
+
+    @State(Scope.Thread)
+    public static class NoteScenario {
+
+        // create - заметки нет в БД, update - в БД более старая версия, skip - в БД более новая
+        @Param({"create", "update", "skip"})
+        public String noteState;
+
+        EnhancedImportService service;
+        InMemoryRepositories repositories;
+        PatientProfile patient;
+        LegacyNote legacyNote;
+        PatientNote existingNote;
+
+        @Setup
+        public void setUp() {
+            repositories = new InMemoryRepositories();
+            service = newService(repositories);
+
+            String clientGuid = LegacyPayloads.clientGuid(1);
+            patient = new PatientProfile(1L, "John", "Doe", clientGuid, (short) 200);
+            legacyNote = new LegacyNote();
+            legacyNote.setGuid(LegacyPayloads.noteGuid(clientGuid, 1));
+            legacyNote.setClientGuid(clientGuid);
+            legacyNote.setComments("Patient visit 1. Vital signs within normal limits, medication reconciliation completed.");
+            legacyNote.setLoggedUser("nurse1");
+            legacyNote.setCreatedDateTime(LegacyPayloads.dateTime(1) + " CDT");
+            legacyNote.setModifiedDateTime(LegacyPayloads.dateTime(2) + " CDT");
+
+            // Пользователь уже есть в БД, как у большинства заметок при повторном импорте
+            repositories.userRepository().save(new CompanyUser("nurse1"));
+            if (!"create".equals(noteState)) {
+                existingNote = new PatientNote();
+                existingNote.setPatient(patient);
+                existingNote.setLegacyNoteGuid(legacyNote.getGuid());
+                existingNote.setNote("Previous version");
+                existingNote.setCreatedDateTime(OLD_MODIFIED);
+                repositories.noteRepository().save(existingNote);
+            }
+        }
+
+        // Возвращает БД в исходное состояние сценария: иначе после первого create/update
+        // все последующие вызовы стали бы skip. Стоит единиц наносекунд.
+        void reset() {
+            if (existingNote != null) {
+                existingNote.setLastModifiedDateTime("skip".equals(noteState) ? NEW_MODIFIED : OLD_MODIFIED);
+            } else {
+                repositories.notesByGuid.clear();
+            }
+        }
+    }
+
+    // Пачки пациентов без клиентов в старой системе: измеряются нарезка, транзакции пачек,
+    // захваты пациентов и учет активности, но не загрузка и запись заметок
+    @State(Scope.Thread)
+    public static class Patients {
+
+        @Param({"1000", "50000"})
+        public int patientCount;
+
+        EnhancedImportService service;
+        NoteImportPipeline pipeline;
+        List<PatientProfile> patients;
+        LegacyClientIndex clientIndex;
+
+        @Setup
+        public void setUp() {
+            ImportConfigProperties config = new ImportConfigProperties();
+            config.setEnableAgencyLanes(false);
+            config.setEnablePatientAdvisoryLocks(false);
+            ImportMetrics metrics = new ImportMetrics(new SimpleMeterRegistry());
+            InMemoryRepositories repositories = new InMemoryRepositories();
+            NoOpTransactionManager transactionManager = new NoOpTransactionManager();
+            AgencyLaneScheduler laneScheduler = new AgencyLaneScheduler(config,
+                    new AgencyConcurrencyLimiters(config, metrics), metrics);
+            pipeline = new NoteImportPipeline(config, repositories.noteRepository(), repositories.userRepository(),
+                    laneScheduler, transactionManager, metrics);
+            service = new EnhancedImportService(null, null,
+                    repositories.userRepository(),
+                    repositories.noteRepository(),
+                    config, metrics,
+                    null, null,
+                    ObservationRegistry.NOOP,
+                    null,
+                    new PatientPriorityScheduler(config),
+                    null,
+                    laneScheduler,
+                    pipeline,
+                    new BatchSizeTuner(config, null, metrics),
+                    new PatientImportLocks(config, null),
+                    transactionManager);
+
+            patients = new ArrayList<>(patientCount);
+            for (int i = 0; i < patientCount; i++) {
+                patients.add(new PatientProfile((long) i, "First" + i, "Last" + i,
+                        LegacyPayloads.clientGuid(i), (short) 200));
+            }
+            clientIndex = LegacyClientIndex.of(List.of());
+        }
+
+        @TearDown
+        public void tearDown() {
+            pipeline.shutdown();
+        }
+    }
+
+    // Транзакции пачек без базы данных, с синхронизацией, как у JpaTransactionManager
+    private static class NoOpTransactionManager extends AbstractPlatformTransactionManager {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected Object doGetTransaction() {
+            return new Object();
+        }
+
+        @Override
+        protected void doBegin(Object transaction, TransactionDefinition definition) {
+        }
+
+        @Override
+        protected void doCommit(DefaultTransactionStatus status) {
+        }
+
+        @Override
+        protected void doRollback(DefaultTransactionStatus status) {
+        }
+    }
+
+    private static EnhancedImportService newService(InMemoryRepositories repositories) {
+        // Источники заметок, история запусков, порядок пациентов, сверка, полосы, конвейер, подбор размера пачки
+        // захват пациентов и транзакции пачек в importSingleNote не используются
+        return new EnhancedImportService(null, null,
+                repositories.userRepository(),
+                repositories.noteRepository(),
+                new ImportConfigProperties(),
+                new ImportMetrics(new SimpleMeterRegistry()),
+                null, null,
+                ObservationRegistry.NOOP,
+                null, null, null, null, null, null, null, null);
+    }
+
+    @Benchmark
+    public ImportStatistics importSingleNote(NoteScenario scenario) {
+        scenario.reset();
+        ImportStatistics stats = new ImportStatistics();
+        scenario.service.importSingleNote(scenario.patient, scenario.legacyNote, stats);
+        return stats;
+    }
+
+    @Benchmark
+    public LocalDateTime parseDateTimeWithZone() {
+        return service.parseDateTime("2024-01-15 10:30:00 CDT");
+    }
+
+    @Benchmark
+    public LocalDateTime parseDateTimeWithoutZone() {
+        return service.parseDateTime("2024-01-15 10:30:00");
+    }
+
+    @Benchmark
+    public ImportStatistics processBatches(Patients patients) {
+        ImportStatistics stats = new ImportStatistics();
+        patients.service.processBatches(patients.patients, patients.clientIndex,
+                ClientNotesCoalescer.forPatients(patients.patients, patients.clientIndex::contains),
+                Set.of(), stats, ImportRunContext.NONE);
+        return stats;
+    }
+}
@@ -0,0 +1,71 @@
+package com.example.service;
+
+import com.example.entity.CompanyUser;
+import com.example.entity.PatientNote;
+import com.example.repository.CompanyUserRepository;
+import com.example.repository.PatientNoteRepository;
+
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+// Репозитории на HashMap вместо JPA: в бенчмарке importSingleNote измеряется только логика импорта.
+// Поддерживаются лишь методы, которые вызывает importSingleNote.
+final class InMemoryRepositories {
+
+    final Map<String, PatientNote> notesByGuid = new HashMap<>();
+    final Map<String, CompanyUser> usersByLogin = new HashMap<>();
+
+    private long nextNoteId = 1;
+    private long nextUserId = 1;
+
+    PatientNoteRepository noteRepository() {
+        return proxy(PatientNoteRepository.class, (method, args) -> switch (method) {
+            case "findByLegacyNoteGuid" -> Optional.ofNullable(notesByGuid.get((String) args[0]));
+            case "save" -> saveNote((PatientNote) args[0]);
+            case "flush" -> null;
+            default -> throw new UnsupportedOperationException(method);
+        });
+    }
+
+    CompanyUserRepository userRepository() {
+        return proxy(CompanyUserRepository.class, (method, args) -> switch (method) {
+            case "findByLogin" -> Optional.ofNullable(usersByLogin.get((String) args[0]));
+            case "save" -> saveUser((CompanyUser) args[0]);
+            default -> throw new UnsupportedOperationException(method);
+        });
+    }
+
+    private PatientNote saveNote(PatientNote note) {
+        if (note.getId() == null) {
+            note.setId(nextNoteId++);
+        }
+        notesByGuid.put(note.getLegacyNoteGuid(), note);
+        return note;
+    }
+
+    private CompanyUser saveUser(CompanyUser user) {
+        if (user.getId() == null) {
+            user.setId(nextUserId++);
+        }
+        usersByLogin.put(user.getLogin(), user);
+        return user;
+    }
+
+    @FunctionalInterface
+    private interface Handler {
+        Object invoke(String method, Object[] args);
+    }
+
+    private static <T> T proxy(Class<T> type, Handler handler) {
+        Object proxy = Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (self, method, args) ->
+                switch (method.getName()) {
+                    case "toString" -> "InMemory" + type.getSimpleName();
+                    case "hashCode" -> System.identityHashCode(self);
+                    case "equals" -> self == args[0];
+                    default -> handler.invoke(method.getName(), args);
+                });
+        return type.cast(proxy);
+    }
+}
@@ -0,0 +1,118 @@
+package com.example.service;
+
+import com.example.archive.LegacyPayloadArchive;
+import com.example.config.ImportConfigProperties;
+import com.example.config.LegacyApiConfig;
+import com.example.dto.LegacyNote;
+import com.example.model.LegacyClientIndex;
+import com.example.monitoring.ImportMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.observation.ObservationRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.http.client.MockClientHttpResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.client.RequestCallback;
+import org.springframework.web.client.ResponseExtractor;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Разбор ответов /clients и /notes через LegacyApiService, без сети:
+// RestTemplate сразу возвращает заранее подготовленное тело ответа (строкой или потоком)
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LegacyApiServiceBenchmark {
+
+    private static final String CLIENT_GUID = LegacyPayloads.clientGuid(42);
+    private static final LocalDate DATE_FROM = LocalDate.of(2024, 1, 1);
+    private static final LocalDate DATE_TO = LocalDate.of(2024, 1, 31);
+
+    // Для /clients - число клиентов, для /notes - число заметок клиента за период
+    @Param({"10", "1000"})
+    public int records;
+
+    private LegacyApiService legacyApiService;
+
+    @Setup
+    public void setUp() {
+        LegacyApiConfig apiConfig = new LegacyApiConfig();
+        apiConfig.setBaseUrl("http://legacy.local");
+        apiConfig.setConnectTimeout(5000);
+        apiConfig.setReadTimeout(10000);
+
+        ImportConfigProperties importConfig = new ImportConfigProperties();
+        ImportMetrics metrics = new ImportMetrics(new SimpleMeterRegistry());
+        legacyApiService = new LegacyApiService(apiConfig,
+                new LegacyPayloadArchive(importConfig),
+                new AgencyConcurrencyLimiters(importConfig, metrics),
+                metrics,
+                ObservationRegistry.NOOP,
+                new LegacyApiUsage());
+
+        ReflectionTestUtils.setField(legacyApiService, "restTemplate",
+                new CannedResponseRestTemplate(LegacyPayloads.clients(records), LegacyPayloads.notes(CLIENT_GUID, records)));
+    }
+
+    @Benchmark
+    public List<LegacyNote> decodeNotes() throws Exception {
+        return legacyApiService.getClientNotes("vhh4", CLIENT_GUID, DATE_FROM, DATE_TO);
+    }
+
+    @Benchmark
+    public LegacyClientIndex decodeClientIndex() throws Exception {
+        return legacyApiService.getClientIndex(ImportRunContext.NONE);
+    }
+
+    private static class CannedResponseRestTemplate extends RestTemplate {
+
+        private final ResponseEntity<String> clients;
+        private final ResponseEntity<String> notes;
+
+        CannedResponseRestTemplate(String clientsBody, String notesBody) {
+            this.clients = ResponseEntity.ok(clientsBody);
+            this.notes = ResponseEntity.ok(notesBody);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> ResponseEntity<T> postForEntity(String url, Object request, Class<T> responseType,
+                                                   Object... uriVariables) {
+            return (ResponseEntity<T>) (url.endsWith("/notes") ? notes : clients);
+        }
+
+        // Справочник клиентов читается из потока ответа
+        @Override
+        public <T> T execute(URI url, HttpMethod method, RequestCallback requestCallback,
+                             ResponseExtractor<T> responseExtractor) {
+            try {
+                return responseExtractor.extractData(new MockClientHttpResponse(
+                        clients.getBody().getBytes(StandardCharsets.UTF_8), HttpStatus.OK));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
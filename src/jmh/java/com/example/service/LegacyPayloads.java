@@ -0,0 +1,73 @@
+package com.example.service;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+
+// Ответы Legacy API, близкие к реальным по составу полей и размеру записей
+final class LegacyPayloads {
+
+    private static final DateTimeFormatter FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private static final String[] AGENCIES = {"vhh4", "hhc1", "mhs2", "ahc7"};
+    private static final LocalDateTime BASE = LocalDateTime.of(2024, 1, 15, 8, 0);
+
+    private LegacyPayloads() {
+    }
+
+    static String clients(int count) {
+        StringBuilder json = new StringBuilder(count * 320).append('[');
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"agency\":\"").append(AGENCIES[i % AGENCIES.length]).append('"')
+                    .append(",\"guid\":\"").append(clientGuid(i)).append('"')
+                    .append(",\"firstName\":\"Firstname").append(i).append('"')
+                    .append(",\"lastName\":\"Lastname").append(i).append('"')
+                    .append(",\"status\":\"ACTIVE\"")
+                    .append(",\"dob\":\"1965-0").append(i % 9 + 1).append("-1").append(i % 9).append('"')
+                    .append(",\"createdDateTime\":\"").append(dateTime(i)).append(" CDT\"")
+                    // Поля, которые импорт не использует, но старая система отдает
+                    .append(",\"address\":{\"line1\":\"").append(i).append(" Main Street\",\"city\":\"Springfield\",\"zip\":\"62704\"}")
+                    .append(",\"phones\":[\"555-010").append(i % 10).append("\",\"555-020").append(i % 10).append("\"]")
+                    .append('}');
+        }
+        return json.append(']').toString();
+    }
+
+    static String notes(String clientGuid, int count) {
+        StringBuilder json = new StringBuilder(count * 640).append('[');
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"comments\":\"").append(comments(i)).append('"')
+                    .append(",\"guid\":\"").append(noteGuid(clientGuid, i)).append('"')
+                    .append(",\"modifiedDateTime\":\"").append(dateTime(i + 1)).append(" CDT\"")
+                    .append(",\"clientGuid\":\"").append(clientGuid).append('"')
+                    .append(",\"datetime\":\"").append(dateTime(i)).append(" CDT\"")
+                    .append(",\"loggedUser\":\"nurse").append(i % 20).append('"')
+                    .append(",\"createdDateTime\":\"").append(dateTime(i)).append(" CDT\"")
+                    .append('}');
+        }
+        return json.append(']').toString();
+    }
+
+    static String clientGuid(int i) {
+        return String.format("%08X-5A1B-4C2D-8E3F-%012X", i, (long) i * 7919);
+    }
+
+    static String noteGuid(String clientGuid, int i) {
+        return clientGuid.substring(0, 9) + String.format("N%03X-4000-8000-%012X", i % 4096, (long) i);
+    }
+
+    static String dateTime(int i) {
+        return BASE.plusMinutes(i * 37L).format(FORMAT);
+    }
+
+    private static String comments(int i) {
+        return "Patient visit " + i + ". Vital signs within normal limits, blood pressure 120/80, pulse 72. "
+                + "Medication reconciliation completed, no changes to the current regimen. "
+                + "Patient reports mild fatigue in the evenings; advised to keep a symptom diary "
+                + "and follow up at the next scheduled visit. Caregiver present and informed.";
+    }
+}
@@ -1,13 +1,16 @@
 package com.example;
 
+import com.example.config.ApplicationRuntimeHints;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.context.annotation.ImportRuntimeHints;
 import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
 import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
 @EnableScheduling
 @EnableJpaRepositories
+@ImportRuntimeHints(ApplicationRuntimeHints.class)
 public class HospitalBackendApplication {
 	public static void main(String[] args) {
 		SpringApplication.run(HospitalBackendApplication.class, args);
@@ -0,0 +1,165 @@
+package com.example.archive;
+
+import com.example.dto.LegacyNote;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+
+// Потоковое чтение сохраненных ответов старой системы для офлайн-импорта.
+// Поддерживаются сегменты архива (*.ndjson.gz), а также несжатые JSON/NDJSON файлы с заметками
+// или записями архива - они читаются через memory-mapped буфер.
+@Component
+@Slf4j
+public class ArchiveReplayReader {
+
+    private static final int CHUNK_SIZE = 1000;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final TypeReference<List<LegacyNote>> NOTES_TYPE = new TypeReference<>() {};
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @FunctionalInterface
+    public interface NotesConsumer {
+        void accept(String clientGuid, List<LegacyNote> notes);
+    }
+
+    public long replay(Path source, NotesConsumer consumer) throws IOException {
+        List<Path> files = listFiles(source);
+        log.info("Офлайн-импорт: найдено {} файлов в {}", files.size(), source);
+
+        long totalNotes = 0;
+        for (Path file : files) {
+            long notes = replayFile(file, consumer);
+            log.debug("Файл {} прочитан, заметок: {}", file, notes);
+            totalNotes += notes;
+        }
+        return totalNotes;
+    }
+
+    List<Path> listFiles(Path source) throws IOException {
+        if (!Files.isDirectory(source)) {
+            return List.of(source);
+        }
+
+        // Имена сегментов содержат время создания, поэтому сортировка по имени сохраняет хронологию
+        try (Stream<Path> files = Files.list(source)) {
+            return files.filter(ArchiveReplayReader::isSupported)
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    private static boolean isSupported(Path file) {
+        String name = file.getFileName().toString();
+        return name.endsWith(".json") || name.endsWith(".ndjson")
+                || name.endsWith(".json.gz") || name.endsWith(".ndjson.gz");
+    }
+
+    private long replayFile(Path file, NotesConsumer consumer) throws IOException {
+        try (InputStream in = open(file);
+             JsonParser parser = objectMapper.getFactory().createParser(in)) {
+
+            ChunkBuffer pending = new ChunkBuffer(consumer);
+            JsonToken token;
+            while ((token = parser.nextToken()) != null) {
+                if (token == JsonToken.START_ARRAY) {
+                    while (parser.nextToken() == JsonToken.START_OBJECT) {
+                        handle(parser.readValueAs(ReplayEntry.class), consumer, pending);
+                    }
+                } else if (token == JsonToken.START_OBJECT) {
+                    handle(parser.readValueAs(ReplayEntry.class), consumer, pending);
+                }
+            }
+            pending.flush();
+            return pending.total;
+        }
+    }
+
+    private static InputStream open(Path file) throws IOException {
+        if (file.getFileName().toString().endsWith(".gz")) {
+            // GZIPInputStream читает подряд все gzip member-ы сегмента
+            return new GZIPInputStream(new BufferedInputStream(Files.newInputStream(file), BUFFER_SIZE), BUFFER_SIZE);
+        }
+        return new MappedFileInputStream(file);
+    }
+
+    private void handle(ReplayEntry entry, NotesConsumer consumer, ChunkBuffer pending) {
+        if (entry.getType() == null || entry.getPayload() == null) {
+            pending.add(entry);
+            return;
+        }
+
+        if (!LegacyPayloadArchive.TYPE_NOTES.equals(entry.getType())) {
+            return;
+        }
+
+        List<LegacyNote> notes;
+        try {
+            notes = objectMapper.readValue(entry.getPayload(), NOTES_TYPE);
+        } catch (IOException e) {
+            log.warn("Пропускаем поврежденную запись архива для клиента {}: {}", entry.getClientGuid(), e.getMessage());
+            return;
+        }
+        pending.total += notes.size();
+        if (!notes.isEmpty()) {
+            consumer.accept(entry.getClientGuid(), notes);
+        }
+    }
+
+    // Отдельные заметки группируются по клиенту и отдаются порциями
+    private static class ChunkBuffer {
+        private final NotesConsumer consumer;
+        private final Map<String, List<LegacyNote>> byClient = new HashMap<>();
+        private int size;
+        private long total;
+
+        ChunkBuffer(NotesConsumer consumer) {
+            this.consumer = consumer;
+        }
+
+        void add(LegacyNote note) {
+            if (note.getClientGuid() == null) {
+                log.warn("Пропускаем заметку {} без clientGuid", note.getGuid());
+                return;
+            }
+            byClient.computeIfAbsent(note.getClientGuid(), key -> new ArrayList<>()).add(note);
+            total++;
+            if (++size >= CHUNK_SIZE) {
+                flush();
+            }
+        }
+
+        void flush() {
+            byClient.forEach(consumer::accept);
+            byClient.clear();
+            size = 0;
+        }
+    }
+
+    // Заметка или запись архива: у записи архива заполнены type и payload
+    @Data
+    @EqualsAndHashCode(callSuper = true)
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    static class ReplayEntry extends LegacyNote {
+        private String type;
+        private String payload;
+    }
+}
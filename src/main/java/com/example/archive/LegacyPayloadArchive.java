@@ -0,0 +1,243 @@
+package com.example.archive;
+
+import com.example.config.ImportConfigProperties;
+import com.example.dto.ArchivedPayload;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+// Архив сырых ответов старой системы: сегменты NDJSON, каждая запись - отдельный gzip member,
+// рядом с сегментом индекс "clientGuid, период, тип, смещение, длина" для точечного чтения.
+@Component
+@Slf4j
+public class LegacyPayloadArchive {
+
+    public static final String TYPE_CLIENTS = "clients";
+    public static final String TYPE_NOTES = "notes";
+    public static final String SEGMENT_SUFFIX = ".ndjson.gz";
+    public static final String INDEX_SUFFIX = ".idx";
+
+    private static final String ALL_CLIENTS = "*";
+    private static final DateTimeFormatter SEGMENT_NAME_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+
+    private final ImportConfigProperties config;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final BlockingQueue<ArchivedPayload> queue;
+    private final AtomicLong archivedCount = new AtomicLong(0);
+    private final AtomicLong droppedCount = new AtomicLong(0);
+    private final Thread writerThread;
+    private volatile boolean running;
+
+    // Состояние текущего сегмента, используется только потоком записи
+    private FileChannel segmentChannel;
+    private FileChannel indexChannel;
+    private Path segmentPath;
+    private Path indexPath;
+    private LocalDate segmentDate;
+
+    public LegacyPayloadArchive(ImportConfigProperties config) {
+        this.config = config;
+        if (config.isEnableBackup()) {
+            this.queue = new ArrayBlockingQueue<>(config.getBackupQueueCapacity());
+            this.running = true;
+            this.writerThread = Thread.ofPlatform()
+                    .name("legacy-payload-archive")
+                    .daemon()
+                    .start(this::writeLoop);
+            log.info("Архив ответов старой системы включен: {}", config.getBackupPath());
+        } else {
+            this.queue = null;
+            this.writerThread = null;
+        }
+    }
+
+    public boolean isEnabled() {
+        return queue != null;
+    }
+
+    public void archiveClients(String body) {
+        enqueue(TYPE_CLIENTS, null, ALL_CLIENTS, null, null, body);
+    }
+
+    public void archiveNotes(String agency, String clientGuid, LocalDate dateFrom, LocalDate dateTo, String body) {
+        enqueue(TYPE_NOTES, agency, clientGuid, dateFrom, dateTo, body);
+    }
+
+    private void enqueue(String type, String agency, String clientGuid,
+                         LocalDate dateFrom, LocalDate dateTo, String body) {
+        if (queue == null || body == null) {
+            return;
+        }
+
+        ArchivedPayload payload = new ArchivedPayload(
+                type,
+                agency,
+                clientGuid,
+                dateFrom != null ? dateFrom.format(DATE_FORMAT) : null,
+                dateTo != null ? dateTo.format(DATE_FORMAT) : null,
+                LocalDateTime.now().toString(),
+                body
+        );
+
+        // Импорт не ждет записи на диск: при переполненной очереди запись теряется
+        if (!queue.offer(payload)) {
+            long dropped = droppedCount.incrementAndGet();
+            log.warn("Очередь архива переполнена, ответ '{}' для клиента {} не сохранен (всего потеряно {})",
+                    type, clientGuid, dropped);
+        }
+    }
+
+    private void writeLoop() {
+        while (running || !queue.isEmpty()) {
+            try {
+                ArchivedPayload payload = queue.poll(1, TimeUnit.SECONDS);
+                if (payload != null) {
+                    write(payload);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (Exception e) {
+                log.error("Ошибка записи в архив ответов старой системы", e);
+            }
+        }
+        closeSegment();
+    }
+
+    private void write(ArchivedPayload payload) throws IOException {
+        byte[] line = objectMapper.writeValueAsBytes(payload);
+
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(line.length / 4 + 64);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+            gzip.write(line);
+            gzip.write('\n');
+        }
+        byte[] record = compressed.toByteArray();
+
+        ensureSegment(record.length);
+
+        long offset = segmentChannel.position();
+        writeFully(segmentChannel, ByteBuffer.wrap(record));
+
+        String indexLine = payload.getClientGuid() + '\t'
+                + nullToEmpty(payload.getDateFrom()) + '\t'
+                + nullToEmpty(payload.getDateTo()) + '\t'
+                + payload.getType() + '\t'
+                + offset + '\t'
+                + record.length + '\n';
+        writeFully(indexChannel, ByteBuffer.wrap(indexLine.getBytes(StandardCharsets.UTF_8)));
+
+        archivedCount.incrementAndGet();
+    }
+
+    private void ensureSegment(int recordLength) throws IOException {
+        long maxBytes = config.getBackupSegmentMaxMb() * 1024L * 1024L;
+        LocalDate today = LocalDate.now();
+
+        if (segmentChannel != null
+                && segmentDate.equals(today)
+                && segmentChannel.position() + recordLength <= maxBytes) {
+            return;
+        }
+
+        closeSegment();
+
+        Path directory = Paths.get(config.getBackupPath());
+        Files.createDirectories(directory);
+
+        String baseName = "legacy-" + LocalDateTime.now().format(SEGMENT_NAME_FORMAT);
+        for (int sequence = 0; ; sequence++) {
+            String name = baseName + "-" + String.format("%04d", sequence);
+            try {
+                segmentPath = directory.resolve(name + SEGMENT_SUFFIX);
+                indexPath = directory.resolve(name + INDEX_SUFFIX);
+                segmentChannel = FileChannel.open(segmentPath, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+                indexChannel = FileChannel.open(indexPath, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+                break;
+            } catch (FileAlreadyExistsException e) {
+                if (segmentChannel != null) {
+                    segmentChannel.close();
+                    segmentChannel = null;
+                }
+            }
+        }
+
+        segmentDate = today;
+        log.info("Открыт новый сегмент архива {}", segmentPath);
+    }
+
+    private void closeSegment() {
+        if (segmentChannel == null) {
+            return;
+        }
+
+        try {
+            segmentChannel.force(true);
+            indexChannel.force(true);
+            segmentChannel.close();
+            indexChannel.close();
+            // Закрытые сегменты больше не меняются
+            segmentPath.toFile().setReadOnly();
+            indexPath.toFile().setReadOnly();
+        } catch (IOException e) {
+            log.error("Ошибка закрытия сегмента архива {}", segmentPath, e);
+        } finally {
+            segmentChannel = null;
+            indexChannel = null;
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static String nullToEmpty(String value) {
+        return value != null ? value : "";
+    }
+
+    public long getArchivedCount() {
+        return archivedCount.get();
+    }
+
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (writerThread == null) {
+            return;
+        }
+
+        running = false;
+        try {
+            writerThread.join(TimeUnit.SECONDS.toMillis(30));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        log.info("Архив ответов остановлен: записано={}, потеряно={}", archivedCount.get(), droppedCount.get());
+    }
+}
@@ -0,0 +1,74 @@
+package com.example.archive;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// Последовательное чтение файла через окна memory-mapped буфера (файлы больше 2 ГБ читаются по частям)
+class MappedFileInputStream extends InputStream {
+
+    private static final long WINDOW_SIZE = 256L * 1024 * 1024;
+
+    private final FileChannel channel;
+    private final long size;
+    private long windowStart;
+    private MappedByteBuffer window;
+
+    MappedFileInputStream(Path path) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        this.size = channel.size();
+        this.windowStart = 0;
+        mapWindow();
+    }
+
+    private void mapWindow() throws IOException {
+        long length = Math.min(WINDOW_SIZE, size - windowStart);
+        window = length > 0 ? channel.map(FileChannel.MapMode.READ_ONLY, windowStart, length) : null;
+    }
+
+    private boolean ensureAvailable() throws IOException {
+        if (window == null) {
+            return false;
+        }
+        if (!window.hasRemaining()) {
+            windowStart += window.capacity();
+            mapWindow();
+        }
+        return window != null;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!ensureAvailable()) {
+            return -1;
+        }
+        return window.get() & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        if (!ensureAvailable()) {
+            return -1;
+        }
+        int count = Math.min(length, window.remaining());
+        window.get(buffer, offset, count);
+        return count;
+    }
+
+    @Override
+    public int available() {
+        return window != null ? window.remaining() : 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+        window = null;
+        channel.close();
+    }
+}
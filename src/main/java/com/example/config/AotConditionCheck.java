@@ -0,0 +1,46 @@
+package com.example.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.aot.AotDetector;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+// В AOT-сборке (профиль fast-startup) @ConditionalOnProperty вычисляется при сборке, и свойство, заданное только
+// при запуске, ничего не включает и не выключает. Расхождение свойств запуска и собранного контекста - в журнал
+@Component
+@Slf4j
+public class AotConditionCheck {
+
+    // Свойство, от которого зависит конфигурация, -> бин, который она создает
+    private static final Map<String, String> CONDITIONAL_BEANS = Map.of(
+            "notes.datasource.replica.jdbc-url", "replicaDataSource",
+            "notes.import.trace-export-path", "otlpFileSpanExporter");
+
+    private final ApplicationContext context;
+    private final Environment environment;
+
+    public AotConditionCheck(ApplicationContext context, Environment environment) {
+        this.context = context;
+        this.environment = environment;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void checkBuildTimeConditions() {
+        if (!AotDetector.useGeneratedArtifacts()) {
+            return;
+        }
+        CONDITIONAL_BEANS.forEach((property, bean) -> {
+            boolean configured = environment.containsProperty(property);
+            if (configured != context.containsBean(bean)) {
+                log.warn("Свойство {} {} при запуске, а AOT-сборка выполнена {}: контекст собран по свойствам сборки. " +
+                                "Задайте свойство при сборке (-Dspring-boot.aot.jvmArguments=...) и пересоберите",
+                        property, configured ? "задано" : "не задано", configured ? "без него" : "с ним");
+            }
+        });
+    }
+}
@@ -0,0 +1,49 @@
+package com.example.config;
+
+import com.example.dto.ArchivedPayload;
+import com.example.dto.LegacyClient;
+import com.example.dto.LegacyNote;
+import com.example.dto.LegacyNoteDigest;
+import com.example.dto.NoteDigestRequest;
+import com.example.dto.NotesRequest;
+import com.example.entity.CompanyUser;
+import com.example.entity.ImportRun;
+import com.example.entity.PatientNote;
+import com.example.entity.PatientProfile;
+import com.example.model.NoteVersion;
+import com.example.monitoring.ImportRunHistory;
+import com.example.service.PushNoteIngestor;
+import org.springframework.aot.hint.BindingReflectionHintsRegistrar;
+import org.springframework.aot.hint.MemberCategory;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.RuntimeHintsRegistrar;
+
+// Подсказки для AOT и native-image: DTO Legacy API и архива разбираются Jackson через
+// сгенерированные Lombok геттеры/сеттеры, сущности и проекции JPQL-конструкторов создаются Hibernate через рефлексию
+public class ApplicationRuntimeHints implements RuntimeHintsRegistrar {
+
+    private static final Class<?>[] JSON_TYPES = {
+            LegacyClient.class, LegacyNote.class, NotesRequest.class, ArchivedPayload.class,
+            NoteDigestRequest.class, LegacyNoteDigest.class,
+            ImportRunHistory.Baseline.class, PushNoteIngestor.SubmitResult.class
+    };
+
+    private static final Class<?>[] ENTITIES = {
+            PatientProfile.class, PatientNote.class, CompanyUser.class, ImportRun.class
+    };
+
+    @Override
+    public void registerHints(RuntimeHints hints, ClassLoader classLoader) {
+        new BindingReflectionHintsRegistrar().registerReflectionHints(hints.reflection(), JSON_TYPES);
+
+        for (Class<?> entity : ENTITIES) {
+            hints.reflection().registerType(entity,
+                    MemberCategory.INVOKE_DECLARED_CONSTRUCTORS,
+                    MemberCategory.INVOKE_DECLARED_METHODS,
+                    MemberCategory.DECLARED_FIELDS);
+        }
+        hints.reflection().registerType(NoteVersion.class, MemberCategory.INVOKE_DECLARED_CONSTRUCTORS);
+
+        hints.resources().registerPattern("db/changelog/*.xml");
+    }
+}
@@ -9,6 +9,9 @@ import javax.validation.constraints.Min;
 import javax.validation.constraints.Max;
 import javax.validation.constraints.NotBlank;
 
+import java.util.HashMap;
+import java.util.Map;
+
 @ConfigurationProperties(prefix = "notes.import")
 @Data
 @Component
@@ -53,12 +56,208 @@ public class ImportConfigProperties {
 
     private String backupPath = "/var/backups/hospital-backend";
 
+    @Min(1)
+    @Max(4096)
+    private int backupSegmentMaxMb = 256;
+
+    @Min(10)
+    @Max(100000)
+    private int backupQueueCapacity = 1000;
+
+    // Источник заметок: живой API старой системы или сохраненный архив ответов
+    private ImportSource importSource = ImportSource.LEGACY_API;
+
+    // Каталог или файл для офлайн-импорта, по умолчанию backupPath
+    private String replayPath;
+
     @Min(1)
     @Max(100)
     private int maxConcurrentApiConnections = 10;
 
     private boolean enableDetailedLogging = false;
 
+    // Адаптивное разбиение периода запроса заметок для "тяжелых" клиентов
+    private boolean enableAdaptiveWindowSplitting = true;
+
+    @Min(10)
+    @Max(100000)
+    private int targetNotesPerRequest = 1000;
+
+    @Min(100)
+    @Max(600000)
+    private int targetRequestMillis = 5000;
+
+    @Min(0)
+    @Max(10)
+    private int maxWindowSplitDepth = 5;
+
+    // AIMD-ограничение параллельных запросов к Legacy API, верхняя граница - maxConcurrentApiConnections
+    private boolean enableAdaptiveConcurrency = true;
+
+    @Min(1)
+    @Max(100)
+    private int initialApiConcurrency = 4;
+
+    @Min(100)
+    @Max(600000)
+    private int apiLatencyThresholdMillis = 3000;
+
+    // Полосы агентств: заметки загружаются общим пулом из maxConcurrentApiConnections потоков по очередям агентств,
+    // у каждого агентства свой AIMD-лимит не выше maxConcurrentRequestsPerAgency. Медленное агентство
+    // занимает только свои слоты, остальные полосы продолжают работу
+    private boolean enableAgencyLanes = true;
+
+    @Min(1)
+    @Max(100)
+    private int maxConcurrentRequestsPerAgency = 4;
+
+    // Вес полосы в круговом обходе - сколько задач агентства выбирается подряд (по умолчанию 1)
+    private Map<String, Integer> agencyLaneWeights = new HashMap<>();
+
+    // Конвейер импорта поверх полос агентств: загрузка с разбором JSON -> поиск сохраненных заметок и авторов
+    // (pipelineResolveThreads потоков, очередь pipelineResolveQueueDepth клиентов) -> запись в транзакции импорта.
+    // Пока пишется пачка, загружаются следующие pipelineFetchAheadBatches пачек: в памяти не больше 1 + N пачек
+    private boolean enableStagedPipeline = true;
+
+    @Min(0)
+    @Max(8)
+    private int pipelineFetchAheadBatches = 1;
+
+    @Min(1)
+    @Max(64)
+    private int pipelineResolveThreads = 2;
+
+    @Min(1)
+    @Max(10000)
+    private int pipelineResolveQueueDepth = 100;
+
+    // Автоподбор размера пачки пациентов: между пачками размер меняется на autoTuneStepPercent в сторону роста
+    // заметок/с (hill climbing) в пределах [autoTuneMinBatchSize, autoTuneMaxBatchSize] и так, чтобы в памяти
+    // (текущая пачка и загружаемые заранее) было не больше autoTuneMaxNotesInMemory заметок.
+    // Следующий запуск начинается с лучшего размера предыдущего, до первого запуска - с patientBatchSize
+    private boolean enableBatchSizeAutoTuning = false;
+
+    @Min(1)
+    @Max(10000)
+    private int autoTuneMinBatchSize = 10;
+
+    @Min(1)
+    @Max(10000)
+    private int autoTuneMaxBatchSize = 2000;
+
+    @Min(5)
+    @Max(100)
+    private int autoTuneStepPercent = 25;
+
+    @Min(1000)
+    @Max(10000000)
+    private int autoTuneMaxNotesInMemory = 200000;
+
+    // Пациент обрабатывается одним импортом: импорт отдельного пациента захватывает пациента до конца
+    // своей транзакции, плановый - до фиксации транзакции пачки (patientLockStripes полос блокировок внутри процесса),
+    // занятые пропускаются. Между узлами - транзакционные advisory-блокировки PostgreSQL, по одной на пациента пачки
+    @Min(1)
+    @Max(4096)
+    private int patientLockStripes = 64;
+
+    private boolean enablePatientAdvisoryLocks = true;
+
+    // Файл для выгрузки спанов в формате OTLP JSON (по строке на пачку), пусто - выгрузка отключена
+    private String traceExportPath;
+
+    // Каталог для дампов JFR-записи, запускаемой через actuator-эндпоинт importrecording
+    private String jfrRecordingPath = "/var/tmp/hospital-backend/jfr";
+
+    @Min(1)
+    @Max(1440)
+    private int jfrMaxAgeMinutes = 60;
+
+    // История запусков: размер кольцевого буфера и сохранение в таблицу import_run
+    @Min(1)
+    @Max(1000)
+    private int runHistorySize = 50;
+
+    private boolean persistRunHistory = false;
+
+    // Регрессия - превышение медианы последних regressionBaselineRuns запусков более чем на regressionThresholdPercent
+    @Min(3)
+    @Max(100)
+    private int regressionBaselineRuns = 10;
+
+    @Min(1)
+    @Max(1000)
+    private int regressionThresholdPercent = 50;
+
+    // Порядок пациентов по вероятности изменений (PatientPriorityScheduler) вместо порядка по ID
+    private boolean enablePriorityOrdering = true;
+
+    // За сколько часов вклад последнего изменения в старой системе в приоритет уменьшается вдвое
+    @Min(1)
+    @Max(720)
+    private int priorityRecencyHalfLifeHours = 24;
+
+    // Прием изменений заметок от старой системы (POST /api/import/note-events); плановый импорт
+    // в этом режиме остается сверкой и может запускаться реже (schedule). По умолчанию выключен,
+    // включается явно вместе с отправкой событий из старой системы
+    private boolean enablePushIngestion = false;
+
+    // Изменения применяются пачками: до pushBatchSize событий или через pushFlushMillis после первого
+    @Min(1)
+    @Max(5000)
+    private int pushBatchSize = 200;
+
+    @Min(10)
+    @Max(60000)
+    private int pushFlushMillis = 250;
+
+    @Min(100)
+    @Max(1000000)
+    private int pushQueueCapacity = 10000;
+
+    // Как часто перестраивается индекс "GUID клиента -> пациенты"
+    @Min(1)
+    @Max(1440)
+    private int pushLookupRefreshMinutes = 10;
+
+    // Сколько GUID, которых нет в индексе, ищется запросом к БД между перестроениями индекса.
+    // Запрос просматривает всю таблицу пациентов, а GUID приходят в открытый /api/import/note-events,
+    // поэтому сверх лимита неизвестные GUID ждут перестроения индекса
+    @Min(0)
+    @Max(100000)
+    private int pushLookupMaxFallbacks = 1000;
+
+    // Сверка по дайджестам (POST /notes/digest старой системы): клиенты, у которых число заметок
+    // и хеш (guid, modifiedDateTime) за период не изменились с последней загрузки, не запрашиваются
+    private boolean enableDigestReconciliation = false;
+
+    // Сколько клиентов одного агентства передается в одном запросе дайджестов
+    @Min(1)
+    @Max(10000)
+    private int digestBatchSize = 1000;
+
+    // Сохраненный дайджест старше этого срока не используется: клиент загружается полностью
+    @Min(1)
+    @Max(720)
+    private int digestMaxAgeHours = 24;
+
+    // Обслуживание месячных секций patient_note (PostgreSQL): создание секций на notePartitionMonthsAhead
+    // месяцев вперед и вывод из таблицы секций старше noteRetentionMonths (0 - хранить все)
+    private boolean enableNotePartitionMaintenance = true;
+
+    @NotBlank
+    private String notePartitionMaintenanceSchedule = "0 30 3 * * *";
+
+    @Min(1)
+    @Max(24)
+    private int notePartitionMonthsAhead = 3;
+
+    @Min(0)
+    @Max(1200)
+    private int noteRetentionMonths = 0;
+
+    // false - секция только отсоединяется и остается отдельной таблицей для архивации, true - удаляется
+    private boolean dropExpiredNotePartitions = false;
+
     @PostConstruct
     public void validateConfiguration() {
         if (enableParallelProcessing && parallelThreads > patientBatchSize) {
@@ -68,11 +267,22 @@ public class ImportConfigProperties {
             );
         }
 
+        if (enableBatchSizeAutoTuning && autoTuneMinBatchSize > autoTuneMaxBatchSize) {
+            throw new IllegalStateException(
+                    "Минимальный размер пачки больше максимального: " +
+                            "autoTuneMinBatchSize=" + autoTuneMinBatchSize + ", autoTuneMaxBatchSize=" + autoTuneMaxBatchSize
+            );
+        }
+
         if (enableBackup && (backupPath == null || backupPath.trim().isEmpty())) {
             throw new IllegalStateException("Путь для резервных копий не может быть пустым при включенном backup");
         }
     }
 
+    public String getReplaySourcePath() {
+        return replayPath != null && !replayPath.trim().isEmpty() ? replayPath : backupPath;
+    }
+
     public long getOperationTimeoutMillis() {
         return operationTimeoutMinutes * 60L * 1000L;
     }
@@ -96,6 +306,12 @@ public class ImportConfigProperties {
                 ", parallelThreads=" + parallelThreads +
                 ", operationTimeoutMinutes=" + operationTimeoutMinutes +
                 ", schedule='" + schedule + '\'' +
+                ", importSource=" + importSource +
                 '}';
     }
+
+    public enum ImportSource {
+        LEGACY_API,
+        ARCHIVE
+    }
 }
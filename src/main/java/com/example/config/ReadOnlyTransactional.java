@@ -0,0 +1,18 @@
+package com.example.config;
+
+import org.springframework.transaction.annotation.Transactional;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+// Транзакция только для чтения: при настроенной реплике выполняется на ней (ReadReplicaDataSourceConfig).
+// Сервисы импорта помечены jakarta.transaction.Transactional, у которой нет readOnly.
+@Target({ElementType.METHOD, ElementType.TYPE})
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+@Transactional(readOnly = true)
+public @interface ReadOnlyTransactional {
+}
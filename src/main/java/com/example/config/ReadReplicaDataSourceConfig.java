@@ -0,0 +1,55 @@
+package com.example.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+
+// Чтение с реплики: транзакции readOnly (@ReadOnlyTransactional, @Transactional(readOnly = true),
+// запросы статистики PatientNoteRepository вне транзакции импорта) получают соединение из отдельного пула реплики,
+// остальные - из основного. Физическое соединение берется ленивым прокси при первом запросе,
+// когда признак readOnly транзакции уже выставлен. Без notes.datasource.replica.jdbc-url
+// конфигурация не подключается и все запросы идут в основную БД через пул по умолчанию.
+// В AOT-сборке (профиль fast-startup) условие вычисляется при сборке: jdbc-url реплики задается и при сборке.
+@Configuration
+@ConditionalOnProperty(prefix = "notes.datasource.replica", name = "jdbc-url")
+@Slf4j
+public class ReadReplicaDataSourceConfig {
+
+    // Размер и таймауты основного пула - spring.datasource.hikari.*
+    @Bean(destroyMethod = "close")
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource primaryDataSource(DataSourceProperties properties) {
+        HikariDataSource dataSource = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        dataSource.setPoolName("primary");
+        return dataSource;
+    }
+
+    // jdbc-url, username, password и настройки пула реплики - notes.datasource.replica.*
+    @Bean(destroyMethod = "close")
+    @ConfigurationProperties("notes.datasource.replica")
+    public HikariDataSource replicaDataSource() {
+        HikariDataSource dataSource = new HikariDataSource();
+        dataSource.setPoolName("replica");
+        dataSource.setReadOnly(true);
+        return dataSource;
+    }
+
+    @Bean
+    @Primary
+    public DataSource dataSource(@Qualifier("primaryDataSource") HikariDataSource primaryDataSource,
+                                 @Qualifier("replicaDataSource") HikariDataSource replicaDataSource) {
+        log.info("Чтение в readOnly-транзакциях направляется на реплику {}", replicaDataSource.getJdbcUrl());
+        LazyConnectionDataSourceProxy dataSource = new LazyConnectionDataSourceProxy(primaryDataSource);
+        dataSource.setReadOnlyDataSource(replicaDataSource);
+        return dataSource;
+    }
+}
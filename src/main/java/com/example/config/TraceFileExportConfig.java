@@ -0,0 +1,39 @@
+package com.example.config;
+
+import com.example.monitoring.OtlpJsonFileSpanExporter;
+import io.opentelemetry.sdk.trace.export.SpanExporter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+// Выгрузка спанов импорта в файл в формате OTLP JSON для разбора без коллектора.
+// Экспортер подхватывается автоконфигурацией трассировки Spring Boot наряду с остальными SpanExporter.
+@Configuration
+@ConditionalOnProperty(prefix = "notes.import", name = "trace-export-path")
+@Slf4j
+public class TraceFileExportConfig {
+
+    @Bean(destroyMethod = "shutdown")
+    public SpanExporter otlpFileSpanExporter(ImportConfigProperties config) throws IOException {
+        Path path = Paths.get(config.getTraceExportPath());
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+
+        // Каждая пачка спанов сериализуется целиком и дописывается в файл одной записью; файл закрывается в shutdown()
+        OutputStream output = new BufferedOutputStream(Files.newOutputStream(path,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND, StandardOpenOption.WRITE));
+        log.info("Спаны импорта выгружаются в файл {}", path);
+
+        return new OtlpJsonFileSpanExporter(output);
+    }
+}
@@ -0,0 +1,36 @@
+package com.example.controller;
+
+import com.example.dto.LegacyNote;
+import com.example.service.PushNoteIngestor;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+
+// Изменения заметок от старой системы: JSON-массив в формате ответа /notes, клиент - по clientGuid.
+// 202 - события приняты в очередь, 503 - очередь заполнена или прием отключен (повторить позже).
+@RestController
+@RequestMapping("/api/import/note-events")
+public class NoteEventsController {
+
+    private final PushNoteIngestor ingestor;
+
+    public NoteEventsController(PushNoteIngestor ingestor) {
+        this.ingestor = ingestor;
+    }
+
+    @PostMapping
+    public ResponseEntity<PushNoteIngestor.SubmitResult> submit(@RequestBody List<LegacyNote> events) {
+        if (!ingestor.isEnabled()) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        }
+
+        PushNoteIngestor.SubmitResult result = ingestor.submit(events);
+        HttpStatus status = result.overflow() > 0 ? HttpStatus.SERVICE_UNAVAILABLE : HttpStatus.ACCEPTED;
+        return ResponseEntity.status(status).body(result);
+    }
+}
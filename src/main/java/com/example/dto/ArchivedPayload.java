@@ -0,0 +1,21 @@
+package com.example.dto;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class ArchivedPayload {
+    private String type;
+    private String agency;
+    private String clientGuid;
+    private String dateFrom;
+    private String dateTo;
+    private String receivedAt;
+    // Тело ответа старой системы без изменений
+    private String payload;
+}
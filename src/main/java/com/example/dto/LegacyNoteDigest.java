@@ -0,0 +1,12 @@
+package com.example.dto;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import lombok.Data;
+
+@Data
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class LegacyNoteDigest {
+    private String clientGuid;
+    private int noteCount;
+    private long hash;
+}
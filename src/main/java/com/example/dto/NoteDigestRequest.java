@@ -0,0 +1,15 @@
+package com.example.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+public class NoteDigestRequest {
+    private String agency;
+    private String dateFrom;
+    private String dateTo;
+    private List<String> clientGuids;
+}
@@ -0,0 +1,89 @@
+package com.example.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+// Итог одного запуска импорта для истории запусков и сравнения с предыдущими
+@Entity
+@Table(name = "import_run")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ImportRun {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "source", nullable = false, length = 32)
+    private String source;
+
+    @Column(name = "start_time", nullable = false)
+    private LocalDateTime startTime;
+
+    @Column(name = "end_time")
+    private LocalDateTime endTime;
+
+    @Column(name = "duration_millis", nullable = false)
+    private long durationMillis;
+
+    @Column(name = "total_patients", nullable = false)
+    private int totalPatients;
+
+    @Column(name = "processed_patients", nullable = false)
+    private int processedPatients;
+
+    @Column(name = "created_count", nullable = false)
+    private int createdCount;
+
+    @Column(name = "updated_count", nullable = false)
+    private int updatedCount;
+
+    @Column(name = "skipped_count", nullable = false)
+    private int skippedCount;
+
+    @Column(name = "error_count", nullable = false)
+    private int errorCount;
+
+    @Column(name = "api_calls", nullable = false)
+    private long apiCalls;
+
+    @Column(name = "bytes_received", nullable = false)
+    private long bytesReceived;
+
+    @Column(name = "fetch_millis", nullable = false)
+    private long fetchMillis;
+
+    @Column(name = "parse_millis", nullable = false)
+    private long parseMillis;
+
+    @Column(name = "db_millis", nullable = false)
+    private long dbMillis;
+
+    @Column(name = "deadline_exceeded", nullable = false)
+    private boolean deadlineExceeded;
+
+    @Column(name = "critical_error", nullable = false)
+    private boolean criticalError;
+
+    // Причина регрессии относительно предыдущих запусков, null - регрессии нет
+    @Column(name = "regression", length = 255)
+    private String regression;
+
+    // Подобранный размер пачки пациентов, null - автоподбор выключен
+    @Column(name = "patient_batch_size")
+    private Integer patientBatchSize;
+
+    public long getProcessedNotes() {
+        return (long) createdCount + updatedCount + skippedCount;
+    }
+
+    // Среднее время запуска на одну заметку, -1 если заметок не было
+    public double getMillisPerNote() {
+        long notes = getProcessedNotes();
+        return notes > 0 ? (double) durationMillis / notes : -1;
+    }
+}
@@ -4,6 +4,7 @@ import jakarta.persistence.*;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import org.hibernate.annotations.PartitionKey;
 
 import java.time.LocalDateTime;
 
@@ -17,6 +18,9 @@ public class PatientNote {
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
 
+    // Ключ секции patient_note: Hibernate добавляет его в WHERE своих UPDATE и DELETE,
+    // и PostgreSQL затрагивает одну секцию вместо проверки индекса ключа в каждой
+    @PartitionKey
     @Column(name = "created_date_time", nullable = false)
     private LocalDateTime createdDateTime;
 
@@ -0,0 +1,39 @@
+package com.example.model;
+
+import com.example.dto.LegacyNote;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+
+// Дайджест заметок клиента за период: количество и сумма по модулю 2^64 хешей FNV-1a 64
+// от UTF-8 строки guid + "|" + modifiedDateTime. Сумма не зависит от порядка заметок,
+// старая система считает дайджест для /notes/digest так же.
+public record ClientNoteDigest(int noteCount, long hash) {
+
+    private static final long FNV_OFFSET_BASIS = 0xCBF29CE484222325L;
+    private static final long FNV_PRIME = 0x100000001B3L;
+
+    public static final ClientNoteDigest EMPTY = new ClientNoteDigest(0, 0);
+
+    public static ClientNoteDigest of(Collection<LegacyNote> notes) {
+        long hash = 0;
+        for (LegacyNote note : notes) {
+            hash += noteHash(note.getGuid(), note.getModifiedDateTime());
+        }
+        return new ClientNoteDigest(notes.size(), hash);
+    }
+
+    public static long noteHash(String guid, String modifiedDateTime) {
+        byte[] bytes = (nullToEmpty(guid) + "|" + nullToEmpty(modifiedDateTime)).getBytes(StandardCharsets.UTF_8);
+        long hash = FNV_OFFSET_BASIS;
+        for (byte b : bytes) {
+            hash ^= b & 0xFF;
+            hash *= FNV_PRIME;
+        }
+        return hash;
+    }
+
+    private static String nullToEmpty(String value) {
+        return value != null ? value : "";
+    }
+}
@@ -1,24 +1,144 @@
 package com.example.model;
 
-import lombok.Data;
+import lombok.Getter;
+import lombok.Setter;
 
 import java.time.Duration;
 import java.time.LocalDateTime;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 
-@Data
+// Статистика запуска импорта. Счетчики на LongAdder, поэтому экземпляр можно обновлять из нескольких потоков;
+// статистика отдельных обработчиков сводится в итог запуска через merge.
 public class ImportStatistics {
-    private LocalDateTime startTime;
-    private LocalDateTime endTime;
-    int createdCount = 0;
-    int updatedCount = 0;
-    int skippedCount = 0;
-    int errorCount = 0;
-    private boolean hasCriticalError = false;
-
-    public void incrementCreatedCount() { createdCount++; }
-    public void incrementUpdatedCount() { updatedCount++; }
-    public void incrementSkippedCount() { skippedCount++; }
-    public void incrementErrorCount() { errorCount++; }
+
+    // Фазы, между которыми делится время запуска: ожидание ответа API, разбор JSON, работа с БД
+    public enum Phase { FETCH, PARSE, DB }
+
+    @Getter @Setter
+    private volatile LocalDateTime startTime;
+    @Getter @Setter
+    private volatile LocalDateTime endTime;
+
+    private final LongAdder createdCount = new LongAdder();
+    private final LongAdder updatedCount = new LongAdder();
+    private final LongAdder skippedCount = new LongAdder();
+    private final LongAdder errorCount = new LongAdder();
+    private final LongAdder processedPatients = new LongAdder();
+    private final LongAdder apiCalls = new LongAdder();
+    private final LongAdder bytesReceived = new LongAdder();
+    private final Map<Phase, LongAdder> phaseNanos = new EnumMap<>(Phase.class);
+
+    @Getter @Setter
+    private volatile boolean hasCriticalError = false;
+    // Запуск остановлен по operationTimeoutMinutes, статистика частичная
+    @Getter @Setter
+    private volatile boolean deadlineExceeded = false;
+    // Запуск пропущен, так как предыдущий импорт еще выполняется (импорт пациента - пациента обрабатывает другой импорт)
+    @Getter @Setter
+    private volatile boolean alreadyRunning = false;
+    @Getter @Setter
+    private volatile int totalPatients = 0;
+    // Размер пачки, с которого начнется следующий запуск (автоподбор), 0 - автоподбор выключен
+    @Getter @Setter
+    private volatile int patientBatchSize = 0;
+
+    public ImportStatistics() {
+        for (Phase phase : Phase.values()) {
+            phaseNanos.put(phase, new LongAdder());
+        }
+    }
+
+    public void incrementCreatedCount() { createdCount.increment(); }
+    public void incrementUpdatedCount() { updatedCount.increment(); }
+    public void incrementSkippedCount() { skippedCount.increment(); }
+    public void incrementErrorCount() { errorCount.increment(); }
+    public void incrementProcessedPatients() { processedPatients.increment(); }
+
+    public int getCreatedCount() { return createdCount.intValue(); }
+    public int getUpdatedCount() { return updatedCount.intValue(); }
+    public int getSkippedCount() { return skippedCount.intValue(); }
+    public int getErrorCount() { return errorCount.intValue(); }
+    public int getProcessedPatients() { return processedPatients.intValue(); }
+
+    public void setCreatedCount(int value) { reset(createdCount, value); }
+    public void setUpdatedCount(int value) { reset(updatedCount, value); }
+    public void setSkippedCount(int value) { reset(skippedCount, value); }
+    public void setErrorCount(int value) { reset(errorCount, value); }
+    public void setProcessedPatients(int value) { reset(processedPatients, value); }
+
+    private static void reset(LongAdder adder, long value) {
+        adder.reset();
+        adder.add(value);
+    }
+
+    public void addApiCalls(long calls) { apiCalls.add(calls); }
+    public long getApiCalls() { return apiCalls.sum(); }
+
+    public void addBytesReceived(long bytes) { bytesReceived.add(bytes); }
+    public long getBytesReceived() { return bytesReceived.sum(); }
+
+    public void addPhaseTime(Phase phase, long nanos) {
+        phaseNanos.get(phase).add(nanos);
+    }
+
+    public Duration getPhaseTime(Phase phase) {
+        return Duration.ofNanos(phaseNanos.get(phase).sum());
+    }
+
+    // Фаза с наибольшим суммарным временем, null если время не измерялось
+    public Phase getBottleneckPhase() {
+        Phase bottleneck = null;
+        long max = 0;
+        for (Map.Entry<Phase, LongAdder> entry : phaseNanos.entrySet()) {
+            long nanos = entry.getValue().sum();
+            if (nanos > max) {
+                max = nanos;
+                bottleneck = entry.getKey();
+            }
+        }
+        return bottleneck;
+    }
+
+    public long getProcessedNotes() {
+        return createdCount.sum() + updatedCount.sum() + skippedCount.sum();
+    }
+
+    public double getNotesPerSecond() {
+        return perSecond(getProcessedNotes());
+    }
+
+    public double getPatientsPerSecond() {
+        return perSecond(processedPatients.sum());
+    }
+
+    private double perSecond(long count) {
+        long millis = getDuration().toMillis();
+        return millis > 0 ? count * 1000.0 / millis : 0;
+    }
+
+    // Добавляет счетчики и время фаз другого экземпляра (например, обработчика пачки) к этому
+    public ImportStatistics merge(ImportStatistics other) {
+        createdCount.add(other.createdCount.sum());
+        updatedCount.add(other.updatedCount.sum());
+        skippedCount.add(other.skippedCount.sum());
+        errorCount.add(other.errorCount.sum());
+        processedPatients.add(other.processedPatients.sum());
+        apiCalls.add(other.apiCalls.sum());
+        bytesReceived.add(other.bytesReceived.sum());
+        for (Phase phase : Phase.values()) {
+            phaseNanos.get(phase).add(other.phaseNanos.get(phase).sum());
+        }
+        if (other.hasCriticalError) {
+            hasCriticalError = true;
+        }
+        if (other.deadlineExceeded) {
+            deadlineExceeded = true;
+        }
+        return this;
+    }
 
     public Duration getDuration() {
         if (startTime != null && endTime != null) {
@@ -29,7 +149,18 @@ public class ImportStatistics {
 
     @Override
     public String toString() {
-        return String.format("ImportStatistics{создано=%d, обновлено=%d, пропущено=%d, ошибок=%d, время=%s}",
-                createdCount, updatedCount, skippedCount, errorCount, getDuration());
+        return String.format("ImportStatistics{создано=%d, обновлено=%d, пропущено=%d, ошибок=%d, " +
+                        "пациентов=%d/%d, дедлайн=%s, время=%s, заметок/с=%.1f, пациентов/с=%.2f, " +
+                        "запросов API=%d, получено=%d КБ, фазы[API=%d мс, JSON=%d мс, БД=%d мс], узкое место=%s}",
+                getCreatedCount(), getUpdatedCount(), getSkippedCount(), getErrorCount(),
+                getProcessedPatients(), totalPatients, deadlineExceeded ? "превышен" : "нет", getDuration(),
+                getNotesPerSecond(), getPatientsPerSecond(),
+                getApiCalls(), getBytesReceived() / 1024,
+                millis(Phase.FETCH), millis(Phase.PARSE), millis(Phase.DB),
+                getBottleneckPhase() != null ? getBottleneckPhase() : "-");
+    }
+
+    private long millis(Phase phase) {
+        return TimeUnit.NANOSECONDS.toMillis(phaseNanos.get(phase).sum());
     }
 }
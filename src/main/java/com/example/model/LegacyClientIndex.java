@@ -0,0 +1,238 @@
+package com.example.model;
+
+import com.example.dto.LegacyClient;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Компактный индекс guid -> agency клиентов старой системы на время запуска импорта.
+// GUID в каноническом виде хранятся как два long в таблице с открытой адресацией,
+// названия агентств - в словаре, на клиента приходится ~40 байт вместо нескольких сотен у LegacyClient.
+public final class LegacyClientIndex {
+
+    private static final int MAX_AGENCIES = 0xFFFF;
+    private static final double MAX_LOAD_FACTOR = 0.6;
+    private static final int NO_AGENCY = 0xFFFF;
+
+    private final List<String> agencies;
+    private final long[] keys;
+    private final short[] agencyIds;
+    private final int mask;
+    private final int size;
+    // GUID не в формате UUID (и нулевой UUID, занятый под пустую ячейку)
+    private final Map<String, Short> fallback;
+
+    private LegacyClientIndex(Builder builder) {
+        this.agencies = List.copyOf(builder.agencies);
+        this.keys = builder.keys;
+        this.agencyIds = builder.agencyIds;
+        this.mask = builder.mask;
+        this.size = builder.size + builder.fallback.size();
+        this.fallback = builder.fallback;
+    }
+
+    public static LegacyClientIndex of(List<LegacyClient> clients) {
+        Builder builder = builder(clients.size());
+        for (LegacyClient client : clients) {
+            builder.add(client.getGuid(), client.getAgency());
+        }
+        return builder.build();
+    }
+
+    public static Builder builder(int expectedSize) {
+        return new Builder(expectedSize);
+    }
+
+    public boolean contains(String guid) {
+        return lookup(guid) >= 0;
+    }
+
+    public String getAgency(String guid) {
+        int agencyId = lookup(guid);
+        if (agencyId < 0 || agencyId == NO_AGENCY) {
+            return null;
+        }
+        return agencies.get(agencyId);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int agencyCount() {
+        return agencies.size();
+    }
+
+    public long estimatedSizeBytes() {
+        long tables = keys.length * 8L + agencyIds.length * 2L;
+        long dictionary = agencies.stream().mapToLong(agency -> 56L + agency.length()).sum();
+        long fallbackEntries = fallback.keySet().stream().mapToLong(guid -> 112L + guid.length()).sum();
+        return tables + dictionary + fallbackEntries;
+    }
+
+    // Возвращает id агентства или -1, если клиента нет в индексе
+    private int lookup(String guid) {
+        if (guid == null) {
+            return -1;
+        }
+
+        long[] uuid = parseUuid(guid);
+        if (uuid == null || (uuid[0] == 0 && uuid[1] == 0)) {
+            Short agencyId = fallback.get(guid);
+            return agencyId != null ? Short.toUnsignedInt(agencyId) : -1;
+        }
+
+        for (int slot = slot(uuid[0], uuid[1], mask); ; slot = (slot + 1) & mask) {
+            long msb = keys[slot * 2];
+            long lsb = keys[slot * 2 + 1];
+            if (msb == 0 && lsb == 0) {
+                return -1;
+            }
+            if (msb == uuid[0] && lsb == uuid[1]) {
+                return Short.toUnsignedInt(agencyIds[slot]);
+            }
+        }
+    }
+
+    private static int slot(long msb, long lsb, int mask) {
+        long hash = msb * 0x9E3779B97F4A7C15L ^ lsb;
+        hash ^= hash >>> 33;
+        hash *= 0xFF51AFD7ED558CCDL;
+        hash ^= hash >>> 33;
+        return (int) hash & mask;
+    }
+
+    // Разбор GUID вида 8-4-4-4-12 без создания промежуточных объектов, null для других форматов
+    static long[] parseUuid(String guid) {
+        if (guid.length() != 36
+                || guid.charAt(8) != '-' || guid.charAt(13) != '-'
+                || guid.charAt(18) != '-' || guid.charAt(23) != '-') {
+            return null;
+        }
+
+        long msb = 0;
+        long lsb = 0;
+        int digits = 0;
+        for (int i = 0; i < 36; i++) {
+            char c = guid.charAt(i);
+            if (c == '-') {
+                continue;
+            }
+            int value = Character.digit(c, 16);
+            if (value < 0) {
+                return null;
+            }
+            if (digits < 16) {
+                msb = (msb << 4) | value;
+            } else {
+                lsb = (lsb << 4) | value;
+            }
+            digits++;
+        }
+        return new long[]{msb, lsb};
+    }
+
+    public static final class Builder {
+        private final List<String> agencies = new ArrayList<>();
+        private final Map<String, Integer> agencyLookup = new HashMap<>();
+        private final Map<String, Short> fallback = new HashMap<>();
+        private long[] keys;
+        private short[] agencyIds;
+        private int mask;
+        private int size;
+        private int duplicates;
+
+        private Builder(int expectedSize) {
+            int capacity = Integer.highestOneBit((int) Math.max(16, expectedSize / MAX_LOAD_FACTOR) - 1) << 1;
+            allocate(capacity);
+        }
+
+        private void allocate(int capacity) {
+            keys = new long[capacity * 2];
+            agencyIds = new short[capacity];
+            mask = capacity - 1;
+        }
+
+        public Builder add(String guid, String agency) {
+            if (guid == null) {
+                return this;
+            }
+
+            short agencyId = (short) agencyId(agency);
+            long[] uuid = parseUuid(guid);
+            if (uuid == null || (uuid[0] == 0 && uuid[1] == 0)) {
+                if (fallback.put(guid, agencyId) != null) {
+                    duplicates++;
+                }
+                return this;
+            }
+
+            if (size + 1 > (mask + 1) * MAX_LOAD_FACTOR) {
+                rehash();
+            }
+            if (!insert(uuid[0], uuid[1], agencyId)) {
+                duplicates++;
+            } else {
+                size++;
+            }
+            return this;
+        }
+
+        private int agencyId(String agency) {
+            if (agency == null) {
+                return NO_AGENCY;
+            }
+            Integer existing = agencyLookup.get(agency);
+            if (existing != null) {
+                return existing;
+            }
+            if (agencies.size() >= MAX_AGENCIES) {
+                throw new IllegalStateException("Слишком много агентств в справочнике клиентов: " + agencies.size());
+            }
+            agencies.add(agency);
+            agencyLookup.put(agency, agencies.size() - 1);
+            return agencies.size() - 1;
+        }
+
+        // Возвращает false, если GUID уже был в индексе (агентство перезаписывается последним значением)
+        private boolean insert(long msb, long lsb, short agencyId) {
+            for (int slot = slot(msb, lsb, mask); ; slot = (slot + 1) & mask) {
+                long existingMsb = keys[slot * 2];
+                long existingLsb = keys[slot * 2 + 1];
+                if (existingMsb == 0 && existingLsb == 0) {
+                    keys[slot * 2] = msb;
+                    keys[slot * 2 + 1] = lsb;
+                    agencyIds[slot] = agencyId;
+                    return true;
+                }
+                if (existingMsb == msb && existingLsb == lsb) {
+                    agencyIds[slot] = agencyId;
+                    return false;
+                }
+            }
+        }
+
+        private void rehash() {
+            long[] oldKeys = keys;
+            short[] oldAgencyIds = agencyIds;
+            allocate(oldAgencyIds.length * 2);
+            for (int slot = 0; slot < oldAgencyIds.length; slot++) {
+                long msb = oldKeys[slot * 2];
+                long lsb = oldKeys[slot * 2 + 1];
+                if (msb != 0 || lsb != 0) {
+                    insert(msb, lsb, oldAgencyIds[slot]);
+                }
+            }
+        }
+
+        public int getDuplicates() {
+            return duplicates;
+        }
+
+        public LegacyClientIndex build() {
+            return new LegacyClientIndex(this);
+        }
+    }
+}
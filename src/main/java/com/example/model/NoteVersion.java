@@ -0,0 +1,9 @@
+package com.example.model;
+
+import java.time.LocalDateTime;
+
+// Версия сохраненной заметки: достаточно для решения create/update/skip без загрузки сущности.
+// createdDateTime - ключ секции patient_note, по (id, createdDateTime) заметка загружается из одной секции
+public record NoteVersion(String legacyNoteGuid, Long id, LocalDateTime createdDateTime,
+                          LocalDateTime lastModifiedDateTime) {
+}
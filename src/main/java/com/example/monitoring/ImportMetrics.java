@@ -11,9 +11,13 @@ import java.time.Duration;
 import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
+import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.ToDoubleFunction;
 
 @Component
 @Slf4j
@@ -27,13 +31,42 @@ public class ImportMetrics {
     private final Counter notesUpdatedCounter;
     private final Counter notesSkippedCounter;
     private final Counter usersCreatedCounter;
+    private final Counter importDeadlineExceededCounter;
+    private final Counter importOverlapSkippedCounter;
+    private final Counter apiCallsCoalescedCounter;
+    private final Counter durationRegressionCounter;
+    private final Counter noteLatencyRegressionCounter;
+    private final Counter pushEventsAcceptedCounter;
+    private final Counter pushEventsRejectedCounter;
+    private final Counter pushEventsOverflowCounter;
+    private final Counter pushEventsUnmatchedCounter;
+    private final Counter digestClientsUnchangedCounter;
+    private final Counter digestClientsChangedCounter;
+    private final Counter notePartitionsCreatedCounter;
+    private final Counter notePartitionsRetiredCounter;
 
     private final Timer importDurationTimer;
+    private final Timer pushBatchTimer;
+
+    // Таймеры фаз регистрируются заранее, в горячем пути только выбор из EnumMap
+    private final Map<ImportPhase, Timer> phaseSuccessTimers = new EnumMap<>(ImportPhase.class);
+    private final Map<ImportPhase, Timer> phaseFailureTimers = new EnumMap<>(ImportPhase.class);
+
+    // Таймеры с динамическим тегом operation; кэши общие для потоков импорта
+    private final Map<String, Timer> apiCallTimers = new ConcurrentHashMap<>();
+    private final Map<String, Timer> databaseOperationTimers = new ConcurrentHashMap<>();
+    private final Map<String, Timer> apiTimers = new ConcurrentHashMap<>();
+    private final Map<String, Timer> dbTimers = new ConcurrentHashMap<>();
+    // Метрики полос агентств с тегом agency
+    private final Map<String, Timer> agencyFetchTimers = new ConcurrentHashMap<>();
+    private final Map<String, Counter> agencyNotesCounters = new ConcurrentHashMap<>();
+    private final Map<String, Counter> patientLockBusyCounters = new ConcurrentHashMap<>();
 
     private final AtomicLong lastImportTimestamp = new AtomicLong(0);
     private final AtomicLong activeImportsCount = new AtomicLong(0);
     private final AtomicLong totalNotesProcessed = new AtomicLong(0);
     private final AtomicLong totalErrorsCount = new AtomicLong(0);
+    private final AtomicLong lastRunRegressed = new AtomicLong(0);
 
     public ImportMetrics(MeterRegistry meterRegistry) {
         this.meterRegistry = meterRegistry;
@@ -66,10 +99,57 @@ public class ImportMetrics {
                 .description("Общее количество созданных пользователей")
                 .register(meterRegistry);
 
+        this.importDeadlineExceededCounter = Counter.builder("notes_import_deadline_exceeded_total")
+                .description("Количество запусков импорта, остановленных по таймауту операции")
+                .register(meterRegistry);
+
+        this.importOverlapSkippedCounter = Counter.builder("notes_import_overlap_skipped_total")
+                .description("Количество запусков импорта, пропущенных из-за еще выполняющегося импорта")
+                .register(meterRegistry);
+
+        this.apiCallsCoalescedCounter = Counter.builder("notes_import_api_calls_coalesced_total")
+                .description("Количество запросов заметок, замененных общим результатом для клиента с несколькими пациентами")
+                .register(meterRegistry);
+
+        this.durationRegressionCounter = Counter.builder("notes_import_run_regressions_total")
+                .description("Количество запусков импорта, длительность которых превысила базовую линию")
+                .tag("kind", "duration")
+                .register(meterRegistry);
+
+        this.noteLatencyRegressionCounter = Counter.builder("notes_import_run_regressions_total")
+                .description("Количество запусков импорта, время на заметку в которых превысило базовую линию")
+                .tag("kind", "note_latency")
+                .register(meterRegistry);
+
+        this.pushEventsAcceptedCounter = pushEventsCounter("accepted");
+        this.pushEventsRejectedCounter = pushEventsCounter("rejected");
+        this.pushEventsOverflowCounter = pushEventsCounter("overflow");
+        this.pushEventsUnmatchedCounter = pushEventsCounter("unmatched");
+
+        this.digestClientsUnchangedCounter = digestClientsCounter("unchanged");
+        this.digestClientsChangedCounter = digestClientsCounter("changed");
+
+        this.notePartitionsCreatedCounter = Counter.builder("notes_partitions_created_total")
+                .description("Количество созданных месячных секций таблицы заметок")
+                .register(meterRegistry);
+
+        this.notePartitionsRetiredCounter = Counter.builder("notes_partitions_retired_total")
+                .description("Количество секций таблицы заметок, выведенных по сроку хранения")
+                .register(meterRegistry);
+
+        this.pushBatchTimer = Timer.builder("notes_import_push_batch_duration_seconds")
+                .description("Время применения пачки изменений заметок, принятых от старой системы")
+                .register(meterRegistry);
+
         this.importDurationTimer = Timer.builder("notes_import_duration_seconds")
                 .description("Время выполнения операций импорта")
                 .register(meterRegistry);
 
+        for (ImportPhase phase : ImportPhase.values()) {
+            phaseSuccessTimers.put(phase, registerPhaseTimer(phase, "success"));
+            phaseFailureTimers.put(phase, registerPhaseTimer(phase, "failure"));
+        }
+
         meterRegistry.gauge("notes_import_last_execution_timestamp",
                 Tags.of(Tag.of("description", "Timestamp последнего выполнения импорта")),
                 lastImportTimestamp,
@@ -85,6 +165,11 @@ public class ImportMetrics {
                 totalNotesProcessed,
                 AtomicLong::get);
 
+        meterRegistry.gauge("notes_import_last_run_regressed",
+                Tags.of(Tag.of("description", "Признак регрессии последнего запуска импорта (1 - регрессия)")),
+                lastRunRegressed,
+                AtomicLong::get);
+
         meterRegistry.gauge("notes_import_total_errors",
                 Tags.of(Tag.of("description", "Общее количество ошибок")),
                 totalErrorsCount,
@@ -92,6 +177,32 @@ public class ImportMetrics {
     }
 
 
+    private Counter pushEventsCounter(String result) {
+        return Counter.builder("notes_import_push_events_total")
+                .description("Количество изменений заметок, полученных от старой системы, по результату приема")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    private Counter digestClientsCounter(String result) {
+        return Counter.builder("notes_import_digest_clients_total")
+                .description("Количество клиентов, сверенных по дайджесту заметок, по результату сверки")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    private Timer registerPhaseTimer(ImportPhase phase, String status) {
+        return Timer.builder("notes_import_phase_duration_seconds")
+                .description("Время выполнения фаз импорта")
+                .tag("phase", phase.getTagValue())
+                .tag("status", status)
+                .publishPercentileHistogram()
+                .serviceLevelObjectives(phase.getServiceLevelObjectives())
+                .minimumExpectedValue(phase.getMinimumExpected())
+                .maximumExpectedValue(phase.getMaximumExpected())
+                .register(meterRegistry);
+    }
+
     public void recordImportStarted() {
         importStartedCounter.increment();
         activeImportsCount.incrementAndGet();
@@ -111,6 +222,156 @@ public class ImportMetrics {
         }
     }
 
+    public void recordImportDeadlineExceeded(int processedPatients, int totalPatients) {
+        importDeadlineExceededCounter.increment();
+        log.debug("Записана метрика: импорт остановлен по дедлайну, обработано пациентов {}/{}",
+                processedPatients, totalPatients);
+    }
+
+    public void recordImportOverlapSkipped() {
+        importOverlapSkippedCounter.increment();
+        log.debug("Записана метрика: запуск импорта пропущен, предыдущий еще выполняется");
+    }
+
+    public <T> void registerApiConcurrencyGauges(T limiter, ToDoubleFunction<T> limit, ToDoubleFunction<T> inFlight) {
+        meterRegistry.gauge("notes_import_api_concurrency_limit",
+                Tags.of(Tag.of("description", "Текущий допустимый параллелизм запросов к Legacy API")),
+                limiter,
+                limit);
+
+        meterRegistry.gauge("notes_import_api_inflight_requests",
+                Tags.of(Tag.of("description", "Количество выполняющихся запросов к Legacy API")),
+                limiter,
+                inFlight);
+    }
+
+    public <T> void registerAgencyConcurrencyGauges(String agency, T limiter,
+                                                    ToDoubleFunction<T> limit, ToDoubleFunction<T> inFlight) {
+        meterRegistry.gauge("notes_import_agency_concurrency_limit",
+                Tags.of(Tag.of("description", "Текущий допустимый параллелизм запросов агентства к Legacy API"),
+                        Tag.of("agency", agency)),
+                limiter,
+                limit);
+
+        meterRegistry.gauge("notes_import_agency_inflight_requests",
+                Tags.of(Tag.of("description", "Количество выполняющихся запросов агентства к Legacy API"),
+                        Tag.of("agency", agency)),
+                limiter,
+                inFlight);
+    }
+
+    public <T> void registerAgencyLaneGauge(String agency, T lane, ToDoubleFunction<T> queued) {
+        meterRegistry.gauge("notes_import_agency_lane_queued",
+                Tags.of(Tag.of("description", "Количество загрузок заметок, ожидающих в полосе агентства"),
+                        Tag.of("agency", agency)),
+                lane,
+                queued);
+    }
+
+    public <T> void registerPipelineStageGauges(String stage, T pipelineStage,
+                                                ToDoubleFunction<T> queued, ToDoubleFunction<T> utilization) {
+        meterRegistry.gauge("notes_import_pipeline_queue_size",
+                Tags.of(Tag.of("description", "Количество элементов, ожидающих стадию конвейера импорта"),
+                        Tag.of("stage", stage)),
+                pipelineStage,
+                queued);
+
+        meterRegistry.gauge("notes_import_pipeline_stage_utilization",
+                Tags.of(Tag.of("description", "Доля занятости потоков стадии конвейера импорта с предыдущего чтения"),
+                        Tag.of("stage", stage)),
+                pipelineStage,
+                utilization);
+    }
+
+    public <T> void registerPatientBatchSizeGauge(T state, ToDoubleFunction<T> batchSize) {
+        meterRegistry.gauge("notes_import_patient_batch_size",
+                Tags.of(Tag.of("description", "Текущий размер пачки пациентов импорта")),
+                state,
+                batchSize);
+    }
+
+    public void recordAgencyFetch(String agency, long durationNanos, int notes, boolean success) {
+        String status = success ? "success" : "failure";
+        agencyFetchTimers.computeIfAbsent(agency + "_" + status, key ->
+                Timer.builder("notes_import_agency_fetch_duration_seconds")
+                        .description("Время загрузки заметок клиента в полосе агентства")
+                        .tag("agency", agency)
+                        .tag("status", status)
+                        .publishPercentileHistogram()
+                        .minimumExpectedValue(Duration.ofMillis(10))
+                        .maximumExpectedValue(Duration.ofMinutes(10))
+                        .register(meterRegistry)
+        ).record(durationNanos, TimeUnit.NANOSECONDS);
+
+        agencyNotesCounters.computeIfAbsent(agency, key ->
+                Counter.builder("notes_import_agency_notes_total")
+                        .description("Количество заметок, загруженных в полосе агентства")
+                        .tag("agency", agency)
+                        .register(meterRegistry)
+        ).increment(notes);
+        log.debug("Записана метрика полосы агентства '{}': заметок={}, успех={}", agency, notes, success);
+    }
+
+    public void recordPatientLockBusy(String source) {
+        patientLockBusyCounters.computeIfAbsent(source, key ->
+                Counter.builder("notes_import_patient_lock_busy_total")
+                        .description("Количество пациентов, пропущенных импортом из-за обработки другим импортом")
+                        .tag("source", source)
+                        .register(meterRegistry)
+        ).increment();
+    }
+
+    public <T> void registerPushQueueGauge(T queue, ToDoubleFunction<T> size) {
+        meterRegistry.gauge("notes_import_push_queue_size",
+                Tags.of(Tag.of("description", "Количество принятых изменений заметок, ожидающих применения")),
+                queue,
+                size);
+    }
+
+    public void recordPushEventsReceived(int accepted, int rejected, int overflow) {
+        pushEventsAcceptedCounter.increment(accepted);
+        pushEventsRejectedCounter.increment(rejected);
+        pushEventsOverflowCounter.increment(overflow);
+        log.debug("Записана метрика приема изменений: принято={}, отклонено={}, очередь переполнена={}",
+                accepted, rejected, overflow);
+    }
+
+    public void recordPushBatchApplied(Duration duration, int unmatched) {
+        pushBatchTimer.record(duration);
+        pushEventsUnmatchedCounter.increment(unmatched);
+        log.debug("Записана метрика: пачка изменений применена за {}, без пациента {}", duration, unmatched);
+    }
+
+    public void recordDigestReconciliation(int checkedClients, int unchangedClients) {
+        digestClientsUnchangedCounter.increment(unchangedClients);
+        digestClientsChangedCounter.increment(checkedClients - unchangedClients);
+        log.debug("Записана метрика сверки по дайджестам: сверено клиентов={}, без изменений={}",
+                checkedClients, unchangedClients);
+    }
+
+    public void recordNotePartitionMaintenance(int created, int retired) {
+        notePartitionsCreatedCounter.increment(created);
+        notePartitionsRetiredCounter.increment(retired);
+        log.debug("Записана метрика обслуживания секций заметок: создано={}, выведено={}", created, retired);
+    }
+
+    public void recordRunEvaluated(boolean durationRegressed, boolean noteLatencyRegressed) {
+        if (durationRegressed) {
+            durationRegressionCounter.increment();
+        }
+        if (noteLatencyRegressed) {
+            noteLatencyRegressionCounter.increment();
+        }
+        lastRunRegressed.set(durationRegressed || noteLatencyRegressed ? 1 : 0);
+        log.debug("Записана метрика регрессии запуска: длительность={}, время на заметку={}",
+                durationRegressed, noteLatencyRegressed);
+    }
+
+    public void recordApiCallsCoalesced(long count) {
+        apiCallsCoalescedCounter.increment(count);
+        log.debug("Записана метрика: объединено запросов заметок {}", count);
+    }
+
     public void recordImportError(String errorType) {
         importErrorCounter.increment();
         totalErrorsCount.incrementAndGet();
@@ -144,11 +405,17 @@ public class ImportMetrics {
     }
 
     public void recordApiCall(Timer.Sample sample, String operation, boolean success) {
-        Timer apiTimer = Timer.builder("notes_import_api_call_duration_seconds")
-                .description("Время выполнения вызовов Legacy API")
-                .tag("operation", operation)
-                .tag("status", success ? "success" : "failure")
-                .register(meterRegistry);
+        String status = success ? "success" : "failure";
+        Timer apiTimer = apiCallTimers.computeIfAbsent(operation + "_" + status, key ->
+                Timer.builder("notes_import_api_call_duration_seconds")
+                        .description("Время выполнения вызовов Legacy API")
+                        .tag("operation", operation)
+                        .tag("status", status)
+                        .publishPercentileHistogram()
+                        .minimumExpectedValue(Duration.ofMillis(10))
+                        .maximumExpectedValue(Duration.ofMinutes(10))
+                        .register(meterRegistry)
+        );
 
         sample.stop(apiTimer);
         log.debug("Записана метрика API вызова: операция='{}', успех={}", operation, success);
@@ -159,18 +426,34 @@ public class ImportMetrics {
     }
 
     public void recordDatabaseOperation(Timer.Sample sample, String operation, boolean success) {
-        Timer dbTimer = Timer.builder("notes_import_database_operation_duration_seconds")
-                .description("Время выполнения операций с базой данных")
-                .tag("operation", operation)
-                .tag("status", success ? "success" : "failure")
-                .register(meterRegistry);
+        String status = success ? "success" : "failure";
+        Timer dbTimer = databaseOperationTimers.computeIfAbsent(operation + "_" + status, key ->
+                Timer.builder("notes_import_database_operation_duration_seconds")
+                        .description("Время выполнения операций с базой данных")
+                        .tag("operation", operation)
+                        .tag("status", status)
+                        .register(meterRegistry)
+        );
 
         sample.stop(dbTimer);
         log.debug("Записана метрика БД операции: операция='{}', успех={}", operation, success);
     }
 
-    private final Map<String, Timer> apiTimers = new HashMap<>();
-    private final Map<String, Timer> dbTimers = new HashMap<>();
+    public Timer.Sample startPhaseTimer() {
+        return Timer.start(meterRegistry);
+    }
+
+    public void recordPhase(Timer.Sample sample, ImportPhase phase, boolean success) {
+        sample.stop(phaseTimer(phase, success));
+    }
+
+    public void recordPhase(ImportPhase phase, long durationNanos, boolean success) {
+        phaseTimer(phase, success).record(durationNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public Timer phaseTimer(ImportPhase phase, boolean success) {
+        return success ? phaseSuccessTimers.get(phase) : phaseFailureTimers.get(phase);
+    }
 
     public void recordApiCallCached(Timer.Sample sample, String operation, boolean success) {
         String timerKey = operation + "_" + (success ? "success" : "failure");
@@ -244,6 +527,22 @@ public class ImportMetrics {
         metrics.put("notes_updated_total", notesUpdatedCounter.count());
         metrics.put("notes_skipped_total", notesSkippedCounter.count());
         metrics.put("users_created_total", usersCreatedCounter.count());
+        metrics.put("import_deadline_exceeded_total", importDeadlineExceededCounter.count());
+        metrics.put("import_overlap_skipped_total", importOverlapSkippedCounter.count());
+        metrics.put("api_calls_coalesced_total", apiCallsCoalescedCounter.count());
+        metrics.put("run_duration_regressions_total", durationRegressionCounter.count());
+        metrics.put("run_note_latency_regressions_total", noteLatencyRegressionCounter.count());
+        metrics.put("last_run_regressed", (double) lastRunRegressed.get());
+        metrics.put("push_events_accepted_total", pushEventsAcceptedCounter.count());
+        metrics.put("push_events_rejected_total", pushEventsRejectedCounter.count());
+        metrics.put("push_events_overflow_total", pushEventsOverflowCounter.count());
+        metrics.put("push_events_unmatched_total", pushEventsUnmatchedCounter.count());
+        metrics.put("digest_clients_unchanged_total", digestClientsUnchangedCounter.count());
+        metrics.put("digest_clients_changed_total", digestClientsChangedCounter.count());
+        metrics.put("note_partitions_created_total", notePartitionsCreatedCounter.count());
+        metrics.put("note_partitions_retired_total", notePartitionsRetiredCounter.count());
+        agencyNotesCounters.forEach((agency, counter) -> metrics.put("agency_notes_total." + agency, counter.count()));
+        patientLockBusyCounters.forEach((source, counter) -> metrics.put("patient_lock_busy_total." + source, counter.count()));
         metrics.put("active_imports_count", getActiveImportsCount());
         metrics.put("total_notes_processed", getTotalNotesProcessed());
         metrics.put("last_import_timestamp", getLastImportTimestamp());
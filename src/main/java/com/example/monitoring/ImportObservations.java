@@ -0,0 +1,27 @@
+package com.example.monitoring;
+
+// Имена наблюдений (спанов) импорта и их атрибутов.
+// Идентификаторы пациентов и клиентов - только high cardinality, чтобы не попадать в теги метрик.
+public final class ImportObservations {
+
+    public static final String IMPORT_RUN = "notes.import.run";
+    public static final String PATIENT_BATCH = "notes.import.batch";
+    public static final String LEGACY_CALL = "notes.import.legacy.call";
+    public static final String NOTE_WRITE = "notes.import.note.write";
+
+    public static final String SOURCE = "import.source";
+    public static final String OPERATION = "operation";
+
+    public static final String PATIENT_ID = "patient.id";
+    public static final String PATIENT_COUNT = "patient.count";
+    public static final String FIRST_PATIENT_ID = "patient.first_id";
+    public static final String LAST_PATIENT_ID = "patient.last_id";
+    public static final String CLIENT_GUID = "client.guid";
+    public static final String CLIENT_COUNT = "client.count";
+    public static final String NOTE_GUID = "note.guid";
+    public static final String NOTE_COUNT = "note.count";
+    public static final String RESPONSE_BYTES = "http.response.body.size";
+
+    private ImportObservations() {
+    }
+}
@@ -0,0 +1,70 @@
+package com.example.monitoring;
+
+import java.time.Duration;
+
+// Фазы импорта, для каждой регистрируется таймер с гистограммой и SLO-границами,
+// подобранными под ожидаемый порядок длительности фазы
+public enum ImportPhase {
+
+    CLIENT_DIRECTORY_FETCH("client_directory_fetch",
+            Duration.ofMillis(100), Duration.ofMinutes(10),
+            Duration.ofSeconds(1), Duration.ofSeconds(5), Duration.ofSeconds(15), Duration.ofSeconds(30), Duration.ofSeconds(60)),
+
+    DIGEST_RECONCILIATION("digest_reconciliation",
+            Duration.ofMillis(10), Duration.ofMinutes(10),
+            Duration.ofMillis(100), Duration.ofMillis(500), Duration.ofSeconds(1), Duration.ofSeconds(5), Duration.ofSeconds(30)),
+
+    NOTES_FETCH("notes_fetch",
+            Duration.ofMillis(10), Duration.ofMinutes(10),
+            Duration.ofMillis(100), Duration.ofMillis(250), Duration.ofMillis(500),
+            Duration.ofSeconds(1), Duration.ofMillis(2500), Duration.ofSeconds(5)),
+
+    JSON_DECODE("json_decode",
+            Duration.ofNanos(100_000), Duration.ofMinutes(1),
+            Duration.ofMillis(1), Duration.ofMillis(5), Duration.ofMillis(10), Duration.ofMillis(50),
+            Duration.ofMillis(100), Duration.ofMillis(500)),
+
+    NOTE_LOOKUP("note_lookup",
+            Duration.ofNanos(100_000), Duration.ofSeconds(30),
+            Duration.ofMillis(1), Duration.ofMillis(2), Duration.ofMillis(5), Duration.ofMillis(10),
+            Duration.ofMillis(25), Duration.ofMillis(50), Duration.ofMillis(100)),
+
+    NOTE_WRITE("note_write",
+            Duration.ofNanos(100_000), Duration.ofSeconds(30),
+            Duration.ofMillis(1), Duration.ofMillis(2), Duration.ofMillis(5), Duration.ofMillis(10),
+            Duration.ofMillis(25), Duration.ofMillis(50), Duration.ofMillis(100)),
+
+    USER_RESOLUTION("user_resolution",
+            Duration.ofNanos(100_000), Duration.ofSeconds(30),
+            Duration.ofMillis(1), Duration.ofMillis(2), Duration.ofMillis(5), Duration.ofMillis(10),
+            Duration.ofMillis(25), Duration.ofMillis(50), Duration.ofMillis(100));
+
+    private final String tagValue;
+    private final Duration minimumExpected;
+    private final Duration maximumExpected;
+    private final Duration[] serviceLevelObjectives;
+
+    ImportPhase(String tagValue, Duration minimumExpected, Duration maximumExpected,
+                Duration... serviceLevelObjectives) {
+        this.tagValue = tagValue;
+        this.minimumExpected = minimumExpected;
+        this.maximumExpected = maximumExpected;
+        this.serviceLevelObjectives = serviceLevelObjectives;
+    }
+
+    public String getTagValue() {
+        return tagValue;
+    }
+
+    public Duration getMinimumExpected() {
+        return minimumExpected;
+    }
+
+    public Duration getMaximumExpected() {
+        return maximumExpected;
+    }
+
+    public Duration[] getServiceLevelObjectives() {
+        return serviceLevelObjectives.clone();
+    }
+}
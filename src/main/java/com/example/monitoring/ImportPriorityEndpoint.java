@@ -0,0 +1,57 @@
+package com.example.monitoring;
+
+import com.example.config.ImportConfigProperties;
+import com.example.service.PatientPriorityScheduler;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// GET /actuator/importpriority - состояние приоритетного порядка пациентов,
+// GET /actuator/importpriority/{patientId} - оценка и история изменений пациента,
+// POST /actuator/importpriority/{patientId} - обработать пациента первым в следующем запуске.
+// По умолчанию не открыт через web (management.endpoints.web.exposure.include в application.properties)
+@Component
+@Endpoint(id = "importpriority")
+public class ImportPriorityEndpoint {
+
+    private final PatientPriorityScheduler scheduler;
+    private final ImportConfigProperties config;
+
+    public ImportPriorityEndpoint(PatientPriorityScheduler scheduler, ImportConfigProperties config) {
+        this.scheduler = scheduler;
+        this.config = config;
+    }
+
+    @ReadOperation
+    public Map<String, Object> status() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("enabled", config.isEnablePriorityOrdering());
+        status.put("recencyHalfLifeHours", config.getPriorityRecencyHalfLifeHours());
+        status.put("trackedPatients", scheduler.getTrackedPatients());
+        status.put("refreshRequests", scheduler.getRefreshRequests());
+        status.put("interruptedRunStart", scheduler.getInterruptedRunStart());
+        return status;
+    }
+
+    @ReadOperation
+    public Map<String, Object> patient(@Selector Long patientId) {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("patientId", patientId);
+        result.put("score", scheduler.score(patientId, LocalDateTime.now()));
+        result.put("refreshRequested", scheduler.getRefreshRequests().contains(patientId));
+        result.put("activity", scheduler.getActivity(patientId));
+        return result;
+    }
+
+    @WriteOperation
+    public Map<String, Object> requestRefresh(@Selector Long patientId) {
+        scheduler.requestRefresh(patientId);
+        return patient(patientId);
+    }
+}
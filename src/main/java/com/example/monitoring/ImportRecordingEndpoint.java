@@ -0,0 +1,128 @@
+package com.example.monitoring;
+
+import com.example.config.ImportConfigProperties;
+import com.example.monitoring.jfr.ImportRunEvent;
+import com.example.monitoring.jfr.JsonDecodeEvent;
+import com.example.monitoring.jfr.LegacyHttpCallEvent;
+import com.example.monitoring.jfr.NoteFlushEvent;
+import com.example.monitoring.jfr.PatientBatchEvent;
+import jdk.jfr.Configuration;
+import jdk.jfr.Event;
+import jdk.jfr.Recording;
+import jdk.jfr.RecordingState;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.text.ParseException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Управление JFR-записью с событиями импорта (com.example.notesimport.*) без перезапуска JVM:
+// POST /actuator/importrecording/start, POST /actuator/importrecording/dump, POST /actuator/importrecording/stop.
+// По умолчанию не открыт через web (management.endpoints.web.exposure.include в application.properties)
+@Component
+@Endpoint(id = "importrecording")
+@Slf4j
+public class ImportRecordingEndpoint {
+
+    private static final String RECORDING_NAME = "notes-import";
+    private static final List<Class<? extends Event>> IMPORT_EVENTS = List.of(
+            ImportRunEvent.class, PatientBatchEvent.class, LegacyHttpCallEvent.class,
+            JsonDecodeEvent.class, NoteFlushEvent.class);
+    private static final DateTimeFormatter FILE_TIMESTAMP = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+
+    private final ImportConfigProperties config;
+    private Recording recording;
+
+    public ImportRecordingEndpoint(ImportConfigProperties config) {
+        this.config = config;
+    }
+
+    @ReadOperation
+    public synchronized Map<String, Object> status() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("state", recording != null ? recording.getState().name() : "NONE");
+        if (recording != null) {
+            status.put("startTime", recording.getStartTime());
+            status.put("maxAge", recording.getMaxAge());
+            status.put("size", recording.getSize());
+        }
+        return status;
+    }
+
+    // settings - встроенная конфигурация JFR: default (~1% накладных расходов) или profile
+    @WriteOperation
+    public synchronized Map<String, Object> execute(@Selector String command, @Nullable String settings) {
+        try {
+            return switch (command) {
+                case "start" -> start(settings != null ? settings : "default");
+                case "dump" -> dump();
+                case "stop" -> stop();
+                default -> throw new IllegalArgumentException("Неизвестная команда: " + command);
+            };
+        } catch (IOException | ParseException e) {
+            throw new IllegalStateException("Ошибка управления JFR-записью: " + e.getMessage(), e);
+        }
+    }
+
+    private Map<String, Object> start(String settings) throws IOException, ParseException {
+        if (recording != null && recording.getState() == RecordingState.RUNNING) {
+            return status();
+        }
+
+        Recording newRecording = new Recording(Configuration.getConfiguration(settings));
+        newRecording.setName(RECORDING_NAME);
+        newRecording.setToDisk(true);
+        newRecording.setMaxAge(Duration.ofMinutes(config.getJfrMaxAgeMinutes()));
+        // События импорта пишутся целиком, без порога длительности
+        for (Class<? extends Event> event : IMPORT_EVENTS) {
+            newRecording.enable(event).withoutThreshold();
+        }
+        newRecording.start();
+
+        if (recording != null) {
+            recording.close();
+        }
+        recording = newRecording;
+        log.info("JFR-запись импорта запущена (настройки {}, хранение {} мин.)", settings, config.getJfrMaxAgeMinutes());
+        return status();
+    }
+
+    private Map<String, Object> dump() throws IOException {
+        if (recording == null || recording.getState() != RecordingState.RUNNING) {
+            throw new IllegalStateException("JFR-запись импорта не запущена");
+        }
+
+        Path directory = Paths.get(config.getJfrRecordingPath());
+        Files.createDirectories(directory);
+        Path file = directory.resolve("notes-import-" + LocalDateTime.now().format(FILE_TIMESTAMP) + ".jfr");
+        recording.dump(file);
+        log.info("JFR-запись импорта сохранена в {}", file);
+
+        Map<String, Object> result = status();
+        result.put("file", file.toString());
+        return result;
+    }
+
+    private Map<String, Object> stop() {
+        if (recording != null) {
+            recording.close();
+            recording = null;
+            log.info("JFR-запись импорта остановлена");
+        }
+        return status();
+    }
+}
@@ -0,0 +1,168 @@
+package com.example.monitoring;
+
+import com.example.config.ImportConfigProperties;
+import com.example.entity.ImportRun;
+import com.example.model.ImportStatistics;
+import com.example.repository.ImportRunRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.transaction.Transactional;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+// История последних запусков импорта (кольцевой буфер, опционально таблица import_run)
+// и сравнение каждого запуска с медианой предыдущих успешных запусков того же источника.
+@Component
+@Slf4j
+public class ImportRunHistory {
+
+    private static final int MIN_BASELINE_RUNS = 3;
+
+    private final ImportConfigProperties config;
+    private final ImportRunRepository repository;
+    private final ImportMetrics metrics;
+
+    // Новые запуски в начале
+    private final Deque<ImportRun> runs = new ArrayDeque<>();
+
+    public record Baseline(int runs, double durationMillis, double millisPerNote) {
+    }
+
+    public ImportRunHistory(ImportConfigProperties config, ImportRunRepository repository, ImportMetrics metrics) {
+        this.config = config;
+        this.repository = repository;
+        this.metrics = metrics;
+    }
+
+    @PostConstruct
+    public void loadPersistedRuns() {
+        if (!config.isPersistRunHistory()) {
+            return;
+        }
+        try {
+            List<ImportRun> persisted = repository.findByOrderByStartTimeDesc(PageRequest.of(0, config.getRunHistorySize()));
+            synchronized (this) {
+                runs.addAll(persisted);
+            }
+            log.info("Загружено {} запусков импорта из истории", persisted.size());
+        } catch (Exception e) {
+            log.warn("Не удалось загрузить историю запусков импорта: {}", e.getMessage());
+        }
+    }
+
+    // Отдельная транзакция: запись истории не должна зависеть от отката транзакции импорта
+    @Transactional(Transactional.TxType.REQUIRES_NEW)
+    public ImportRun record(String source, ImportStatistics stats) {
+        ImportRun run = toRun(source, stats);
+
+        boolean durationRegressed;
+        boolean noteLatencyRegressed;
+        synchronized (this) {
+            Baseline baseline = baseline(source);
+            durationRegressed = exceeds(run.getDurationMillis(), baseline.durationMillis(), baseline);
+            noteLatencyRegressed = run.getMillisPerNote() >= 0
+                    && exceeds(run.getMillisPerNote(), baseline.millisPerNote(), baseline);
+
+            if (durationRegressed || noteLatencyRegressed) {
+                run.setRegression(describe(run, baseline, durationRegressed, noteLatencyRegressed));
+                log.warn("Регрессия запуска импорта: {}", run.getRegression());
+            }
+
+            runs.addFirst(run);
+            while (runs.size() > config.getRunHistorySize()) {
+                runs.removeLast();
+            }
+        }
+        metrics.recordRunEvaluated(durationRegressed, noteLatencyRegressed);
+
+        if (config.isPersistRunHistory()) {
+            try {
+                repository.save(run);
+            } catch (Exception e) {
+                log.warn("Не удалось сохранить запуск импорта в историю: {}", e.getMessage());
+            }
+        }
+        return run;
+    }
+
+    public synchronized List<ImportRun> getRuns() {
+        return new ArrayList<>(runs);
+    }
+
+    // Медиана длительности и времени на заметку последних успешных запусков источника
+    public synchronized Baseline baseline(String source) {
+        List<Double> durations = new ArrayList<>();
+        List<Double> perNote = new ArrayList<>();
+        for (ImportRun run : runs) {
+            if (durations.size() >= config.getRegressionBaselineRuns()) {
+                break;
+            }
+            if (!source.equals(run.getSource()) || run.isCriticalError() || run.isDeadlineExceeded()) {
+                continue;
+            }
+            durations.add((double) run.getDurationMillis());
+            if (run.getMillisPerNote() >= 0) {
+                perNote.add(run.getMillisPerNote());
+            }
+        }
+        return new Baseline(durations.size(), median(durations), median(perNote));
+    }
+
+    private boolean exceeds(double value, double baselineValue, Baseline baseline) {
+        if (baseline.runs() < MIN_BASELINE_RUNS || baselineValue <= 0) {
+            return false;
+        }
+        return value > baselineValue * (1 + config.getRegressionThresholdPercent() / 100.0);
+    }
+
+    private static double median(List<Double> values) {
+        if (values.isEmpty()) {
+            return 0;
+        }
+        List<Double> sorted = new ArrayList<>(values);
+        sorted.sort(Double::compare);
+        int middle = sorted.size() / 2;
+        return sorted.size() % 2 == 1 ? sorted.get(middle) : (sorted.get(middle - 1) + sorted.get(middle)) / 2;
+    }
+
+    private static String describe(ImportRun run, Baseline baseline,
+                                   boolean durationRegressed, boolean noteLatencyRegressed) {
+        List<String> reasons = new ArrayList<>();
+        if (durationRegressed) {
+            reasons.add(String.format("длительность %d мс при медиане %.0f мс", run.getDurationMillis(), baseline.durationMillis()));
+        }
+        if (noteLatencyRegressed) {
+            reasons.add(String.format("%.2f мс на заметку при медиане %.2f мс", run.getMillisPerNote(), baseline.millisPerNote()));
+        }
+        return String.join("; ", reasons) + " (запусков в базе: " + baseline.runs() + ")";
+    }
+
+    private static ImportRun toRun(String source, ImportStatistics stats) {
+        ImportRun run = new ImportRun();
+        run.setSource(source);
+        run.setStartTime(stats.getStartTime() != null ? stats.getStartTime() : LocalDateTime.now());
+        run.setEndTime(stats.getEndTime());
+        run.setDurationMillis(stats.getDuration().toMillis());
+        run.setTotalPatients(stats.getTotalPatients());
+        run.setProcessedPatients(stats.getProcessedPatients());
+        run.setCreatedCount(stats.getCreatedCount());
+        run.setUpdatedCount(stats.getUpdatedCount());
+        run.setSkippedCount(stats.getSkippedCount());
+        run.setErrorCount(stats.getErrorCount());
+        run.setApiCalls(stats.getApiCalls());
+        run.setBytesReceived(stats.getBytesReceived());
+        run.setFetchMillis(stats.getPhaseTime(ImportStatistics.Phase.FETCH).toMillis());
+        run.setParseMillis(stats.getPhaseTime(ImportStatistics.Phase.PARSE).toMillis());
+        run.setDbMillis(stats.getPhaseTime(ImportStatistics.Phase.DB).toMillis());
+        run.setDeadlineExceeded(stats.isDeadlineExceeded());
+        run.setCriticalError(stats.isHasCriticalError());
+        run.setPatientBatchSize(stats.getPatientBatchSize() > 0 ? stats.getPatientBatchSize() : null);
+        return run;
+    }
+}
@@ -0,0 +1,50 @@
+package com.example.monitoring;
+
+import com.example.config.ImportConfigProperties;
+import com.example.entity.ImportRun;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// GET /actuator/importruns - последние запуски импорта и базовая линия для сравнения,
+// GET /actuator/importruns/{source} - то же для одного источника (legacy_api, archive)
+@Component
+@Endpoint(id = "importruns")
+public class ImportRunsEndpoint {
+
+    private final ImportRunHistory history;
+    private final ImportConfigProperties config;
+
+    public ImportRunsEndpoint(ImportRunHistory history, ImportConfigProperties config) {
+        this.history = history;
+        this.config = config;
+    }
+
+    @ReadOperation
+    public Map<String, Object> runs() {
+        return describe(history.getRuns(), null);
+    }
+
+    @ReadOperation
+    public Map<String, Object> runsBySource(@Selector String source) {
+        List<ImportRun> runs = history.getRuns().stream()
+                .filter(run -> source.equals(run.getSource()))
+                .toList();
+        return describe(runs, source);
+    }
+
+    private Map<String, Object> describe(List<ImportRun> runs, String source) {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("regressionThresholdPercent", config.getRegressionThresholdPercent());
+        if (source != null) {
+            result.put("baseline", history.baseline(source));
+        }
+        result.put("runs", runs);
+        return result;
+    }
+}
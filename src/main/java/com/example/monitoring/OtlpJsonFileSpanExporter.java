@@ -0,0 +1,188 @@
+package com.example.monitoring;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import io.opentelemetry.sdk.common.InstrumentationScopeInfo;
+import io.opentelemetry.sdk.resources.Resource;
+import io.opentelemetry.sdk.trace.data.EventData;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.sdk.trace.export.SpanExporter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Выгрузка спанов в поток в формате OTLP JSON: по строке ExportTraceServiceRequest на каждую пачку спанов
+// (как файловый экспортер коллектора OpenTelemetry, файл читается его приемником otlpjsonfile).
+// Поток принадлежит экспортеру и закрывается в shutdown()
+@Slf4j
+public class OtlpJsonFileSpanExporter implements SpanExporter {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final OutputStream output;
+    private final AtomicBoolean shutdown = new AtomicBoolean();
+
+    public OtlpJsonFileSpanExporter(OutputStream output) {
+        this.output = output;
+    }
+
+    @Override
+    public CompletableResultCode export(Collection<SpanData> spans) {
+        if (shutdown.get()) {
+            return CompletableResultCode.ofFailure();
+        }
+        try {
+            byte[] line = MAPPER.writeValueAsBytes(toRequest(spans));
+            synchronized (output) {
+                output.write(line);
+                output.write('\n');
+                output.flush();
+            }
+            return CompletableResultCode.ofSuccess();
+        } catch (IOException e) {
+            log.warn("Не удалось выгрузить {} спанов в файл: {}", spans.size(), e.getMessage());
+            return CompletableResultCode.ofFailure();
+        }
+    }
+
+    @Override
+    public CompletableResultCode flush() {
+        try {
+            synchronized (output) {
+                output.flush();
+            }
+            return CompletableResultCode.ofSuccess();
+        } catch (IOException e) {
+            return CompletableResultCode.ofFailure();
+        }
+    }
+
+    @Override
+    public CompletableResultCode shutdown() {
+        if (!shutdown.compareAndSet(false, true)) {
+            return CompletableResultCode.ofSuccess();
+        }
+        try {
+            synchronized (output) {
+                output.close();
+            }
+            return CompletableResultCode.ofSuccess();
+        } catch (IOException e) {
+            log.warn("Не удалось закрыть файл спанов: {}", e.getMessage());
+            return CompletableResultCode.ofFailure();
+        }
+    }
+
+    static ObjectNode toRequest(Collection<SpanData> spans) {
+        Map<Resource, Map<InstrumentationScopeInfo, List<SpanData>>> grouped = new LinkedHashMap<>();
+        for (SpanData span : spans) {
+            grouped.computeIfAbsent(span.getResource(), resource -> new LinkedHashMap<>())
+                    .computeIfAbsent(span.getInstrumentationScopeInfo(), scope -> new ArrayList<>())
+                    .add(span);
+        }
+
+        ObjectNode request = MAPPER.createObjectNode();
+        ArrayNode resourceSpans = request.putArray("resourceSpans");
+        grouped.forEach((resource, byScope) -> {
+            ObjectNode resourceNode = resourceSpans.addObject();
+            resourceNode.putObject("resource").set("attributes", attributes(resource.getAttributes()));
+            ArrayNode scopeSpans = resourceNode.putArray("scopeSpans");
+            byScope.forEach((scope, scopeSpanList) -> {
+                ObjectNode scopeNode = scopeSpans.addObject();
+                ObjectNode scopeInfo = scopeNode.putObject("scope").put("name", scope.getName());
+                if (scope.getVersion() != null) {
+                    scopeInfo.put("version", scope.getVersion());
+                }
+                ArrayNode spanNodes = scopeNode.putArray("spans");
+                scopeSpanList.forEach(span -> spanNodes.add(span(span)));
+            });
+        });
+        return request;
+    }
+
+    private static ObjectNode span(SpanData span) {
+        ObjectNode node = MAPPER.createObjectNode()
+                .put("traceId", span.getTraceId())
+                .put("spanId", span.getSpanId());
+        if (span.getParentSpanContext().isValid()) {
+            node.put("parentSpanId", span.getParentSpanId());
+        }
+        node.put("name", span.getName())
+                // SPAN_KIND_INTERNAL = 1 ... SPAN_KIND_CONSUMER = 5 в порядке SpanKind
+                .put("kind", span.getKind().ordinal() + 1)
+                .put("startTimeUnixNano", String.valueOf(span.getStartEpochNanos()))
+                .put("endTimeUnixNano", String.valueOf(span.getEndEpochNanos()))
+                .set("attributes", attributes(span.getAttributes()));
+
+        ArrayNode events = node.putArray("events");
+        for (EventData event : span.getEvents()) {
+            events.addObject()
+                    .put("timeUnixNano", String.valueOf(event.getEpochNanos()))
+                    .put("name", event.getName())
+                    .set("attributes", attributes(event.getAttributes()));
+        }
+
+        ObjectNode status = node.putObject("status");
+        switch (span.getStatus().getStatusCode()) {
+            case OK -> status.put("code", 1);
+            case ERROR -> status.put("code", 2);
+            case UNSET -> status.put("code", 0);
+        }
+        if (!span.getStatus().getDescription().isEmpty()) {
+            status.put("message", span.getStatus().getDescription());
+        }
+        return node;
+    }
+
+    private static ArrayNode attributes(Attributes attributes) {
+        ArrayNode nodes = MAPPER.createArrayNode();
+        attributes.forEach((key, value) -> {
+            ObjectNode attribute = nodes.addObject().put("key", key.getKey());
+            attribute.set("value", value(key, value));
+        });
+        return nodes;
+    }
+
+    private static ObjectNode value(AttributeKey<?> key, Object value) {
+        ObjectNode node = MAPPER.createObjectNode();
+        switch (key.getType()) {
+            case BOOLEAN -> node.put("boolValue", (Boolean) value);
+            // int64 в OTLP JSON передается строкой
+            case LONG -> node.put("intValue", String.valueOf(value));
+            case DOUBLE -> node.put("doubleValue", (Double) value);
+            case STRING_ARRAY, BOOLEAN_ARRAY, LONG_ARRAY, DOUBLE_ARRAY -> {
+                ArrayNode values = node.putObject("arrayValue").putArray("values");
+                for (Object element : (List<?>) value) {
+                    values.add(scalar(element));
+                }
+            }
+            default -> node.put("stringValue", String.valueOf(value));
+        }
+        return node;
+    }
+
+    private static ObjectNode scalar(Object value) {
+        ObjectNode node = MAPPER.createObjectNode();
+        if (value instanceof Boolean bool) {
+            node.put("boolValue", bool);
+        } else if (value instanceof Long number) {
+            node.put("intValue", String.valueOf(number));
+        } else if (value instanceof Double number) {
+            node.put("doubleValue", number);
+        } else {
+            node.put("stringValue", String.valueOf(value));
+        }
+        return node;
+    }
+}
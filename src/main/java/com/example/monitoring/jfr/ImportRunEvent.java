@@ -0,0 +1,37 @@
+package com.example.monitoring.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("com.example.notesimport.ImportRun")
+@Label("Import Run")
+@Description("Запуск импорта заметок из старой системы или архива")
+@Category({"Hospital Backend", "Notes Import"})
+public class ImportRunEvent extends jdk.jfr.Event {
+
+    @Label("Source")
+    public String source;
+
+    @Label("Total Patients")
+    public int totalPatients;
+
+    @Label("Processed Patients")
+    public int processedPatients;
+
+    @Label("Notes Created")
+    public int createdCount;
+
+    @Label("Notes Updated")
+    public int updatedCount;
+
+    @Label("Notes Skipped")
+    public int skippedCount;
+
+    @Label("Errors")
+    public int errorCount;
+
+    @Label("Deadline Exceeded")
+    public boolean deadlineExceeded;
+}
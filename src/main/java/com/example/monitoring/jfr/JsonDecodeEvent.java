@@ -0,0 +1,21 @@
+package com.example.monitoring.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("com.example.notesimport.JsonDecode")
+@Label("JSON Decode")
+@Description("Разбор JSON-ответа Legacy API")
+@Category({"Hospital Backend", "Notes Import", "Legacy API"})
+public class JsonDecodeEvent extends jdk.jfr.Event {
+
+    @Label("Payload Size")
+    @DataAmount
+    public long payloadBytes;
+
+    @Label("Success")
+    public boolean success;
+}
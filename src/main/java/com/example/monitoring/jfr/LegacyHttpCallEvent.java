@@ -0,0 +1,27 @@
+package com.example.monitoring.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("com.example.notesimport.LegacyHttpCall")
+@Label("Legacy HTTP Call")
+@Description("HTTP-запрос к Legacy API без ожидания слота ограничителя параллелизма")
+@Category({"Hospital Backend", "Notes Import", "Legacy API"})
+public class LegacyHttpCallEvent extends jdk.jfr.Event {
+
+    @Label("Endpoint")
+    public String endpoint;
+
+    @Label("Status Code")
+    public int statusCode;
+
+    @Label("Response Size")
+    @DataAmount
+    public long responseBytes;
+
+    @Label("Overloaded")
+    public boolean overloaded;
+}
@@ -0,0 +1,16 @@
+package com.example.monitoring.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("com.example.notesimport.NoteFlush")
+@Label("Note Batch Flush")
+@Description("Сброс изменений заметок пачки пациентов в БД")
+@Category({"Hospital Backend", "Notes Import", "Database"})
+public class NoteFlushEvent extends jdk.jfr.Event {
+
+    @Label("Pending Writes")
+    public int pendingWrites;
+}
@@ -0,0 +1,25 @@
+package com.example.monitoring.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("com.example.notesimport.PatientBatch")
+@Label("Patient Batch")
+@Description("Обработка пачки пациентов в рамках запуска импорта")
+@Category({"Hospital Backend", "Notes Import"})
+public class PatientBatchEvent extends jdk.jfr.Event {
+
+    @Label("Patients")
+    public int patientCount;
+
+    @Label("First Patient Id")
+    public long firstPatientId;
+
+    @Label("Last Patient Id")
+    public long lastPatientId;
+
+    @Label("Completed")
+    public boolean completed;
+}
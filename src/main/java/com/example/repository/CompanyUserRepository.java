@@ -4,9 +4,13 @@ import com.example.entity.CompanyUser;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 @Repository
 public interface CompanyUserRepository extends JpaRepository<CompanyUser, Long> {
     Optional<CompanyUser> findByLogin(String login);
+
+    List<CompanyUser> findByLoginIn(Collection<String> logins);
 }
@@ -0,0 +1,13 @@
+package com.example.repository;
+
+import com.example.entity.ImportRun;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface ImportRunRepository extends JpaRepository<ImportRun, Long> {
+    List<ImportRun> findByOrderByStartTimeDesc(Pageable pageable);
+}
@@ -0,0 +1,16 @@
+package com.example.repository;
+
+import com.example.entity.PatientNote;
+import com.example.model.NoteVersion;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+// Поиск заметок по legacy GUID для импорта
+public interface PatientNoteGuidLookup {
+
+    Optional<PatientNote> findByLegacyNoteGuid(String legacyNoteGuid);
+
+    List<NoteVersion> findVersionsByLegacyNoteGuids(Collection<String> guids);
+}
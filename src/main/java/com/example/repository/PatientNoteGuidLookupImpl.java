@@ -0,0 +1,101 @@
+package com.example.repository;
+
+import com.example.entity.PatientNote;
+import com.example.model.NoteVersion;
+import jakarta.persistence.EntityManager;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.query.NativeQuery;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+// В PostgreSQL patient_note секционирована по created_date_time (changelog 004), и условие только по GUID
+// проверяет индекс каждой секции. Ключ секции берется из patient_note_guid: соединение по (note_id,
+// created_date_time) отсекает все секции, кроме одной. Без patient_note_guid (H2 в тестах) - поиск по GUID
+@Slf4j
+public class PatientNoteGuidLookupImpl implements PatientNoteGuidLookup {
+
+    private static final String PARTITIONED_NOTE =
+            "SELECT pn.* FROM patient_note_guid g " +
+            "JOIN patient_note pn ON pn.id = g.note_id AND pn.created_date_time = g.created_date_time " +
+            "WHERE g.legacy_note_guid = :guid";
+
+    private static final String PARTITIONED_VERSIONS =
+            "SELECT g.legacy_note_guid, pn.id, pn.created_date_time, pn.last_modified_date_time FROM patient_note_guid g " +
+            "JOIN patient_note pn ON pn.id = g.note_id AND pn.created_date_time = g.created_date_time " +
+            "WHERE g.legacy_note_guid IN (:guids)";
+
+    private final EntityManager entityManager;
+    private final JdbcTemplate jdbcTemplate;
+
+    // null - еще не проверялось
+    private volatile Boolean guidTable;
+
+    public PatientNoteGuidLookupImpl(EntityManager entityManager, JdbcTemplate jdbcTemplate) {
+        this.entityManager = entityManager;
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Override
+    public Optional<PatientNote> findByLegacyNoteGuid(String legacyNoteGuid) {
+        if (!hasGuidTable()) {
+            return entityManager.createQuery(
+                            "SELECT pn FROM PatientNote pn WHERE pn.legacyNoteGuid = :guid", PatientNote.class)
+                    .setParameter("guid", legacyNoteGuid)
+                    .getResultStream()
+                    .findFirst();
+        }
+        @SuppressWarnings("unchecked")
+        NativeQuery<PatientNote> query = entityManager.createNativeQuery(PARTITIONED_NOTE, PatientNote.class)
+                .unwrap(NativeQuery.class);
+        return query.addSynchronizedEntityClass(PatientNote.class)
+                .setParameter("guid", legacyNoteGuid)
+                .getResultStream()
+                .findFirst();
+    }
+
+    @Override
+    public List<NoteVersion> findVersionsByLegacyNoteGuids(Collection<String> guids) {
+        if (!hasGuidTable()) {
+            return entityManager.createQuery(
+                            "SELECT new com.example.model.NoteVersion(pn.legacyNoteGuid, pn.id, pn.createdDateTime, " +
+                                    "pn.lastModifiedDateTime) " +
+                                    "FROM PatientNote pn WHERE pn.legacyNoteGuid IN :guids", NoteVersion.class)
+                    .setParameter("guids", guids)
+                    .getResultList();
+        }
+        @SuppressWarnings("unchecked")
+        NativeQuery<Object[]> query = entityManager.createNativeQuery(PARTITIONED_VERSIONS).unwrap(NativeQuery.class);
+        return query.addSynchronizedEntityClass(PatientNote.class)
+                .addScalar("legacy_note_guid", String.class)
+                .addScalar("id", Long.class)
+                .addScalar("created_date_time", LocalDateTime.class)
+                .addScalar("last_modified_date_time", LocalDateTime.class)
+                .setParameter("guids", guids)
+                .getResultStream()
+                .map(row -> new NoteVersion((String) row[0], (Long) row[1], (LocalDateTime) row[2], (LocalDateTime) row[3]))
+                .toList();
+    }
+
+    private boolean hasGuidTable() {
+        Boolean checked = guidTable;
+        if (checked == null) {
+            try {
+                String database = jdbcTemplate.execute((ConnectionCallback<String>) connection ->
+                        connection.getMetaData().getDatabaseProductName());
+                checked = "PostgreSQL".equals(database) && Boolean.TRUE.equals(jdbcTemplate.queryForObject(
+                        "SELECT to_regclass('patient_note_guid') IS NOT NULL", Boolean.class));
+            } catch (DataAccessException e) {
+                log.warn("Не удалось проверить таблицу patient_note_guid: {}", e.getMessage());
+                return false;
+            }
+            guidTable = checked;
+        }
+        return checked;
+    }
+}
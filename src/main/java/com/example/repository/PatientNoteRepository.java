@@ -1,5 +1,6 @@
 package com.example.repository;
 
+import com.example.config.ReadOnlyTransactional;
 import com.example.entity.PatientNote;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
@@ -10,16 +11,24 @@ import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
 
+// Запросы для статистики (@ReadOnlyTransactional) вне транзакции импорта выполняются на реплике,
+// если она настроена. Поиск заметок для импорта всегда идет в основную базу: на реплике может еще
+// не быть только что записанной версии заметки. Поиск по GUID с учетом секций - в PatientNoteGuidLookup
 @Repository
-public interface PatientNoteRepository extends JpaRepository<PatientNote, Long> {
+public interface PatientNoteRepository extends JpaRepository<PatientNote, Long>, PatientNoteGuidLookup {
 
-    Optional<PatientNote> findByLegacyNoteGuid(String legacyNoteGuid);
+    // Загрузка по полному первичному ключу (id, created_date_time): в PostgreSQL просматривается одна секция,
+    // findById проверял бы индекс ключа в каждой
+    Optional<PatientNote> findByIdAndCreatedDateTime(Long id, LocalDateTime createdDateTime);
 
+    @ReadOnlyTransactional
     @Query("SELECT COUNT(pn) FROM PatientNote pn WHERE pn.legacyNoteGuid IS NOT NULL")
     long countImportedNotes();
 
+    @ReadOnlyTransactional
     Optional<PatientNote> findTopByLegacyNoteGuidIsNotNullOrderByLastModifiedDateTimeDesc();
 
+    @ReadOnlyTransactional
     @Query("SELECT pn FROM PatientNote pn WHERE pn.patient.id = :patientId " +
             "AND pn.createdDateTime BETWEEN :dateFrom AND :dateTo " +
             "ORDER BY pn.createdDateTime DESC")
@@ -27,6 +36,7 @@ public interface PatientNoteRepository extends JpaRepository<PatientNote, Long>
                                                 @Param("dateFrom") LocalDateTime dateFrom,
                                                 @Param("dateTo") LocalDateTime dateTo);
 
+    @ReadOnlyTransactional
     @Query("SELECT COUNT(pn) FROM PatientNote pn WHERE pn.legacyNoteGuid IS NOT NULL " +
             "AND pn.lastModifiedDateTime >= :since")
     long countImportedSince(@Param("since") LocalDateTime since);
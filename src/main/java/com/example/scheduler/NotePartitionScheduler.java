@@ -0,0 +1,29 @@
+package com.example.scheduler;
+
+import com.example.service.NotePartitionMaintenance;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+@Component
+@Slf4j
+public class NotePartitionScheduler {
+    private final NotePartitionMaintenance partitionMaintenance;
+
+    public NotePartitionScheduler(NotePartitionMaintenance partitionMaintenance) {
+        this.partitionMaintenance = partitionMaintenance;
+    }
+
+    // При старте тоже: если приложение было остановлено дольше notePartitionMonthsAhead, секций может не хватать
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(cron = "${notes.import.note-partition-maintenance-schedule:0 30 3 * * *}")
+    public void scheduleMaintenance() {
+        try {
+            partitionMaintenance.maintain();
+        } catch (Exception e) {
+            log.error("Ошибка обслуживания секций таблицы заметок", e);
+        }
+    }
+}
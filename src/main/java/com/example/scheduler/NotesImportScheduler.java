@@ -1,26 +1,37 @@
 package com.example.scheduler;
 
+import com.example.config.ImportConfigProperties;
 import com.example.model.ImportStatistics;
 import com.example.service.EnhancedImportService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
+import java.nio.file.Paths;
+
 @Component
 @Slf4j
 public class NotesImportScheduler {
     private final EnhancedImportService importService;
+    private final ImportConfigProperties config;
 
-    public NotesImportScheduler(EnhancedImportService enhancedImportService) {
+    public NotesImportScheduler(EnhancedImportService enhancedImportService, ImportConfigProperties config) {
         this.importService = enhancedImportService;
+        this.config = config;
     }
 
-    @Scheduled(cron = "0 15 */2 * * *")
+    @Scheduled(cron = "${notes.import.schedule:0 15 */2 * * *}")
     public void scheduleImport() {
         log.info("Запуск планового импорта заметок");
         try {
-            ImportStatistics stats = importService.performImport();
-            if (stats.isHasCriticalError() || stats.getErrorCount() > 0) {
+            ImportStatistics stats = config.getImportSource() == ImportConfigProperties.ImportSource.ARCHIVE
+                    ? importService.replayFromArchive(Paths.get(config.getReplaySourcePath()))
+                    : importService.performImport();
+            if (stats.isAlreadyRunning()) {
+                log.warn("Плановый импорт пропущен: предыдущий запуск еще не завершен");
+            } else if (stats.isDeadlineExceeded()) {
+                log.warn("Импорт остановлен по таймауту операции, частичная статистика: {}", stats);
+            } else if (stats.isHasCriticalError() || stats.getErrorCount() > 0) {
                 log.warn("Импорт завершен с ошибками: {}", stats);
             } else {
                 log.info("Импорт успешно завершен: {}", stats);
@@ -0,0 +1,137 @@
+package com.example.service;
+
+import com.example.config.ImportConfigProperties;
+import com.example.monitoring.ImportMetrics;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Ограничитель параллельных запросов к Legacy API по схеме AIMD:
+// лимит растет на 1 после каждого "окна" успешных быстрых ответов и уменьшается вдвое
+// при ошибках перегрузки или превышении порога задержки.
+// Экземпляры создает AgencyConcurrencyLimiters: общий и, при полосах агентств, по одному на агентство.
+// Класс final: конструктор регистрирует датчики лимита на себя, подкласс был бы виден им недостроенным.
+@Slf4j
+public final class AdaptiveConcurrencyLimiter {
+
+    private static final double BACKOFF_RATIO = 0.5;
+
+    private final ImportConfigProperties config;
+    // Для журнала: "к Legacy API" или "к агентству X"
+    private final String target;
+    private final int minLimit = 1;
+    private final int maxLimit;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition permitReleased = lock.newCondition();
+
+    private int limit;
+    private int inFlight;
+    private int successesInWindow;
+    private long lastDecreaseNanos;
+
+    public AdaptiveConcurrencyLimiter(ImportConfigProperties config, ImportMetrics metrics) {
+        this(config, "к Legacy API", config.getMaxConcurrentApiConnections());
+        metrics.registerApiConcurrencyGauges(this,
+                AdaptiveConcurrencyLimiter::getLimit,
+                AdaptiveConcurrencyLimiter::getInFlight);
+    }
+
+    // Лимит одного агентства: не выше maxConcurrentRequestsPerAgency
+    AdaptiveConcurrencyLimiter(ImportConfigProperties config, ImportMetrics metrics, String agency) {
+        this(config, "к агентству " + agency,
+                Math.min(config.getMaxConcurrentApiConnections(), config.getMaxConcurrentRequestsPerAgency()));
+        metrics.registerAgencyConcurrencyGauges(agency, this,
+                AdaptiveConcurrencyLimiter::getLimit,
+                AdaptiveConcurrencyLimiter::getInFlight);
+    }
+
+    private AdaptiveConcurrencyLimiter(ImportConfigProperties config, String target, int maxLimit) {
+        this.config = config;
+        this.target = target;
+        this.maxLimit = Math.max(minLimit, maxLimit);
+        this.limit = config.isEnableAdaptiveConcurrency()
+                ? Math.max(minLimit, Math.min(config.getInitialApiConcurrency(), this.maxLimit))
+                : this.maxLimit;
+        this.lastDecreaseNanos = System.nanoTime() - TimeUnit.HOURS.toNanos(1);
+    }
+
+    public void acquire(ImportDeadline deadline) throws InterruptedException {
+        lock.lock();
+        try {
+            while (inFlight >= limit) {
+                if (!deadline.isBounded()) {
+                    permitReleased.await();
+                } else if (!permitReleased.await(deadline.remainingMillis(), TimeUnit.MILLISECONDS)
+                        && deadline.isExpired()) {
+                    throw new ImportDeadlineExceededException("Истекло время ожидания свободного слота запроса " + target);
+                }
+            }
+            inFlight++;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // overloaded=true для таймаутов, 5xx и 429 - сигналов того, что старая система не справляется
+    public void release(long latencyMillis, boolean overloaded) {
+        lock.lock();
+        try {
+            inFlight--;
+
+            if (config.isEnableAdaptiveConcurrency()) {
+                if (overloaded || latencyMillis > config.getApiLatencyThresholdMillis()) {
+                    decrease(latencyMillis, overloaded);
+                } else if (++successesInWindow >= limit) {
+                    successesInWindow = 0;
+                    if (limit < maxLimit) {
+                        limit++;
+                        log.debug("Лимит параллельных запросов {} увеличен до {}", target, limit);
+                    }
+                }
+            }
+
+            permitReleased.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void decrease(long latencyMillis, boolean overloaded) {
+        successesInWindow = 0;
+
+        // Не чаще одного снижения за интервал порога задержки, чтобы одна волна перегрузки не обнулила лимит
+        long now = System.nanoTime();
+        if (now - lastDecreaseNanos < TimeUnit.MILLISECONDS.toNanos(config.getApiLatencyThresholdMillis())) {
+            return;
+        }
+        lastDecreaseNanos = now;
+
+        int previous = limit;
+        limit = Math.max(minLimit, (int) Math.floor(limit * BACKOFF_RATIO));
+        if (limit != previous) {
+            log.info("Лимит параллельных запросов {} снижен {} -> {} (задержка {} мс, перегрузка={})",
+                    target, previous, limit, latencyMillis, overloaded);
+        }
+    }
+
+    public int getLimit() {
+        lock.lock();
+        try {
+            return limit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getInFlight() {
+        lock.lock();
+        try {
+            return inFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,211 @@
+package com.example.service;
+
+import com.example.config.ImportConfigProperties;
+import com.example.dto.LegacyNote;
+import io.micrometer.context.ContextExecutorService;
+import io.micrometer.context.ContextSnapshotFactory;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.net.SocketTimeoutException;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// Загружает заметки клиента, разбивая период на подынтервалы по наблюдаемому объему и времени ответа.
+// Интервалы, упавшие по таймауту, делятся пополам рекурсивно. Параллелизм запросов
+// ограничивают AgencyConcurrencyLimiters внутри LegacyApiService.
+@Component
+@Slf4j
+public class AdaptiveNotesFetcher {
+
+    // Подсказки нужны только тяжелым клиентам; сверх лимита новые не запоминаются до перезапуска
+    private static final int MAX_WINDOW_HINTS = 10_000;
+
+    private final LegacyApiService legacyApiService;
+    private final ImportConfigProperties config;
+    // Контекст наблюдения переносится в виртуальные потоки, чтобы запросы подынтервалов попадали в трассу клиента
+    private final ExecutorService executor = ContextExecutorService.wrap(
+            Executors.newVirtualThreadPerTaskExecutor(), ContextSnapshotFactory.builder().build()::captureAll);
+
+    // Подобранный размер окна (в днях) для клиентов, которым потребовалось разбиение
+    private final Map<String, Integer> windowHints = new ConcurrentHashMap<>();
+
+    public AdaptiveNotesFetcher(LegacyApiService legacyApiService, ImportConfigProperties config) {
+        this.legacyApiService = legacyApiService;
+        this.config = config;
+    }
+
+    public List<LegacyNote> fetchNotes(String agency, String clientGuid,
+                                       LocalDate dateFrom, LocalDate dateTo,
+                                       ImportRunContext run) throws Exception {
+        if (!config.isEnableAdaptiveWindowSplitting()) {
+            return legacyApiService.getClientNotes(agency, clientGuid, dateFrom, dateTo, run);
+        }
+
+        int totalDays = daysBetween(dateFrom, dateTo);
+        int windowDays = Math.min(windowHints.getOrDefault(clientGuid, totalDays), totalDays);
+
+        List<LocalDate[]> ranges = splitRange(dateFrom, dateTo, windowDays);
+        if (ranges.size() == 1) {
+            return fetchRange(agency, clientGuid, dateFrom, dateTo, 0, run);
+        }
+
+        log.debug("Период клиента {} разбит на {} интервалов по {} дн.", clientGuid, ranges.size(), windowDays);
+
+        List<Future<List<LegacyNote>>> futures = new ArrayList<>(ranges.size());
+        for (LocalDate[] range : ranges) {
+            futures.add(executor.submit(() -> fetchRange(agency, clientGuid, range[0], range[1], 0, run)));
+        }
+
+        return merge(awaitAll(futures));
+    }
+
+    private List<LegacyNote> fetchRange(String agency, String clientGuid,
+                                        LocalDate dateFrom, LocalDate dateTo, int depth,
+                                        ImportRunContext run) throws Exception {
+        int days = daysBetween(dateFrom, dateTo);
+        long start = System.nanoTime();
+        try {
+            List<LegacyNote> notes = legacyApiService.getClientNotes(agency, clientGuid, dateFrom, dateTo, run);
+            observe(clientGuid, days, depth, notes.size(), (System.nanoTime() - start) / 1_000_000);
+            return notes;
+        } catch (Exception e) {
+            // Таймаут, вызванный истечением времени импорта, не повод делить интервал
+            if (run.deadline().isExpired() || !isTimeout(e) || days <= 1 || depth >= config.getMaxWindowSplitDepth()) {
+                throw e;
+            }
+
+            LocalDate middle = dateFrom.plusDays(days / 2 - 1);
+            log.warn("Таймаут при загрузке заметок клиента {} за {} - {}, делим интервал пополам",
+                    clientGuid, dateFrom, dateTo);
+            shrinkHint(clientGuid, days / 2);
+
+            Future<List<LegacyNote>> left = executor.submit(
+                    () -> fetchRange(agency, clientGuid, dateFrom, middle, depth + 1, run));
+            try {
+                List<LegacyNote> right = fetchRange(agency, clientGuid, middle.plusDays(1), dateTo, depth + 1, run);
+                return merge(List.of(await(left), right));
+            } catch (Exception halfFailure) {
+                left.cancel(true);
+                throw halfFailure;
+            }
+        }
+    }
+
+    private void observe(String clientGuid, int days, int depth, int noteCount, long elapsedMillis) {
+        int targetNotes = config.getTargetNotesPerRequest();
+        int targetMillis = config.getTargetRequestMillis();
+
+        if (noteCount > targetNotes || elapsedMillis > targetMillis) {
+            double ratio = Math.max((double) noteCount / targetNotes, (double) elapsedMillis / targetMillis);
+            shrinkHint(clientGuid, (int) Math.floor(days / ratio));
+        } else if (depth == 0 && noteCount * 4 < targetNotes && elapsedMillis * 4 < targetMillis) {
+            // Окно расширяем только по ответам, не потребовавшим деления по таймауту
+            Integer hint = windowHints.get(clientGuid);
+            if (hint != null && days >= hint) {
+                int grown = hint * 2;
+                if (grown > config.getDaysToImport()) {
+                    windowHints.remove(clientGuid);
+                } else {
+                    windowHints.put(clientGuid, grown);
+                }
+            }
+        }
+    }
+
+    private void shrinkHint(String clientGuid, int days) {
+        int windowDays = Math.max(1, days);
+        if (windowHints.size() >= MAX_WINDOW_HINTS && !windowHints.containsKey(clientGuid)) {
+            return;
+        }
+        windowHints.merge(clientGuid, windowDays, Math::min);
+    }
+
+    static List<LocalDate[]> splitRange(LocalDate dateFrom, LocalDate dateTo, int windowDays) {
+        List<LocalDate[]> ranges = new ArrayList<>();
+        LocalDate current = dateFrom;
+        while (!current.isAfter(dateTo)) {
+            LocalDate end = current.plusDays(windowDays - 1L);
+            if (end.isAfter(dateTo)) {
+                end = dateTo;
+            }
+            ranges.add(new LocalDate[]{current, end});
+            current = end.plusDays(1);
+        }
+        return ranges;
+    }
+
+    private static List<LegacyNote> merge(List<List<LegacyNote>> parts) {
+        Map<String, LegacyNote> merged = new LinkedHashMap<>();
+        List<LegacyNote> withoutGuid = new ArrayList<>();
+        for (List<LegacyNote> part : parts) {
+            for (LegacyNote note : part) {
+                if (note.getGuid() == null) {
+                    withoutGuid.add(note);
+                } else {
+                    merged.putIfAbsent(note.getGuid(), note);
+                }
+            }
+        }
+        List<LegacyNote> result = new ArrayList<>(merged.values());
+        result.addAll(withoutGuid);
+        return result;
+    }
+
+    private static int daysBetween(LocalDate dateFrom, LocalDate dateTo) {
+        return (int) Math.max(1, ChronoUnit.DAYS.between(dateFrom, dateTo) + 1);
+    }
+
+    private static boolean isTimeout(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof SocketTimeoutException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // При ошибке одного интервала остальные отменяются: их запросы больше не нужны и занимают слоты ограничителя
+    private static <T> List<T> awaitAll(List<Future<T>> futures) throws Exception {
+        List<T> results = new ArrayList<>(futures.size());
+        try {
+            for (Future<T> future : futures) {
+                results.add(await(future));
+            }
+            return results;
+        } catch (Exception e) {
+            futures.forEach(future -> future.cancel(true));
+            throw e;
+        }
+    }
+
+    private static <T> T await(Future<T> future) throws Exception {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    int getWindowHint(String clientGuid) {
+        return windowHints.getOrDefault(clientGuid, 0);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,43 @@
+package com.example.service;
+
+import com.example.config.ImportConfigProperties;
+import com.example.monitoring.ImportMetrics;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Ограничители запросов к Legacy API. При включенных полосах агентств запросы агентства идут через
+// собственный AIMD-лимит, поэтому задержки одного агентства снижают только его лимит.
+// Запросы без агентства (справочник клиентов) и все запросы при выключенных полосах - через общий лимит.
+// Общий потолок maxConcurrentApiConnections при полосах держит пул соединений LegacyApiService.
+@Component
+public class AgencyConcurrencyLimiters {
+
+    private final ImportConfigProperties config;
+    private final ImportMetrics metrics;
+    private final AdaptiveConcurrencyLimiter globalLimiter;
+    private final Map<String, AdaptiveConcurrencyLimiter> agencyLimiters = new ConcurrentHashMap<>();
+
+    public AgencyConcurrencyLimiters(ImportConfigProperties config, ImportMetrics metrics) {
+        this.config = config;
+        this.metrics = metrics;
+        this.globalLimiter = new AdaptiveConcurrencyLimiter(config, metrics);
+    }
+
+    public AdaptiveConcurrencyLimiter forAgency(String agency) {
+        if (!config.isEnableAgencyLanes() || agency == null || agency.isEmpty()) {
+            return globalLimiter;
+        }
+        return agencyLimiters.computeIfAbsent(agency, key -> new AdaptiveConcurrencyLimiter(config, metrics, key));
+    }
+
+    // Потолок одновременных запросов к Legacy API, по нему рассчитан пул соединений HTTP-клиента
+    public int getMaxConnections() {
+        return Math.max(1, config.getMaxConcurrentApiConnections());
+    }
+
+    public AdaptiveConcurrencyLimiter global() {
+        return globalLimiter;
+    }
+}
@@ -0,0 +1,267 @@
+package com.example.service;
+
+import com.example.config.ImportConfigProperties;
+import com.example.dto.LegacyNote;
+import com.example.monitoring.ImportMetrics;
+import io.micrometer.context.ContextSnapshotFactory;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Полосы агентств: загрузки заметок ставятся в очередь своего агентства, общий пул виртуальных потоков выбирает их
+// взвешенным круговым обходом (weighted round-robin) - подряд не больше веса полосы задач одного агентства.
+// Полоса пропускается, пока число ее выполняющихся загрузок не ниже текущего AIMD-лимита агентства,
+// поэтому потоки не простаивают в ожидании слота медленного агентства и обслуживают остальные полосы.
+@Component
+@Slf4j
+public class AgencyLaneScheduler {
+
+    // Полоса для клиентов без агентства
+    static final String NO_AGENCY = "none";
+
+    private final ImportConfigProperties config;
+    private final AgencyConcurrencyLimiters limiters;
+    private final ImportMetrics metrics;
+    private final ContextSnapshotFactory snapshotFactory = ContextSnapshotFactory.builder().build();
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition workAvailable = lock.newCondition();
+    private final Map<String, Lane> lanes = new HashMap<>();
+    // Порядок кругового обхода
+    private final List<Lane> ring = new ArrayList<>();
+    private int cursor;
+    private final List<Thread> workers = new ArrayList<>();
+    private volatile boolean running;
+    // Суммарное время выполнения загрузок - занятость стадии загрузки конвейера
+    private final LongAdder busyNanos = new LongAdder();
+
+    private static final class Lane {
+        final String agency;
+        final int weight;
+        final Deque<LaneTask> queue = new ArrayDeque<>();
+        int running;
+        // Сколько задач полоса еще может получить подряд в текущем обходе
+        int credit;
+
+        Lane(String agency, int weight) {
+            this.agency = agency;
+            this.weight = weight;
+        }
+
+        int queued() {
+            return queue.size();
+        }
+    }
+
+    private record LaneTask(Lane lane, Callable<List<LegacyNote>> fetch, CompletableFuture<List<LegacyNote>> result) {
+    }
+
+    public AgencyLaneScheduler(ImportConfigProperties config,
+                               AgencyConcurrencyLimiters limiters,
+                               ImportMetrics metrics) {
+        this.config = config;
+        this.limiters = limiters;
+        this.metrics = metrics;
+        if (config.isEnableAgencyLanes()) {
+            this.running = true;
+            for (int i = 0; i < config.getMaxConcurrentApiConnections(); i++) {
+                workers.add(Thread.ofVirtual()
+                        .name("agency-lane-" + i)
+                        .start(this::workLoop));
+            }
+        }
+    }
+
+    public boolean isEnabled() {
+        return running;
+    }
+
+    // Отмена возвращенного future до начала загрузки снимает задачу с очереди
+    public CompletableFuture<List<LegacyNote>> submit(String agency, Callable<List<LegacyNote>> fetch) {
+        if (!running) {
+            throw new IllegalStateException("Полосы агентств отключены");
+        }
+
+        CompletableFuture<List<LegacyNote>> result = new CompletableFuture<>();
+        Callable<List<LegacyNote>> withContext = snapshotFactory.captureAll().wrap(fetch);
+        lock.lock();
+        try {
+            Lane lane = lanes.computeIfAbsent(laneKey(agency), this::newLane);
+            lane.queue.addLast(new LaneTask(lane, withContext, result));
+            workAvailable.signal();
+        } finally {
+            lock.unlock();
+        }
+        return result;
+    }
+
+    public int getQueuedCount(String agency) {
+        lock.lock();
+        try {
+            Lane lane = lanes.get(laneKey(agency));
+            return lane != null ? lane.queued() : 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getQueuedCount() {
+        lock.lock();
+        try {
+            return ring.stream().mapToInt(Lane::queued).sum();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getWorkerCount() {
+        return workers.size();
+    }
+
+    public long getBusyNanos() {
+        return busyNanos.sum();
+    }
+
+    private static String laneKey(String agency) {
+        return agency == null || agency.isEmpty() ? NO_AGENCY : agency;
+    }
+
+    private Lane newLane(String agency) {
+        int weight = Math.max(1, config.getAgencyLaneWeights().getOrDefault(agency, 1));
+        Lane lane = new Lane(agency, weight);
+        ring.add(lane);
+        metrics.registerAgencyLaneGauge(agency, lane, this::queuedUnderLock);
+        log.info("Создана полоса агентства {} (вес {})", agency, weight);
+        return lane;
+    }
+
+    private double queuedUnderLock(Lane lane) {
+        lock.lock();
+        try {
+            return lane.queued();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void workLoop() {
+        while (running) {
+            LaneTask task;
+            try {
+                task = next();
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (task != null) {
+                execute(task);
+            }
+        }
+    }
+
+    private LaneTask next() throws InterruptedException {
+        lock.lock();
+        try {
+            while (running) {
+                LaneTask task = pollFair();
+                if (task != null) {
+                    return task;
+                }
+                // Слот агентства может освободиться и без сигнала (запросы вне полос), поэтому ожидание ограничено
+                workAvailable.await(100, TimeUnit.MILLISECONDS);
+            }
+            return null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Вызывается под lock
+    private LaneTask pollFair() {
+        for (int checked = 0; checked < ring.size(); checked++) {
+            Lane lane = ring.get(cursor);
+            dropCancelled(lane);
+            if (!lane.queue.isEmpty() && lane.running < laneLimit(lane)) {
+                if (lane.credit <= 0) {
+                    lane.credit = lane.weight;
+                }
+                lane.running++;
+                if (--lane.credit <= 0) {
+                    cursor = (cursor + 1) % ring.size();
+                }
+                return lane.queue.pollFirst();
+            }
+            lane.credit = 0;
+            cursor = (cursor + 1) % ring.size();
+        }
+        return null;
+    }
+
+    private static void dropCancelled(Lane lane) {
+        while (!lane.queue.isEmpty() && lane.queue.peekFirst().result().isDone()) {
+            lane.queue.pollFirst();
+        }
+    }
+
+    private int laneLimit(Lane lane) {
+        return NO_AGENCY.equals(lane.agency)
+                ? limiters.global().getLimit()
+                : limiters.forAgency(lane.agency).getLimit();
+    }
+
+    private void execute(LaneTask task) {
+        long start = System.nanoTime();
+        List<LegacyNote> notes = null;
+        try {
+            notes = task.fetch().call();
+            task.result().complete(notes);
+        } catch (Throwable e) {
+            task.result().completeExceptionally(e);
+        } finally {
+            long elapsed = System.nanoTime() - start;
+            busyNanos.add(elapsed);
+            metrics.recordAgencyFetch(task.lane().agency, elapsed, notes != null ? notes.size() : 0, notes != null);
+            lock.lock();
+            try {
+                task.lane().running--;
+                workAvailable.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (!running) {
+            return;
+        }
+
+        running = false;
+        for (Thread worker : workers) {
+            worker.interrupt();
+        }
+        lock.lock();
+        try {
+            for (Lane lane : ring) {
+                lane.queue.forEach(task -> task.result().cancel(false));
+                lane.queue.clear();
+            }
+        } finally {
+            lock.unlock();
+        }
+        log.info("Полосы агентств остановлены");
+    }
+}
@@ -0,0 +1,149 @@
+package com.example.service;
+
+import com.example.config.ImportConfigProperties;
+import com.example.entity.ImportRun;
+import com.example.monitoring.ImportMetrics;
+import com.example.monitoring.ImportRunHistory;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Подбор размера пачки пациентов по наблюдаемой скорости (hill climbing): после каждой полной пачки размер
+// сдвигается на autoTuneStepPercent в том же направлении, пока заметок/с становится больше, и разворачивается,
+// когда скорость падает. Верхняя граница - autoTuneMaxBatchSize и число пациентов, заметки которых
+// (по средней оценке на пациента) умещаются в autoTuneMaxNotesInMemory вместе с пачками, загружаемыми заранее.
+// Лучший размер запуска сохраняется в истории запусков и становится начальным для следующего запуска.
+@Component
+@Slf4j
+public class BatchSizeTuner {
+
+    // Изменение скорости меньше допуска считается шумом
+    private static final double NOISE_TOLERANCE = 0.05;
+    // Вес последней пачки в оценке числа заметок на пациента
+    private static final double NOTES_PER_PATIENT_SMOOTHING = 0.3;
+
+    private final ImportConfigProperties config;
+    private final ImportRunHistory runHistory;
+
+    // Отдельный объект для датчика: конструктор не передает метрикам недостроенный тюнер
+    private final AtomicInteger currentSize = new AtomicInteger();
+    private int fetchAheadBatches;
+    private int direction = 1;
+    private int lastMeasuredSize;
+    private double lastThroughput;
+    private int bestSize;
+    private double bestThroughput;
+    // Сохраняются между запусками
+    private double notesPerPatient;
+    private int lastGoodSize;
+
+    public BatchSizeTuner(ImportConfigProperties config, ImportRunHistory runHistory, ImportMetrics metrics) {
+        this.config = config;
+        this.runHistory = runHistory;
+        this.currentSize.set(Math.max(1, config.getPatientBatchSize()));
+        metrics.registerPatientBatchSizeGauge(currentSize, AtomicInteger::get);
+    }
+
+    public boolean isEnabled() {
+        return config.isEnableBatchSizeAutoTuning();
+    }
+
+    public int getCurrentSize() {
+        return currentSize.get();
+    }
+
+    // Начальный размер пачки запуска: лучший размер предыдущего запуска, иначе patientBatchSize
+    public synchronized int startRun(int fetchAheadBatches) {
+        this.fetchAheadBatches = fetchAheadBatches;
+        direction = 1;
+        lastMeasuredSize = 0;
+        lastThroughput = 0;
+        bestSize = 0;
+        bestThroughput = 0;
+
+        if (!isEnabled()) {
+            int size = Math.max(1, config.getPatientBatchSize());
+            currentSize.set(size);
+            return size;
+        }
+        if (lastGoodSize == 0) {
+            lastGoodSize = persistedSize();
+        }
+        int size = clamp(lastGoodSize > 0 ? lastGoodSize : config.getPatientBatchSize());
+        currentSize.set(size);
+        log.info("Автоподбор размера пачки: начальный размер {}", size);
+        return size;
+    }
+
+    // Результат полной пачки; неполные пачки (хвост списка, остановка по дедлайну) не передаются
+    public synchronized void observe(int batchSize, long notes, long nanos) {
+        if (!isEnabled() || batchSize <= 0 || nanos <= 0) {
+            return;
+        }
+
+        double throughput = notes * 1_000_000_000.0 / nanos;
+        double batchNotesPerPatient = (double) notes / batchSize;
+        notesPerPatient = notesPerPatient > 0
+                ? notesPerPatient + NOTES_PER_PATIENT_SMOOTHING * (batchNotesPerPatient - notesPerPatient)
+                : batchNotesPerPatient;
+        if (throughput > bestThroughput) {
+            bestThroughput = throughput;
+            bestSize = batchSize;
+        }
+
+        // Направление определяется по двум последним измеренным размерам: загруженные заранее пачки
+        // нарезаны до предыдущего решения, поэтому размер измеренной пачки может отставать от текущего
+        if (lastMeasuredSize > 0 && batchSize != lastMeasuredSize) {
+            boolean grew = batchSize > lastMeasuredSize;
+            if (throughput > lastThroughput * (1 + NOISE_TOLERANCE)) {
+                direction = grew ? 1 : -1;
+            } else if (throughput < lastThroughput * (1 - NOISE_TOLERANCE)) {
+                direction = grew ? -1 : 1;
+            }
+        }
+        lastMeasuredSize = batchSize;
+        lastThroughput = throughput;
+
+        int size = currentSize.get();
+        int step = Math.max(1, (int) Math.round(size * config.getAutoTuneStepPercent() / 100.0));
+        int next = clamp(size + direction * step);
+        if (next != size) {
+            log.info("Размер пачки пациентов изменен: {} -> {} (пачка из {}: {} заметок/с)",
+                    size, next, batchSize, String.format("%.1f", throughput));
+            currentSize.set(next);
+        }
+    }
+
+    // Возвращает размер, с которого начнется следующий запуск, 0 - автоподбор выключен
+    public synchronized int finishRun() {
+        if (!isEnabled()) {
+            return 0;
+        }
+        if (bestSize > 0) {
+            lastGoodSize = clamp(bestSize);
+            log.info("Размер пачки для следующего запуска: {} ({} заметок/с)",
+                    lastGoodSize, String.format("%.1f", bestThroughput));
+        }
+        return lastGoodSize > 0 ? lastGoodSize : currentSize.get();
+    }
+
+    private int clamp(int size) {
+        int min = config.getAutoTuneMinBatchSize();
+        int max = config.getAutoTuneMaxBatchSize();
+        if (notesPerPatient > 0) {
+            // В памяти одновременно записываемая пачка и загружаемые заранее
+            max = Math.min(max, (int) (config.getAutoTuneMaxNotesInMemory() / (notesPerPatient * (1 + fetchAheadBatches))));
+        }
+        return Math.max(min, Math.min(max, size));
+    }
+
+    // После перезапуска приложения - размер последнего успешного запуска из истории (import_run)
+    private int persistedSize() {
+        return runHistory.getRuns().stream()
+                .filter(run -> run.getPatientBatchSize() != null && !run.isCriticalError())
+                .map(ImportRun::getPatientBatchSize)
+                .findFirst()
+                .orElse(0);
+    }
+}
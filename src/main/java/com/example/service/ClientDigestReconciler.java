@@ -0,0 +1,150 @@
+package com.example.service;
+
+import com.example.config.ImportConfigProperties;
+import com.example.dto.LegacyNote;
+import com.example.dto.LegacyNoteDigest;
+import com.example.entity.PatientProfile;
+import com.example.model.ClientNoteDigest;
+import com.example.model.LegacyClientIndex;
+import com.example.monitoring.ImportMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Сверка клиентов старой системы по дайджестам заметок перед загрузкой. Для каждой пары
+// "пациент - клиент" хранится дайджест заметок, полученных при последней успешной загрузке;
+// в начале запуска дайджесты этих клиентов запрашиваются пачками, и совпавшие пары пропускаются.
+// Дайджесты хранятся в памяти: после перезапуска первый запуск загружает всех клиентов.
+@Component
+@Slf4j
+public class ClientDigestReconciler {
+
+    private final LegacyApiService legacyApiService;
+    private final ImportConfigProperties config;
+    private final ImportMetrics metrics;
+    private final Map<PatientClient, StoredDigest> stored = new ConcurrentHashMap<>();
+
+    public record PatientClient(long patientId, String clientGuid) {
+    }
+
+    // Дайджест не обновляется при пропуске пары, поэтому не реже digestMaxAgeHours клиент загружается полностью
+    private record StoredDigest(ClientNoteDigest digest, LocalDateTime recordedAt) {
+    }
+
+    public ClientDigestReconciler(LegacyApiService legacyApiService,
+                                  ImportConfigProperties config,
+                                  ImportMetrics metrics) {
+        this.legacyApiService = legacyApiService;
+        this.config = config;
+        this.metrics = metrics;
+    }
+
+    // Возвращает пары, заметки которых в старой системе не изменились с последней загрузки.
+    // Пациенты из forceRefresh сверяются как измененные.
+    public Set<PatientClient> reconcile(List<PatientProfile> patients, LegacyClientIndex clientIndex,
+                                        LocalDate dateFrom, LocalDate dateTo,
+                                        Set<Long> forceRefresh, ImportRunContext run) {
+        if (!config.isEnableDigestReconciliation() || stored.isEmpty()) {
+            return Set.of();
+        }
+
+        LocalDateTime expiredBefore = LocalDateTime.now().minusHours(config.getDigestMaxAgeHours());
+        Map<String, List<PatientClient>> candidates = new HashMap<>();
+        for (PatientProfile patient : patients) {
+            if (patient.getId() == null || forceRefresh.contains(patient.getId())) {
+                continue;
+            }
+            for (String clientGuid : patient.getOldClientGuids()) {
+                if (!clientIndex.contains(clientGuid)) {
+                    continue;
+                }
+                PatientClient pair = new PatientClient(patient.getId(), clientGuid);
+                StoredDigest digest = stored.get(pair);
+                if (digest == null) {
+                    continue;
+                }
+                if (digest.recordedAt().isBefore(expiredBefore)) {
+                    stored.remove(pair);
+                    continue;
+                }
+                candidates.computeIfAbsent(clientGuid, guid -> new ArrayList<>()).add(pair);
+            }
+        }
+        if (candidates.isEmpty()) {
+            return Set.of();
+        }
+
+        Map<String, List<String>> clientsByAgency = new HashMap<>();
+        for (String clientGuid : candidates.keySet()) {
+            clientsByAgency.computeIfAbsent(clientIndex.getAgency(clientGuid), agency -> new ArrayList<>()).add(clientGuid);
+        }
+
+        Set<PatientClient> unchanged = new HashSet<>();
+        int unchangedClients = 0;
+        try {
+            for (Map.Entry<String, List<String>> agencyClients : clientsByAgency.entrySet()) {
+                List<String> clients = agencyClients.getValue();
+                for (int from = 0; from < clients.size(); from += config.getDigestBatchSize()) {
+                    List<String> chunk = clients.subList(from, Math.min(from + config.getDigestBatchSize(), clients.size()));
+                    for (LegacyNoteDigest legacyDigest : legacyApiService.getNoteDigests(
+                            agencyClients.getKey(), chunk, dateFrom, dateTo, run)) {
+                        List<PatientClient> pairs = candidates.get(legacyDigest.getClientGuid());
+                        if (pairs == null) {
+                            continue;
+                        }
+                        ClientNoteDigest current = new ClientNoteDigest(legacyDigest.getNoteCount(), legacyDigest.getHash());
+                        boolean clientUnchanged = false;
+                        for (PatientClient pair : pairs) {
+                            StoredDigest digest = stored.get(pair);
+                            if (digest != null && digest.digest().equals(current)) {
+                                unchanged.add(pair);
+                                clientUnchanged = true;
+                            }
+                        }
+                        if (clientUnchanged) {
+                            unchangedClients++;
+                        }
+                    }
+                }
+            }
+        } catch (ImportDeadlineExceededException e) {
+            throw e;
+        } catch (Exception e) {
+            // Несверенные клиенты загружаются полностью
+            log.warn("Сверка по дайджестам прервана, клиенты будут загружены полностью: {}", e.getMessage());
+            metrics.recordImportError("digest_reconciliation_error");
+        }
+
+        log.info("Сверка по дайджестам: клиентов без изменений {} из {}", unchangedClients, candidates.size());
+        metrics.recordDigestReconciliation(candidates.size(), unchangedClients);
+        return unchanged;
+    }
+
+    public void recordImported(Long patientId, String clientGuid, List<LegacyNote> notes) {
+        if (!config.isEnableDigestReconciliation() || patientId == null) {
+            return;
+        }
+        stored.put(new PatientClient(patientId, clientGuid),
+                new StoredDigest(ClientNoteDigest.of(notes), LocalDateTime.now()));
+    }
+
+    // Загрузка клиента завершилась ошибками: в следующем запуске он загружается полностью
+    public void forget(Long patientId, String clientGuid) {
+        if (patientId != null) {
+            stored.remove(new PatientClient(patientId, clientGuid));
+        }
+    }
+
+    public int getStoredDigests() {
+        return stored.size();
+    }
+}
@@ -0,0 +1,112 @@
+package com.example.service;
+
+import com.example.dto.LegacyNote;
+import com.example.entity.PatientProfile;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+
+// Объединение запросов заметок в пределах одного запуска импорта:
+// клиент старой системы, привязанный к нескольким пациентам, загружается один раз,
+// а запись удаляется после того, как заметки получил последний пациент-владелец.
+class ClientNotesCoalescer {
+
+    @FunctionalInterface
+    interface NotesLoader {
+        List<LegacyNote> load() throws Exception;
+    }
+
+    private final Map<String, AtomicInteger> remainingOwners;
+    private final Map<String, CompletableFuture<List<LegacyNote>>> loaded = new ConcurrentHashMap<>();
+    private final LongAdder coalescedCount = new LongAdder();
+
+    private ClientNotesCoalescer(Map<String, AtomicInteger> remainingOwners) {
+        this.remainingOwners = remainingOwners;
+    }
+
+    static ClientNotesCoalescer forPatients(List<PatientProfile> patients, Predicate<String> knownClient) {
+        Map<String, Integer> ownerCounts = new HashMap<>();
+        for (PatientProfile patient : patients) {
+            for (String clientGuid : patient.getOldClientGuids()) {
+                if (knownClient.test(clientGuid)) {
+                    ownerCounts.merge(clientGuid, 1, Integer::sum);
+                }
+            }
+        }
+
+        // Отслеживаются только клиенты с несколькими владельцами
+        Map<String, AtomicInteger> shared = new HashMap<>();
+        ownerCounts.forEach((clientGuid, owners) -> {
+            if (owners > 1) {
+                shared.put(clientGuid, new AtomicInteger(owners));
+            }
+        });
+        return new ClientNotesCoalescer(shared);
+    }
+
+    List<LegacyNote> getNotes(String clientGuid, NotesLoader loader) throws Exception {
+        AtomicInteger owners = remainingOwners.get(clientGuid);
+        if (owners == null) {
+            return loader.load();
+        }
+
+        CompletableFuture<List<LegacyNote>> created = new CompletableFuture<>();
+        CompletableFuture<List<LegacyNote>> existing = loaded.putIfAbsent(clientGuid, created);
+        try {
+            if (existing != null) {
+                coalescedCount.increment();
+                return await(existing);
+            }
+
+            try {
+                created.complete(loader.load());
+            } catch (Exception e) {
+                created.completeExceptionally(e);
+            }
+            return await(created);
+        } finally {
+            if (owners.decrementAndGet() <= 0) {
+                loaded.remove(clientGuid);
+            }
+        }
+    }
+
+    private static List<LegacyNote> await(CompletableFuture<List<LegacyNote>> future) throws Exception {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    boolean isShared(String clientGuid) {
+        return remainingOwners.containsKey(clientGuid);
+    }
+
+    // Заметки клиента уже загружены (или загружаются) и ждут остальных владельцев
+    boolean isLoaded(String clientGuid) {
+        return loaded.containsKey(clientGuid);
+    }
+
+    int getSharedClientCount() {
+        return remainingOwners.size();
+    }
+
+    long getCoalescedCount() {
+        return coalescedCount.sum();
+    }
+
+    int getCachedClientCount() {
+        return loaded.size();
+    }
+}
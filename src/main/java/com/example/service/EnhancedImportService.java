@@ -1,69 +1,161 @@
 package com.example.service;
 
+import com.example.archive.ArchiveReplayReader;
 import com.example.config.ImportConfigProperties;
-import com.example.dto.LegacyClient;
+import com.example.config.ReadOnlyTransactional;
 import com.example.dto.LegacyNote;
 import com.example.model.ImportStatistics;
+import com.example.model.LegacyClientIndex;
+import com.example.model.NoteVersion;
 import com.example.entity.CompanyUser;
 import com.example.entity.PatientNote;
 import com.example.entity.PatientProfile;
 import com.example.monitoring.ImportMetrics;
+import com.example.monitoring.ImportObservations;
+import com.example.monitoring.ImportPhase;
+import com.example.monitoring.ImportRunHistory;
+import com.example.monitoring.jfr.ImportRunEvent;
+import com.example.monitoring.jfr.NoteFlushEvent;
+import com.example.monitoring.jfr.PatientBatchEvent;
 import com.example.repository.CompanyUserRepository;
 import com.example.repository.PatientNoteRepository;
 import com.example.repository.PatientProfileRepository;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationRegistry;
 import jakarta.transaction.Transactional;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.nio.file.Path;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
-import java.util.function.Function;
-import java.util.stream.Collectors;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Pattern;
 
 @Service
 @Transactional
 @Slf4j
 public class EnhancedImportService {
 
+    private static final String SOURCE_LEGACY_API = "legacy_api";
+    private static final String SOURCE_ARCHIVE = "archive";
+    private static final String SOURCE_ON_DEMAND = "on_demand";
+
     private final LegacyApiService legacyApiService;
     private final PatientProfileRepository patientRepository;
     private final CompanyUserRepository userRepository;
     private final PatientNoteRepository noteRepository;
     private final ImportConfigProperties config;
     private final ImportMetrics metrics;
+    private final AdaptiveNotesFetcher notesFetcher;
+    private final ArchiveReplayReader replayReader;
+    private final ObservationRegistry observationRegistry;
+    private final ImportRunHistory runHistory;
+    private final PatientPriorityScheduler priorityScheduler;
+    private final ClientDigestReconciler digestReconciler;
+    private final AgencyLaneScheduler laneScheduler;
+    private final NoteImportPipeline pipeline;
+    private final BatchSizeTuner batchSizeTuner;
+    private final PatientImportLocks patientLocks;
+    private final TransactionTemplate batchTransaction;
+
+    // Плановый и офлайн-импорт не должны выполняться одновременно
+    private final ReentrantLock runLock = new ReentrantLock();
+    private volatile Long resumeFromPatientId;
 
-    private final DateTimeFormatter legacyDateTimeFormatter =
-            DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss[ zzz]");
+    // Даты Legacy API: "yyyy-MM-dd HH:mm:ss", иногда с аббревиатурой часового пояса, которая отбрасывается
+    private static final DateTimeFormatter LEGACY_DATE_TIME = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private static final Pattern LEGACY_ZONE_SUFFIX = Pattern.compile(" [A-Z]{3}$");
 
     public EnhancedImportService(LegacyApiService legacyApiService,
                                  PatientProfileRepository patientRepository,
                                  CompanyUserRepository userRepository,
                                  PatientNoteRepository noteRepository,
                                  ImportConfigProperties config,
-                                 ImportMetrics metrics) {
+                                 ImportMetrics metrics,
+                                 AdaptiveNotesFetcher notesFetcher,
+                                 ArchiveReplayReader replayReader,
+                                 ObservationRegistry observationRegistry,
+                                 ImportRunHistory runHistory,
+                                 PatientPriorityScheduler priorityScheduler,
+                                 ClientDigestReconciler digestReconciler,
+                                 AgencyLaneScheduler laneScheduler,
+                                 NoteImportPipeline pipeline,
+                                 BatchSizeTuner batchSizeTuner,
+                                 PatientImportLocks patientLocks,
+                                 PlatformTransactionManager transactionManager) {
         this.legacyApiService = legacyApiService;
         this.patientRepository = patientRepository;
         this.userRepository = userRepository;
         this.noteRepository = noteRepository;
         this.config = config;
         this.metrics = metrics;
+        this.notesFetcher = notesFetcher;
+        this.replayReader = replayReader;
+        this.observationRegistry = observationRegistry;
+        this.runHistory = runHistory;
+        this.priorityScheduler = priorityScheduler;
+        this.digestReconciler = digestReconciler;
+        this.laneScheduler = laneScheduler;
+        this.pipeline = pipeline;
+        this.batchSizeTuner = batchSizeTuner;
+        this.patientLocks = patientLocks;
+        this.batchTransaction = new TransactionTemplate(transactionManager);
+        this.batchTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
     }
 
+    // Каждая пачка пациентов фиксируется в своей транзакции (processBatch): захваты пациентов
+    // и advisory-блокировки держатся только до фиксации пачки, ошибка записи откатывает одну пачку
+    @SuppressWarnings("try")
+    @Transactional(Transactional.TxType.NOT_SUPPORTED)
     public ImportStatistics performImport() {
         ImportStatistics stats = new ImportStatistics();
         stats.setStartTime(LocalDateTime.now());
+
+        if (!runLock.tryLock()) {
+            log.warn("Предыдущий импорт еще выполняется, запуск пропущен");
+            stats.setEndTime(LocalDateTime.now());
+            stats.setAlreadyRunning(true);
+            metrics.recordImportOverlapSkipped();
+            return stats;
+        }
+
         metrics.recordImportStarted();
+        ImportRunContext run = ImportRunContext.start(config.getOperationTimeoutMillis());
+        Observation runObservation = importRunObservation(SOURCE_LEGACY_API).start();
+        ImportRunEvent runEvent = new ImportRunEvent();
+        runEvent.begin();
 
-        try {
+        try (Observation.Scope ignored = runObservation.openScope()) {
             log.info("Начинаем импорт заметок из старой системы");
 
-            List<PatientProfile> activePatients = patientRepository.findActivePatients();
+            List<PatientProfile> activePatients = orderPatients(patientRepository.findActivePatients());
             log.info("Найдено {} активных пациентов", activePatients.size());
+            stats.setTotalPatients(activePatients.size());
 
             if (activePatients.isEmpty()) {
                 log.warn("Нет активных пациентов для импорта");
@@ -71,73 +163,544 @@ public class EnhancedImportService {
                 return stats;
             }
 
-            List<LegacyClient> legacyClients = legacyApiService.getAllClients();
-            log.info("Получено {} клиентов из старой системы", legacyClients.size());
+            LegacyClientIndex clientIndex = timed(ImportPhase.CLIENT_DIRECTORY_FETCH, stats,
+                    () -> legacyApiService.getClientIndex(run));
+            log.info("Получено {} клиентов из старой системы ({} агентств, индекс ~{} КБ)",
+                    clientIndex.size(), clientIndex.agencyCount(), clientIndex.estimatedSizeBytes() / 1024);
+
+            ClientNotesCoalescer notesCoalescer = ClientNotesCoalescer.forPatients(activePatients, clientIndex::contains);
+            log.info("Клиентов старой системы с несколькими пациентами: {}", notesCoalescer.getSharedClientCount());
 
-            Map<String, LegacyClient> clientMap = legacyClients.stream()
-                    .collect(Collectors.toMap(LegacyClient::getGuid, Function.identity()));
+            Set<ClientDigestReconciler.PatientClient> unchangedClients = reconcileDigests(activePatients, clientIndex, stats, run);
 
-            List<List<PatientProfile>> patientBatches = partitionList(activePatients, config.getPatientBatchSize());
+            processBatches(activePatients, clientIndex, notesCoalescer, unchangedClients, stats, run);
 
-            for (List<PatientProfile> batch : patientBatches) {
-                processPatientsSpan(batch, clientMap, stats);
+            if (notesCoalescer.getCoalescedCount() > 0) {
+                log.info("Повторных запросов заметок исключено: {}", notesCoalescer.getCoalescedCount());
+                metrics.recordApiCallsCoalesced(notesCoalescer.getCoalescedCount());
             }
 
             stats.setEndTime(LocalDateTime.now());
-            log.info("Импорт завершен. Статистика: {}", stats);
+            addApiUsage(stats, run.apiUsage());
+            if (stats.isDeadlineExceeded()) {
+                log.warn("Импорт остановлен по истечении {} мин., продолжение с пациента {}. Частичная статистика: {}",
+                        config.getOperationTimeoutMinutes(), resumeFromPatientId, stats);
+                metrics.recordImportDeadlineExceeded(stats.getProcessedPatients(), stats.getTotalPatients());
+                priorityScheduler.runInterrupted(stats.getStartTime());
+            } else {
+                resumeFromPatientId = null;
+                priorityScheduler.runCompleted();
+                log.info("Импорт завершен. Статистика: {}", stats);
+            }
 
             metrics.recordImportCompleted(stats.getDuration(), !stats.isHasCriticalError());
             metrics.recordNotesProcessed(stats.getCreatedCount(), stats.getUpdatedCount(), stats.getSkippedCount());
 
+        } catch (ImportDeadlineExceededException e) {
+            log.warn("Импорт остановлен по истечении времени до начала обработки пациентов: {}", e.getMessage());
+            stats.setEndTime(LocalDateTime.now());
+            addApiUsage(stats, run.apiUsage());
+            stats.setDeadlineExceeded(true);
+            metrics.recordImportDeadlineExceeded(0, stats.getTotalPatients());
+            priorityScheduler.runInterrupted(stats.getStartTime());
+            metrics.recordImportCompleted(stats.getDuration(), false);
+            runObservation.error(e);
         } catch (Exception e) {
             log.error("Критическая ошибка при импорте", e);
             stats.setEndTime(LocalDateTime.now());
+            addApiUsage(stats, run.apiUsage());
             stats.setHasCriticalError(true);
             metrics.recordImportError("critical_error");
+            runObservation.error(e);
+        } finally {
+            stopRunObservation(runObservation, stats);
+            commitRunEvent(runEvent, SOURCE_LEGACY_API, stats);
+            recordRun(SOURCE_LEGACY_API, stats);
+            runLock.unlock();
         }
 
         return stats;
     }
 
-    private void processPatientsSpan(List<PatientProfile> patients,
-                                     Map<String, LegacyClient> clientMap,
-                                     ImportStatistics stats) {
+    // При приоритетном порядке пациенты, не обработанные из-за дедлайна, идут первыми в следующем запуске,
+    // поэтому отдельная контрольная точка по ID нужна только для порядка по ID
+    private List<PatientProfile> orderPatients(List<PatientProfile> patients) {
+        if (config.isEnablePriorityOrdering()) {
+            return priorityScheduler.order(patients);
+        }
+        return resumeFromCheckpoint(patients);
+    }
+
+    // Пациенты упорядочиваются по ID, после остановки по дедлайну следующий запуск начинается с точки остановки
+    private List<PatientProfile> resumeFromCheckpoint(List<PatientProfile> patients) {
+        List<PatientProfile> ordered = new ArrayList<>(patients);
+        ordered.sort(Comparator.comparing(PatientProfile::getId, Comparator.nullsLast(Comparator.naturalOrder())));
+
+        Long checkpoint = resumeFromPatientId;
+        if (checkpoint == null) {
+            return ordered;
+        }
+
+        int position = 0;
+        while (position < ordered.size()
+                && ordered.get(position).getId() != null
+                && ordered.get(position).getId() < checkpoint) {
+            position++;
+        }
+        log.info("Продолжаем импорт с контрольной точки: пациент {}", checkpoint);
+        Collections.rotate(ordered, -position);
+        return ordered;
+    }
+
+    // Пары "пациент - клиент", которые можно не загружать: дайджест заметок клиента не изменился
+    private Set<ClientDigestReconciler.PatientClient> reconcileDigests(List<PatientProfile> patients,
+                                                                      LegacyClientIndex clientIndex,
+                                                                      ImportStatistics stats,
+                                                                      ImportRunContext run) {
+        if (!config.isEnableDigestReconciliation()) {
+            return Set.of();
+        }
+        LocalDate dateTo = LocalDate.now();
+        LocalDate dateFrom = dateTo.minusDays(config.getDaysToImport());
+        return timed(ImportPhase.DIGEST_RECONCILIATION, stats, () -> digestReconciler.reconcile(
+                patients, clientIndex, dateFrom, dateTo, priorityScheduler.getRefreshRequests(), run));
+    }
+
+    // Пачки нарезаются по ходу запуска размером, который выбирает batchSizeTuner.
+    // Загрузки следующих пачек ставятся в полосы заранее и идут, пока записывается текущая пачка
+    void processBatches(List<PatientProfile> patients,
+                        LegacyClientIndex clientIndex,
+                        ClientNotesCoalescer notesCoalescer,
+                        Set<ClientDigestReconciler.PatientClient> unchangedClients,
+                        ImportStatistics stats,
+                        ImportRunContext run) {
+        int fetchAhead = pipeline.getFetchAheadBatches();
+        batchSizeTuner.startRun(fetchAhead);
+        List<List<PatientProfile>> batches = new ArrayList<>();
+        List<Map<String, CompletableFuture<NoteImportPipeline.ResolvedNotes>>> prefetched = new ArrayList<>();
+        List<PatientImportLocks.BatchClaims> claims = new ArrayList<>();
+        Set<String> submittedClients = new HashSet<>();
+        int carved = 0;
+        try {
+            for (int i = 0; i < batches.size() || carved < patients.size(); i++) {
+                while (batches.size() <= i + fetchAhead && carved < patients.size()) {
+                    List<PatientProfile> batch = patients.subList(carved,
+                            Math.min(patients.size(), carved + batchSizeTuner.getCurrentSize()));
+                    carved += batch.size();
+                    batches.add(batch);
+                    PatientImportLocks.BatchClaims batchClaims = patientLocks.openBatch(SOURCE_LEGACY_API);
+                    claims.add(batchClaims);
+                    prefetched.add(prefetchNotes(batch, batchClaims, clientIndex, notesCoalescer,
+                            unchangedClients, submittedClients, stats, run));
+                }
+
+                long notesBefore = stats.getProcessedNotes();
+                long start = System.nanoTime();
+                boolean completed;
+                try (PatientImportLocks.BatchClaims batchClaims = claims.get(i)) {
+                    completed = processBatch(batches.get(i), batchClaims, clientIndex, notesCoalescer,
+                            unchangedClients, prefetched.get(i), stats, run);
+                }
+                if (!completed) {
+                    break;
+                }
+                // Последняя пачка может быть неполной, для подбора размера она не показательна
+                if (i + 1 < batches.size() || carved < patients.size()) {
+                    batchSizeTuner.observe(batches.get(i).size(), stats.getProcessedNotes() - notesBefore,
+                            System.nanoTime() - start);
+                }
+            }
+        } finally {
+            // После остановки по дедлайну еще не начатые загрузки снимаются с полос
+            prefetched.forEach(batch -> batch.values().forEach(fetch -> fetch.cancel(false)));
+            claims.forEach(PatientImportLocks.BatchClaims::close);
+            stats.setPatientBatchSize(batchSizeTuner.finishRun());
+        }
+    }
+
+    // Возвращает false, если время импорта истекло и обработку нужно остановить
+    private boolean processPatientsSpan(List<PatientProfile> patients,
+                                        PatientImportLocks.BatchClaims claims,
+                                        LegacyClientIndex clientIndex,
+                                        ClientNotesCoalescer notesCoalescer,
+                                        Set<ClientDigestReconciler.PatientClient> unchangedClients,
+                                        ImportStatistics stats,
+                                        ImportRunContext run) {
         for (PatientProfile patient : patients) {
-            try {
-                List<String> oldGuids = patient.getOldClientGuids();
-                if (oldGuids.isEmpty()) {
+            if (run.deadline().isExpired()
+                    || !processPatient(patient, claims, clientIndex, notesCoalescer, unchangedClients, Map.of(), stats, run)) {
+                stopAtCheckpoint(patient, stats);
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Пациенты пачки обрабатываются в порядке готовности их загрузок в полосах агентств,
+    // поэтому пациенты быстрых агентств не ждут ответа медленного. Запись в БД остается в потоке импорта.
+    private boolean processPatientsInLanes(List<PatientProfile> patients,
+                                           PatientImportLocks.BatchClaims claims,
+                                           LegacyClientIndex clientIndex,
+                                           ClientNotesCoalescer notesCoalescer,
+                                           Set<ClientDigestReconciler.PatientClient> unchangedClients,
+                                           Map<String, CompletableFuture<NoteImportPipeline.ResolvedNotes>> prefetched,
+                                           ImportStatistics stats,
+                                           ImportRunContext run) {
+        BlockingQueue<PatientProfile> ready = new LinkedBlockingQueue<>();
+        pipeline.trackWriteQueue(ready);
+        for (PatientProfile patient : patients) {
+            CompletableFuture<?>[] fetches = patient.getOldClientGuids().stream()
+                    .map(prefetched::get)
+                    .filter(Objects::nonNull)
+                    .toArray(CompletableFuture[]::new);
+            CompletableFuture.allOf(fetches).whenComplete((result, error) -> ready.add(patient));
+        }
+
+        Set<PatientProfile> done = Collections.newSetFromMap(new IdentityHashMap<>());
+        try {
+            for (int i = 0; i < patients.size(); i++) {
+                PatientProfile patient = nextReady(ready, run.deadline());
+                if (patient == null || run.deadline().isExpired() || !processReadyPatient(patient, claims, clientIndex,
+                        notesCoalescer, unchangedClients, prefetched, stats, run)) {
+                    // Продолжение с первого необработанного пациента пачки; уже обработанные после него
+                    // при повторе дадут только пропуски неизмененных заметок
+                    patients.stream()
+                            .filter(candidate -> !done.contains(candidate))
+                            .findFirst()
+                            .ifPresent(checkpoint -> stopAtCheckpoint(checkpoint, stats));
+                    return false;
+                }
+                done.add(patient);
+            }
+            return true;
+        } finally {
+            pipeline.trackWriteQueue(null);
+        }
+    }
+
+    // Время записи пациента - занятость стадии записи конвейера
+    private boolean processReadyPatient(PatientProfile patient,
+                                        PatientImportLocks.BatchClaims claims,
+                                        LegacyClientIndex clientIndex,
+                                        ClientNotesCoalescer notesCoalescer,
+                                        Set<ClientDigestReconciler.PatientClient> unchangedClients,
+                                        Map<String, CompletableFuture<NoteImportPipeline.ResolvedNotes>> prefetched,
+                                        ImportStatistics stats,
+                                        ImportRunContext run) {
+        long start = System.nanoTime();
+        try {
+            return processPatient(patient, claims, clientIndex, notesCoalescer, unchangedClients, prefetched, stats, run);
+        } finally {
+            pipeline.recordWrite(System.nanoTime() - start);
+        }
+    }
+
+    private static PatientProfile nextReady(BlockingQueue<PatientProfile> ready, ImportDeadline deadline) {
+        try {
+            return deadline.isBounded()
+                    ? ready.poll(deadline.remainingMillis(), TimeUnit.MILLISECONDS)
+                    : ready.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Импорт прерван в ожидании загрузки заметок", e);
+        }
+    }
+
+    // Возвращает false, если пациент прерван по истечении времени импорта.
+    // Пациент, захваченный импортом отдельного пациента, пропускается: его заметки обновляет тот импорт
+    private boolean processPatient(PatientProfile patient,
+                                   PatientImportLocks.BatchClaims claims,
+                                   LegacyClientIndex clientIndex,
+                                   ClientNotesCoalescer notesCoalescer,
+                                   Set<ClientDigestReconciler.PatientClient> unchangedClients,
+                                   Map<String, CompletableFuture<NoteImportPipeline.ResolvedNotes>> prefetched,
+                                   ImportStatistics stats,
+                                   ImportRunContext run) {
+        try {
+            if (!claims.tryClaim(patient.getId())) {
+                log.info("Пациент {} обрабатывается другим импортом, пропущен", patient.getId());
+                metrics.recordPatientLockBusy(SOURCE_LEGACY_API);
+                return true;
+            }
+            int changedBefore = stats.getCreatedCount() + stats.getUpdatedCount();
+            String newestModified = null;
+            List<String> oldGuids = patient.getOldClientGuids();
+            for (String oldGuid : oldGuids) {
+                if (!clientIndex.contains(oldGuid)
+                        || unchangedClients.contains(new ClientDigestReconciler.PatientClient(idOf(patient), oldGuid))) {
                     continue;
                 }
+                int errorsBefore = stats.getErrorCount();
+                List<LegacyNote> legacyNotes = importNotesForPatient(patient, oldGuid,
+                        clientIndex.getAgency(oldGuid), notesCoalescer, prefetched.get(oldGuid), stats, run);
+                newestModified = newestModified(newestModified, legacyNotes);
+                if (stats.getErrorCount() == errorsBefore) {
+                    afterCommit(() -> digestReconciler.recordImported(patient.getId(), oldGuid, legacyNotes));
+                } else {
+                    digestReconciler.forget(patient.getId(), oldGuid);
+                }
+            }
+            stats.incrementProcessedPatients();
+            LocalDateTime newestChange = newestModified != null ? parseDateTime(newestModified) : null;
+            boolean changed = stats.getCreatedCount() + stats.getUpdatedCount() > changedBefore;
+            afterCommit(() -> priorityScheduler.recordImported(patient.getId(), newestChange, changed));
+        } catch (Exception e) {
+            if (run.deadline().isExpired()) {
+                // Прерванный пациент будет обработан заново в следующем запуске
+                return false;
+            }
+            log.error("Ошибка импорта заметок для пациента {}", patient.getId(), e);
+            stats.incrementErrorCount();
+            metrics.recordImportError("patient_processing_error");
+        }
+        return true;
+    }
 
-                for (String oldGuid : oldGuids) {
-                    LegacyClient legacyClient = clientMap.get(oldGuid);
-                    if (legacyClient != null) {
-                        importNotesForPatient(patient, legacyClient, stats);
-                    }
+    // Дайджесты и активность пациента запоминаются только после фиксации пачки: при откате
+    // следующий запуск должен загрузить клиентов заново, а не пропустить их как неизмененных
+    private static void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+
+    private Observation importRunObservation(String source) {
+        return Observation.createNotStarted(ImportObservations.IMPORT_RUN, observationRegistry)
+                .lowCardinalityKeyValue(ImportObservations.SOURCE, source);
+    }
+
+    private void stopRunObservation(Observation runObservation, ImportStatistics stats) {
+        runObservation.highCardinalityKeyValue(ImportObservations.PATIENT_COUNT, String.valueOf(stats.getTotalPatients()))
+                .highCardinalityKeyValue(ImportObservations.NOTE_COUNT,
+                        String.valueOf(stats.getCreatedCount() + stats.getUpdatedCount()))
+                .stop();
+    }
+
+    private static void commitRunEvent(ImportRunEvent event, String source, ImportStatistics stats) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.source = source;
+            event.totalPatients = stats.getTotalPatients();
+            event.processedPatients = stats.getProcessedPatients();
+            event.createdCount = stats.getCreatedCount();
+            event.updatedCount = stats.getUpdatedCount();
+            event.skippedCount = stats.getSkippedCount();
+            event.errorCount = stats.getErrorCount();
+            event.deadlineExceeded = stats.isDeadlineExceeded();
+            event.commit();
+        }
+    }
+
+    private void recordRun(String source, ImportStatistics stats) {
+        try {
+            runHistory.record(source, stats);
+        } catch (Exception e) {
+            log.warn("Не удалось записать запуск импорта в историю: {}", e.getMessage());
+        }
+    }
+
+    // Пачка пациентов в своей транзакции: спан, JFR-событие и сброс накопленных изменений заметок в БД.
+    // Если пачка не зафиксирована (например, заметку одновременно записал другой узел), ее изменения
+    // откатываются, пачка считается одной ошибкой и импорт продолжается со следующей
+    private boolean processBatch(List<PatientProfile> batch,
+                                 PatientImportLocks.BatchClaims claims,
+                                 LegacyClientIndex clientIndex,
+                                 ClientNotesCoalescer notesCoalescer,
+                                 Set<ClientDigestReconciler.PatientClient> unchangedClients,
+                                 Map<String, CompletableFuture<NoteImportPipeline.ResolvedNotes>> prefetched,
+                                 ImportStatistics stats,
+                                 ImportRunContext run) {
+        PatientBatchEvent event = new PatientBatchEvent();
+        event.begin();
+        ImportStatistics batchStats = new ImportStatistics();
+        batchStats.setStartTime(LocalDateTime.now());
+
+        ImportStatistics committed = batchStats;
+        boolean completed;
+        try {
+            completed = Boolean.TRUE.equals(batchTransaction.execute(status -> {
+                boolean result = batchObservation(batch).observe(() -> prefetched.isEmpty()
+                        ? processPatientsSpan(batch, claims, clientIndex, notesCoalescer, unchangedClients, batchStats, run)
+                        : processPatientsInLanes(batch, claims, clientIndex, notesCoalescer, unchangedClients,
+                                prefetched, batchStats, run));
+                flushNotes(batchStats);
+                return result;
+            }));
+        } catch (RuntimeException e) {
+            log.error("Пачка из {} пациентов не записана, ее изменения отменены", batch.size(), e);
+            metrics.recordImportError("batch_commit_error");
+            committed = new ImportStatistics();
+            committed.setStartTime(batchStats.getStartTime());
+            committed.incrementErrorCount();
+            completed = !run.deadline().isExpired();
+            if (!completed) {
+                stopAtCheckpoint(batch.get(0), stats);
+            }
+        }
+
+        committed.setEndTime(LocalDateTime.now());
+        stats.merge(committed);
+        log.debug("Пачка из {} пациентов обработана: {} заметок/с, БД {} мс",
+                batch.size(), String.format("%.1f", committed.getNotesPerSecond()),
+                committed.getPhaseTime(ImportStatistics.Phase.DB).toMillis());
+
+        event.end();
+        if (event.shouldCommit()) {
+            event.patientCount = batch.size();
+            event.firstPatientId = idOf(batch.get(0));
+            event.lastPatientId = idOf(batch.get(batch.size() - 1));
+            event.completed = completed;
+            event.commit();
+        }
+        return completed;
+    }
+
+    // Загрузки заметок пачки ставятся в полосы агентств заранее, по одной на клиента за запуск
+    // (submittedClients): клиента нескольких пациентов следующие владельцы получают через notesCoalescer.
+    // Заметки клиента одного пациента после загрузки проходят стадию поиска конвейера.
+    // Пустой результат - полосы выключены или загружать нечего, пачка обрабатывается последовательно
+    private Map<String, CompletableFuture<NoteImportPipeline.ResolvedNotes>> prefetchNotes(List<PatientProfile> batch,
+                                          PatientImportLocks.BatchClaims claims,
+                                          LegacyClientIndex clientIndex,
+                                          ClientNotesCoalescer notesCoalescer,
+                                          Set<ClientDigestReconciler.PatientClient> unchangedClients,
+                                          Set<String> submittedClients,
+                                          ImportStatistics stats,
+                                          ImportRunContext run) {
+        if (!laneScheduler.isEnabled()) {
+            return Map.of();
+        }
+        LocalDate dateTo = LocalDate.now();
+        LocalDate dateFrom = dateTo.minusDays(config.getDaysToImport());
+
+        Map<String, CompletableFuture<NoteImportPipeline.ResolvedNotes>> prefetched = new HashMap<>();
+        for (PatientProfile patient : batch) {
+            // Пациент захватывается до загрузки, чтобы найденные стадией поиска версии заметок
+            // не устарели из-за импорта этого пациента; занятый пациент пропускается при записи
+            if (!claims.tryClaim(patient.getId())) {
+                continue;
+            }
+            for (String clientGuid : patient.getOldClientGuids()) {
+                if (!clientIndex.contains(clientGuid)
+                        || submittedClients.contains(clientGuid)
+                        || notesCoalescer.isLoaded(clientGuid)
+                        || unchangedClients.contains(new ClientDigestReconciler.PatientClient(idOf(patient), clientGuid))) {
+                    continue;
                 }
-            } catch (Exception e) {
-                log.error("Ошибка импорта заметок для пациента {}", patient.getId(), e);
-                stats.incrementErrorCount();
-                metrics.recordImportError("patient_processing_error");
+                submittedClients.add(clientGuid);
+                String agency = clientIndex.getAgency(clientGuid);
+                CompletableFuture<List<LegacyNote>> fetched = laneScheduler.submit(agency, () ->
+                        timed(ImportPhase.NOTES_FETCH, stats, () -> notesFetcher.fetchNotes(
+                                agency, clientGuid, dateFrom, dateTo, run)));
+                prefetched.put(clientGuid, pipeline.afterFetch(fetched, !notesCoalescer.isShared(clientGuid)));
             }
         }
+        return prefetched;
+    }
+
+    private void flushNotes(ImportStatistics batchStats) {
+        int pendingWrites = batchStats.getCreatedCount() + batchStats.getUpdatedCount();
+        if (pendingWrites == 0) {
+            return;
+        }
+
+        NoteFlushEvent event = new NoteFlushEvent();
+        event.begin();
+        long start = System.nanoTime();
+        noteRepository.flush();
+        batchStats.addPhaseTime(ImportStatistics.Phase.DB, System.nanoTime() - start);
+        event.end();
+        if (event.shouldCommit()) {
+            event.pendingWrites = pendingWrites;
+            event.commit();
+        }
+    }
+
+    private static long idOf(PatientProfile patient) {
+        return patient.getId() != null ? patient.getId() : -1;
+    }
+
+    private Observation batchObservation(List<PatientProfile> batch) {
+        return Observation.createNotStarted(ImportObservations.PATIENT_BATCH, observationRegistry)
+                .highCardinalityKeyValue(ImportObservations.PATIENT_COUNT, String.valueOf(batch.size()))
+                .highCardinalityKeyValue(ImportObservations.FIRST_PATIENT_ID, String.valueOf(batch.get(0).getId()))
+                .highCardinalityKeyValue(ImportObservations.LAST_PATIENT_ID,
+                        String.valueOf(batch.get(batch.size() - 1).getId()));
+    }
+
+    private void stopAtCheckpoint(PatientProfile patient, ImportStatistics stats) {
+        resumeFromPatientId = patient.getId();
+        stats.setDeadlineExceeded(true);
     }
 
-    private void importNotesForPatient(PatientProfile patient, LegacyClient legacyClient,
-                                       ImportStatistics stats) throws Exception {
+    // Возвращает полученные заметки клиента; prefetched - загрузка в полосе агентства или null
+    private List<LegacyNote> importNotesForPatient(PatientProfile patient, String clientGuid, String agency,
+                                                   ClientNotesCoalescer notesCoalescer,
+                                                   CompletableFuture<NoteImportPipeline.ResolvedNotes> prefetched,
+                                                   ImportStatistics stats, ImportRunContext run) throws Exception {
         LocalDate dateTo = LocalDate.now();
         LocalDate dateFrom = dateTo.minusDays(config.getDaysToImport());
 
-        List<LegacyNote> legacyNotes = legacyApiService.getClientNotes(
-                legacyClient.getAgency(),
-                legacyClient.getGuid(),
-                dateFrom,
-                dateTo
-        );
+        // Время фетча учитывается только для фактической загрузки, ожидание общего результата не считается
+        List<LegacyNote> legacyNotes = notesCoalescer.getNotes(clientGuid, prefetched != null
+                ? () -> awaitPrefetched(prefetched, run.deadline()).notes()
+                : () -> timed(ImportPhase.NOTES_FETCH, stats, () -> notesFetcher.fetchNotes(
+                        agency,
+                        clientGuid,
+                        dateFrom,
+                        dateTo,
+                        run
+                )));
 
         log.debug("Получено {} заметок для пациента {} (клиент {})",
-                legacyNotes.size(), patient.getId(), legacyClient.getGuid());
+                legacyNotes.size(), patient.getId(), clientGuid);
+
+        // Заметки клиента одного пациента уже сопоставлены с БД стадией поиска конвейера
+        NoteImportPipeline.ResolvedNotes resolved = prefetched != null ? prefetched.getNow(null) : null;
+        if (resolved != null && resolved.isResolved()) {
+            importResolvedNotes(patient, resolved, stats);
+        } else {
+            importNotes(patient, legacyNotes, stats);
+        }
+        return legacyNotes;
+    }
 
+    private static <T> T awaitPrefetched(CompletableFuture<T> prefetched, ImportDeadline deadline) throws Exception {
+        try {
+            return deadline.isBounded()
+                    ? prefetched.get(Math.max(1, deadline.remainingMillis()), TimeUnit.MILLISECONDS)
+                    : prefetched.get();
+        } catch (TimeoutException e) {
+            throw new ImportDeadlineExceededException("Истекло время ожидания загрузки заметок в полосе агентства");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    // Даты старой системы имеют фиксированный формат "yyyy-MM-dd HH:mm:ss[ zzz]",
+    // поэтому самую позднюю можно найти сравнением строк, не разбирая каждую
+    private static String newestModified(String current, List<LegacyNote> legacyNotes) {
+        String newest = current;
+        for (LegacyNote legacyNote : legacyNotes) {
+            String modified = legacyNote.getModifiedDateTime();
+            if (modified != null && !modified.isBlank() && (newest == null || modified.compareTo(newest) > 0)) {
+                newest = modified;
+            }
+        }
+        return newest;
+    }
+
+    private void importNotes(PatientProfile patient, List<LegacyNote> legacyNotes, ImportStatistics stats) {
         for (LegacyNote legacyNote : legacyNotes) {
             try {
                 importSingleNote(patient, legacyNote, stats);
@@ -150,25 +713,167 @@ public class EnhancedImportService {
         }
     }
 
+    private void importResolvedNotes(PatientProfile patient, NoteImportPipeline.ResolvedNotes resolved,
+                                     ImportStatistics stats) {
+        // Повтор GUID в ответе не виден стадии поиска, такая заметка ищется в транзакции импорта
+        Set<String> seenGuids = new HashSet<>();
+        for (LegacyNote legacyNote : resolved.notes()) {
+            try {
+                if (seenGuids.add(String.valueOf(legacyNote.getGuid()))) {
+                    importResolvedNote(patient, legacyNote, resolved, stats);
+                } else {
+                    importSingleNote(patient, legacyNote, stats);
+                }
+            } catch (Exception e) {
+                log.error("Ошибка импорта заметки {} для пациента {}",
+                        legacyNote.getGuid(), patient.getId(), e);
+                stats.incrementErrorCount();
+                metrics.recordImportError("note_processing_error");
+            }
+        }
+    }
+
+    // Офлайн-импорт из архива ответов: каждая запись сохраняется в своей транзакции (replayRecord),
+    // чтобы контекст персистентности не рос на всем объеме архива
+    @SuppressWarnings("try")
+    @Transactional(Transactional.TxType.NOT_SUPPORTED)
+    public ImportStatistics replayFromArchive(Path source) {
+        ImportStatistics stats = new ImportStatistics();
+        stats.setStartTime(LocalDateTime.now());
+
+        if (!runLock.tryLock()) {
+            log.warn("Предыдущий импорт еще выполняется, офлайн-импорт пропущен");
+            stats.setEndTime(LocalDateTime.now());
+            stats.setAlreadyRunning(true);
+            metrics.recordImportOverlapSkipped();
+            return stats;
+        }
+
+        metrics.recordImportStarted();
+        Observation runObservation = importRunObservation(SOURCE_ARCHIVE).start();
+        ImportRunEvent runEvent = new ImportRunEvent();
+        runEvent.begin();
+
+        try (Observation.Scope ignored = runObservation.openScope()) {
+            log.info("Начинаем офлайн-импорт заметок из архива {}", source);
+
+            Map<String, List<PatientProfile>> patientsByGuid =
+                    PatientClientLookup.groupByClientGuid(patientRepository.findActivePatients());
+
+            long notesRead = replayReader.replay(source, (clientGuid, legacyNotes) -> {
+                List<PatientProfile> owners = patientsByGuid.get(clientGuid);
+                if (owners != null) {
+                    replayRecord(owners, legacyNotes, stats);
+                }
+            });
+
+            stats.setEndTime(LocalDateTime.now());
+            log.info("Офлайн-импорт завершен, прочитано заметок: {}. Статистика: {}", notesRead, stats);
+
+            metrics.recordImportCompleted(stats.getDuration(), !stats.isHasCriticalError());
+            metrics.recordNotesProcessed(stats.getCreatedCount(), stats.getUpdatedCount(), stats.getSkippedCount());
+
+        } catch (Exception e) {
+            log.error("Критическая ошибка при офлайн-импорте", e);
+            stats.setEndTime(LocalDateTime.now());
+            stats.setHasCriticalError(true);
+            metrics.recordImportError("critical_error");
+            runObservation.error(e);
+        } finally {
+            stopRunObservation(runObservation, stats);
+            commitRunEvent(runEvent, SOURCE_ARCHIVE, stats);
+            recordRun(SOURCE_ARCHIVE, stats);
+            runLock.unlock();
+        }
+
+        return stats;
+    }
+
+    // Запись архива сохраняется в своей транзакции (batchTransaction): пациенты захватываются внутри нее
+    // и освобождаются после фиксации, ошибка записи откатывает только эту запись
+    private void replayRecord(List<PatientProfile> owners, List<LegacyNote> legacyNotes, ImportStatistics stats) {
+        ImportStatistics recordStats = new ImportStatistics();
+        try {
+            batchTransaction.executeWithoutResult(status -> {
+                for (PatientProfile patient : owners) {
+                    try (PatientImportLocks.Claim claim = patientLocks.tryClaim(patient.getId(), SOURCE_ARCHIVE)) {
+                        if (claim == null) {
+                            metrics.recordPatientLockBusy(SOURCE_ARCHIVE);
+                            continue;
+                        }
+                        importNotes(patient, legacyNotes, recordStats);
+                    }
+                }
+                flushNotes(recordStats);
+            });
+            stats.merge(recordStats);
+        } catch (RuntimeException e) {
+            log.error("Запись архива с {} заметками не сохранена, ее изменения отменены", legacyNotes.size(), e);
+            metrics.recordImportError("batch_commit_error");
+            stats.incrementErrorCount();
+        }
+    }
+
     @Transactional
     public void importSingleNote(PatientProfile patient, LegacyNote legacyNote,
                                  ImportStatistics stats) {
+        if (!isImportable(patient, legacyNote, stats)) {
+            return;
+        }
+
+        Optional<PatientNote> existingNote = timed(ImportPhase.NOTE_LOOKUP, stats,
+                () -> noteRepository.findByLegacyNoteGuid(legacyNote.getGuid()));
+
+        CompanyUser user = timed(ImportPhase.USER_RESOLUTION, stats, () -> getOrCreateUser(legacyNote.getLoggedUser()));
+
+        applyNote(patient, legacyNote, existingNote, user, stats);
+    }
+
+    // Запись по результату стадии поиска: неизмененная заметка пропускается без обращения к БД,
+    // измененная загружается по первичному ключу (id, created_date_time), известный автор подставляется ссылкой без запроса
+    private void importResolvedNote(PatientProfile patient, LegacyNote legacyNote,
+                                    NoteImportPipeline.ResolvedNotes resolved, ImportStatistics stats) {
+        if (!isImportable(patient, legacyNote, stats)) {
+            return;
+        }
+
+        NoteVersion version = resolved.existing().get(legacyNote.getGuid());
+        if (version != null && !parseDateTime(legacyNote.getModifiedDateTime()).isAfter(version.lastModifiedDateTime())) {
+            stats.incrementSkippedCount();
+            log.debug("Заметка {} пропущена - версия в БД новее", legacyNote.getGuid());
+            return;
+        }
+
+        Optional<PatientNote> existingNote = version != null
+                ? timed(ImportPhase.NOTE_LOOKUP, stats,
+                        () -> noteRepository.findByIdAndCreatedDateTime(version.id(), version.createdDateTime()))
+                : Optional.empty();
+
+        Long userId = resolved.userIds().get(NoteImportPipeline.normalizeLogin(legacyNote.getLoggedUser()));
+        CompanyUser user = userId != null
+                ? userRepository.getReferenceById(userId)
+                : timed(ImportPhase.USER_RESOLUTION, stats, () -> getOrCreateUser(legacyNote.getLoggedUser()));
+
+        applyNote(patient, legacyNote, existingNote, user, stats);
+    }
+
+    private boolean isImportable(PatientProfile patient, LegacyNote legacyNote, ImportStatistics stats) {
         if (legacyNote.getGuid() == null || legacyNote.getGuid().trim().isEmpty()) {
             log.warn("Пропускаем заметку без GUID для пациента {}", patient.getId());
             stats.incrementSkippedCount();
-            return;
+            return false;
         }
 
         if (legacyNote.getComments() == null || legacyNote.getComments().trim().isEmpty()) {
             log.warn("Пропускаем пустую заметку {} для пациента {}", legacyNote.getGuid(), patient.getId());
             stats.incrementSkippedCount();
-            return;
+            return false;
         }
+        return true;
+    }
 
-        Optional<PatientNote> existingNote = noteRepository.findByLegacyNoteGuid(legacyNote.getGuid());
-
-        CompanyUser user = getOrCreateUser(legacyNote.getLoggedUser());
-
+    private void applyNote(PatientProfile patient, LegacyNote legacyNote, Optional<PatientNote> existingNote,
+                           CompanyUser user, ImportStatistics stats) {
         LocalDateTime createdDateTime = parseDateTime(legacyNote.getCreatedDateTime());
         LocalDateTime modifiedDateTime = parseDateTime(legacyNote.getModifiedDateTime());
 
@@ -179,7 +884,7 @@ public class EnhancedImportService {
                 note.setNote(legacyNote.getComments());
                 note.setLastModifiedDateTime(modifiedDateTime);
                 note.setLastModifiedByUser(user);
-                noteRepository.save(note);
+                saveNote(note, patient, "update", stats);
                 stats.incrementUpdatedCount();
                 log.debug("Обновлена заметка {} для пациента {}", legacyNote.getGuid(), patient.getId());
             } else {
@@ -196,12 +901,20 @@ public class EnhancedImportService {
             newNote.setLastModifiedByUser(user);
             newNote.setLegacyNoteGuid(legacyNote.getGuid());
 
-            noteRepository.save(newNote);
+            saveNote(newNote, patient, "create", stats);
             stats.incrementCreatedCount();
             log.debug("Создана заметка {} для пациента {}", legacyNote.getGuid(), patient.getId());
         }
     }
 
+    private void saveNote(PatientNote note, PatientProfile patient, String operation, ImportStatistics stats) {
+        Observation.createNotStarted(ImportObservations.NOTE_WRITE, observationRegistry)
+                .lowCardinalityKeyValue(ImportObservations.OPERATION, operation)
+                .highCardinalityKeyValue(ImportObservations.PATIENT_ID, String.valueOf(patient.getId()))
+                .highCardinalityKeyValue(ImportObservations.NOTE_GUID, note.getLegacyNoteGuid())
+                .observe(() -> timed(ImportPhase.NOTE_WRITE, stats, () -> noteRepository.save(note)));
+    }
+
     private CompanyUser getOrCreateUser(String login) {
         if (login == null || login.trim().isEmpty()) {
             log.warn("Получен пустой логин пользователя, используем системного пользователя");
@@ -217,15 +930,53 @@ public class EnhancedImportService {
                 });
     }
 
-    private LocalDateTime parseDateTime(String dateTimeString) {
+    @FunctionalInterface
+    private interface PhaseOperation<T, E extends Exception> {
+        T execute() throws E;
+    }
+
+    // Время фаз БД дополнительно суммируется в статистику запуска; время API и разбора JSON
+    // берется из LegacyApiUsage, чтобы не учитывать ожидание слота ограничителя и объединенных запросов
+    private <T, E extends Exception> T timed(ImportPhase phase, ImportStatistics stats,
+                                             PhaseOperation<T, E> operation) throws E {
+        Timer.Sample sample = metrics.startPhaseTimer();
+        long start = System.nanoTime();
+        boolean success = false;
+        try {
+            T result = operation.execute();
+            success = true;
+            return result;
+        } finally {
+            metrics.recordPhase(sample, phase, success);
+            if (isDatabasePhase(phase)) {
+                stats.addPhaseTime(ImportStatistics.Phase.DB, System.nanoTime() - start);
+            }
+        }
+    }
+
+    private static boolean isDatabasePhase(ImportPhase phase) {
+        return phase == ImportPhase.NOTE_LOOKUP
+                || phase == ImportPhase.NOTE_WRITE
+                || phase == ImportPhase.USER_RESOLUTION;
+    }
+
+    private static void addApiUsage(ImportStatistics stats, LegacyApiUsage.Meter apiUsage) {
+        LegacyApiUsage.Snapshot usage = apiUsage.snapshot();
+        stats.addApiCalls(usage.calls());
+        stats.addBytesReceived(usage.bytesReceived());
+        stats.addPhaseTime(ImportStatistics.Phase.FETCH, usage.fetchNanos());
+        stats.addPhaseTime(ImportStatistics.Phase.PARSE, usage.decodeNanos());
+    }
+
+    LocalDateTime parseDateTime(String dateTimeString) {
         if (dateTimeString == null || dateTimeString.trim().isEmpty()) {
             log.warn("Получена пустая дата, используем текущее время");
             return LocalDateTime.now();
         }
 
         try {
-            String cleanDateTime = dateTimeString.trim().replaceAll(" [A-Z]{3}$", "");
-            return LocalDateTime.parse(cleanDateTime, DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"));
+            String cleanDateTime = LEGACY_ZONE_SUFFIX.matcher(dateTimeString.trim()).replaceFirst("");
+            return LocalDateTime.parse(cleanDateTime, LEGACY_DATE_TIME);
         } catch (Exception e) {
             log.warn("Не удалось распарсить дату: '{}', используем текущее время. Ошибка: {}",
                     dateTimeString, e.getMessage());
@@ -233,33 +984,24 @@ public class EnhancedImportService {
         }
     }
 
-    private <T> List<List<T>> partitionList(List<T> list, int batchSize) {
-        if (batchSize <= 0) {
-            throw new IllegalArgumentException("Размер батча должен быть больше 0");
-        }
-
-        List<List<T>> partitions = new ArrayList<>();
-        for (int i = 0; i < list.size(); i += batchSize) {
-            partitions.add(list.subList(i, Math.min(i + batchSize, list.size())));
-        }
-        return partitions;
-    }
-
+    @ReadOnlyTransactional
     public long getTotalNotesCount() {
         return noteRepository.count();
     }
 
+    @ReadOnlyTransactional
     public long getImportedNotesCount() {
         return noteRepository.countImportedNotes();
     }
 
+    @ReadOnlyTransactional
     public LocalDateTime getLastImportTime() {
         return noteRepository.findTopByLegacyNoteGuidIsNotNullOrderByLastModifiedDateTimeDesc()
                 .map(PatientNote::getLastModifiedDateTime)
                 .orElse(null);
     }
 
-    @Transactional
+    @ReadOnlyTransactional
     public ImportStatistics getImportStatistics() {
         ImportStatistics stats = new ImportStatistics();
 
@@ -294,21 +1036,37 @@ public class EnhancedImportService {
                 throw new IllegalArgumentException("Пациент с ID " + patientId + " неактивен (статус: " + patient.getStatusId() + ")");
             }
 
-            List<LegacyClient> allClients = legacyApiService.getAllClients();
-            Map<String, LegacyClient> clientMap = allClients.stream()
-                    .collect(Collectors.toMap(LegacyClient::getGuid, Function.identity()));
+            // Захват до конца транзакции: плановый импорт, еще не дошедший до пациента, пропустит его.
+            // Пациент, которого уже обрабатывает плановый импорт, обновится им же
+            PatientImportLocks.Claim claim = patientLocks.tryClaim(patientId, SOURCE_ON_DEMAND);
+            if (claim == null) {
+                log.info("Пациент {} уже обрабатывается другим импортом, импорт пациента пропущен", patientId);
+                metrics.recordPatientLockBusy(SOURCE_ON_DEMAND);
+                stats.setEndTime(LocalDateTime.now());
+                stats.setAlreadyRunning(true);
+                return stats;
+            }
 
-            List<String> oldGuids = patient.getOldClientGuids();
-            for (String oldGuid : oldGuids) {
-                LegacyClient legacyClient = clientMap.get(oldGuid);
-                if (legacyClient != null) {
-                    importNotesForPatient(patient, legacyClient, stats);
-                } else {
-                    log.warn("Клиент с GUID {} не найден в старой системе", oldGuid);
+            ImportRunContext run = ImportRunContext.start(config.getOperationTimeoutMillis());
+            try (claim) {
+                LegacyClientIndex clientIndex = timed(ImportPhase.CLIENT_DIRECTORY_FETCH, stats,
+                        () -> legacyApiService.getClientIndex(run));
+
+                ClientNotesCoalescer notesCoalescer = ClientNotesCoalescer.forPatients(List.of(patient), clientIndex::contains);
+
+                List<String> oldGuids = patient.getOldClientGuids();
+                for (String oldGuid : oldGuids) {
+                    if (clientIndex.contains(oldGuid)) {
+                        importNotesForPatient(patient, oldGuid, clientIndex.getAgency(oldGuid),
+                                notesCoalescer, null, stats, run);
+                    } else {
+                        log.warn("Клиент с GUID {} не найден в старой системе", oldGuid);
+                    }
                 }
             }
 
             stats.setEndTime(LocalDateTime.now());
+            addApiUsage(stats, run.apiUsage());
             log.info("Импорт для пациента {} завершен: {}", patientId, stats);
 
         } catch (Exception e) {
@@ -0,0 +1,48 @@
+package com.example.service;
+
+// Общий для всего запуска импорта дедлайн, передается в обработчики пакетов и HTTP-вызовы
+public final class ImportDeadline {
+
+    public static final ImportDeadline NONE = new ImportDeadline(0, false);
+
+    private final long deadlineNanos;
+    private final boolean bounded;
+
+    private ImportDeadline(long deadlineNanos, boolean bounded) {
+        this.deadlineNanos = deadlineNanos;
+        this.bounded = bounded;
+    }
+
+    public static ImportDeadline after(long timeoutMillis) {
+        if (timeoutMillis <= 0) {
+            return NONE;
+        }
+        return new ImportDeadline(System.nanoTime() + timeoutMillis * 1_000_000L, true);
+    }
+
+    public boolean isBounded() {
+        return bounded;
+    }
+
+    public long remainingMillis() {
+        if (!bounded) {
+            return Long.MAX_VALUE;
+        }
+        return Math.max(0, (deadlineNanos - System.nanoTime()) / 1_000_000L);
+    }
+
+    public boolean isExpired() {
+        return bounded && remainingMillis() <= 0;
+    }
+
+    // Таймаут отдельного запроса не может превышать остаток времени запуска
+    public long limitTimeout(long timeoutMillis) {
+        return Math.min(timeoutMillis, remainingMillis());
+    }
+
+    public void checkNotExpired(String operation) {
+        if (isExpired()) {
+            throw new ImportDeadlineExceededException("Истекло время импорта, операция прервана: " + operation);
+        }
+    }
+}
@@ -0,0 +1,10 @@
+package com.example.service;
+
+public class ImportDeadlineExceededException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public ImportDeadlineExceededException(String message) {
+        super(message);
+    }
+}
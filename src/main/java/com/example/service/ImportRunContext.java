@@ -0,0 +1,13 @@
+package com.example.service;
+
+// Запуск импорта для обращений к Legacy API: дедлайн и счетчики обращений этого запуска.
+// Плановый импорт и импорт отдельного пациента идут одновременно, у каждого свой контекст
+public record ImportRunContext(ImportDeadline deadline, LegacyApiUsage.Meter apiUsage) {
+
+    // Без ограничения времени, вызовы учитываются только в общих счетчиках LegacyApiUsage
+    public static final ImportRunContext NONE = new ImportRunContext(ImportDeadline.NONE, null);
+
+    public static ImportRunContext start(long timeoutMillis) {
+        return new ImportRunContext(ImportDeadline.after(timeoutMillis), new LegacyApiUsage.Meter());
+    }
+}
@@ -1,94 +1,505 @@
 package com.example.service;
 
-import com.example.dto.LegacyClient;
+import com.example.archive.LegacyPayloadArchive;
 import com.example.dto.LegacyNote;
+import com.example.dto.LegacyNoteDigest;
+import com.example.dto.NoteDigestRequest;
 import com.example.dto.NotesRequest;
+import com.example.model.LegacyClientIndex;
 import com.example.config.LegacyApiConfig;
+import com.example.monitoring.ImportMetrics;
+import com.example.monitoring.ImportObservations;
+import com.example.monitoring.ImportPhase;
+import com.example.monitoring.jfr.JsonDecodeEvent;
+import com.example.monitoring.jfr.LegacyHttpCallEvent;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationRegistry;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.hc.client5.http.config.ConnectionConfig;
 import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.ChainElement;
 import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
 import org.apache.hc.client5.http.impl.classic.HttpClientBuilder;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.client5.http.protocol.HttpClientContext;
 import org.apache.hc.core5.util.Timeout;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
 import org.springframework.stereotype.Service;
+import org.springframework.web.client.HttpStatusCodeException;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestClientException;
 import org.springframework.web.client.RestTemplate;
 
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 import java.util.List;
+import java.util.function.LongSupplier;
 
 @Service
 @Slf4j
 public class LegacyApiService {
+    // Таймаут ответа для текущего запроса, сокращенный по дедлайну импорта
+    private static final ThreadLocal<Long> REQUEST_TIMEOUT_MILLIS = new ThreadLocal<>();
+    // Момент, когда запрос получил соединение из пула (отметка в цепочке HTTP-клиента)
+    private static final ThreadLocal<Long> CONNECTION_LEASED_NANOS = new ThreadLocal<>();
+
     private final RestTemplate restTemplate;
     private final LegacyApiConfig config;
     private final ObjectMapper objectMapper;
+    private final LegacyPayloadArchive payloadArchive;
+    private final AgencyConcurrencyLimiters concurrencyLimiters;
+    private final ImportMetrics metrics;
+    private final ObservationRegistry observationRegistry;
+    private final LegacyApiUsage apiUsage;
+    private RequestConfig defaultRequestConfig;
 
-    public LegacyApiService(LegacyApiConfig config) {
+    public LegacyApiService(LegacyApiConfig config,
+                            LegacyPayloadArchive payloadArchive,
+                            AgencyConcurrencyLimiters concurrencyLimiters,
+                            ImportMetrics metrics,
+                            ObservationRegistry observationRegistry,
+                            LegacyApiUsage apiUsage) {
         this.config = config;
+        this.payloadArchive = payloadArchive;
+        this.concurrencyLimiters = concurrencyLimiters;
+        this.metrics = metrics;
+        this.observationRegistry = observationRegistry;
+        this.apiUsage = apiUsage;
         this.objectMapper = new ObjectMapper();
         this.restTemplate = createRestTemplate();
     }
 
+    // Пул рассчитан на общий потолок maxConcurrentApiConnections (по умолчанию HttpClient дает 5 соединений
+    // на адрес, а все агентства идут на один base-url). При полосах агентств этот потолок держит пул:
+    // лишние запросы ждут соединения, и это ожидание не входит в задержку, которую видит ограничитель
     private RestTemplate createRestTemplate() {
-        RequestConfig requestConfig = RequestConfig.custom()
-                .setConnectTimeout(Timeout.ofMilliseconds(config.getConnectTimeout()))
+        defaultRequestConfig = RequestConfig.custom()
                 .setResponseTimeout(Timeout.ofMilliseconds(config.getReadTimeout()))
                 .build();
 
+        int maxConnections = concurrencyLimiters.getMaxConnections();
+        PoolingHttpClientConnectionManager connectionManager = PoolingHttpClientConnectionManagerBuilder.create()
+                .setMaxConnTotal(maxConnections)
+                .setMaxConnPerRoute(maxConnections)
+                .setDefaultConnectionConfig(ConnectionConfig.custom()
+                        .setConnectTimeout(Timeout.ofMilliseconds(config.getConnectTimeout()))
+                        .build())
+                .build();
+
         CloseableHttpClient client = HttpClientBuilder.create()
-                .setDefaultRequestConfig(requestConfig)
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(defaultRequestConfig)
+                .addExecInterceptorAfter(ChainElement.CONNECT.name(), "connection-leased", (request, scope, chain) -> {
+                    CONNECTION_LEASED_NANOS.set(System.nanoTime());
+                    return chain.proceed(request, scope);
+                })
                 .build();
 
         HttpComponentsClientHttpRequestFactory factory = new HttpComponentsClientHttpRequestFactory(client);
+        factory.setHttpContextFactory((method, uri) -> createRequestContext());
         return new RestTemplate(factory);
     }
 
-    public List<LegacyClient> getAllClients() throws Exception {
+    private HttpClientContext createRequestContext() {
+        Long timeoutMillis = REQUEST_TIMEOUT_MILLIS.get();
+        if (timeoutMillis == null) {
+            return null;
+        }
+
+        HttpClientContext context = HttpClientContext.create();
+        context.setRequestConfig(RequestConfig.copy(defaultRequestConfig)
+                .setConnectionRequestTimeout(Timeout.ofMilliseconds(timeoutMillis))
+                .setResponseTimeout(Timeout.ofMilliseconds(timeoutMillis))
+                .build());
+        return context;
+    }
+
+    private ResponseEntity<String> post(String endpoint, HttpEntity<?> entity,
+                                        ImportRunContext run, String operation,
+                                        String agency) throws InterruptedException, IOException {
+        return call(endpoint, run, operation, agency, event -> {
+            ResponseEntity<String> response = restTemplate.postForEntity(config.getBaseUrl() + endpoint, entity, String.class);
+            event.statusCode = response.getStatusCode().value();
+            event.responseBytes = responseSize(response);
+            return response;
+        });
+    }
+
+    // Тело ответа разбирается прямо из потока соединения, без промежуточной строки
+    private <T> T postStreaming(String endpoint, HttpEntity<?> entity,
+                                ImportRunContext run, String operation,
+                                String agency, BodyReader<T> reader) throws InterruptedException, IOException {
+        return call(endpoint, run, operation, agency, event -> {
+            try {
+                return restTemplate.execute(URI.create(config.getBaseUrl() + endpoint), HttpMethod.POST,
+                        restTemplate.httpEntityCallback(entity), response -> {
+                            event.statusCode = response.getStatusCode().value();
+                            ResponseBody body = new ResponseBody(response.getBody(),
+                                    response.getHeaders().getContentLength(), payloadArchive.isEnabled());
+                            try {
+                                return reader.read(body);
+                            } catch (JsonProcessingException e) {
+                                // Ошибка разбора - не сбой соединения, RestTemplate не должен превращать ее
+                                // в ResourceAccessException (ограничитель счел бы ее перегрузкой)
+                                throw new UncheckedIOException(e);
+                            } finally {
+                                event.responseBytes = body.size();
+                            }
+                        });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        });
+    }
+
+    @FunctionalInterface
+    private interface HttpCall<T> {
+        T execute(LegacyHttpCallEvent event) throws IOException;
+    }
+
+    @FunctionalInterface
+    private interface BodyReader<T> {
+        T read(ResponseBody body) throws IOException;
+    }
+
+    // endpoint - путь без базового URL, он же тег operation у таймера вызовов API;
+    // agency выбирает ограничитель параллелизма (null - общий)
+    private <T> T call(String endpoint, ImportRunContext run, String operation,
+                       String agency, HttpCall<T> httpCall) throws InterruptedException, IOException {
+        run.deadline().checkNotExpired(operation);
+        AdaptiveConcurrencyLimiter concurrencyLimiter = concurrencyLimiters.forAgency(agency);
+        concurrencyLimiter.acquire(run.deadline());
+
+        Timer.Sample sample = metrics.startApiCallTimer();
+        LegacyHttpCallEvent event = new LegacyHttpCallEvent();
+        event.begin();
+        long start = System.nanoTime();
+        boolean overloaded = false;
+        boolean success = false;
         try {
-            String url = config.getBaseUrl() + "/clients";
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.APPLICATION_JSON);
+            // Таймаут считается после ожидания слота ограничителя
+            if (run.deadline().isBounded()) {
+                run.deadline().checkNotExpired(operation);
+                REQUEST_TIMEOUT_MILLIS.set(Math.max(1, run.deadline().limitTimeout(config.getReadTimeout())));
+            }
+            T result = httpCall.execute(event);
+            success = true;
+            return result;
+        } catch (RestClientException e) {
+            overloaded = isOverload(e);
+            if (e instanceof HttpStatusCodeException statusError) {
+                event.statusCode = statusError.getStatusCode().value();
+            }
+            throw e;
+        } finally {
+            REQUEST_TIMEOUT_MILLIS.remove();
+            long end = System.nanoTime();
+            long elapsed = end - start;
+            // Ограничителю - время от получения соединения: ожидание пула вызвано чужими запросами
+            Long leased = CONNECTION_LEASED_NANOS.get();
+            CONNECTION_LEASED_NANOS.remove();
+            long latency = leased != null ? end - leased : elapsed;
+            apiUsage.recordCall(run.apiUsage(), elapsed, event.responseBytes);
+            event.end();
+            if (event.shouldCommit()) {
+                event.endpoint = endpoint;
+                event.overloaded = overloaded;
+                event.commit();
+            }
+            metrics.recordApiCall(sample, endpoint.substring(1), success);
+            concurrencyLimiter.release(latency / 1_000_000, overloaded);
+        }
+    }
 
-            HttpEntity<String> entity = new HttpEntity<>("{}", headers);
-            ResponseEntity<String> response = restTemplate.postForEntity(url, entity, String.class);
+    private static boolean isOverload(RestClientException e) {
+        if (e instanceof HttpStatusCodeException statusError) {
+            return statusError.getStatusCode().is5xxServerError()
+                    || statusError.getStatusCode().value() == HttpStatus.TOO_MANY_REQUESTS.value();
+        }
+        // Таймауты и отказы соединения
+        return e instanceof ResourceAccessException;
+    }
+
+    // Справочник клиентов разбирается потоково прямо из ответа: из каждой записи берутся только guid и agency.
+    // Тело целиком в памяти держится, только если включен архив ответов
+    public LegacyClientIndex getClientIndex(ImportRunContext run) throws Exception {
+        Observation observation = legacyCall("clients");
+        try {
+            return observation.observeChecked(() -> {
+                HttpHeaders headers = new HttpHeaders();
+                headers.setContentType(MediaType.APPLICATION_JSON);
 
-            return objectMapper.readValue(response.getBody(),
-                    new TypeReference<List<LegacyClient>>() {});
+                HttpEntity<String> entity = new HttpEntity<>("{}", headers);
+                LegacyClientIndex clientIndex = postStreaming("/clients", entity, run, "получение клиентов", null, body -> {
+                    try {
+                        return decode(body::size, run, () -> parseClientIndex(body));
+                    } finally {
+                        observation.highCardinalityKeyValue(ImportObservations.RESPONSE_BYTES, String.valueOf(body.size()));
+                        archiveClients(body);
+                    }
+                });
+                observation.highCardinalityKeyValue(ImportObservations.CLIENT_COUNT, String.valueOf(clientIndex.size()));
+                return clientIndex;
+            });
         } catch (Exception e) {
             log.error("Ошибка получения клиентов из старой системы", e);
             throw e;
         }
     }
 
+    // Архивируется и тело, которое не удалось разобрать: остаток дочитывается из соединения
+    private void archiveClients(ResponseBody body) {
+        if (!payloadArchive.isEnabled()) {
+            return;
+        }
+        try {
+            payloadArchive.archiveClients(body.readCopy());
+        } catch (IOException e) {
+            log.warn("Не удалось дочитать ответ на запрос списка клиентов для архива: {}", e.getMessage());
+        }
+    }
+
+    private Observation legacyCall(String operation) {
+        return Observation.createNotStarted(ImportObservations.LEGACY_CALL, observationRegistry)
+                .contextualName("legacy " + operation)
+                .lowCardinalityKeyValue(ImportObservations.OPERATION, operation);
+    }
+
+    private static void recordResponseSize(Observation observation, ResponseEntity<String> response) {
+        observation.highCardinalityKeyValue(ImportObservations.RESPONSE_BYTES, String.valueOf(responseSize(response)));
+    }
+
+    private static long responseSize(ResponseEntity<String> response) {
+        long contentLength = response.getHeaders().getContentLength();
+        if (contentLength >= 0) {
+            return contentLength;
+        }
+        return response.getBody() != null ? response.getBody().length() : 0;
+    }
+
+    @FunctionalInterface
+    private interface Decoder<T> {
+        T decode() throws IOException;
+    }
+
+    private <T> T decode(String body, ImportRunContext run, Decoder<T> decoder) throws IOException {
+        return decode(() -> body != null ? body.length() : 0, run, decoder);
+    }
+
+    // payloadBytes запрашивается после разбора: при чтении из потока размер известен только в конце
+    private <T> T decode(LongSupplier payloadBytes, ImportRunContext run, Decoder<T> decoder) throws IOException {
+        JsonDecodeEvent event = new JsonDecodeEvent();
+        event.begin();
+        long start = System.nanoTime();
+        boolean success = false;
+        try {
+            T result = decoder.decode();
+            success = true;
+            return result;
+        } finally {
+            long elapsed = System.nanoTime() - start;
+            metrics.recordPhase(ImportPhase.JSON_DECODE, elapsed, success);
+            apiUsage.recordDecode(run.apiUsage(), elapsed);
+            event.end();
+            if (event.shouldCommit()) {
+                event.payloadBytes = payloadBytes.getAsLong();
+                event.success = success;
+                event.commit();
+            }
+        }
+    }
+
+    private LegacyClientIndex parseClientIndex(ResponseBody body) throws IOException {
+        try (JsonParser parser = objectMapper.getFactory().createParser(body)) {
+            // Поток ответа остается открытым после разбора: archiveClients дочитывает из него копию для архива
+            parser.disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+            JsonToken first = parser.nextToken();
+            if (first == null) {
+                throw new JsonParseException(parser, "Пустой ответ на запрос списка клиентов");
+            }
+            if (first != JsonToken.START_ARRAY) {
+                throw new JsonParseException(parser, "Ожидался JSON-массив клиентов");
+            }
+
+            // Без Content-Length емкость индекса подбирается по ходу разбора
+            LegacyClientIndex.Builder builder = LegacyClientIndex.builder(
+                    (int) Math.min(Integer.MAX_VALUE, Math.max(0, body.contentLength) / 200));
+            while (parser.nextToken() == JsonToken.START_OBJECT) {
+                String guid = null;
+                String agency = null;
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String field = parser.currentName();
+                    JsonToken value = parser.nextToken();
+                    if ("guid".equals(field) && value == JsonToken.VALUE_STRING) {
+                        guid = parser.getText();
+                    } else if ("agency".equals(field) && value == JsonToken.VALUE_STRING) {
+                        agency = parser.getText();
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+                builder.add(guid, agency);
+            }
+
+            if (builder.getDuplicates() > 0) {
+                log.warn("В списке клиентов старой системы найдено {} повторяющихся GUID", builder.getDuplicates());
+            }
+            return builder.build();
+        }
+    }
+
     public List<LegacyNote> getClientNotes(String agency, String clientGuid,
                                            LocalDate dateFrom, LocalDate dateTo) throws Exception {
+        return getClientNotes(agency, clientGuid, dateFrom, dateTo, ImportRunContext.NONE);
+    }
+
+    public List<LegacyNote> getClientNotes(String agency, String clientGuid,
+                                           LocalDate dateFrom, LocalDate dateTo,
+                                           ImportRunContext run) throws Exception {
+        Observation observation = legacyCall("notes")
+                .highCardinalityKeyValue(ImportObservations.CLIENT_GUID, String.valueOf(clientGuid));
         try {
-            String url = config.getBaseUrl() + "/notes";
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.APPLICATION_JSON);
-
-            NotesRequest request = new NotesRequest(
-                    agency,
-                    dateFrom.format(DateTimeFormatter.ofPattern("yyyy-MM-dd")),
-                    dateTo.format(DateTimeFormatter.ofPattern("yyyy-MM-dd")),
-                    clientGuid
-            );
-
-            HttpEntity<NotesRequest> entity = new HttpEntity<>(request, headers);
-            ResponseEntity<String> response = restTemplate.postForEntity(url, entity, String.class);
-
-            return objectMapper.readValue(response.getBody(),
-                    new TypeReference<List<LegacyNote>>() {});
+            return observation.observeChecked(() -> {
+                HttpHeaders headers = new HttpHeaders();
+                headers.setContentType(MediaType.APPLICATION_JSON);
+
+                NotesRequest request = new NotesRequest(
+                        agency,
+                        dateFrom.format(DateTimeFormatter.ofPattern("yyyy-MM-dd")),
+                        dateTo.format(DateTimeFormatter.ofPattern("yyyy-MM-dd")),
+                        clientGuid
+                );
+
+                HttpEntity<NotesRequest> entity = new HttpEntity<>(request, headers);
+                ResponseEntity<String> response = post("/notes", entity, run, "получение заметок клиента " + clientGuid, agency);
+                recordResponseSize(observation, response);
+                payloadArchive.archiveNotes(agency, clientGuid, dateFrom, dateTo, response.getBody());
+
+                List<LegacyNote> notes = decode(response.getBody(), run, () ->
+                        objectMapper.readValue(response.getBody(), new TypeReference<List<LegacyNote>>() {}));
+                observation.highCardinalityKeyValue(ImportObservations.NOTE_COUNT, String.valueOf(notes.size()));
+                return notes;
+            });
         } catch (Exception e) {
             log.error("Ошибка получения заметок для клиента {}", clientGuid, e);
             throw e;
         }
     }
+
+    // Дайджесты заметок нескольких клиентов одного агентства за период одним запросом
+    public List<LegacyNoteDigest> getNoteDigests(String agency, List<String> clientGuids,
+                                                 LocalDate dateFrom, LocalDate dateTo,
+                                                 ImportRunContext run) throws Exception {
+        Observation observation = legacyCall("notes_digest")
+                .highCardinalityKeyValue(ImportObservations.CLIENT_COUNT, String.valueOf(clientGuids.size()));
+        try {
+            return observation.observeChecked(() -> {
+                HttpHeaders headers = new HttpHeaders();
+                headers.setContentType(MediaType.APPLICATION_JSON);
+
+                NoteDigestRequest request = new NoteDigestRequest(
+                        agency,
+                        dateFrom.format(DateTimeFormatter.ofPattern("yyyy-MM-dd")),
+                        dateTo.format(DateTimeFormatter.ofPattern("yyyy-MM-dd")),
+                        clientGuids
+                );
+
+                HttpEntity<NoteDigestRequest> entity = new HttpEntity<>(request, headers);
+                ResponseEntity<String> response = post("/notes/digest", entity, run,
+                        "получение дайджестов заметок " + clientGuids.size() + " клиентов", agency);
+                recordResponseSize(observation, response);
+
+                return decode(response.getBody(), run, () ->
+                        objectMapper.readValue(response.getBody(), new TypeReference<List<LegacyNoteDigest>>() {}));
+            });
+        } catch (Exception e) {
+            log.error("Ошибка получения дайджестов заметок агентства {}", agency, e);
+            throw e;
+        }
+    }
+
+    // Тело ответа, читаемое из соединения: считает прочитанные байты и, если нужно для архива, копирует их
+    private static final class ResponseBody extends FilterInputStream {
+
+        private final long contentLength;
+        private final ByteArrayOutputStream copy;
+        private long bytesRead;
+
+        ResponseBody(InputStream in, long contentLength, boolean keepCopy) {
+            super(in);
+            this.contentLength = contentLength;
+            int expectedBytes = contentLength > 0 ? (int) Math.min(contentLength, Integer.MAX_VALUE - 8) : 8192;
+            this.copy = keepCopy ? new ByteArrayOutputStream(expectedBytes) : null;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int value = super.read();
+            if (value >= 0) {
+                bytesRead++;
+                if (copy != null) {
+                    copy.write(value);
+                }
+            }
+            return value;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int count = super.read(buffer, offset, length);
+            if (count > 0) {
+                bytesRead += count;
+                if (copy != null) {
+                    copy.write(buffer, offset, count);
+                }
+            }
+            return count;
+        }
+
+        // Пропуск тоже идет через read, чтобы байты попали в счетчик и копию
+        @Override
+        public long skip(long n) throws IOException {
+            byte[] buffer = new byte[(int) Math.min(n, 8192)];
+            long skipped = 0;
+            while (skipped < n) {
+                int count = read(buffer, 0, (int) Math.min(buffer.length, n - skipped));
+                if (count < 0) {
+                    break;
+                }
+                skipped += count;
+            }
+            return skipped;
+        }
+
+        long size() {
+            return contentLength >= 0 ? contentLength : bytesRead;
+        }
+
+        String readCopy() throws IOException {
+            transferTo(OutputStream.nullOutputStream());
+            return copy.toString(StandardCharsets.UTF_8);
+        }
+    }
 }
@@ -0,0 +1,57 @@
+package com.example.service;
+
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.atomic.LongAdder;
+
+// Накопительные счетчики обращений к Legacy API: общие для процесса и отдельные для каждого запуска импорта.
+// Плановый импорт и импорт отдельного пациента идут одновременно, поэтому запуск заводит свой Meter
+// и передает его в HTTP-вызовы в своем ImportRunContext, а не вычитает общие снимки.
+@Component
+public class LegacyApiUsage {
+
+    private final Meter total = new Meter();
+
+    public record Snapshot(long calls, long bytesReceived, long fetchNanos, long decodeNanos) {
+    }
+
+    public static final class Meter {
+        private final LongAdder calls = new LongAdder();
+        private final LongAdder bytesReceived = new LongAdder();
+        private final LongAdder fetchNanos = new LongAdder();
+        private final LongAdder decodeNanos = new LongAdder();
+
+        private void recordCall(long nanos, long responseBytes) {
+            calls.increment();
+            fetchNanos.add(nanos);
+            bytesReceived.add(responseBytes);
+        }
+
+        private void recordDecode(long nanos) {
+            decodeNanos.add(nanos);
+        }
+
+        public Snapshot snapshot() {
+            return new Snapshot(calls.sum(), bytesReceived.sum(), fetchNanos.sum(), decodeNanos.sum());
+        }
+    }
+
+    // run == null - вызов учитывается только в общих счетчиках
+    void recordCall(Meter run, long nanos, long responseBytes) {
+        total.recordCall(nanos, responseBytes);
+        if (run != null) {
+            run.recordCall(nanos, responseBytes);
+        }
+    }
+
+    void recordDecode(Meter run, long nanos) {
+        total.recordDecode(nanos);
+        if (run != null) {
+            run.recordDecode(nanos);
+        }
+    }
+
+    public Snapshot snapshot() {
+        return total.snapshot();
+    }
+}
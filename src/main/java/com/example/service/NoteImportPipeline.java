@@ -0,0 +1,221 @@
+package com.example.service;
+
+import com.example.config.ImportConfigProperties;
+import com.example.dto.LegacyNote;
+import com.example.entity.CompanyUser;
+import com.example.model.NoteVersion;
+import com.example.monitoring.ImportMetrics;
+import com.example.repository.CompanyUserRepository;
+import com.example.repository.PatientNoteRepository;
+import jakarta.annotation.PreDestroy;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+import java.util.function.LongSupplier;
+
+// Стадии конвейера импорта заметок: загрузка с разбором JSON (полосы агентств, виртуальные потоки) ->
+// поиск сохраненных версий заметок и авторов (resolve) -> запись в потоке и транзакции импорта.
+// Resolve выполняется пулом потоков одним запросом на клиента в отдельной транзакции; при заполненной
+// очереди задача выполняется в потоке загрузки, и загрузка замедляется до скорости resolve.
+@Component
+public class NoteImportPipeline {
+
+    // Ограничение размера IN-списка в одном запросе
+    private static final int LOOKUP_CHUNK_SIZE = 1000;
+
+    // existing == null - поиск не выполнялся (клиент нескольких пациентов), заметки пишутся обычным путем
+    public record ResolvedNotes(List<LegacyNote> notes, Map<String, NoteVersion> existing, Map<String, Long> userIds) {
+
+        static ResolvedNotes unresolved(List<LegacyNote> notes) {
+            return new ResolvedNotes(notes, null, Map.of());
+        }
+
+        public boolean isResolved() {
+            return existing != null;
+        }
+    }
+
+    // Занятость стадии считается как прирост суммарного времени работы между чтениями метрики,
+    // деленный на прошедшее время и число потоков стадии
+    static final class Stage {
+        private final IntSupplier parallelism;
+        private final IntSupplier queued;
+        private final LongSupplier busyNanos;
+        private long lastBusyNanos;
+        private long lastSampleNanos = System.nanoTime();
+
+        Stage(IntSupplier parallelism, IntSupplier queued, LongSupplier busyNanos) {
+            this.parallelism = parallelism;
+            this.queued = queued;
+            this.busyNanos = busyNanos;
+        }
+
+        double queued() {
+            return queued.getAsInt();
+        }
+
+        synchronized double utilization() {
+            long now = System.nanoTime();
+            long busy = busyNanos.getAsLong();
+            long capacity = (now - lastSampleNanos) * Math.max(1, parallelism.getAsInt());
+            double utilization = capacity > 0 ? (double) (busy - lastBusyNanos) / capacity : 0;
+            lastBusyNanos = busy;
+            lastSampleNanos = now;
+            return Math.max(0, Math.min(1, utilization));
+        }
+    }
+
+    private final ImportConfigProperties config;
+    private final PatientNoteRepository noteRepository;
+    private final CompanyUserRepository userRepository;
+    private final AgencyLaneScheduler laneScheduler;
+    private final TransactionTemplate resolveTransaction;
+    private final ThreadPoolExecutor resolveExecutor;
+
+    private final LongAdder resolveBusyNanos = new LongAdder();
+    private final LongAdder writeBusyNanos = new LongAdder();
+    // Очередь готовых к записи пациентов текущей пачки
+    private volatile Queue<?> writeQueue;
+    // Реестр метрик держит объекты датчиков по слабой ссылке
+    private final Stage fetchStage;
+    private final Stage resolveStage;
+    private final Stage writeStage;
+
+    public NoteImportPipeline(ImportConfigProperties config,
+                              PatientNoteRepository noteRepository,
+                              CompanyUserRepository userRepository,
+                              AgencyLaneScheduler laneScheduler,
+                              PlatformTransactionManager transactionManager,
+                              ImportMetrics metrics) {
+        this.config = config;
+        this.noteRepository = noteRepository;
+        this.userRepository = userRepository;
+        this.laneScheduler = laneScheduler;
+
+        // Не read-only: поиск идет в основную базу, реплика может не успеть получить заметки предыдущего запуска
+        this.resolveTransaction = new TransactionTemplate(transactionManager);
+        this.resolveTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+
+        int resolveThreads = Math.max(1, config.getPipelineResolveThreads());
+        this.resolveExecutor = new ThreadPoolExecutor(resolveThreads, resolveThreads,
+                0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, config.getPipelineResolveQueueDepth())),
+                Thread.ofPlatform().name("note-resolve-", 0).daemon().factory(),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+
+        this.fetchStage = new Stage(laneScheduler::getWorkerCount, laneScheduler::getQueuedCount, laneScheduler::getBusyNanos);
+        this.resolveStage = new Stage(() -> resolveThreads, () -> resolveExecutor.getQueue().size(), resolveBusyNanos::sum);
+        this.writeStage = new Stage(() -> 1, this::writeQueueSize, writeBusyNanos::sum);
+        metrics.registerPipelineStageGauges("fetch", fetchStage, Stage::queued, Stage::utilization);
+        metrics.registerPipelineStageGauges("resolve", resolveStage, Stage::queued, Stage::utilization);
+        metrics.registerPipelineStageGauges("write", writeStage, Stage::queued, Stage::utilization);
+    }
+
+    public boolean isEnabled() {
+        return config.isEnableStagedPipeline() && laneScheduler.isEnabled();
+    }
+
+    public int getFetchAheadBatches() {
+        return isEnabled() ? config.getPipelineFetchAheadBatches() : 0;
+    }
+
+    // Следующая за загрузкой стадия. Отмена результата снимает с полосы еще не начатую загрузку
+    public CompletableFuture<ResolvedNotes> afterFetch(CompletableFuture<List<LegacyNote>> fetched, boolean resolve) {
+        CompletableFuture<ResolvedNotes> result = resolve && isEnabled()
+                ? fetched.thenApplyAsync(this::resolve, resolveExecutor)
+                : fetched.thenApply(ResolvedNotes::unresolved);
+        result.whenComplete((notes, error) -> {
+            if (error instanceof CancellationException) {
+                fetched.cancel(false);
+            }
+        });
+        return result;
+    }
+
+    ResolvedNotes resolve(List<LegacyNote> notes) {
+        long start = System.nanoTime();
+        try {
+            Set<String> guids = new LinkedHashSet<>();
+            Set<String> logins = new LinkedHashSet<>();
+            for (LegacyNote note : notes) {
+                if (note.getGuid() != null && !note.getGuid().isBlank()) {
+                    guids.add(note.getGuid());
+                }
+                logins.add(normalizeLogin(note.getLoggedUser()));
+            }
+
+            return resolveTransaction.execute(status -> {
+                Map<String, NoteVersion> existing = new HashMap<>();
+                for (List<String> chunk : chunks(guids)) {
+                    for (NoteVersion version : noteRepository.findVersionsByLegacyNoteGuids(chunk)) {
+                        existing.put(version.legacyNoteGuid(), version);
+                    }
+                }
+                Map<String, Long> userIds = new HashMap<>();
+                for (List<String> chunk : chunks(logins)) {
+                    for (CompanyUser user : userRepository.findByLoginIn(chunk)) {
+                        userIds.put(user.getLogin(), user.getId());
+                    }
+                }
+                return new ResolvedNotes(notes, existing, userIds);
+            });
+        } finally {
+            resolveBusyNanos.add(System.nanoTime() - start);
+        }
+    }
+
+    private static List<List<String>> chunks(Set<String> values) {
+        List<List<String>> chunks = new ArrayList<>();
+        List<String> chunk = new ArrayList<>(Math.min(values.size(), LOOKUP_CHUNK_SIZE));
+        for (String value : values) {
+            chunk.add(value);
+            if (chunk.size() == LOOKUP_CHUNK_SIZE) {
+                chunks.add(chunk);
+                chunk = new ArrayList<>(LOOKUP_CHUNK_SIZE);
+            }
+        }
+        if (!chunk.isEmpty()) {
+            chunks.add(chunk);
+        }
+        return chunks;
+    }
+
+    // Тот же логин, под которым getOrCreateUser ищет и создает автора
+    static String normalizeLogin(String login) {
+        return login == null || login.trim().isEmpty() ? "system" : login.trim();
+    }
+
+    void trackWriteQueue(Queue<?> queue) {
+        this.writeQueue = queue;
+    }
+
+    void recordWrite(long nanos) {
+        writeBusyNanos.add(nanos);
+    }
+
+    private int writeQueueSize() {
+        Queue<?> queue = writeQueue;
+        return queue != null ? queue.size() : 0;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        resolveExecutor.shutdownNow();
+    }
+}
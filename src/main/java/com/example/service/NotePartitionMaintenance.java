@@ -0,0 +1,138 @@
+package com.example.service;
+
+import com.example.config.ImportConfigProperties;
+import com.example.monitoring.ImportMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// Обслуживание месячных секций patient_note (changelog 004, только PostgreSQL): создание секций заранее
+// и вывод старых секций целиком вместо построчного удаления. Записи patient_note_guid удаляемых
+// месяцев чистятся отдельно: при отсоединении секции триггер не срабатывает.
+@Service
+@Slf4j
+public class NotePartitionMaintenance {
+
+    private static final Pattern PARTITION_NAME = Pattern.compile("patient_note_p(\\d{6})");
+    private static final DateTimeFormatter PARTITION_MONTH = DateTimeFormatter.ofPattern("yyyyMM");
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ImportConfigProperties config;
+    private final ImportMetrics metrics;
+    private final TransactionTemplate transactionTemplate;
+
+    // null - еще не проверялось
+    private volatile Boolean partitioned;
+
+    public record Result(int createdPartitions, List<String> retiredPartitions) {
+    }
+
+    public NotePartitionMaintenance(JdbcTemplate jdbcTemplate,
+                                    ImportConfigProperties config,
+                                    ImportMetrics metrics,
+                                    PlatformTransactionManager transactionManager) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.config = config;
+        this.metrics = metrics;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    public Result maintain() {
+        if (!config.isEnableNotePartitionMaintenance() || !isPartitioned()) {
+            return new Result(0, List.of());
+        }
+
+        LocalDate today = LocalDate.now();
+        int created = createPartitions(today);
+        List<String> retired = config.getNoteRetentionMonths() > 0
+                ? retirePartitions(YearMonth.from(today).minusMonths(config.getNoteRetentionMonths()))
+                : List.of();
+
+        metrics.recordNotePartitionMaintenance(created, retired.size());
+        log.info("Обслуживание секций заметок: создано {}, выведено {} {}", created, retired.size(), retired);
+        return new Result(created, retired);
+    }
+
+    boolean isPartitioned() {
+        Boolean checked = partitioned;
+        if (checked == null) {
+            try {
+                String database = jdbcTemplate.execute((ConnectionCallback<String>) connection ->
+                        connection.getMetaData().getDatabaseProductName());
+                checked = "PostgreSQL".equals(database) && Boolean.TRUE.equals(jdbcTemplate.queryForObject(
+                        "SELECT EXISTS (SELECT 1 FROM pg_partitioned_table WHERE partrelid = to_regclass('patient_note'))",
+                        Boolean.class));
+            } catch (DataAccessException e) {
+                log.warn("Не удалось определить секционирование patient_note: {}", e.getMessage());
+                return false;
+            }
+            partitioned = checked;
+            if (!checked) {
+                log.info("Таблица patient_note не секционирована, обслуживание секций не выполняется");
+            }
+        }
+        return checked;
+    }
+
+    private int createPartitions(LocalDate today) {
+        Integer created = jdbcTemplate.queryForObject("SELECT create_patient_note_partitions(?, ?)", Integer.class,
+                Date.valueOf(today.withDayOfMonth(1)),
+                Date.valueOf(today.plusMonths(config.getNotePartitionMonthsAhead())));
+        return created != null ? created : 0;
+    }
+
+    // Секции месяцев раньше cutoff и строки секции по умолчанию с такими датами
+    private List<String> retirePartitions(YearMonth cutoff) {
+        List<String> partitions = jdbcTemplate.queryForList(
+                "SELECT c.relname FROM pg_inherits i JOIN pg_class c ON c.oid = i.inhrelid " +
+                        "WHERE i.inhparent = to_regclass('patient_note')", String.class);
+
+        List<String> retired = new ArrayList<>();
+        for (String partition : expiredPartitions(partitions, cutoff)) {
+            YearMonth month = YearMonth.parse(partition.substring("patient_note_p".length()), PARTITION_MONTH);
+            transactionTemplate.executeWithoutResult(status -> {
+                jdbcTemplate.update("DELETE FROM patient_note_guid WHERE created_date_time >= ? AND created_date_time < ?",
+                        Timestamp.valueOf(month.atDay(1).atStartOfDay()),
+                        Timestamp.valueOf(month.plusMonths(1).atDay(1).atStartOfDay()));
+                jdbcTemplate.execute("ALTER TABLE patient_note DETACH PARTITION " + partition);
+                if (config.isDropExpiredNotePartitions()) {
+                    jdbcTemplate.execute("DROP TABLE " + partition);
+                }
+            });
+            retired.add(partition);
+        }
+
+        int deleted = jdbcTemplate.update("DELETE FROM patient_note_default WHERE created_date_time < ?",
+                Timestamp.valueOf(cutoff.atDay(1).atStartOfDay()));
+        if (deleted > 0) {
+            log.info("Удалено {} заметок старше {} из секции по умолчанию", deleted, cutoff);
+        }
+        return retired;
+    }
+
+    static List<String> expiredPartitions(List<String> partitions, YearMonth cutoff) {
+        List<String> expired = new ArrayList<>();
+        for (String partition : partitions) {
+            Matcher matcher = PARTITION_NAME.matcher(partition);
+            if (matcher.matches() && YearMonth.parse(matcher.group(1), PARTITION_MONTH).isBefore(cutoff)) {
+                expired.add(partition);
+            }
+        }
+        expired.sort(null);
+        return expired;
+    }
+}
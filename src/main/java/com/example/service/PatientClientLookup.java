@@ -0,0 +1,95 @@
+package com.example.service;
+
+import com.example.config.ImportConfigProperties;
+import com.example.entity.PatientProfile;
+import com.example.repository.PatientProfileRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+// Обратный индекс "GUID клиента старой системы -> активные пациенты". old_client_guid хранит
+// список GUID через запятую, по такому полю индекс БД не работает, поэтому индекс строится в памяти
+// из активных пациентов и перестраивается раз в pushLookupRefreshMinutes. GUID, которых нет в индексе
+// (пациент добавлен после перестроения), ищутся запросом к БД, результат кэшируется до перестроения.
+// Таких запросов между перестроениями не больше pushLookupMaxFallbacks: остальные GUID ждут перестроения.
+@Component
+@Slf4j
+public class PatientClientLookup {
+
+    private final PatientProfileRepository patientRepository;
+    private final ImportConfigProperties config;
+
+    private volatile Map<String, List<PatientProfile>> patientsByGuid = Map.of();
+    private final Map<String, List<PatientProfile>> lookedUp = new ConcurrentHashMap<>();
+    private volatile long builtAtNanos;
+    private volatile boolean built;
+
+    public PatientClientLookup(PatientProfileRepository patientRepository, ImportConfigProperties config) {
+        this.patientRepository = patientRepository;
+        this.config = config;
+    }
+
+    public static Map<String, List<PatientProfile>> groupByClientGuid(List<PatientProfile> patients) {
+        Map<String, List<PatientProfile>> byGuid = new HashMap<>();
+        for (PatientProfile patient : patients) {
+            for (String oldGuid : patient.getOldClientGuids()) {
+                byGuid.computeIfAbsent(oldGuid, key -> new ArrayList<>()).add(patient);
+            }
+        }
+        return byGuid;
+    }
+
+    public List<PatientProfile> findPatients(String clientGuid) {
+        if (clientGuid == null || clientGuid.isBlank()) {
+            return List.of();
+        }
+        refreshIfStale();
+
+        String guid = clientGuid.trim();
+        List<PatientProfile> patients = patientsByGuid.get(guid);
+        if (patients != null) {
+            return patients;
+        }
+        patients = lookedUp.get(guid);
+        if (patients != null) {
+            return patients;
+        }
+        if (lookedUp.size() >= config.getPushLookupMaxFallbacks()) {
+            log.debug("Клиент {} не найден в индексе, лимит запросов к БД до перестроения индекса исчерпан", guid);
+            return List.of();
+        }
+        return lookedUp.computeIfAbsent(guid, key -> patientRepository.findByExactOldClientGuid(key).stream()
+                .filter(PatientProfile::isActive)
+                .toList());
+    }
+
+    public synchronized void rebuild() {
+        Map<String, List<PatientProfile>> byGuid = groupByClientGuid(patientRepository.findActivePatients());
+        patientsByGuid = byGuid;
+        lookedUp.clear();
+        builtAtNanos = System.nanoTime();
+        built = true;
+        log.debug("Индекс клиентов старой системы перестроен: {} GUID", byGuid.size());
+    }
+
+    public int size() {
+        return patientsByGuid.size();
+    }
+
+    private void refreshIfStale() {
+        long maxAgeNanos = TimeUnit.MINUTES.toNanos(Math.max(1, config.getPushLookupRefreshMinutes()));
+        if (!built || System.nanoTime() - builtAtNanos > maxAgeNanos) {
+            synchronized (this) {
+                if (!built || System.nanoTime() - builtAtNanos > maxAgeNanos) {
+                    rebuild();
+                }
+            }
+        }
+    }
+}
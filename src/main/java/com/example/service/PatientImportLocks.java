@@ -0,0 +1,234 @@
+package com.example.service;
+
+import com.example.config.ImportConfigProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Захват пациентов импортами: плановый импорт и импорт отдельного пациента выполняются одновременно,
+// но заметки пациента пишет только один из них. Заметки видны другим транзакциям лишь после фиксации,
+// поэтому захват держится до конца транзакции захватившего импорта, а вне транзакции - до close().
+// Плановый импорт захватывает пациентов пачкой (BatchClaims) до загрузки их заметок и освобождает
+// после фиксации транзакции пачки, так что в транзакции не больше advisory-блокировок, чем пациентов в пачке.
+// Внутри процесса владельцы пациентов хранятся в полосах (lock striping) по ID пациента,
+// между узлами - транзакционные advisory-блокировки PostgreSQL (pg_try_advisory_xact_lock).
+@Component
+@Slf4j
+public class PatientImportLocks {
+
+    // Первый ключ advisory-блокировки, отделяет блокировки пациентов от других advisory-блокировок
+    static final int ADVISORY_LOCK_NAMESPACE = 0x504E4F54;
+
+    private final ImportConfigProperties config;
+    private final JdbcTemplate jdbcTemplate;
+    private final Stripe[] stripes;
+
+    // null - еще не проверялось
+    private volatile Boolean postgres;
+
+    private static final class Stripe {
+        final ReentrantLock lock = new ReentrantLock();
+        // Пациент -> захватившая его транзакция (или захват вне транзакции)
+        final Map<Long, Owner> owners = new HashMap<>();
+    }
+
+    private static final class Owner {
+        final String source;
+        final Set<Long> patientIds = new HashSet<>();
+        // Пациенты, на которых владелец уже взял advisory-блокировку в своей транзакции
+        final Set<Long> advisoryLocked = new HashSet<>();
+
+        Owner(String source) {
+            this.source = source;
+        }
+    }
+
+    // Закрытие освобождает захват вне транзакции; в транзакции захват освобождается после ее завершения
+    public final class Claim implements AutoCloseable {
+        private final Long patientId;
+        private final Owner owner;
+        private final boolean transactional;
+
+        private Claim(Long patientId, Owner owner, boolean transactional) {
+            this.patientId = patientId;
+            this.owner = owner;
+            this.transactional = transactional;
+        }
+
+        @Override
+        public void close() {
+            if (!transactional) {
+                release(patientId, owner);
+            }
+        }
+    }
+
+    // Захваты пачки планового импорта. Вне транзакции пациент захватывается только внутри процесса
+    // (до загрузки заметок пачки), в транзакции пачки к захвату добавляется advisory-блокировка.
+    // Закрывается после завершения транзакции пачки
+    public final class BatchClaims implements AutoCloseable {
+        private final Owner owner;
+
+        private BatchClaims(String source) {
+            this.owner = new Owner(source);
+        }
+
+        // false - пациент занят другим импортом этого или другого узла
+        public boolean tryClaim(Long patientId) {
+            if (patientId == null) {
+                return true;
+            }
+            boolean transactional = TransactionSynchronizationManager.isActualTransactionActive();
+            Stripe stripe = stripe(patientId);
+            stripe.lock.lock();
+            try {
+                Owner current = stripe.owners.get(patientId);
+                if (current != null && current != owner) {
+                    log.debug("Пациент {} обрабатывается импортом {}, пропущен импортом {}",
+                            patientId, current.source, owner.source);
+                    return false;
+                }
+                if (transactional && !owner.advisoryLocked.contains(patientId)) {
+                    if (!tryAdvisoryLock(patientId)) {
+                        log.debug("Пациент {} обрабатывается импортом другого узла, пропущен импортом {}",
+                                patientId, owner.source);
+                        if (current == owner) {
+                            stripe.owners.remove(patientId, owner);
+                            owner.patientIds.remove(patientId);
+                        }
+                        return false;
+                    }
+                    owner.advisoryLocked.add(patientId);
+                }
+                if (current == null) {
+                    stripe.owners.put(patientId, owner);
+                    owner.patientIds.add(patientId);
+                }
+                return true;
+            } finally {
+                stripe.lock.unlock();
+            }
+        }
+
+        @Override
+        public void close() {
+            owner.patientIds.forEach(patientId -> release(patientId, owner));
+            owner.patientIds.clear();
+            owner.advisoryLocked.clear();
+        }
+    }
+
+    public PatientImportLocks(ImportConfigProperties config, JdbcTemplate jdbcTemplate) {
+        this.config = config;
+        this.jdbcTemplate = jdbcTemplate;
+        this.stripes = new Stripe[Math.max(1, config.getPatientLockStripes())];
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = new Stripe();
+        }
+    }
+
+    // null - пациент занят другим импортом этого или другого узла
+    public Claim tryClaim(Long patientId, String source) {
+        if (patientId == null) {
+            return new Claim(null, null, false);
+        }
+
+        boolean transactional = TransactionSynchronizationManager.isActualTransactionActive()
+                && TransactionSynchronizationManager.isSynchronizationActive();
+        Owner owner = transactional ? transactionOwner(source) : new Owner(source);
+        Stripe stripe = stripe(patientId);
+        stripe.lock.lock();
+        try {
+            Owner current = stripe.owners.get(patientId);
+            if (current == owner) {
+                return new Claim(patientId, owner, true);
+            }
+            if (current != null) {
+                log.debug("Пациент {} обрабатывается импортом {}, пропущен импортом {}", patientId, current.source, source);
+                return null;
+            }
+            if (transactional && !tryAdvisoryLock(patientId)) {
+                log.debug("Пациент {} обрабатывается импортом другого узла, пропущен импортом {}", patientId, source);
+                return null;
+            }
+            stripe.owners.put(patientId, owner);
+            owner.patientIds.add(patientId);
+            return new Claim(patientId, owner, transactional);
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    public BatchClaims openBatch(String source) {
+        return new BatchClaims(source);
+    }
+
+    private Stripe stripe(Long patientId) {
+        return stripes[Math.floorMod(Long.hashCode(patientId), stripes.length)];
+    }
+
+    private void release(Long patientId, Owner owner) {
+        if (patientId == null) {
+            return;
+        }
+        Stripe stripe = stripe(patientId);
+        stripe.lock.lock();
+        try {
+            stripe.owners.remove(patientId, owner);
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    // Один владелец на транзакцию: все ее захваты освобождаются после фиксации или отката
+    private Owner transactionOwner(String source) {
+        Owner owner = (Owner) TransactionSynchronizationManager.getResource(this);
+        if (owner == null) {
+            Owner created = new Owner(source);
+            TransactionSynchronizationManager.bindResource(this, created);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(PatientImportLocks.this);
+                    created.patientIds.forEach(patientId -> release(patientId, created));
+                }
+            });
+            owner = created;
+        }
+        return owner;
+    }
+
+    // Блокировка снимается PostgreSQL при завершении транзакции импорта
+    private boolean tryAdvisoryLock(Long patientId) {
+        if (!config.isEnablePatientAdvisoryLocks() || !isPostgres()) {
+            return true;
+        }
+        return Boolean.TRUE.equals(jdbcTemplate.queryForObject("SELECT pg_try_advisory_xact_lock(?, ?)",
+                Boolean.class, ADVISORY_LOCK_NAMESPACE, Long.hashCode(patientId)));
+    }
+
+    private boolean isPostgres() {
+        Boolean checked = postgres;
+        if (checked == null) {
+            try {
+                checked = "PostgreSQL".equals(jdbcTemplate.execute((ConnectionCallback<String>) connection ->
+                        connection.getMetaData().getDatabaseProductName()));
+            } catch (DataAccessException e) {
+                log.warn("Не удалось определить СУБД для advisory-блокировок пациентов: {}", e.getMessage());
+                return false;
+            }
+            postgres = checked;
+        }
+        return checked;
+    }
+}
@@ -0,0 +1,168 @@
+package com.example.service;
+
+import com.example.config.ImportConfigProperties;
+import com.example.entity.PatientProfile;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Порядок обработки пациентов в запуске импорта: сначала явно запрошенные обновления, затем пациенты,
+// не обработанные прерванным по дедлайну запуском, затем по вероятности изменений - давности последнего
+// изменения в старой системе и доле запусков, в которых у пациента были изменения.
+// При ограничении по времени свежие данные загружаются первыми.
+@Component
+@Slf4j
+public class PatientPriorityScheduler {
+
+    // Вес нового запуска в сглаженной частоте изменений
+    private static final double FREQUENCY_SMOOTHING = 0.3;
+    // Пациенты, которых еще не импортировали, идут раньше любых известных (максимум известных - 2)
+    private static final double UNKNOWN_PATIENT_SCORE = 3.0;
+
+    private static final int TIER_REFRESH_REQUESTED = 0;
+    private static final int TIER_CARRIED_OVER = 1;
+    private static final int TIER_REGULAR = 2;
+
+    private final ImportConfigProperties config;
+    private final Map<Long, Activity> activity = new ConcurrentHashMap<>();
+    private final Set<Long> refreshRequests = ConcurrentHashMap.newKeySet();
+
+    // Начало самого раннего непрерывного ряда прерванных запусков; сбрасывается после полного запуска
+    private volatile LocalDateTime interruptedRunStart;
+
+    // lastLegacyChange - самое позднее modifiedDateTime среди полученных заметок пациента,
+    // changeFrequency - сглаженная доля запусков с созданными или обновленными заметками
+    public record Activity(LocalDateTime lastLegacyChange, double changeFrequency, LocalDateTime lastImported) {
+    }
+
+    public PatientPriorityScheduler(ImportConfigProperties config) {
+        this.config = config;
+    }
+
+    public List<PatientProfile> order(List<PatientProfile> patients) {
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime carryOverSince = interruptedRunStart;
+
+        // Ключи сортировки читаются один раз до сортировки: activity и refreshRequests меняются
+        // параллельно (импорт отдельного пациента, запросы обновления), а List.sort требует
+        // согласованного сравнения на все время сортировки
+        List<Ranked> ranked = new ArrayList<>(patients.size());
+        for (PatientProfile patient : patients) {
+            Long patientId = patient.getId();
+            Activity patientActivity = patientId != null ? activity.get(patientId) : null;
+            boolean refreshRequested = patientId != null && refreshRequests.contains(patientId);
+            ranked.add(new Ranked(patient,
+                    tier(refreshRequested, patientActivity, carryOverSince),
+                    score(patientActivity, now),
+                    patientActivity != null ? patientActivity.lastImported() : null));
+        }
+        ranked.sort(Comparator
+                .comparingInt(Ranked::tier)
+                .thenComparing(Ranked::score, Comparator.reverseOrder())
+                .thenComparing(Ranked::lastImported, Comparator.nullsFirst(Comparator.naturalOrder()))
+                .thenComparing(entry -> entry.patient().getId(), Comparator.nullsLast(Comparator.naturalOrder())));
+
+        List<PatientProfile> ordered = new ArrayList<>(ranked.size());
+        for (Ranked entry : ranked) {
+            ordered.add(entry.patient());
+        }
+
+        if (!refreshRequests.isEmpty() || carryOverSince != null) {
+            log.info("Порядок пациентов: запрошено обновление {}, не обработаны прерванным запуском с {}",
+                    refreshRequests.size(), carryOverSince);
+        }
+        return ordered;
+    }
+
+    public void recordImported(Long patientId, LocalDateTime newestLegacyChange, boolean changed) {
+        if (patientId == null) {
+            return;
+        }
+        LocalDateTime now = LocalDateTime.now();
+        activity.compute(patientId, (id, previous) -> {
+            LocalDateTime lastChange = previous != null ? previous.lastLegacyChange() : null;
+            if (newestLegacyChange != null && (lastChange == null || newestLegacyChange.isAfter(lastChange))) {
+                lastChange = newestLegacyChange;
+            }
+            double observed = changed ? 1.0 : 0.0;
+            double frequency = previous != null
+                    ? FREQUENCY_SMOOTHING * observed + (1 - FREQUENCY_SMOOTHING) * previous.changeFrequency()
+                    : observed;
+            return new Activity(lastChange, frequency, now);
+        });
+        refreshRequests.remove(patientId);
+    }
+
+    public void requestRefresh(Long patientId) {
+        refreshRequests.add(patientId);
+        log.info("Запрошено первоочередное обновление заметок пациента {}", patientId);
+    }
+
+    public void runInterrupted(LocalDateTime runStart) {
+        if (interruptedRunStart == null) {
+            interruptedRunStart = runStart;
+        }
+    }
+
+    public void runCompleted() {
+        interruptedRunStart = null;
+    }
+
+    // Оценка в диапазоне [0, 2]: вклад давности изменения + частота изменений
+    public double score(Long patientId, LocalDateTime now) {
+        return score(patientId != null ? activity.get(patientId) : null, now);
+    }
+
+    private double score(Activity patientActivity, LocalDateTime now) {
+        if (patientActivity == null) {
+            return UNKNOWN_PATIENT_SCORE;
+        }
+        double recency = 0;
+        if (patientActivity.lastLegacyChange() != null) {
+            double hours = Math.max(0, Duration.between(patientActivity.lastLegacyChange(), now).toMinutes() / 60.0);
+            recency = Math.pow(0.5, hours / Math.max(1, config.getPriorityRecencyHalfLifeHours()));
+        }
+        return recency + patientActivity.changeFrequency();
+    }
+
+    public Activity getActivity(Long patientId) {
+        return activity.get(patientId);
+    }
+
+    public Set<Long> getRefreshRequests() {
+        return Set.copyOf(refreshRequests);
+    }
+
+    public int getTrackedPatients() {
+        return activity.size();
+    }
+
+    public LocalDateTime getInterruptedRunStart() {
+        return interruptedRunStart;
+    }
+
+    private static int tier(boolean refreshRequested, Activity patientActivity, LocalDateTime carryOverSince) {
+        if (refreshRequested) {
+            return TIER_REFRESH_REQUESTED;
+        }
+        if (carryOverSince != null) {
+            LocalDateTime imported = patientActivity != null ? patientActivity.lastImported() : null;
+            if (imported == null || imported.isBefore(carryOverSince)) {
+                return TIER_CARRIED_OVER;
+            }
+        }
+        return TIER_REGULAR;
+    }
+
+    // Ключи сортировки пациента, снятые в начале order
+    private record Ranked(PatientProfile patient, int tier, double score, LocalDateTime lastImported) {
+    }
+}
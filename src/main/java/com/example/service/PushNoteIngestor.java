@@ -0,0 +1,290 @@
+package com.example.service;
+
+import com.example.config.ImportConfigProperties;
+import com.example.dto.LegacyNote;
+import com.example.entity.PatientProfile;
+import com.example.model.ImportStatistics;
+import com.example.monitoring.ImportMetrics;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+// Прием изменений заметок от старой системы. События ставятся в очередь и применяются отдельным потоком
+// пачками в одной транзакции по той же логике create/update/skip, что и importSingleNote.
+// Пациенты события захватываются в транзакции пачки (PatientImportLocks), как плановым импортом;
+// событие пациента, занятого другим импортом, возвращается в очередь и применяется позже.
+// Если пачка не записалась, события пачки применяются по одному в отдельных транзакциях.
+@Service
+@Slf4j
+public class PushNoteIngestor {
+
+    public record SubmitResult(int accepted, int rejected, int overflow, int queued) {
+    }
+
+    private static final String SOURCE_PUSH = "push";
+
+    private final EnhancedImportService importService;
+    private final PatientClientLookup patientLookup;
+    private final ImportConfigProperties config;
+    private final ImportMetrics metrics;
+    private final PatientImportLocks patientLocks;
+    private final TransactionTemplate transactionTemplate;
+    private final BlockingQueue<LegacyNote> queue;
+    private Thread worker;
+    private volatile boolean running;
+
+    public PushNoteIngestor(EnhancedImportService importService,
+                            PatientClientLookup patientLookup,
+                            ImportConfigProperties config,
+                            ImportMetrics metrics,
+                            PatientImportLocks patientLocks,
+                            PlatformTransactionManager transactionManager) {
+        this.importService = importService;
+        this.patientLookup = patientLookup;
+        this.config = config;
+        this.metrics = metrics;
+        this.patientLocks = patientLocks;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        if (config.isEnablePushIngestion()) {
+            this.queue = new ArrayBlockingQueue<>(config.getPushQueueCapacity());
+            metrics.registerPushQueueGauge(queue, BlockingQueue::size);
+        } else {
+            this.queue = null;
+        }
+    }
+
+    // Поток применения запускается после создания бина: запущенный из конструктора, он мог бы увидеть
+    // объект до завершения инициализации
+    @PostConstruct
+    public void start() {
+        if (queue == null || worker != null) {
+            return;
+        }
+        running = true;
+        worker = Thread.ofPlatform()
+                .name("push-note-ingestor")
+                .daemon()
+                .start(this::drainLoop);
+    }
+
+    public boolean isEnabled() {
+        return queue != null;
+    }
+
+    // События без GUID заметки или клиента отклоняются; при заполненной очереди остаток не принимается,
+    // старая система должна повторить отправку
+    public SubmitResult submit(List<LegacyNote> events) {
+        if (queue == null) {
+            throw new IllegalStateException("Прием изменений заметок отключен");
+        }
+
+        int accepted = 0;
+        int rejected = 0;
+        int overflow = 0;
+        for (LegacyNote event : events) {
+            if (event == null || isBlank(event.getGuid()) || isBlank(event.getClientGuid())) {
+                rejected++;
+            } else if (overflow > 0 || !queue.offer(event)) {
+                overflow++;
+            } else {
+                accepted++;
+            }
+        }
+
+        metrics.recordPushEventsReceived(accepted, rejected, overflow);
+        if (overflow > 0) {
+            log.warn("Очередь изменений заметок заполнена, не принято событий: {}", overflow);
+        }
+        return new SubmitResult(accepted, rejected, overflow, queue.size());
+    }
+
+    private void drainLoop() {
+        List<LegacyNote> batch = new ArrayList<>(config.getPushBatchSize());
+        while (running || !queue.isEmpty()) {
+            try {
+                LegacyNote first = queue.poll(1, TimeUnit.SECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                collectBatch(batch);
+                apply(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (Exception e) {
+                log.error("Ошибка применения изменений заметок", e);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    // Добирает пачку до pushBatchSize, ожидая не дольше pushFlushMillis с момента первого события
+    private void collectBatch(List<LegacyNote> batch) throws InterruptedException {
+        long flushAt = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(config.getPushFlushMillis());
+        while (batch.size() < config.getPushBatchSize()) {
+            queue.drainTo(batch, config.getPushBatchSize() - batch.size());
+            long remaining = flushAt - System.nanoTime();
+            if (batch.size() >= config.getPushBatchSize() || remaining <= 0) {
+                return;
+            }
+            LegacyNote next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+            if (next == null) {
+                return;
+            }
+            batch.add(next);
+        }
+    }
+
+    ImportStatistics apply(List<LegacyNote> events) {
+        long start = System.nanoTime();
+        Collection<LegacyNote> latest = latestVersions(events);
+
+        ImportStatistics stats = new ImportStatistics();
+        stats.setStartTime(LocalDateTime.now());
+        int[] unmatched = {0};
+        List<LegacyNote> deferred = new ArrayList<>();
+        try {
+            transactionTemplate.executeWithoutResult(status -> unmatched[0] = applyAll(latest, stats, deferred, false));
+        } catch (Exception e) {
+            log.warn("Пачка из {} изменений не записана ({}), применяем по одному", latest.size(), e.getMessage());
+            stats.setCreatedCount(0);
+            stats.setUpdatedCount(0);
+            stats.setSkippedCount(0);
+            stats.setErrorCount(0);
+            deferred.clear();
+            unmatched[0] = applyAll(latest, stats, deferred, true);
+        }
+        stats.setEndTime(LocalDateTime.now());
+        requeue(deferred);
+
+        metrics.recordNotesProcessed(stats.getCreatedCount(), stats.getUpdatedCount(), stats.getSkippedCount());
+        metrics.recordPushBatchApplied(Duration.ofNanos(System.nanoTime() - start), unmatched[0]);
+        log.debug("Применено изменений заметок: {} (без пациента {}, отложено {}), {}",
+                latest.size(), unmatched[0], deferred.size(), stats);
+        return stats;
+    }
+
+    // Возвращает количество событий, для клиента которых не нашлось активного пациента.
+    // События, у которых хотя бы один пациент занят другим импортом, не применяются и попадают в deferred.
+    // В пакетном режиме захваты держатся до конца транзакции пачки, исключение прерывает всю пачку;
+    // в поштучном - захват держится до фиксации заметки, исключение прерывает только свое событие.
+    private int applyAll(Collection<LegacyNote> events, ImportStatistics stats, List<LegacyNote> deferred,
+                         boolean isolated) {
+        int unmatched = 0;
+        for (LegacyNote event : events) {
+            List<PatientProfile> owners = patientLookup.findPatients(event.getClientGuid());
+            if (owners.isEmpty()) {
+                unmatched++;
+                continue;
+            }
+            List<PatientImportLocks.Claim> claims = claimAll(owners);
+            if (claims == null) {
+                deferred.add(event);
+                continue;
+            }
+            try {
+                for (PatientProfile patient : owners) {
+                    if (!isolated) {
+                        importService.importSingleNote(patient, event, stats);
+                        continue;
+                    }
+                    try {
+                        importService.importSingleNote(patient, event, stats);
+                    } catch (Exception e) {
+                        log.error("Ошибка применения изменения заметки {} для пациента {}",
+                                event.getGuid(), patient.getId(), e);
+                        stats.incrementErrorCount();
+                        metrics.recordImportError("push_note_error");
+                    }
+                }
+            } finally {
+                claims.forEach(PatientImportLocks.Claim::close);
+            }
+        }
+        return unmatched;
+    }
+
+    // null - один из пациентов занят, уже взятые захваты вне транзакции освобождаются
+    private List<PatientImportLocks.Claim> claimAll(List<PatientProfile> owners) {
+        List<PatientImportLocks.Claim> claims = new ArrayList<>(owners.size());
+        for (PatientProfile patient : owners) {
+            PatientImportLocks.Claim claim = patientLocks.tryClaim(patient.getId(), SOURCE_PUSH);
+            if (claim == null) {
+                metrics.recordPatientLockBusy(SOURCE_PUSH);
+                claims.forEach(PatientImportLocks.Claim::close);
+                return null;
+            }
+            claims.add(claim);
+        }
+        return claims;
+    }
+
+    // Отложенные события ставятся в конец очереди; при заполненной очереди теряются до сверки плановым импортом
+    private void requeue(List<LegacyNote> deferred) {
+        if (deferred.isEmpty()) {
+            return;
+        }
+        int overflow = 0;
+        for (LegacyNote event : deferred) {
+            if (queue == null || !queue.offer(event)) {
+                overflow++;
+            }
+        }
+        if (overflow > 0) {
+            metrics.recordPushEventsReceived(0, 0, overflow);
+            log.warn("Не удалось вернуть в очередь изменений заметок занятых пациентов: {}", overflow);
+        }
+    }
+
+    // Из нескольких версий одной заметки в пачке применяется самая поздняя
+    private static Collection<LegacyNote> latestVersions(List<LegacyNote> events) {
+        Map<String, LegacyNote> byGuid = new LinkedHashMap<>();
+        for (LegacyNote event : events) {
+            byGuid.merge(event.getGuid(), event, (current, candidate) ->
+                    compareModified(candidate, current) >= 0 ? candidate : current);
+        }
+        return byGuid.values();
+    }
+
+    // Формат дат старой системы фиксированный, поэтому строки сравниваются без разбора
+    private static int compareModified(LegacyNote first, LegacyNote second) {
+        String a = first.getModifiedDateTime() != null ? first.getModifiedDateTime() : "";
+        String b = second.getModifiedDateTime() != null ? second.getModifiedDateTime() : "";
+        return a.compareTo(b);
+    }
+
+    private static boolean isBlank(String value) {
+        return value == null || value.isBlank();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (worker == null) {
+            return;
+        }
+
+        running = false;
+        try {
+            worker.join(TimeUnit.SECONDS.toMillis(30));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        log.info("Прием изменений заметок остановлен, не применено: {}", queue.size());
+    }
+}
@@ -0,0 +1,69 @@
+package com.example.archive;
+
+import com.example.config.ImportConfigProperties;
+import com.example.dto.LegacyNote;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ArchiveReplayReaderTest {
+
+    private final ArchiveReplayReader reader = new ArchiveReplayReader();
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void shouldReplayArchiveSegments() throws Exception {
+        ImportConfigProperties config = new ImportConfigProperties();
+        config.setEnableBackup(true);
+        config.setBackupPath(dir.toString());
+
+        LegacyPayloadArchive archive = new LegacyPayloadArchive(config);
+        archive.archiveClients("[{\"guid\":\"c1\",\"agency\":\"a1\"}]");
+        archive.archiveNotes("a1", "c1", LocalDate.of(2024, 1, 1), LocalDate.of(2024, 1, 31),
+                "[{\"guid\":\"n1\",\"comments\":\"first\"},{\"guid\":\"n2\",\"comments\":\"second\"}]");
+        archive.archiveNotes("a1", "c2", LocalDate.of(2024, 1, 1), LocalDate.of(2024, 1, 31), "[]");
+        archive.shutdown();
+
+        Map<String, List<LegacyNote>> replayed = new LinkedHashMap<>();
+        long total = reader.replay(dir, (clientGuid, notes) ->
+                replayed.computeIfAbsent(clientGuid, key -> new ArrayList<>()).addAll(notes));
+
+        assertThat(total).isEqualTo(2);
+        assertThat(replayed).containsOnlyKeys("c1");
+        assertThat(replayed.get("c1")).extracting(LegacyNote::getComments).containsExactly("first", "second");
+    }
+
+    @Test
+    void shouldReplayPlainJsonArrayAndNdjsonNotes() throws Exception {
+        Files.writeString(dir.resolve("notes.json"), """
+                [
+                  {"guid": "n1", "clientGuid": "c1", "comments": "one"},
+                  {"guid": "n2", "clientGuid": "c2", "comments": "two"}
+                ]
+                """);
+        Files.writeString(dir.resolve("more.ndjson"), """
+                {"guid": "n3", "clientGuid": "c1", "comments": "three"}
+                {"guid": "n4", "comments": "no client"}
+                """);
+        Files.writeString(dir.resolve("readme.txt"), "ignored");
+
+        Map<String, List<String>> replayed = new LinkedHashMap<>();
+        long total = reader.replay(dir, (clientGuid, notes) -> notes.forEach(note ->
+                replayed.computeIfAbsent(clientGuid, key -> new ArrayList<>()).add(note.getGuid())));
+
+        assertThat(total).isEqualTo(3);
+        assertThat(replayed.get("c1")).containsExactlyInAnyOrder("n1", "n3");
+        assertThat(replayed.get("c2")).containsExactly("n2");
+    }
+}
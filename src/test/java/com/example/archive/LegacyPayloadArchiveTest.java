@@ -0,0 +1,85 @@
+package com.example.archive;
+
+import com.example.config.ImportConfigProperties;
+import com.example.dto.ArchivedPayload;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LegacyPayloadArchiveTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @TempDir
+    Path backupDir;
+
+    @Test
+    void shouldNotWriteAnythingWhenBackupDisabled() {
+        ImportConfigProperties config = new ImportConfigProperties();
+        config.setBackupPath(backupDir.toString());
+
+        LegacyPayloadArchive archive = new LegacyPayloadArchive(config);
+        archive.archiveClients("[]");
+        archive.shutdown();
+
+        assertThat(archive.isEnabled()).isFalse();
+        assertThat(backupDir.toFile().list()).isEmpty();
+    }
+
+    @Test
+    void shouldAppendCompressedRecordsWithIndex() throws Exception {
+        ImportConfigProperties config = new ImportConfigProperties();
+        config.setEnableBackup(true);
+        config.setBackupPath(backupDir.toString());
+
+        LegacyPayloadArchive archive = new LegacyPayloadArchive(config);
+        archive.archiveClients("[{\"guid\":\"c1\",\"agency\":\"a1\"}]");
+        archive.archiveNotes("a1", "c1", LocalDate.of(2024, 1, 1), LocalDate.of(2024, 1, 31),
+                "[{\"guid\":\"n1\",\n\"comments\":\"text\"}]");
+        archive.shutdown();
+
+        assertThat(archive.getArchivedCount()).isEqualTo(2);
+
+        Path index = singleFile(LegacyPayloadArchive.INDEX_SUFFIX);
+        Path segment = singleFile(LegacyPayloadArchive.SEGMENT_SUFFIX);
+
+        List<String> indexLines = Files.readAllLines(index);
+        assertThat(indexLines).hasSize(2);
+        assertThat(indexLines.get(0)).startsWith("*\t\t\tclients\t0\t");
+
+        String[] notesEntry = indexLines.get(1).split("\t");
+        assertThat(notesEntry).containsSequence("c1", "2024-01-01", "2024-01-31", "notes");
+
+        // Запись читается по смещению из индекса без распаковки всего сегмента
+        try (FileChannel channel = FileChannel.open(segment)) {
+            channel.position(Long.parseLong(notesEntry[4]));
+            InputStream in = new GZIPInputStream(Channels.newInputStream(channel));
+            String line = new String(in.readNBytes(Integer.MAX_VALUE)).lines().findFirst().orElseThrow();
+
+            ArchivedPayload payload = objectMapper.readValue(line, ArchivedPayload.class);
+            assertThat(payload.getType()).isEqualTo("notes");
+            assertThat(payload.getAgency()).isEqualTo("a1");
+            assertThat(payload.getPayload()).contains("\"guid\":\"n1\"");
+        }
+    }
+
+    private Path singleFile(String suffix) throws Exception {
+        try (Stream<Path> files = Files.list(backupDir)) {
+            List<Path> matching = files.filter(path -> path.toString().endsWith(suffix)).toList();
+            assertThat(matching).hasSize(1);
+            return matching.get(0);
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package com.example.config;
+
+import com.example.dto.LegacyClient;
+import com.example.dto.LegacyNote;
+import com.example.dto.NotesRequest;
+import com.example.entity.PatientNote;
+import com.example.entity.PatientProfile;
+import org.junit.jupiter.api.Test;
+import org.springframework.aot.hint.MemberCategory;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.predicate.RuntimeHintsPredicates;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ApplicationRuntimeHintsTest {
+
+    private final RuntimeHints hints = new RuntimeHints();
+
+    @Test
+    void shouldRegisterJacksonBindingForLegacyDtos() throws Exception {
+        new ApplicationRuntimeHints().registerHints(hints, getClass().getClassLoader());
+
+        assertThat(RuntimeHintsPredicates.reflection().onMethod(LegacyNote.class.getMethod("setComments", String.class)))
+                .accepts(hints);
+        assertThat(RuntimeHintsPredicates.reflection().onMethod(LegacyClient.class.getMethod("getGuid")))
+                .accepts(hints);
+        assertThat(RuntimeHintsPredicates.reflection().onMethod(NotesRequest.class.getMethod("getClientGuid")))
+                .accepts(hints);
+    }
+
+    @Test
+    void shouldRegisterEntitiesAndChangelogs() {
+        new ApplicationRuntimeHints().registerHints(hints, getClass().getClassLoader());
+
+        assertThat(RuntimeHintsPredicates.reflection().onType(PatientNote.class)
+                .withMemberCategories(MemberCategory.INVOKE_DECLARED_CONSTRUCTORS, MemberCategory.DECLARED_FIELDS))
+                .accepts(hints);
+        assertThat(RuntimeHintsPredicates.reflection().onType(PatientProfile.class)
+                .withMemberCategory(MemberCategory.INVOKE_DECLARED_METHODS))
+                .accepts(hints);
+        assertThat(RuntimeHintsPredicates.resource().forResource("db/changelog/001-initial-schema.xml"))
+                .accepts(hints);
+    }
+}
@@ -0,0 +1,112 @@
+package com.example.config;
+
+import com.example.entity.PatientNote;
+import com.example.entity.PatientProfile;
+import com.example.repository.PatientNoteRepository;
+import com.example.repository.PatientProfileRepository;
+import com.example.service.EnhancedImportService;
+import io.micrometer.core.instrument.MeterRegistry;
+import liquibase.Liquibase;
+import liquibase.database.DatabaseFactory;
+import liquibase.database.jvm.JdbcConnection;
+import liquibase.resource.ClassLoaderResourceAccessor;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.Statement;
+import java.time.LocalDateTime;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Две независимые базы вместо настоящей репликации: по содержимому видно, куда ушел запрос.
+// Схема реплики создается тем же changelog, в реплику заранее записаны 3 заметки.
+@Testcontainers(disabledWithoutDocker = true)
+@SpringBootTest(properties = {
+        "spring.jpa.show-sql=false",
+        "notes.datasource.replica.maximum-pool-size=3",
+        "spring.datasource.hikari.maximum-pool-size=7",
+        "logging.level.com.example=WARN"
+})
+class ReadReplicaRoutingTest {
+
+    private static final int REPLICA_NOTES = 3;
+
+    @Container
+    static final PostgreSQLContainer<?> PRIMARY = new PostgreSQLContainer<>("postgres:16-alpine");
+
+    @Container
+    static final PostgreSQLContainer<?> REPLICA = new PostgreSQLContainer<>("postgres:16-alpine");
+
+    @Autowired
+    private EnhancedImportService importService;
+
+    @Autowired
+    private PatientProfileRepository patientRepository;
+
+    @Autowired
+    private PatientNoteRepository noteRepository;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @DynamicPropertySource
+    static void properties(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", PRIMARY::getJdbcUrl);
+        registry.add("spring.datasource.username", PRIMARY::getUsername);
+        registry.add("spring.datasource.password", PRIMARY::getPassword);
+        registry.add("notes.datasource.replica.jdbc-url", REPLICA::getJdbcUrl);
+        registry.add("notes.datasource.replica.username", REPLICA::getUsername);
+        registry.add("notes.datasource.replica.password", REPLICA::getPassword);
+    }
+
+    @BeforeAll
+    static void prepareReplica() throws Exception {
+        try (Connection connection = DriverManager.getConnection(
+                REPLICA.getJdbcUrl(), REPLICA.getUsername(), REPLICA.getPassword())) {
+            new Liquibase("db/changelog/db.changelog-master.xml", new ClassLoaderResourceAccessor(),
+                    DatabaseFactory.getInstance().findCorrectDatabaseImplementation(new JdbcConnection(connection)))
+                    .update("");
+            connection.setAutoCommit(true);
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("INSERT INTO patient_profile (id, first_name, status_id) VALUES (1, 'Replica', 200)");
+                for (int i = 0; i < REPLICA_NOTES; i++) {
+                    statement.execute("INSERT INTO patient_note (created_date_time, last_modified_date_time, patient_id, "
+                            + "legacy_note_guid, note) VALUES (now(), now(), 1, 'REPLICA-" + i + "', 'replica')");
+                }
+            }
+        }
+    }
+
+    @Test
+    void shouldReadStatisticsFromReplicaAndWriteToPrimary() {
+        PatientProfile patient = patientRepository.save(new PatientProfile(null, "Primary", "Patient", null, (short) 200));
+        noteRepository.save(new PatientNote(null, LocalDateTime.now(), LocalDateTime.now(),
+                null, null, "primary", patient, "PRIMARY-0"));
+
+        assertThat(importService.getTotalNotesCount()).isEqualTo(REPLICA_NOTES);
+        assertThat(importService.getImportedNotesCount()).isEqualTo(REPLICA_NOTES);
+        assertThat(importService.getImportStatistics().getCreatedCount()).isEqualTo(REPLICA_NOTES);
+        // Запросы статистики репозитория читают реплику
+        assertThat(noteRepository.countImportedNotes()).isEqualTo(REPLICA_NOTES);
+        // Поиск заметки для импорта идет в основную БД, где лежит запись
+        assertThat(noteRepository.findByLegacyNoteGuid("PRIMARY-0")).isPresent();
+        assertThat(noteRepository.findByLegacyNoteGuid("REPLICA-0")).isEmpty();
+    }
+
+    @Test
+    void shouldSizeAndReportPoolsSeparately() {
+        importService.getTotalNotesCount();
+
+        assertThat(meterRegistry.get("hikaricp.connections.max").tag("pool", "primary").gauge().value()).isEqualTo(7);
+        assertThat(meterRegistry.get("hikaricp.connections.max").tag("pool", "replica").gauge().value()).isEqualTo(3);
+    }
+}
@@ -0,0 +1,212 @@
+package com.example.loadtest;
+
+import com.example.config.ImportConfigProperties;
+import com.example.entity.PatientProfile;
+import com.example.model.ImportStatistics;
+import com.example.repository.PatientProfileRepository;
+import com.example.service.EnhancedImportService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import jakarta.persistence.EntityManagerFactory;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Нагрузочный прогон performImport: симулятор Legacy API + PostgreSQL в Testcontainers.
+// Запуск: mvn -Pload-test test [-Dloadtest.clients=2000 -Dnotes.import.patient-batch-size=500 ...]
+// Настройки симулятора - свойства loadtest.* (см. LegacyApiSimulator.Settings),
+// настройки импорта - обычные notes.import.*. Отчет пишется в target/load-test.
+@Slf4j
+@Tag("load")
+@Testcontainers(disabledWithoutDocker = true)
+@SpringBootTest(properties = {
+        "spring.jpa.show-sql=false",
+        "spring.jpa.properties.hibernate.generate_statistics=true",
+        "logging.level.com.example=WARN"
+})
+class ImportLoadTest {
+
+    @Container
+    static final PostgreSQLContainer<?> POSTGRES = new PostgreSQLContainer<>("postgres:16-alpine");
+
+    static final LegacyApiSimulator SIMULATOR = startSimulator();
+
+    @Autowired
+    private EnhancedImportService importService;
+
+    @Autowired
+    private PatientProfileRepository patientRepository;
+
+    @Autowired
+    private ImportConfigProperties config;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    public record Report(LocalDateTime startedAt,
+                         LegacyApiSimulator.Settings simulator,
+                         int patientBatchSize,
+                         int parallelThreads,
+                         int maxConcurrentApiConnections,
+                         int initialApiConcurrency,
+                         long durationMillis,
+                         long processedNotes,
+                         int createdNotes,
+                         int errors,
+                         double notesPerSecond,
+                         long apiCalls,
+                         long apiFailures,
+                         long bytesReceived,
+                         long dbStatements,
+                         long dbTransactions,
+                         long peakHeapBytes,
+                         String bottleneckPhase) {
+    }
+
+    @DynamicPropertySource
+    static void properties(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", POSTGRES::getJdbcUrl);
+        registry.add("spring.datasource.username", POSTGRES::getUsername);
+        registry.add("spring.datasource.password", POSTGRES::getPassword);
+        registry.add("legacy.api.base-url", SIMULATOR::getBaseUrl);
+    }
+
+    @AfterAll
+    static void stopSimulator() {
+        SIMULATOR.close();
+    }
+
+    @Test
+    void shouldReportImportThroughput() throws IOException {
+        LegacyApiSimulator.Settings settings = SIMULATOR.getSettings();
+        seedPatients(settings.clientCount());
+
+        Statistics dbStatistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        dbStatistics.clear();
+        SIMULATOR.resetCounters();
+        ImportStatistics stats;
+        long peakHeapBytes;
+        try (HeapSampler heap = HeapSampler.start()) {
+            stats = importService.performImport();
+            peakHeapBytes = heap.peak();
+        }
+
+        Report report = new Report(stats.getStartTime(), settings,
+                config.getPatientBatchSize(),
+                config.getParallelThreads(),
+                config.getMaxConcurrentApiConnections(),
+                config.getInitialApiConcurrency(),
+                stats.getDuration().toMillis(),
+                stats.getProcessedNotes(),
+                stats.getCreatedCount(),
+                stats.getErrorCount(),
+                stats.getNotesPerSecond(),
+                stats.getApiCalls(),
+                SIMULATOR.getFailedRequests(),
+                stats.getBytesReceived(),
+                dbStatistics.getPrepareStatementCount(),
+                dbStatistics.getTransactionCount(),
+                peakHeapBytes,
+                String.valueOf(stats.getBottleneckPhase()));
+        Path reportFile = writeReport(report);
+        log.warn("Нагрузочный импорт: {} заметок за {} мс ({} заметок/с), запросов API {}, SQL {}, пик heap {} МБ. Отчет: {}",
+                report.processedNotes(), report.durationMillis(), String.format("%.1f", report.notesPerSecond()),
+                report.apiCalls(), report.dbStatements(), report.peakHeapBytes() / (1024 * 1024), reportFile);
+
+        assertThat(stats.isHasCriticalError()).isFalse();
+        assertThat(stats.isAlreadyRunning()).isFalse();
+        assertThat(stats.getProcessedPatients()).isEqualTo(settings.clientCount() - stats.getErrorCount());
+        if (settings.errorRate() == 0) {
+            assertThat(stats.getCreatedCount()).isEqualTo(settings.expectedNotes());
+        }
+    }
+
+    private void seedPatients(int count) {
+        List<PatientProfile> patients = new ArrayList<>(count);
+        for (int client = 0; client < count; client++) {
+            patients.add(new PatientProfile(null, "Firstname" + client, "Lastname" + client,
+                    LegacyApiSimulator.clientGuid(client), (short) 200));
+        }
+        patientRepository.saveAll(patients);
+    }
+
+    // Пик занятой кучи целиком: пики отдельных пулов (eden, survivor, old) достигаются в разное время,
+    // и их сумма завышает реальное потребление
+    private static final class HeapSampler implements AutoCloseable {
+
+        private static final long INTERVAL_MILLIS = 10;
+
+        private final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        private final LongAccumulator peak = new LongAccumulator(Math::max, 0);
+        private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(runnable ->
+                Thread.ofPlatform().name("load-test-heap-sampler").daemon().unstarted(runnable));
+
+        static HeapSampler start() {
+            HeapSampler sampler = new HeapSampler();
+            sampler.executor.scheduleAtFixedRate(sampler::sample, 0, INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+            return sampler;
+        }
+
+        long peak() {
+            sample();
+            return peak.get();
+        }
+
+        private void sample() {
+            peak.accumulate(memory.getHeapMemoryUsage().getUsed());
+        }
+
+        @Override
+        public void close() {
+            executor.shutdownNow();
+        }
+    }
+
+    private static Path writeReport(Report report) throws IOException {
+        Path directory = Path.of("target", "load-test");
+        Files.createDirectories(directory);
+        Path file = directory.resolve("import-load-"
+                + report.startedAt().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss")) + ".json");
+        ObjectMapper mapper = new ObjectMapper()
+                .findAndRegisterModules()
+                .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+                .enable(SerializationFeature.INDENT_OUTPUT);
+        mapper.writeValue(file.toFile(), report);
+        return file;
+    }
+
+    private static LegacyApiSimulator startSimulator() {
+        try {
+            return LegacyApiSimulator.start(LegacyApiSimulator.Settings.fromSystemProperties());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,326 @@
+package com.example.loadtest;
+
+import com.example.model.ClientNoteDigest;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+
+// Заглушка старой системы на встроенном HTTP-сервере JDK: POST /clients, POST /notes
+// и POST /notes/digest в формате Legacy API. Данные детерминированы (зависят только от настроек), задержка ответа
+// распределена логнормально, часть запросов завершается 503.
+// Для ручной проверки приложения: java ... com.example.loadtest.LegacyApiSimulator 8080
+@Slf4j
+public class LegacyApiSimulator implements AutoCloseable {
+
+    private static final DateTimeFormatter DATE_TIME = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private static final String[] AGENCIES = {"vhh4", "hhc1", "mhs2", "ahc7"};
+    // Квантиль стандартного нормального распределения для p99
+    private static final double Z_99 = 2.326;
+
+    public record Settings(int clientCount,
+                           int notesPerClient,
+                           int noteDays,
+                           long minLatencyMillis,
+                           long medianLatencyMillis,
+                           long p99LatencyMillis,
+                           double errorRate,
+                           int commentLength,
+                           long seed) {
+
+        // Значения по умолчанию переопределяются системными свойствами loadtest.*
+        public static Settings fromSystemProperties() {
+            return new Settings(
+                    Integer.getInteger("loadtest.clients", 500),
+                    Integer.getInteger("loadtest.notesPerClient", 20),
+                    Integer.getInteger("loadtest.noteDays", 20),
+                    Long.getLong("loadtest.minLatencyMillis", 5),
+                    Long.getLong("loadtest.medianLatencyMillis", 30),
+                    Long.getLong("loadtest.p99LatencyMillis", 250),
+                    Double.parseDouble(System.getProperty("loadtest.errorRate", "0")),
+                    Integer.getInteger("loadtest.commentLength", 400),
+                    Long.getLong("loadtest.seed", 42));
+        }
+
+        public int expectedNotes() {
+            return clientCount * notesPerClient;
+        }
+    }
+
+    private final Settings settings;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Random random;
+    private final byte[] clientsBody;
+
+    private final LongAdder clientRequests = new LongAdder();
+    private final LongAdder notesRequests = new LongAdder();
+    private final LongAdder digestRequests = new LongAdder();
+    private final LongAdder failedRequests = new LongAdder();
+    private final LongAdder bytesSent = new LongAdder();
+
+    private LegacyApiSimulator(Settings settings, int port) throws IOException {
+        this.settings = settings;
+        this.random = new Random(settings.seed());
+        this.clientsBody = clientsJson().getBytes(StandardCharsets.UTF_8);
+        this.executor = Executors.newVirtualThreadPerTaskExecutor();
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 0);
+        server.setExecutor(executor);
+        server.createContext("/clients", exchange -> handle(exchange, clientRequests, () -> clientsBody));
+        server.createContext("/notes", exchange -> handle(exchange, notesRequests, () -> notesBody(exchange)));
+        server.createContext("/notes/digest", exchange -> handle(exchange, digestRequests, () -> digestBody(exchange)));
+    }
+
+    public static LegacyApiSimulator start(Settings settings) throws IOException {
+        return start(settings, 0);
+    }
+
+    public static LegacyApiSimulator start(Settings settings, int port) throws IOException {
+        LegacyApiSimulator simulator = new LegacyApiSimulator(settings, port);
+        simulator.server.start();
+        log.info("Симулятор Legacy API запущен на {}: {}", simulator.getBaseUrl(), settings);
+        return simulator;
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 8080;
+        start(Settings.fromSystemProperties(), port);
+    }
+
+    public String getBaseUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    public Settings getSettings() {
+        return settings;
+    }
+
+    public static String clientGuid(int client) {
+        return String.format("%08X-5A1B-4C2D-8E3F-%012X", client, (long) client * 7919);
+    }
+
+    public long getClientRequests() {
+        return clientRequests.sum();
+    }
+
+    public long getNotesRequests() {
+        return notesRequests.sum();
+    }
+
+    public long getDigestRequests() {
+        return digestRequests.sum();
+    }
+
+    public long getFailedRequests() {
+        return failedRequests.sum();
+    }
+
+    public long getBytesSent() {
+        return bytesSent.sum();
+    }
+
+    public void resetCounters() {
+        clientRequests.reset();
+        notesRequests.reset();
+        digestRequests.reset();
+        failedRequests.reset();
+        bytesSent.reset();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    @FunctionalInterface
+    private interface Body {
+        byte[] get() throws IOException;
+    }
+
+    private void handle(HttpExchange exchange, LongAdder requests, Body body) throws IOException {
+        try (exchange) {
+            requests.increment();
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+
+            byte[] response = body.get();
+            Thread.sleep(nextLatencyMillis());
+
+            if (nextIsError()) {
+                failedRequests.increment();
+                exchange.sendResponseHeaders(503, -1);
+                return;
+            }
+
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, response.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(response);
+            }
+            bytesSent.add(response.length);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.warn("Ошибка симулятора Legacy API: {}", e.getMessage());
+            failedRequests.increment();
+        }
+    }
+
+    // Логнормальное распределение с заданными медианой и p99, не меньше minLatencyMillis
+    private long nextLatencyMillis() {
+        if (settings.medianLatencyMillis() <= 0) {
+            return settings.minLatencyMillis();
+        }
+        double sigma = settings.p99LatencyMillis() > settings.medianLatencyMillis()
+                ? Math.log((double) settings.p99LatencyMillis() / settings.medianLatencyMillis()) / Z_99
+                : 0;
+        double gaussian;
+        synchronized (random) {
+            gaussian = random.nextGaussian();
+        }
+        long latency = Math.round(settings.medianLatencyMillis() * Math.exp(sigma * gaussian));
+        return Math.max(settings.minLatencyMillis(), latency);
+    }
+
+    private boolean nextIsError() {
+        if (settings.errorRate() <= 0) {
+            return false;
+        }
+        synchronized (random) {
+            return random.nextDouble() < settings.errorRate();
+        }
+    }
+
+    private String clientsJson() {
+        StringBuilder json = new StringBuilder(settings.clientCount() * 256).append('[');
+        for (int client = 0; client < settings.clientCount(); client++) {
+            if (client > 0) {
+                json.append(',');
+            }
+            json.append("{\"agency\":\"").append(agency(client)).append('"')
+                    .append(",\"guid\":\"").append(clientGuid(client)).append('"')
+                    .append(",\"firstName\":\"Firstname").append(client).append('"')
+                    .append(",\"lastName\":\"Lastname").append(client).append('"')
+                    .append(",\"status\":\"ACTIVE\"")
+                    .append(",\"dob\":\"1965-01-01\"")
+                    .append(",\"createdDateTime\":\"2019-03-01 09:00:00 CDT\"")
+                    .append('}');
+        }
+        return json.append(']').toString();
+    }
+
+    private record Note(int index, LocalDateTime created) {
+
+        String guid(String clientGuid) {
+            return clientGuid.substring(0, 9) + String.format("N%05X-4000-8000-%012X", index, (long) index);
+        }
+
+        String modifiedDateTime() {
+            return created.plusHours(1).format(DATE_TIME) + " CDT";
+        }
+    }
+
+    // Заметки клиента, попадающие в запрошенный период; одни и те же при повторных запросах
+    private List<Note> notesInPeriod(LocalDate dateFrom, LocalDate dateTo) {
+        LocalDateTime newest = LocalDate.now().atTime(0, 30);
+        List<Note> notes = new ArrayList<>();
+        for (int note = 0; note < settings.notesPerClient(); note++) {
+            LocalDateTime created = newest
+                    .minusDays((long) note * Math.max(1, settings.noteDays()) / Math.max(1, settings.notesPerClient()))
+                    .plusMinutes(note % 600);
+            LocalDate day = created.toLocalDate();
+            if (!day.isBefore(dateFrom) && !day.isAfter(dateTo)) {
+                notes.add(new Note(note, created));
+            }
+        }
+        return notes;
+    }
+
+    private byte[] notesBody(HttpExchange exchange) throws IOException {
+        JsonNode request = readRequest(exchange);
+        String clientGuid = request.path("clientGuid").asText();
+        LocalDate dateFrom = LocalDate.parse(request.path("dateFrom").asText());
+        LocalDate dateTo = LocalDate.parse(request.path("dateTo").asText());
+
+        StringBuilder json = new StringBuilder().append('[');
+        for (Note note : notesInPeriod(dateFrom, dateTo)) {
+            if (json.length() > 1) {
+                json.append(',');
+            }
+            json.append("{\"comments\":\"").append(comments(clientGuid, note.index())).append('"')
+                    .append(",\"guid\":\"").append(note.guid(clientGuid)).append('"')
+                    .append(",\"modifiedDateTime\":\"").append(note.modifiedDateTime()).append('"')
+                    .append(",\"clientGuid\":\"").append(clientGuid).append('"')
+                    .append(",\"datetime\":\"").append(note.created().format(DATE_TIME)).append(" CDT\"")
+                    .append(",\"loggedUser\":\"nurse").append(note.index() % 20).append('"')
+                    .append(",\"createdDateTime\":\"").append(note.created().format(DATE_TIME)).append(" CDT\"")
+                    .append('}');
+        }
+        return json.append(']').toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    // Дайджест считается по тем же заметкам, что отдает /notes
+    private byte[] digestBody(HttpExchange exchange) throws IOException {
+        JsonNode request = readRequest(exchange);
+        LocalDate dateFrom = LocalDate.parse(request.path("dateFrom").asText());
+        LocalDate dateTo = LocalDate.parse(request.path("dateTo").asText());
+        List<Note> notes = notesInPeriod(dateFrom, dateTo);
+
+        StringBuilder json = new StringBuilder().append('[');
+        for (JsonNode guid : request.path("clientGuids")) {
+            String clientGuid = guid.asText();
+            long hash = 0;
+            for (Note note : notes) {
+                hash += ClientNoteDigest.noteHash(note.guid(clientGuid), note.modifiedDateTime());
+            }
+            if (json.length() > 1) {
+                json.append(',');
+            }
+            json.append("{\"clientGuid\":\"").append(clientGuid).append('"')
+                    .append(",\"noteCount\":").append(notes.size())
+                    .append(",\"hash\":").append(hash)
+                    .append('}');
+        }
+        return json.append(']').toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private JsonNode readRequest(HttpExchange exchange) throws IOException {
+        try (InputStream in = exchange.getRequestBody()) {
+            return objectMapper.readTree(in);
+        }
+    }
+
+    private String comments(String clientGuid, int note) {
+        StringBuilder comments = new StringBuilder(settings.commentLength())
+                .append("Visit note ").append(note).append(" for client ").append(clientGuid).append(". ");
+        while (comments.length() < settings.commentLength()) {
+            comments.append("Vital signs stable, medication reviewed, no new complaints. ");
+        }
+        comments.setLength(Math.max(1, settings.commentLength()));
+        return comments.toString();
+    }
+
+    private static String agency(int client) {
+        return AGENCIES[client % AGENCIES.length];
+    }
+}
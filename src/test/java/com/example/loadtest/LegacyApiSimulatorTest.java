@@ -0,0 +1,97 @@
+package com.example.loadtest;
+
+import com.example.archive.LegacyPayloadArchive;
+import com.example.config.ImportConfigProperties;
+import com.example.config.LegacyApiConfig;
+import com.example.dto.LegacyNote;
+import com.example.model.LegacyClientIndex;
+import com.example.monitoring.ImportMetrics;
+import com.example.service.AgencyConcurrencyLimiters;
+import com.example.service.ImportRunContext;
+import com.example.service.LegacyApiService;
+import com.example.service.LegacyApiUsage;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.observation.ObservationRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.client.HttpServerErrorException;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class LegacyApiSimulatorTest {
+
+    private static LegacyApiSimulator.Settings settings(int clients, int notesPerClient, double errorRate) {
+        return new LegacyApiSimulator.Settings(clients, notesPerClient, 10, 0, 0, 0, errorRate, 200, 1);
+    }
+
+    private static LegacyApiService legacyApiService(LegacyApiSimulator simulator) {
+        LegacyApiConfig apiConfig = new LegacyApiConfig();
+        apiConfig.setBaseUrl(simulator.getBaseUrl());
+        ImportConfigProperties importConfig = new ImportConfigProperties();
+        ImportMetrics metrics = new ImportMetrics(new SimpleMeterRegistry());
+        return new LegacyApiService(apiConfig,
+                new LegacyPayloadArchive(importConfig),
+                new AgencyConcurrencyLimiters(importConfig, metrics),
+                metrics,
+                ObservationRegistry.NOOP,
+                new LegacyApiUsage());
+    }
+
+    @Test
+    void shouldServeClientsAndNotesInRequestedWindow() throws Exception {
+        try (LegacyApiSimulator simulator = LegacyApiSimulator.start(settings(3, 5, 0))) {
+            LegacyApiService legacyApiService = legacyApiService(simulator);
+            String clientGuid = LegacyApiSimulator.clientGuid(1);
+
+            LegacyClientIndex clients = legacyApiService.getClientIndex(ImportRunContext.NONE);
+            List<LegacyNote> notes = legacyApiService.getClientNotes("hhc1", clientGuid,
+                    LocalDate.now().minusDays(30), LocalDate.now());
+            List<LegacyNote> today = legacyApiService.getClientNotes("hhc1", clientGuid,
+                    LocalDate.now(), LocalDate.now());
+
+            assertThat(clients.size()).isEqualTo(3);
+            assertThat(clients.getAgency(clientGuid)).isEqualTo("hhc1");
+            assertThat(notes).hasSize(5)
+                    .allSatisfy(note -> {
+                        assertThat(note.getClientGuid()).isEqualTo(clientGuid);
+                        assertThat(note.getComments()).hasSize(200);
+                    });
+            assertThat(notes).extracting(LegacyNote::getGuid).doesNotHaveDuplicates();
+            assertThat(today).hasSizeLessThan(notes.size());
+            assertThat(simulator.getClientRequests()).isEqualTo(1);
+            assertThat(simulator.getNotesRequests()).isEqualTo(2);
+            assertThat(simulator.getBytesSent()).isPositive();
+        }
+    }
+
+    @Test
+    void shouldReturnSameNotesForRepeatedRequests() throws Exception {
+        try (LegacyApiSimulator simulator = LegacyApiSimulator.start(settings(1, 4, 0))) {
+            LegacyApiService legacyApiService = legacyApiService(simulator);
+            String clientGuid = LegacyApiSimulator.clientGuid(0);
+            LocalDate dateFrom = LocalDate.now().minusDays(30);
+
+            List<LegacyNote> first = legacyApiService.getClientNotes("vhh4", clientGuid, dateFrom, LocalDate.now());
+            List<LegacyNote> second = legacyApiService.getClientNotes("vhh4", clientGuid, dateFrom, LocalDate.now());
+
+            assertThat(second).isEqualTo(first);
+        }
+    }
+
+    @Test
+    void shouldFailRequestsAccordingToErrorRate() throws IOException {
+        try (LegacyApiSimulator simulator = LegacyApiSimulator.start(settings(2, 1, 1.0))) {
+            LegacyApiService legacyApiService = legacyApiService(simulator);
+
+            assertThatThrownBy(() -> legacyApiService.getClientIndex(ImportRunContext.NONE))
+                    .isInstanceOf(HttpServerErrorException.class);
+            // HTTP-клиент сам повторяет запрос после 503, поэтому отказов может быть больше одного
+            assertThat(simulator.getFailedRequests()).isPositive()
+                    .isEqualTo(simulator.getClientRequests());
+        }
+    }
+}
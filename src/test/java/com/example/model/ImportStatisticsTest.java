@@ -0,0 +1,82 @@
+package com.example.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ImportStatisticsTest {
+
+    @Test
+    void shouldNotLoseConcurrentIncrements() throws Exception {
+        ImportStatistics stats = new ImportStatistics();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                futures.add(executor.submit(() -> {
+                    for (int j = 0; j < 10_000; j++) {
+                        stats.incrementCreatedCount();
+                        stats.addPhaseTime(ImportStatistics.Phase.DB, 1);
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertThat(stats.getCreatedCount()).isEqualTo(80_000);
+        assertThat(stats.getPhaseTime(ImportStatistics.Phase.DB).toNanos()).isEqualTo(80_000);
+    }
+
+    @Test
+    void shouldMergeWorkerStatisticsIntoRunSummary() {
+        ImportStatistics run = new ImportStatistics();
+        ImportStatistics first = new ImportStatistics();
+        first.incrementCreatedCount();
+        first.incrementProcessedPatients();
+        first.addApiCalls(3);
+        first.addBytesReceived(1024);
+        first.addPhaseTime(ImportStatistics.Phase.FETCH, 5_000_000);
+        ImportStatistics second = new ImportStatistics();
+        second.incrementUpdatedCount();
+        second.incrementSkippedCount();
+        second.incrementProcessedPatients();
+        second.addPhaseTime(ImportStatistics.Phase.DB, 9_000_000);
+        second.setDeadlineExceeded(true);
+
+        run.merge(first).merge(second);
+
+        assertThat(run.getProcessedNotes()).isEqualTo(3);
+        assertThat(run.getProcessedPatients()).isEqualTo(2);
+        assertThat(run.getApiCalls()).isEqualTo(3);
+        assertThat(run.getBytesReceived()).isEqualTo(1024);
+        assertThat(run.isDeadlineExceeded()).isTrue();
+        assertThat(run.getBottleneckPhase()).isEqualTo(ImportStatistics.Phase.DB);
+    }
+
+    @Test
+    void shouldComputeThroughputFromRunDuration() {
+        ImportStatistics stats = new ImportStatistics();
+        LocalDateTime start = LocalDateTime.of(2024, 1, 1, 10, 0);
+        stats.setStartTime(start);
+        stats.setEndTime(start.plusSeconds(4));
+        for (int i = 0; i < 100; i++) {
+            stats.incrementCreatedCount();
+        }
+        stats.setProcessedPatients(10);
+
+        assertThat(stats.getNotesPerSecond()).isEqualTo(25.0);
+        assertThat(stats.getPatientsPerSecond()).isEqualTo(2.5);
+        assertThat(stats.getBottleneckPhase()).isNull();
+    }
+}
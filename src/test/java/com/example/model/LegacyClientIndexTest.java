@@ -0,0 +1,63 @@
+package com.example.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LegacyClientIndexTest {
+
+    @Test
+    void shouldResolveAgencyByUuidGuid() {
+        LegacyClientIndex index = LegacyClientIndex.builder(2)
+                .add("01588E84-D45A-EB98-F47F-716073A4F1EF", "vhh4")
+                .add("C5DCAA49-ADE5-E65C-B776-3F6D7B5F2055", "vhh4")
+                .build();
+
+        assertThat(index.size()).isEqualTo(2);
+        assertThat(index.agencyCount()).isEqualTo(1);
+        assertThat(index.getAgency("01588E84-D45A-EB98-F47F-716073A4F1EF")).isEqualTo("vhh4");
+        assertThat(index.contains("C5DCAA49-ADE5-E65C-B776-3F6D7B5F2055")).isTrue();
+        assertThat(index.contains("00000000-0000-0000-0000-000000000001")).isFalse();
+        assertThat(index.getAgency(null)).isNull();
+    }
+
+    @Test
+    void shouldKeepNonUuidGuidsInFallbackMap() {
+        LegacyClientIndex index = LegacyClientIndex.builder(2)
+                .add("test-guid-1", "test-agency")
+                .add("00000000-0000-0000-0000-000000000000", "zero")
+                .build();
+
+        assertThat(index.getAgency("test-guid-1")).isEqualTo("test-agency");
+        assertThat(index.getAgency("00000000-0000-0000-0000-000000000000")).isEqualTo("zero");
+        assertThat(index.contains("test-guid-2")).isFalse();
+    }
+
+    @Test
+    void shouldGrowTableAndOverwriteDuplicates() {
+        LegacyClientIndex.Builder builder = LegacyClientIndex.builder(1);
+        for (int i = 0; i < 10_000; i++) {
+            builder.add(new UUID(i + 1, i * 31L).toString().toUpperCase(), "agency-" + (i % 7));
+        }
+        builder.add(new UUID(1, 0).toString(), "replaced");
+        LegacyClientIndex index = builder.build();
+
+        assertThat(builder.getDuplicates()).isEqualTo(1);
+        assertThat(index.size()).isEqualTo(10_000);
+        assertThat(index.agencyCount()).isEqualTo(8);
+        assertThat(index.getAgency(new UUID(1, 0).toString().toUpperCase())).isEqualTo("replaced");
+        assertThat(index.getAgency(new UUID(5000, 4999 * 31L).toString())).isEqualTo("agency-" + (4999 % 7));
+    }
+
+    @Test
+    void shouldKeepClientsWithoutAgency() {
+        LegacyClientIndex index = LegacyClientIndex.builder(1)
+                .add("01588E84-D45A-EB98-F47F-716073A4F1EF", null)
+                .build();
+
+        assertThat(index.contains("01588E84-D45A-EB98-F47F-716073A4F1EF")).isTrue();
+        assertThat(index.getAgency("01588E84-D45A-EB98-F47F-716073A4F1EF")).isNull();
+    }
+}
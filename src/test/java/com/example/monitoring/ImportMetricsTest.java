@@ -0,0 +1,94 @@
+package com.example.monitoring;
+
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.CountAtBucket;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ImportMetricsTest {
+
+    private SimpleMeterRegistry meterRegistry;
+    private ImportMetrics metrics;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        metrics = new ImportMetrics(meterRegistry);
+    }
+
+    @Test
+    void shouldPreRegisterTimersForAllPhases() {
+        for (ImportPhase phase : ImportPhase.values()) {
+            assertThat(meterRegistry.find("notes_import_phase_duration_seconds")
+                    .tags("phase", phase.getTagValue(), "status", "success").timer()).isNotNull();
+            assertThat(meterRegistry.find("notes_import_phase_duration_seconds")
+                    .tags("phase", phase.getTagValue(), "status", "failure").timer()).isNotNull();
+        }
+    }
+
+    @Test
+    void shouldRecordPhaseDurationIntoSloBuckets() {
+        metrics.recordPhase(ImportPhase.NOTE_LOOKUP, TimeUnit.MILLISECONDS.toNanos(3), true);
+        metrics.recordPhase(ImportPhase.NOTE_LOOKUP, TimeUnit.MILLISECONDS.toNanos(40), true);
+
+        Timer timer = metrics.phaseTimer(ImportPhase.NOTE_LOOKUP, true);
+        assertThat(timer.count()).isEqualTo(2);
+
+        List<Double> bucketBounds = Arrays.stream(timer.takeSnapshot().histogramCounts())
+                .map(bucket -> bucket.bucket(TimeUnit.MILLISECONDS))
+                .toList();
+        assertThat(bucketBounds).contains(1.0, 5.0, 50.0, 100.0);
+
+        CountAtBucket fiveMillis = Arrays.stream(timer.takeSnapshot().histogramCounts())
+                .filter(bucket -> bucket.bucket(TimeUnit.MILLISECONDS) == 5.0)
+                .findFirst()
+                .orElseThrow();
+        assertThat(fiveMillis.count()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldReuseApiTimerAcrossConcurrentCalls() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < 400; i++) {
+                futures.add(executor.submit(() ->
+                        metrics.recordApiCall(metrics.startApiCallTimer(), "notes", true)));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertThat(meterRegistry.find("notes_import_api_call_duration_seconds").timers()).hasSize(1);
+        assertThat(meterRegistry.get("notes_import_api_call_duration_seconds")
+                .tags("operation", "notes", "status", "success").timer().count()).isEqualTo(400);
+    }
+
+    @Test
+    void shouldKeepCachedTimersPerOperationAndStatus() {
+        metrics.recordDatabaseOperationCached(metrics.startDatabaseTimer(), "save", true);
+        metrics.recordDatabaseOperationCached(metrics.startDatabaseTimer(), "save", true);
+        metrics.recordDatabaseOperationCached(metrics.startDatabaseTimer(), "save", false);
+        metrics.recordApiCallCached(metrics.startApiCallTimer(), "clients", true);
+
+        assertThat(metrics.getDatabaseTimerCacheSize()).isEqualTo(2);
+        assertThat(metrics.getApiTimerCacheSize()).isEqualTo(1);
+
+        metrics.clearTimerCaches();
+        assertThat(metrics.getDatabaseTimerCacheSize()).isZero();
+    }
+}
@@ -0,0 +1,69 @@
+package com.example.monitoring;
+
+import com.example.config.ImportConfigProperties;
+import com.example.monitoring.jfr.LegacyHttpCallEvent;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ImportRecordingEndpointTest {
+
+    @TempDir
+    Path tempDir;
+
+    private ImportRecordingEndpoint endpoint;
+
+    @BeforeEach
+    void setUp() {
+        ImportConfigProperties config = new ImportConfigProperties();
+        config.setJfrRecordingPath(tempDir.toString());
+        endpoint = new ImportRecordingEndpoint(config);
+    }
+
+    @AfterEach
+    void tearDown() {
+        endpoint.execute("stop", null);
+    }
+
+    @Test
+    void shouldDumpRecordingWithImportEvents() throws Exception {
+        endpoint.execute("start", null);
+        assertThat(endpoint.status()).containsEntry("state", "RUNNING");
+
+        LegacyHttpCallEvent event = new LegacyHttpCallEvent();
+        event.begin();
+        event.endpoint = "/notes";
+        event.statusCode = 200;
+        event.responseBytes = 1024;
+        event.commit();
+
+        Map<String, Object> result = endpoint.execute("dump", null);
+
+        Path file = Paths.get((String) result.get("file"));
+        assertThat(file).exists().hasParent(tempDir);
+        List<RecordedEvent> events = RecordingFile.readAllEvents(file).stream()
+                .filter(recorded -> recorded.getEventType().getName().equals("com.example.notesimport.LegacyHttpCall"))
+                .toList();
+        assertThat(events).hasSize(1);
+        assertThat(events.get(0).getLong("responseBytes")).isEqualTo(1024);
+        assertThat(events.get(0).getString("endpoint")).isEqualTo("/notes");
+    }
+
+    @Test
+    void shouldRejectDumpWithoutRunningRecording() {
+        assertThatThrownBy(() -> endpoint.execute("dump", null))
+                .isInstanceOf(IllegalStateException.class);
+        assertThat(endpoint.status()).containsEntry("state", "NONE");
+    }
+}
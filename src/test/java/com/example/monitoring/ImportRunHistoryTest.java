@@ -0,0 +1,99 @@
+package com.example.monitoring;
+
+import com.example.config.ImportConfigProperties;
+import com.example.entity.ImportRun;
+import com.example.model.ImportStatistics;
+import com.example.repository.ImportRunRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.LocalDateTime;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+@ExtendWith(MockitoExtension.class)
+class ImportRunHistoryTest {
+
+    @Mock
+    private ImportRunRepository repository;
+
+    private ImportConfigProperties config;
+    private SimpleMeterRegistry meterRegistry;
+    private ImportRunHistory history;
+
+    @BeforeEach
+    void setUp() {
+        config = new ImportConfigProperties();
+        config.setRunHistorySize(5);
+        config.setRegressionThresholdPercent(50);
+        meterRegistry = new SimpleMeterRegistry();
+        history = new ImportRunHistory(config, repository, new ImportMetrics(meterRegistry));
+    }
+
+    @Test
+    void shouldNotFlagRegressionWithoutEnoughBaselineRuns() {
+        history.record("legacy_api", stats(10, 100));
+        ImportRun run = history.record("legacy_api", stats(60, 100));
+
+        assertThat(run.getRegression()).isNull();
+        verify(repository, never()).save(any());
+    }
+
+    @Test
+    void shouldFlagDurationAndNoteLatencyRegressionAgainstMedian() {
+        history.record("legacy_api", stats(10, 100));
+        history.record("legacy_api", stats(12, 100));
+        history.record("legacy_api", stats(11, 100));
+
+        ImportRun run = history.record("legacy_api", stats(30, 100));
+
+        assertThat(run.getRegression()).contains("длительность 30000 мс");
+        assertThat(meterRegistry.get("notes_import_run_regressions_total").tags("kind", "duration").counter().count())
+                .isEqualTo(1);
+        assertThat(meterRegistry.get("notes_import_run_regressions_total").tags("kind", "note_latency").counter().count())
+                .isEqualTo(1);
+        assertThat(meterRegistry.get("notes_import_last_run_regressed").gauge().value()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldExcludeFailedRunsAndOtherSourcesFromBaseline() {
+        history.record("legacy_api", stats(10, 100));
+        history.record("legacy_api", stats(10, 100));
+        history.record("archive", stats(1, 100));
+        ImportStatistics stopped = stats(100, 100);
+        stopped.setDeadlineExceeded(true);
+        history.record("legacy_api", stopped);
+
+        assertThat(history.baseline("legacy_api").runs()).isEqualTo(2);
+        assertThat(history.baseline("legacy_api").durationMillis()).isEqualTo(10_000);
+    }
+
+    @Test
+    void shouldKeepBoundedHistoryAndPersistWhenEnabled() {
+        config.setPersistRunHistory(true);
+        for (int i = 1; i <= 7; i++) {
+            history.record("legacy_api", stats(i, 10));
+        }
+
+        assertThat(history.getRuns()).hasSize(5);
+        assertThat(history.getRuns().get(0).getDurationMillis()).isEqualTo(7_000);
+        verify(repository, times(7)).save(any(ImportRun.class));
+    }
+
+    private ImportStatistics stats(int seconds, int notes) {
+        ImportStatistics stats = new ImportStatistics();
+        LocalDateTime start = LocalDateTime.of(2024, 1, 1, 10, 0);
+        stats.setStartTime(start);
+        stats.setEndTime(start.plusSeconds(seconds));
+        stats.setCreatedCount(notes);
+        return stats;
+    }
+}
@@ -0,0 +1,81 @@
+package com.example.monitoring;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.StatusCode;
+import io.opentelemetry.api.trace.Tracer;
+import io.opentelemetry.context.Scope;
+import io.opentelemetry.sdk.trace.SdkTracerProvider;
+import io.opentelemetry.sdk.trace.export.SimpleSpanProcessor;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class OtlpJsonFileSpanExporterTest {
+
+    @Test
+    void shouldWriteSpansAsOtlpJsonLines() throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        OtlpJsonFileSpanExporter exporter = new OtlpJsonFileSpanExporter(output);
+        SdkTracerProvider tracerProvider = SdkTracerProvider.builder()
+                .addSpanProcessor(SimpleSpanProcessor.create(exporter))
+                .build();
+        Tracer tracer = tracerProvider.get("notes-import", "1.0");
+
+        Span run = tracer.spanBuilder(ImportObservations.IMPORT_RUN).startSpan();
+        try (Scope ignored = run.makeCurrent()) {
+            tracer.spanBuilder(ImportObservations.PATIENT_BATCH).startSpan()
+                    .setAttribute(ImportObservations.PATIENT_COUNT, 25L)
+                    .setStatus(StatusCode.ERROR, "write failed")
+                    .end();
+        }
+        run.end();
+        tracerProvider.shutdown();
+
+        String[] lines = output.toString(StandardCharsets.UTF_8).split("\n");
+        assertThat(lines).hasSize(2);
+
+        JsonNode batch = new ObjectMapper().readTree(lines[0]);
+        JsonNode scopeSpans = batch.at("/resourceSpans/0/scopeSpans/0");
+        assertThat(scopeSpans.at("/scope/name").asText()).isEqualTo("notes-import");
+        assertThat(scopeSpans.at("/scope/version").asText()).isEqualTo("1.0");
+
+        JsonNode span = scopeSpans.at("/spans/0");
+        assertThat(span.at("/name").asText()).isEqualTo(ImportObservations.PATIENT_BATCH);
+        assertThat(span.at("/parentSpanId").asText()).isEqualTo(run.getSpanContext().getSpanId());
+        assertThat(span.at("/kind").asInt()).isEqualTo(1);
+        assertThat(span.at("/attributes/0/key").asText()).isEqualTo(ImportObservations.PATIENT_COUNT);
+        assertThat(span.at("/attributes/0/value/intValue").asText()).isEqualTo("25");
+        assertThat(span.at("/status/code").asInt()).isEqualTo(2);
+        assertThat(span.at("/status/message").asText()).isEqualTo("write failed");
+
+        JsonNode runSpan = new ObjectMapper().readTree(lines[1]).at("/resourceSpans/0/scopeSpans/0/spans/0");
+        assertThat(runSpan.has("parentSpanId")).isFalse();
+    }
+
+    @Test
+    void shouldCloseOutputOnShutdown() {
+        ByteArrayOutputStream delegate = new ByteArrayOutputStream();
+        boolean[] closed = new boolean[1];
+        OtlpJsonFileSpanExporter exporter = new OtlpJsonFileSpanExporter(new FilterOutputStream(delegate) {
+            @Override
+            public void close() throws IOException {
+                closed[0] = true;
+                super.close();
+            }
+        });
+
+        assertThat(exporter.shutdown().isSuccess()).isTrue();
+        assertThat(exporter.shutdown().isSuccess()).isTrue();
+
+        assertThat(closed[0]).isTrue();
+        assertThat(exporter.export(List.of()).isSuccess()).isFalse();
+    }
+}
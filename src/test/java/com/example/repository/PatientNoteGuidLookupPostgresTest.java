@@ -0,0 +1,125 @@
+package com.example.repository;
+
+import com.example.entity.PatientNote;
+import com.example.entity.PatientProfile;
+import com.example.model.NoteVersion;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+// Поиск по GUID в секционированной patient_note: заметки текущего месяца и секции по умолчанию (год назад)
+@Testcontainers(disabledWithoutDocker = true)
+@SpringBootTest(properties = {
+        "spring.jpa.show-sql=false",
+        "logging.level.com.example=WARN"
+})
+class PatientNoteGuidLookupPostgresTest {
+
+    @Container
+    static final PostgreSQLContainer<?> POSTGRES = new PostgreSQLContainer<>("postgres:16-alpine");
+
+    @Autowired
+    private PatientNoteRepository noteRepository;
+
+    @Autowired
+    private PatientProfileRepository patientRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @DynamicPropertySource
+    static void properties(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", POSTGRES::getJdbcUrl);
+        registry.add("spring.datasource.username", POSTGRES::getUsername);
+        registry.add("spring.datasource.password", POSTGRES::getPassword);
+    }
+
+    @Test
+    void shouldFindNotesByGuidAcrossPartitions() {
+        PatientProfile patient = savePatient();
+        PatientNote recent = saveNote(patient, "LOOKUP-RECENT", LocalDateTime.now());
+        PatientNote old = saveNote(patient, "LOOKUP-OLD", LocalDateTime.now().minusYears(1));
+
+        assertThat(noteRepository.findByLegacyNoteGuid("LOOKUP-OLD")).get()
+                .extracting(PatientNote::getId).isEqualTo(old.getId());
+        assertThat(noteRepository.findByLegacyNoteGuid("LOOKUP-MISSING")).isEmpty();
+        assertThat(noteRepository.findVersionsByLegacyNoteGuids(List.of("LOOKUP-RECENT", "LOOKUP-OLD", "LOOKUP-MISSING")))
+                .extracting(NoteVersion::legacyNoteGuid, NoteVersion::id)
+                .containsExactlyInAnyOrder(
+                        tuple("LOOKUP-RECENT", recent.getId()),
+                        tuple("LOOKUP-OLD", old.getId()));
+    }
+
+    @Test
+    void shouldLoadNoteByVersionKey() {
+        PatientNote old = saveNote(savePatient(), "KEY-OLD", LocalDateTime.now().minusYears(1));
+
+        NoteVersion version = noteRepository.findVersionsByLegacyNoteGuids(List.of("KEY-OLD")).get(0);
+
+        assertThat(version.createdDateTime()).isNotNull();
+        assertThat(noteRepository.findByIdAndCreatedDateTime(version.id(), version.createdDateTime())).get()
+                .extracting(PatientNote::getId).isEqualTo(old.getId());
+        assertThat(noteRepository.findByIdAndCreatedDateTime(version.id(), version.createdDateTime().plusDays(1)))
+                .isEmpty();
+    }
+
+    @Test
+    void shouldScanSinglePartitionForGuidLookup() {
+        PatientProfile patient = savePatient();
+        saveNote(patient, "PRUNE-RECENT", LocalDateTime.now());
+        saveNote(patient, "PRUNE-OLD", LocalDateTime.now().minusYears(1));
+
+        List<String> plan = jdbcTemplate.queryForList("EXPLAIN (ANALYZE, COSTS OFF, TIMING OFF) " +
+                "SELECT pn.* FROM patient_note_guid g " +
+                "JOIN patient_note pn ON pn.id = g.note_id AND pn.created_date_time = g.created_date_time " +
+                "WHERE g.legacy_note_guid = 'PRUNE-OLD'", String.class);
+
+        // Остальные секции отсечены при выполнении и помечены "never executed"
+        assertThat(plan)
+                .filteredOn(line -> line.matches(".*Scan.* on patient_note_(p\\d{6}|default).*"))
+                .filteredOn(line -> !line.contains("never executed"))
+                .hasSize(1);
+    }
+
+    @Test
+    void shouldKeepGuidRowWhenOnlyNoteTextChanges() {
+        PatientNote note = saveNote(savePatient(), "TRIGGER-0", LocalDateTime.now());
+        String version = guidRowVersion("TRIGGER-0");
+
+        note.setNote("edited");
+        noteRepository.save(note);
+        assertThat(guidRowVersion("TRIGGER-0")).isEqualTo(version);
+
+        note.setLegacyNoteGuid("TRIGGER-1");
+        noteRepository.save(note);
+        assertThat(jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM patient_note_guid WHERE legacy_note_guid = 'TRIGGER-0'", Long.class)).isZero();
+        assertThat(noteRepository.findByLegacyNoteGuid("TRIGGER-1")).isPresent();
+    }
+
+    private PatientProfile savePatient() {
+        return patientRepository.save(new PatientProfile(null, "Lookup", "Patient", null, (short) 200));
+    }
+
+    private PatientNote saveNote(PatientProfile patient, String guid, LocalDateTime created) {
+        return noteRepository.save(new PatientNote(null, created, created, null, null, "note", patient, guid));
+    }
+
+    // xmin меняется при каждой перезаписи строки
+    private String guidRowVersion(String guid) {
+        return jdbcTemplate.queryForObject(
+                "SELECT xmin::text FROM patient_note_guid WHERE legacy_note_guid = ?", String.class, guid);
+    }
+}
@@ -0,0 +1,73 @@
+package com.example.service;
+
+import com.example.config.ImportConfigProperties;
+import com.example.monitoring.ImportMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class AdaptiveConcurrencyLimiterTest {
+
+    private ImportConfigProperties config;
+    private SimpleMeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setUp() {
+        config = new ImportConfigProperties();
+        config.setMaxConcurrentApiConnections(10);
+        config.setInitialApiConcurrency(4);
+        config.setApiLatencyThresholdMillis(1000);
+        meterRegistry = new SimpleMeterRegistry();
+    }
+
+    @Test
+    void shouldIncreaseLimitAdditivelyAfterSuccessfulWindow() throws Exception {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(config, new ImportMetrics(meterRegistry));
+
+        for (int i = 0; i < 4; i++) {
+            limiter.acquire(ImportDeadline.NONE);
+            limiter.release(10, false);
+        }
+
+        assertThat(limiter.getLimit()).isEqualTo(5);
+        assertThat(meterRegistry.get("notes_import_api_concurrency_limit").gauge().value()).isEqualTo(5.0);
+    }
+
+    @Test
+    void shouldHalveLimitOnOverloadOncePerInterval() throws Exception {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(config, new ImportMetrics(meterRegistry));
+
+        limiter.acquire(ImportDeadline.NONE);
+        limiter.acquire(ImportDeadline.NONE);
+        limiter.release(10, true);
+        limiter.release(5000, false);
+
+        assertThat(limiter.getLimit()).isEqualTo(2);
+        assertThat(limiter.getInFlight()).isZero();
+    }
+
+    @Test
+    void shouldKeepFixedLimitWhenAdaptationDisabled() throws Exception {
+        config.setEnableAdaptiveConcurrency(false);
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(config, new ImportMetrics(meterRegistry));
+
+        limiter.acquire(ImportDeadline.NONE);
+        limiter.release(10, true);
+
+        assertThat(limiter.getLimit()).isEqualTo(10);
+    }
+
+    @Test
+    void shouldStopWaitingForSlotWhenDeadlineExpires() throws Exception {
+        config.setInitialApiConcurrency(1);
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(config, new ImportMetrics(meterRegistry));
+        limiter.acquire(ImportDeadline.NONE);
+
+        assertThatThrownBy(() -> limiter.acquire(ImportDeadline.after(20)))
+                .isInstanceOf(ImportDeadlineExceededException.class);
+        assertThat(limiter.getInFlight()).isEqualTo(1);
+    }
+}
@@ -0,0 +1,154 @@
+package com.example.service;
+
+import com.example.config.ImportConfigProperties;
+import com.example.dto.LegacyNote;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.web.client.ResourceAccessException;
+
+import java.net.SocketTimeoutException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class AdaptiveNotesFetcherTest {
+
+    private static final LocalDate DATE_FROM = LocalDate.of(2024, 1, 1);
+    private static final LocalDate DATE_TO = LocalDate.of(2024, 1, 31);
+
+    @Mock
+    private LegacyApiService legacyApiService;
+
+    private ImportConfigProperties config;
+    private AdaptiveNotesFetcher fetcher;
+
+    @BeforeEach
+    void setUp() {
+        config = new ImportConfigProperties();
+        config.setDaysToImport(30);
+        config.setTargetNotesPerRequest(100);
+        fetcher = new AdaptiveNotesFetcher(legacyApiService, config);
+    }
+
+    @AfterEach
+    void tearDown() {
+        fetcher.shutdown();
+    }
+
+    @Test
+    void shouldRequestWholeWindowWhenSplittingDisabled() throws Exception {
+        config.setEnableAdaptiveWindowSplitting(false);
+        when(legacyApiService.getClientNotes("agency", "client", DATE_FROM, DATE_TO, ImportRunContext.NONE))
+                .thenReturn(List.of(note("n1")));
+
+        List<LegacyNote> notes = fetcher.fetchNotes("agency", "client", DATE_FROM, DATE_TO, ImportRunContext.NONE);
+
+        assertThat(notes).hasSize(1);
+        verify(legacyApiService, times(1)).getClientNotes(any(), any(), any(), any(), any());
+    }
+
+    @Test
+    void shouldSubdivideRangeOnTimeoutAndMergeResults() throws Exception {
+        when(legacyApiService.getClientNotes("agency", "client", DATE_FROM, DATE_TO, ImportRunContext.NONE))
+                .thenThrow(new ResourceAccessException("Read timed out", new SocketTimeoutException()));
+        when(legacyApiService.getClientNotes("agency", "client", DATE_FROM, LocalDate.of(2024, 1, 15), ImportRunContext.NONE))
+                .thenReturn(List.of(note("n1"), note("n2")));
+        when(legacyApiService.getClientNotes("agency", "client", LocalDate.of(2024, 1, 16), DATE_TO, ImportRunContext.NONE))
+                .thenReturn(List.of(note("n2"), note("n3")));
+
+        List<LegacyNote> notes = fetcher.fetchNotes("agency", "client", DATE_FROM, DATE_TO, ImportRunContext.NONE);
+
+        assertThat(notes).extracting(LegacyNote::getGuid).containsExactly("n1", "n2", "n3");
+        assertThat(fetcher.getWindowHint("client")).isEqualTo(15);
+    }
+
+    @Test
+    void shouldNotSubdivideOnNonTimeoutErrors() throws Exception {
+        when(legacyApiService.getClientNotes(any(), any(), any(), any(), any()))
+                .thenThrow(new IllegalStateException("500"));
+
+        assertThatThrownBy(() -> fetcher.fetchNotes("agency", "client", DATE_FROM, DATE_TO, ImportRunContext.NONE))
+                .isInstanceOf(IllegalStateException.class);
+        verify(legacyApiService, times(1)).getClientNotes(any(), any(), any(), any(), any());
+    }
+
+    @Test
+    void shouldSplitNextRequestAfterLargeResponse() throws Exception {
+        when(legacyApiService.getClientNotes(eq("agency"), eq("heavy"), any(), any(), any()))
+                .thenReturn(notes(400))
+                .thenReturn(List.of());
+
+        fetcher.fetchNotes("agency", "heavy", DATE_FROM, DATE_TO, ImportRunContext.NONE);
+        assertThat(fetcher.getWindowHint("heavy")).isEqualTo(7);
+
+        fetcher.fetchNotes("agency", "heavy", DATE_FROM, DATE_TO, ImportRunContext.NONE);
+
+        // 1 полный запрос + 5 интервалов по 7 дней (31 день)
+        verify(legacyApiService, times(6)).getClientNotes(eq("agency"), eq("heavy"), any(), any(), any());
+    }
+
+    @Test
+    void shouldCancelRemainingWindowsWhenOneFails() throws Exception {
+        CountDownLatch othersStarted = new CountDownLatch(4);
+        CountDownLatch othersInterrupted = new CountDownLatch(4);
+        when(legacyApiService.getClientNotes(eq("agency"), eq("heavy"), any(), any(), any()))
+                .thenReturn(notes(400))
+                .thenAnswer(invocation -> {
+                    if (DATE_FROM.equals(invocation.getArgument(2))) {
+                        othersStarted.await(5, TimeUnit.SECONDS);
+                        throw new IllegalStateException("500");
+                    }
+                    othersStarted.countDown();
+                    try {
+                        Thread.sleep(TimeUnit.SECONDS.toMillis(30));
+                    } catch (InterruptedException e) {
+                        othersInterrupted.countDown();
+                        throw e;
+                    }
+                    return List.of();
+                });
+        fetcher.fetchNotes("agency", "heavy", DATE_FROM, DATE_TO, ImportRunContext.NONE);
+
+        // Первый из 5 интервалов падает, остальные 4 ждут ответа и должны быть прерваны
+        assertThatThrownBy(() -> fetcher.fetchNotes("agency", "heavy", DATE_FROM, DATE_TO, ImportRunContext.NONE))
+                .isInstanceOf(IllegalStateException.class);
+        assertThat(othersInterrupted.await(5, TimeUnit.SECONDS)).isTrue();
+    }
+
+    @Test
+    void shouldSplitRangeIntoContiguousWindows() {
+        List<LocalDate[]> ranges = AdaptiveNotesFetcher.splitRange(DATE_FROM, DATE_TO, 10);
+
+        assertThat(ranges).hasSize(4);
+        assertThat(ranges.get(0)).containsExactly(DATE_FROM, LocalDate.of(2024, 1, 10));
+        assertThat(ranges.get(3)).containsExactly(LocalDate.of(2024, 1, 31), DATE_TO);
+    }
+
+    private List<LegacyNote> notes(int count) {
+        List<LegacyNote> notes = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            notes.add(note("note-" + i));
+        }
+        return notes;
+    }
+
+    private LegacyNote note(String guid) {
+        LegacyNote note = new LegacyNote();
+        note.setGuid(guid);
+        note.setComments("comment " + guid);
+        return note;
+    }
+}
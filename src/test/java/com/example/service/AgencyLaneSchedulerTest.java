@@ -0,0 +1,150 @@
+package com.example.service;
+
+import com.example.config.ImportConfigProperties;
+import com.example.dto.LegacyNote;
+import com.example.monitoring.ImportMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AgencyLaneSchedulerTest {
+
+    private ImportConfigProperties config;
+    private SimpleMeterRegistry meterRegistry;
+    private AgencyLaneScheduler scheduler;
+
+    @BeforeEach
+    void setUp() {
+        config = new ImportConfigProperties();
+        config.setMaxConcurrentApiConnections(4);
+        config.setInitialApiConcurrency(4);
+        config.setMaxConcurrentRequestsPerAgency(2);
+        meterRegistry = new SimpleMeterRegistry();
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (scheduler != null) {
+            scheduler.shutdown();
+        }
+    }
+
+    private AgencyLaneScheduler newScheduler() {
+        ImportMetrics metrics = new ImportMetrics(meterRegistry);
+        scheduler = new AgencyLaneScheduler(config, new AgencyConcurrencyLimiters(config, metrics), metrics);
+        return scheduler;
+    }
+
+    @Test
+    void shouldKeepServingOtherAgenciesWhileOneAgencyIsStalled() throws Exception {
+        AgencyLaneScheduler lanes = newScheduler();
+        CountDownLatch slowAgencyReleased = new CountDownLatch(1);
+        AtomicInteger slowRunning = new AtomicInteger();
+        AtomicInteger slowMaxRunning = new AtomicInteger();
+
+        List<CompletableFuture<List<LegacyNote>>> slow = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            slow.add(lanes.submit("slow", () -> {
+                slowMaxRunning.accumulateAndGet(slowRunning.incrementAndGet(), Math::max);
+                try {
+                    slowAgencyReleased.await();
+                    return List.of();
+                } finally {
+                    slowRunning.decrementAndGet();
+                }
+            }));
+        }
+        List<CompletableFuture<List<LegacyNote>>> fast = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            fast.add(lanes.submit("fast", () -> List.of(new LegacyNote())));
+        }
+
+        CompletableFuture.allOf(fast.toArray(CompletableFuture[]::new)).get(5, TimeUnit.SECONDS);
+        assertThat(slow).noneMatch(CompletableFuture::isDone);
+        // Медленное агентство занимает не больше своего лимита потоков
+        assertThat(slowMaxRunning.get()).isLessThanOrEqualTo(2);
+        assertThat(lanes.getQueuedCount("slow")).isEqualTo(4);
+
+        slowAgencyReleased.countDown();
+        CompletableFuture.allOf(slow.toArray(CompletableFuture[]::new)).get(5, TimeUnit.SECONDS);
+
+        assertThat(meterRegistry.get("notes_import_agency_notes_total").tag("agency", "fast").counter().count())
+                .isEqualTo(20.0);
+        assertThat(meterRegistry.get("notes_import_agency_fetch_duration_seconds")
+                .tag("agency", "slow").tag("status", "success").timer().count()).isEqualTo(6);
+    }
+
+    @Test
+    void shouldAlternateLanesByWeight() throws Exception {
+        config.setMaxConcurrentApiConnections(1);
+        config.setAgencyLaneWeights(Map.of("a", 2));
+        AgencyLaneScheduler lanes = newScheduler();
+
+        // Единственный поток занят, пока в полосы ставятся задачи
+        CountDownLatch gateReleased = new CountDownLatch(1);
+        CompletableFuture<List<LegacyNote>> gate = lanes.submit("gate", () -> {
+            gateReleased.await();
+            return List.of();
+        });
+
+        List<String> order = Collections.synchronizedList(new ArrayList<>());
+        List<CompletableFuture<List<LegacyNote>>> tasks = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            tasks.add(lanes.submit("a", () -> {
+                order.add("a");
+                return List.of();
+            }));
+        }
+        for (int i = 0; i < 4; i++) {
+            tasks.add(lanes.submit("b", () -> {
+                order.add("b");
+                return List.of();
+            }));
+        }
+
+        gateReleased.countDown();
+        gate.get(5, TimeUnit.SECONDS);
+        CompletableFuture.allOf(tasks.toArray(CompletableFuture[]::new)).get(5, TimeUnit.SECONDS);
+
+        assertThat(order).containsExactly("a", "a", "b", "a", "a", "b", "b", "b");
+    }
+
+    @Test
+    void shouldSkipCancelledTasks() throws Exception {
+        config.setMaxConcurrentApiConnections(1);
+        AgencyLaneScheduler lanes = newScheduler();
+
+        CountDownLatch gateReleased = new CountDownLatch(1);
+        lanes.submit("a", () -> {
+            gateReleased.await();
+            return List.of();
+        });
+        AtomicInteger executed = new AtomicInteger();
+        CompletableFuture<List<LegacyNote>> cancelled = lanes.submit("a", () -> {
+            executed.incrementAndGet();
+            return List.of();
+        });
+        CompletableFuture<List<LegacyNote>> kept = lanes.submit("a", () -> {
+            executed.incrementAndGet();
+            return List.of();
+        });
+
+        cancelled.cancel(false);
+        gateReleased.countDown();
+        kept.get(5, TimeUnit.SECONDS);
+
+        assertThat(executed.get()).isEqualTo(1);
+    }
+}
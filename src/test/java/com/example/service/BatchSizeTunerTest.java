@@ -0,0 +1,91 @@
+package com.example.service;
+
+import com.example.config.ImportConfigProperties;
+import com.example.entity.ImportRun;
+import com.example.monitoring.ImportMetrics;
+import com.example.monitoring.ImportRunHistory;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class BatchSizeTunerTest {
+
+    private static final long SECOND = 1_000_000_000L;
+
+    private ImportConfigProperties config;
+    private ImportRunHistory runHistory;
+    private SimpleMeterRegistry meterRegistry;
+    private BatchSizeTuner tuner;
+
+    @BeforeEach
+    void setUp() {
+        config = new ImportConfigProperties();
+        config.setEnableBatchSizeAutoTuning(true);
+        config.setPatientBatchSize(100);
+        config.setAutoTuneStepPercent(25);
+        runHistory = mock(ImportRunHistory.class);
+        meterRegistry = new SimpleMeterRegistry();
+        tuner = new BatchSizeTuner(config, runHistory, new ImportMetrics(meterRegistry));
+    }
+
+    @Test
+    void shouldGrowWhileThroughputImprovesAndReverseWhenItDrops() {
+        assertThat(tuner.startRun(0)).isEqualTo(100);
+
+        tuner.observe(100, 1000, SECOND);
+        assertThat(tuner.getCurrentSize()).isEqualTo(125);
+
+        tuner.observe(125, 1500, SECOND);
+        assertThat(tuner.getCurrentSize()).isEqualTo(156);
+
+        // Скорость упала на большей пачке - размер уменьшается
+        tuner.observe(156, 1100, SECOND);
+        assertThat(tuner.getCurrentSize()).isEqualTo(117);
+        assertThat(meterRegistry.get("notes_import_patient_batch_size").gauge().value()).isEqualTo(117.0);
+
+        // Следующий запуск начинается с размера, давшего лучшую скорость
+        assertThat(tuner.finishRun()).isEqualTo(125);
+        assertThat(tuner.startRun(0)).isEqualTo(125);
+    }
+
+    @Test
+    void shouldKeepBatchNotesUnderMemoryCeiling() {
+        config.setAutoTuneMaxNotesInMemory(10000);
+        tuner.startRun(1);
+
+        // 40 заметок на пациента, в памяти текущая пачка и одна загружаемая заранее: не больше 125 пациентов
+        tuner.observe(100, 4000, SECOND);
+        tuner.observe(125, 5000, SECOND);
+
+        assertThat(tuner.getCurrentSize()).isEqualTo(125);
+    }
+
+    @Test
+    void shouldStartFromPersistedRunAfterRestart() {
+        ImportRun failed = new ImportRun();
+        failed.setPatientBatchSize(900);
+        failed.setCriticalError(true);
+        ImportRun succeeded = new ImportRun();
+        succeeded.setPatientBatchSize(340);
+        when(runHistory.getRuns()).thenReturn(List.of(failed, succeeded));
+
+        assertThat(tuner.startRun(0)).isEqualTo(340);
+    }
+
+    @Test
+    void shouldUseConfiguredSizeWhenDisabled() {
+        config.setEnableBatchSizeAutoTuning(false);
+
+        assertThat(tuner.startRun(0)).isEqualTo(100);
+        tuner.observe(100, 1000, SECOND);
+
+        assertThat(tuner.getCurrentSize()).isEqualTo(100);
+        assertThat(tuner.finishRun()).isZero();
+    }
+}
@@ -0,0 +1,144 @@
+package com.example.service;
+
+import com.example.config.ImportConfigProperties;
+import com.example.dto.LegacyNote;
+import com.example.dto.LegacyNoteDigest;
+import com.example.entity.PatientProfile;
+import com.example.model.ClientNoteDigest;
+import com.example.model.LegacyClientIndex;
+import com.example.monitoring.ImportMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ClientDigestReconcilerTest {
+
+    private static final String CLIENT_1 = "11111111-1111-1111-1111-111111111111";
+    private static final String CLIENT_2 = "22222222-2222-2222-2222-222222222222";
+    private static final String CLIENT_3 = "33333333-3333-3333-3333-333333333333";
+
+    private static final LocalDate DATE_TO = LocalDate.of(2024, 1, 31);
+    private static final LocalDate DATE_FROM = DATE_TO.minusDays(30);
+
+    @Mock
+    private LegacyApiService legacyApiService;
+
+    private ImportConfigProperties config;
+    private ClientDigestReconciler reconciler;
+    private LegacyClientIndex clientIndex;
+
+    private final PatientProfile first = new PatientProfile(1L, "John", "Doe", CLIENT_1, (short) 200);
+    private final PatientProfile second = new PatientProfile(2L, "Jane", "Doe", CLIENT_2 + "," + CLIENT_3, (short) 200);
+
+    @BeforeEach
+    void setUp() {
+        config = new ImportConfigProperties();
+        config.setEnableDigestReconciliation(true);
+        reconciler = new ClientDigestReconciler(legacyApiService, config, new ImportMetrics(new SimpleMeterRegistry()));
+        clientIndex = LegacyClientIndex.builder(4)
+                .add(CLIENT_1, "vhh4")
+                .add(CLIENT_2, "vhh4")
+                .add(CLIENT_3, "hhc1")
+                .build();
+    }
+
+    private static LegacyNote note(String guid, String modified) {
+        LegacyNote note = new LegacyNote();
+        note.setGuid(guid);
+        note.setModifiedDateTime(modified);
+        return note;
+    }
+
+    private static LegacyNoteDigest legacyDigest(String clientGuid, List<LegacyNote> notes) {
+        ClientNoteDigest digest = ClientNoteDigest.of(notes);
+        LegacyNoteDigest legacyDigest = new LegacyNoteDigest();
+        legacyDigest.setClientGuid(clientGuid);
+        legacyDigest.setNoteCount(digest.noteCount());
+        legacyDigest.setHash(digest.hash());
+        return legacyDigest;
+    }
+
+    private Set<ClientDigestReconciler.PatientClient> reconcile(Set<Long> forceRefresh) {
+        return reconciler.reconcile(List.of(first, second), clientIndex, DATE_FROM, DATE_TO,
+                forceRefresh, ImportRunContext.NONE);
+    }
+
+    @Test
+    void shouldNotDependOnNoteOrder() {
+        LegacyNote a = note("NOTE-A", "2024-01-15 10:30:00 CDT");
+        LegacyNote b = note("NOTE-B", "2024-01-15 11:30:00 CDT");
+
+        assertThat(ClientNoteDigest.of(List.of(a, b))).isEqualTo(ClientNoteDigest.of(List.of(b, a)));
+        assertThat(ClientNoteDigest.of(List.of(a, b)))
+                .isNotEqualTo(ClientNoteDigest.of(List.of(a, note("NOTE-B", "2024-01-15 12:30:00 CDT"))));
+    }
+
+    @Test
+    void shouldSkipOnlyClientsWithMatchingDigests() throws Exception {
+        List<LegacyNote> notes1 = List.of(note("NOTE-1", "2024-01-15 10:30:00 CDT"));
+        List<LegacyNote> notes2 = List.of(note("NOTE-2", "2024-01-15 10:30:00 CDT"));
+        reconciler.recordImported(1L, CLIENT_1, notes1);
+        reconciler.recordImported(2L, CLIENT_2, notes2);
+        List<LegacyNote> changed = new ArrayList<>(notes2);
+        changed.add(note("NOTE-3", "2024-01-16 09:00:00 CDT"));
+        when(legacyApiService.getNoteDigests(eq("vhh4"), anyList(), eq(DATE_FROM), eq(DATE_TO), any()))
+                .thenReturn(List.of(legacyDigest(CLIENT_1, notes1), legacyDigest(CLIENT_2, changed)));
+
+        Set<ClientDigestReconciler.PatientClient> unchanged = reconcile(Set.of());
+
+        assertThat(unchanged).containsExactly(new ClientDigestReconciler.PatientClient(1L, CLIENT_1));
+        // Для CLIENT_3 дайджеста нет, он не запрашивается
+        verify(legacyApiService, times(1)).getNoteDigests(any(), anyList(), any(), any(), any());
+    }
+
+    @Test
+    void shouldRequestDigestsInBatchesPerAgency() throws Exception {
+        config.setDigestBatchSize(1);
+        reconciler.recordImported(1L, CLIENT_1, List.of());
+        reconciler.recordImported(2L, CLIENT_2, List.of());
+        reconciler.recordImported(2L, CLIENT_3, List.of());
+        when(legacyApiService.getNoteDigests(any(), anyList(), any(), any(), any())).thenReturn(List.of());
+
+        reconcile(Set.of());
+
+        verify(legacyApiService, times(2)).getNoteDigests(eq("vhh4"), anyList(), any(), any(), any());
+        verify(legacyApiService).getNoteDigests(eq("hhc1"), eq(List.of(CLIENT_3)), any(), any(), any());
+    }
+
+    @Test
+    void shouldReloadRefreshRequestedAndForgottenClients() throws Exception {
+        List<LegacyNote> notes = List.of(note("NOTE-1", "2024-01-15 10:30:00 CDT"));
+        reconciler.recordImported(1L, CLIENT_1, notes);
+        reconciler.recordImported(2L, CLIENT_2, notes);
+        reconciler.forget(2L, CLIENT_2);
+
+        Set<ClientDigestReconciler.PatientClient> unchanged = reconcile(Set.of(1L));
+
+        assertThat(unchanged).isEmpty();
+        verifyNoInteractions(legacyApiService);
+    }
+
+    @Test
+    void shouldLoadAllClientsWhenDigestRequestFails() throws Exception {
+        reconciler.recordImported(1L, CLIENT_1, List.of());
+        when(legacyApiService.getNoteDigests(any(), anyList(), any(), any(), any()))
+                .thenThrow(new IllegalStateException("404 Not Found"));
+
+        assertThat(reconcile(Set.of())).isEmpty();
+    }
+}
@@ -1,5 +1,6 @@
 package com.example.service;
 
+import com.example.archive.ArchiveReplayReader;
 import com.example.config.ImportConfigProperties;
 import com.example.dto.LegacyClient;
 import com.example.dto.LegacyNote;
@@ -7,18 +8,29 @@ import com.example.entity.CompanyUser;
 import com.example.entity.PatientNote;
 import com.example.entity.PatientProfile;
 import com.example.model.ImportStatistics;
+import com.example.model.LegacyClientIndex;
 import com.example.monitoring.ImportMetrics;
+import com.example.monitoring.ImportObservations;
+import com.example.monitoring.ImportRunHistory;
 import com.example.repository.CompanyUserRepository;
 import com.example.repository.PatientNoteRepository;
 import com.example.repository.PatientProfileRepository;
+import io.micrometer.observation.tck.TestObservationRegistry;
+import io.micrometer.observation.tck.TestObservationRegistryAssert;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
 import org.mockito.ArgumentCaptor;
-import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.AbstractPlatformTransactionManager;
+import org.springframework.transaction.support.DefaultTransactionStatus;
 
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.Collections;
@@ -51,13 +63,36 @@ class ImportServiceTest {
     @Mock
     private ImportMetrics metrics;
 
-    @InjectMocks
+    @Mock
+    private ImportRunHistory runHistory;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private TestObservationRegistry observationRegistry;
+    private PatientPriorityScheduler priorityScheduler;
     private EnhancedImportService importService;
 
     @BeforeEach
     void setUp() {
-        when(config.getDaysToImport()).thenReturn(30);
-        when(config.getPatientBatchSize()).thenReturn(100);
+        observationRegistry = TestObservationRegistry.create();
+        importService = newService(transactionManager);
+
+        // Общие настройки; не каждый тест до них доходит (воспроизведение архива не берет период и размер пачки)
+        lenient().when(config.getDaysToImport()).thenReturn(30);
+        lenient().when(config.getPatientBatchSize()).thenReturn(100);
+    }
+
+    private EnhancedImportService newService(PlatformTransactionManager batchTransactionManager) {
+        priorityScheduler = new PatientPriorityScheduler(config);
+        AgencyLaneScheduler laneScheduler = new AgencyLaneScheduler(config, new AgencyConcurrencyLimiters(config, metrics), metrics);
+        return new EnhancedImportService(legacyApiService, patientRepository, userRepository,
+                noteRepository, config, metrics, new AdaptiveNotesFetcher(legacyApiService, config),
+                new ArchiveReplayReader(), observationRegistry, runHistory,
+                priorityScheduler, new ClientDigestReconciler(legacyApiService, config, metrics),
+                laneScheduler, new NoteImportPipeline(config, noteRepository, userRepository, laneScheduler, null, metrics),
+                new BatchSizeTuner(config, runHistory, metrics), new PatientImportLocks(config, null),
+                batchTransactionManager);
     }
 
     @Test
@@ -68,8 +103,8 @@ class ImportServiceTest {
         CompanyUser user = createTestUser();
 
         when(patientRepository.findActivePatients()).thenReturn(List.of(patient));
-        when(legacyApiService.getAllClients()).thenReturn(List.of(legacyClient));
-        when(legacyApiService.getClientNotes(any(), any(), any(), any()))
+        when(legacyApiService.getClientIndex(any())).thenReturn(LegacyClientIndex.of(List.of(legacyClient)));
+        when(legacyApiService.getClientNotes(any(), any(), any(), any(), any()))
                 .thenReturn(List.of(legacyNote));
         when(userRepository.findByLogin("testuser")).thenReturn(Optional.of(user));
         when(noteRepository.findByLegacyNoteGuid(legacyNote.getGuid()))
@@ -100,8 +135,8 @@ class ImportServiceTest {
         existingNote.setNote("Старый текст");
 
         when(patientRepository.findActivePatients()).thenReturn(List.of(patient));
-        when(legacyApiService.getAllClients()).thenReturn(List.of(legacyClient));
-        when(legacyApiService.getClientNotes(any(), any(), any(), any()))
+        when(legacyApiService.getClientIndex(any())).thenReturn(LegacyClientIndex.of(List.of(legacyClient)));
+        when(legacyApiService.getClientNotes(any(), any(), any(), any(), any()))
                 .thenReturn(List.of(legacyNote));
         when(userRepository.findByLogin("testuser")).thenReturn(Optional.of(user));
         when(noteRepository.findByLegacyNoteGuid(legacyNote.getGuid()))
@@ -129,8 +164,8 @@ class ImportServiceTest {
         existingNote.setLastModifiedDateTime(LocalDateTime.now().plusHours(1)); // Новее чем в legacy
 
         when(patientRepository.findActivePatients()).thenReturn(List.of(patient));
-        when(legacyApiService.getAllClients()).thenReturn(List.of(legacyClient));
-        when(legacyApiService.getClientNotes(any(), any(), any(), any()))
+        when(legacyApiService.getClientIndex(any())).thenReturn(LegacyClientIndex.of(List.of(legacyClient)));
+        when(legacyApiService.getClientNotes(any(), any(), any(), any(), any()))
                 .thenReturn(List.of(legacyNote));
         when(userRepository.findByLogin("testuser")).thenReturn(Optional.of(user));
         when(noteRepository.findByLegacyNoteGuid(legacyNote.getGuid()))
@@ -153,8 +188,8 @@ class ImportServiceTest {
         CompanyUser newUser = createTestUser();
 
         when(patientRepository.findActivePatients()).thenReturn(List.of(patient));
-        when(legacyApiService.getAllClients()).thenReturn(List.of(legacyClient));
-        when(legacyApiService.getClientNotes(any(), any(), any(), any()))
+        when(legacyApiService.getClientIndex(any())).thenReturn(LegacyClientIndex.of(List.of(legacyClient)));
+        when(legacyApiService.getClientNotes(any(), any(), any(), any(), any()))
                 .thenReturn(List.of(legacyNote));
         when(userRepository.findByLogin("testuser")).thenReturn(Optional.empty());
         when(userRepository.save(any(CompanyUser.class))).thenReturn(newUser);
@@ -166,6 +201,126 @@ class ImportServiceTest {
                 "testuser".equals(user.getLogin())));
     }
 
+    @Test
+    void shouldFetchSharedLegacyClientOnceForAllOwningPatients() throws Exception {
+        PatientProfile patient = createTestPatient();
+        PatientProfile duplicate = createTestPatient();
+        duplicate.setId(2L);
+        duplicate.setOldClientGuid("other-guid, test-guid-1");
+
+        when(patientRepository.findActivePatients()).thenReturn(List.of(patient, duplicate));
+        when(legacyApiService.getClientIndex(any())).thenReturn(LegacyClientIndex.of(List.of(createTestLegacyClient())));
+        when(legacyApiService.getClientNotes(any(), any(), any(), any(), any()))
+                .thenReturn(List.of(createTestLegacyNote()));
+        when(userRepository.findByLogin("testuser")).thenReturn(Optional.of(createTestUser()));
+        when(noteRepository.findByLegacyNoteGuid(any())).thenReturn(Optional.empty());
+
+        ImportStatistics result = importService.performImport();
+
+        assertThat(result.getCreatedCount()).isEqualTo(2);
+        verify(legacyApiService, times(1)).getClientNotes(eq("test-agency"), eq("test-guid-1"), any(), any(), any());
+        verify(metrics).recordApiCallsCoalesced(1);
+    }
+
+    @Test
+    void shouldObserveImportRunBatchesAndNoteWrites() throws Exception {
+        when(patientRepository.findActivePatients()).thenReturn(List.of(createTestPatient()));
+        when(legacyApiService.getClientIndex(any())).thenReturn(LegacyClientIndex.of(List.of(createTestLegacyClient())));
+        when(legacyApiService.getClientNotes(any(), any(), any(), any(), any()))
+                .thenReturn(List.of(createTestLegacyNote()));
+        when(userRepository.findByLogin("testuser")).thenReturn(Optional.of(createTestUser()));
+        when(noteRepository.findByLegacyNoteGuid(any())).thenReturn(Optional.empty());
+
+        importService.performImport();
+
+        TestObservationRegistryAssert.assertThat(observationRegistry)
+                .hasObservationWithNameEqualTo(ImportObservations.IMPORT_RUN).that()
+                .hasLowCardinalityKeyValue(ImportObservations.SOURCE, "legacy_api")
+                .hasHighCardinalityKeyValue(ImportObservations.NOTE_COUNT, "1")
+                .hasBeenStopped();
+        TestObservationRegistryAssert.assertThat(observationRegistry)
+                .hasObservationWithNameEqualTo(ImportObservations.PATIENT_BATCH).that()
+                .hasHighCardinalityKeyValue(ImportObservations.FIRST_PATIENT_ID, "1")
+                .hasParentObservationContextMatching(parent -> ImportObservations.IMPORT_RUN.equals(parent.getName()));
+        TestObservationRegistryAssert.assertThat(observationRegistry)
+                .hasObservationWithNameEqualTo(ImportObservations.NOTE_WRITE).that()
+                .hasLowCardinalityKeyValue(ImportObservations.OPERATION, "create")
+                .hasHighCardinalityKeyValue(ImportObservations.PATIENT_ID, "1")
+                .hasHighCardinalityKeyValue(ImportObservations.NOTE_GUID, "note-guid-1");
+        verify(runHistory).record(eq("legacy_api"), any(ImportStatistics.class));
+    }
+
+    @Test
+    void shouldRollBackOnlyFailedBatchAndContinueWithNext() throws Exception {
+        PatientProfile first = createTestPatient();
+        PatientProfile second = createTestPatient();
+        second.setId(2L);
+        when(config.getPatientBatchSize()).thenReturn(1);
+        when(patientRepository.findActivePatients()).thenReturn(List.of(first, second));
+        when(legacyApiService.getClientIndex(any())).thenReturn(LegacyClientIndex.of(List.of(createTestLegacyClient())));
+        when(legacyApiService.getClientNotes(any(), any(), any(), any(), any()))
+                .thenReturn(List.of(createTestLegacyNote()));
+        when(userRepository.findByLogin("testuser")).thenReturn(Optional.of(createTestUser()));
+        when(noteRepository.findByLegacyNoteGuid(any())).thenReturn(Optional.empty());
+        doThrow(new IllegalStateException("commit failed")).doNothing().when(transactionManager).commit(any());
+
+        ImportStatistics result = importService.performImport();
+
+        // Каждая пачка фиксируется отдельно: заметка первой пачки откатилась, вторая записана
+        verify(transactionManager, times(2)).commit(any());
+        assertThat(result.getCreatedCount()).isEqualTo(1);
+        assertThat(result.getErrorCount()).isEqualTo(1);
+        assertThat(result.isHasCriticalError()).isFalse();
+        verify(metrics).recordImportError("batch_commit_error");
+    }
+
+    @Test
+    void shouldReplayEachArchiveRecordInOwnTransaction(@TempDir Path archiveDir) throws Exception {
+        PatientProfile first = createTestPatient();
+        PatientProfile second = createTestPatient();
+        second.setId(2L);
+        second.setOldClientGuid("test-guid-2");
+        when(patientRepository.findActivePatients()).thenReturn(List.of(first, second));
+        when(userRepository.findByLogin("testuser")).thenReturn(Optional.of(createTestUser()));
+        when(noteRepository.findByLegacyNoteGuid(any())).thenReturn(Optional.empty());
+        Files.writeString(archiveDir.resolve("notes.ndjson"), """
+                {"guid": "n1", "clientGuid": "test-guid-1", "loggedUser": "testuser", "comments": "one", \
+                "createdDateTime": "2023-01-01 10:00:00", "modifiedDateTime": "2023-01-01 10:00:00"}
+                {"guid": "n2", "clientGuid": "test-guid-2", "loggedUser": "testuser", "comments": "two", \
+                "createdDateTime": "2023-01-01 10:00:00", "modifiedDateTime": "2023-01-01 10:00:00"}
+                """);
+        doThrow(new IllegalStateException("commit failed")).doNothing().when(transactionManager).commit(any());
+
+        ImportStatistics result = importService.replayFromArchive(archiveDir);
+
+        // Записи клиентов фиксируются отдельно: одна откатилась, другая записана
+        verify(transactionManager, times(2)).commit(any());
+        assertThat(result.getCreatedCount()).isEqualTo(1);
+        assertThat(result.getErrorCount()).isEqualTo(1);
+        assertThat(result.isHasCriticalError()).isFalse();
+    }
+
+    @Test
+    void shouldRecordPatientActivityOnlyAfterBatchCommit() throws Exception {
+        SynchronizingTransactionManager batchTransactions = new SynchronizingTransactionManager();
+        importService = newService(batchTransactions);
+        when(patientRepository.findActivePatients()).thenReturn(List.of(createTestPatient()));
+        when(legacyApiService.getClientIndex(any())).thenReturn(LegacyClientIndex.of(List.of(createTestLegacyClient())));
+        when(legacyApiService.getClientNotes(any(), any(), any(), any(), any()))
+                .thenReturn(List.of(createTestLegacyNote()));
+        when(userRepository.findByLogin("testuser")).thenReturn(Optional.of(createTestUser()));
+        when(noteRepository.findByLegacyNoteGuid(any())).thenReturn(Optional.empty());
+
+        batchTransactions.failCommit = true;
+        importService.performImport();
+        // Пачка откатилась: пациент остается "неимпортированным" и в следующем запуске идет первым
+        assertThat(priorityScheduler.getActivity(1L)).isNull();
+
+        batchTransactions.failCommit = false;
+        importService.performImport();
+        assertThat(priorityScheduler.getActivity(1L)).isNotNull();
+    }
+
     @Test
     void shouldHandleEmptyActivePatients() throws Exception {
         when(patientRepository.findActivePatients()).thenReturn(Collections.emptyList());
@@ -177,14 +332,14 @@ class ImportServiceTest {
         assertThat(result.getSkippedCount()).isEqualTo(0);
         assertThat(result.getErrorCount()).isEqualTo(0);
 
-        verify(legacyApiService, never()).getAllClients();
+        verify(legacyApiService, never()).getClientIndex(any());
         verify(metrics).recordImportStarted();
     }
 
     @Test
     void shouldHandleLegacyApiError() throws Exception {
         when(patientRepository.findActivePatients()).thenReturn(List.of(createTestPatient()));
-        when(legacyApiService.getAllClients()).thenThrow(new RuntimeException("API недоступен"));
+        when(legacyApiService.getClientIndex(any())).thenThrow(new RuntimeException("API недоступен"));
 
         ImportStatistics result = importService.performImport();
 
@@ -278,8 +433,8 @@ class ImportServiceTest {
         LegacyNote legacyNote = createTestLegacyNote();
 
         when(patientRepository.findById(patientId)).thenReturn(Optional.of(patient));
-        when(legacyApiService.getAllClients()).thenReturn(List.of(legacyClient));
-        when(legacyApiService.getClientNotes(any(), any(), any(), any()))
+        when(legacyApiService.getClientIndex(any())).thenReturn(LegacyClientIndex.of(List.of(legacyClient)));
+        when(legacyApiService.getClientNotes(any(), any(), any(), any(), any()))
                 .thenReturn(List.of(legacyNote));
         when(userRepository.findByLogin(any())).thenReturn(Optional.of(createTestUser()));
         when(noteRepository.findByLegacyNoteGuid(any())).thenReturn(Optional.empty());
@@ -316,6 +471,33 @@ class ImportServiceTest {
         assertThat(result.getErrorCount()).isEqualTo(1);
     }
 
+    // Транзакции без ресурсов с синхронизациями, как у JpaTransactionManager; фиксация может завершиться ошибкой
+    private static class SynchronizingTransactionManager extends AbstractPlatformTransactionManager {
+        private static final long serialVersionUID = 1L;
+
+        volatile boolean failCommit;
+
+        @Override
+        protected Object doGetTransaction() {
+            return new Object();
+        }
+
+        @Override
+        protected void doBegin(Object transaction, TransactionDefinition definition) {
+        }
+
+        @Override
+        protected void doCommit(DefaultTransactionStatus status) {
+            if (failCommit) {
+                throw new IllegalStateException("commit failed");
+            }
+        }
+
+        @Override
+        protected void doRollback(DefaultTransactionStatus status) {
+        }
+    }
+
     private PatientProfile createTestPatient() {
         PatientProfile patient = new PatientProfile();
         patient.setId(1L);
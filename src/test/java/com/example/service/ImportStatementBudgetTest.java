@@ -0,0 +1,258 @@
+package com.example.service;
+
+import com.example.config.ImportConfigProperties;
+import com.example.dto.LegacyNote;
+import com.example.entity.PatientProfile;
+import com.example.loadtest.LegacyApiSimulator;
+import com.example.model.ImportStatistics;
+import com.example.repository.PatientProfileRepository;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Бюджет SQL-запросов импорта на заметку и на пачку пациентов (H2 в режиме PostgreSQL,
+// Legacy API - симулятор без задержек). Рост числа запросов на заметку - это N+1 в горячем пути:
+// если изменение намеренно добавляет запрос, бюджет меняется вместе с ним.
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:statement-budget;MODE=PostgreSQL;DATABASE_TO_LOWER=TRUE;DEFAULT_NULL_ORDERING=HIGH",
+        "spring.datasource.driver-class-name=org.h2.Driver",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "spring.jpa.show-sql=false",
+        "spring.jpa.properties.hibernate.generate_statistics=true",
+        "notes.import.patient-batch-size=" + ImportStatementBudgetTest.BATCH_SIZE,
+        "logging.level.com.example=WARN",
+        "logging.level.org.hibernate.engine.internal.StatisticalLoggingSessionEventListener=WARN"
+})
+class ImportStatementBudgetTest {
+
+    static final int BATCH_SIZE = 4;
+
+    private static final int CLIENTS = 10;
+    private static final int NOTES_PER_CLIENT = 5;
+    // loggedUser у заметок симулятора: nurse0..nurse19 по номеру заметки
+    private static final int NEW_USERS = Math.min(NOTES_PER_CLIENT, 20);
+
+    // Список активных пациентов
+    private static final int STATEMENTS_PER_RUN = 1;
+    // Поиск заметки по legacy GUID, поиск автора по логину, INSERT
+    private static final int STATEMENTS_PER_CREATED_NOTE = 3;
+    // Поиск заметки и автора, без записи
+    private static final int STATEMENTS_PER_SKIPPED_NOTE = 2;
+    // INSERT автора при первой встрече логина
+    private static final int STATEMENTS_PER_NEW_USER = 1;
+    // Пачка без заметок не должна обращаться к БД (flush пустого контекста)
+    private static final int STATEMENTS_PER_BATCH = 0;
+    // Стадия поиска конвейера: версии заметок и авторы клиента двумя запросами
+    private static final int STATEMENTS_PER_RESOLVED_CLIENT = 2;
+
+    private static final LegacyApiSimulator SIMULATOR = startSimulator();
+
+    @Autowired
+    private EnhancedImportService importService;
+
+    @Autowired
+    private PatientProfileRepository patientRepository;
+
+    @Autowired
+    private PushNoteIngestor pushIngestor;
+
+    @Autowired
+    private ImportConfigProperties config;
+
+    @Autowired
+    private PatientClientLookup patientLookup;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private record Measured(ImportStatistics stats, long statements, long inserts, long updates) {
+    }
+
+    @DynamicPropertySource
+    static void properties(DynamicPropertyRegistry registry) {
+        registry.add("legacy.api.base-url", SIMULATOR::getBaseUrl);
+    }
+
+    @AfterAll
+    static void stopSimulator() {
+        SIMULATOR.close();
+    }
+
+    @BeforeEach
+    void cleanDatabase() {
+        jdbcTemplate.update("DELETE FROM patient_note");
+        jdbcTemplate.update("DELETE FROM company_user");
+        jdbcTemplate.update("DELETE FROM patient_profile");
+    }
+
+    @Test
+    void shouldStayWithinStatementBudgetWhenCreatingNotes() {
+        seedPatients(CLIENTS);
+
+        Measured run = measure(importService::performImport);
+
+        int notes = CLIENTS * NOTES_PER_CLIENT;
+        assertThat(run.stats().getCreatedCount()).isEqualTo(notes);
+        assertThat(run.statements()).isLessThanOrEqualTo(STATEMENTS_PER_RUN
+                + (long) notes * STATEMENTS_PER_CREATED_NOTE
+                + (long) NEW_USERS * STATEMENTS_PER_NEW_USER
+                + (long) batches(CLIENTS) * STATEMENTS_PER_BATCH);
+        assertThat(run.inserts()).isEqualTo(notes + NEW_USERS);
+        assertThat(run.updates()).isZero();
+    }
+
+    @Test
+    void shouldStayWithinStatementBudgetWhenNotesAreUnchanged() {
+        seedPatients(CLIENTS);
+        importService.performImport();
+
+        Measured rerun = measure(importService::performImport);
+
+        int notes = CLIENTS * NOTES_PER_CLIENT;
+        assertThat(rerun.stats().getSkippedCount()).isEqualTo(notes);
+        assertThat(rerun.statements()).isLessThanOrEqualTo(STATEMENTS_PER_RUN
+                + (long) notes * STATEMENTS_PER_SKIPPED_NOTE
+                + (long) batches(CLIENTS) * STATEMENTS_PER_BATCH);
+        assertThat(rerun.inserts()).isZero();
+        assertThat(rerun.updates()).isZero();
+    }
+
+    @Test
+    void shouldResolveUnchangedNotesPerClientInPipeline() {
+        seedPatients(CLIENTS);
+        importService.performImport();
+
+        Measured rerun = measure(importService::performImport);
+
+        // Неизмененные заметки отсеиваются стадией поиска, запись к БД не обращается
+        assertThat(rerun.stats().getSkippedCount()).isEqualTo(CLIENTS * NOTES_PER_CLIENT);
+        assertThat(rerun.statements()).isLessThanOrEqualTo(STATEMENTS_PER_RUN
+                + (long) CLIENTS * STATEMENTS_PER_RESOLVED_CLIENT
+                + (long) batches(CLIENTS) * STATEMENTS_PER_BATCH);
+    }
+
+    @Test
+    void shouldSkipUnchangedClientsWhenDigestsMatch() {
+        seedPatients(CLIENTS);
+        config.setEnableDigestReconciliation(true);
+        try {
+            importService.performImport();
+            SIMULATOR.resetCounters();
+
+            Measured rerun = measure(importService::performImport);
+
+            // Один запрос дайджестов на агентство, заметки не запрашиваются и не читаются из БД
+            assertThat(SIMULATOR.getNotesRequests()).isZero();
+            assertThat(SIMULATOR.getDigestRequests()).isEqualTo(Math.min(CLIENTS, 4));
+            assertThat(rerun.stats().getProcessedNotes()).isZero();
+            assertThat(rerun.stats().getProcessedPatients()).isEqualTo(CLIENTS);
+            assertThat(rerun.statements()).isLessThanOrEqualTo(STATEMENTS_PER_RUN
+                    + (long) batches(CLIENTS) * STATEMENTS_PER_BATCH);
+        } finally {
+            config.setEnableDigestReconciliation(false);
+        }
+    }
+
+    @Test
+    void shouldNotQueryPerBatchForPatientsWithoutLegacyClients() {
+        List<PatientProfile> patients = new ArrayList<>();
+        for (int i = 0; i < 10 * BATCH_SIZE; i++) {
+            patients.add(new PatientProfile(null, "First" + i, "Last" + i, "UNKNOWN-" + i, (short) 200));
+        }
+        patientRepository.saveAll(patients);
+
+        Measured run = measure(importService::performImport);
+
+        assertThat(run.stats().getProcessedPatients()).isEqualTo(patients.size());
+        assertThat(run.statements()).isLessThanOrEqualTo(STATEMENTS_PER_RUN
+                + (long) batches(patients.size()) * STATEMENTS_PER_BATCH);
+    }
+
+    @Test
+    void shouldStayWithinStatementBudgetForSpecificPatient() {
+        List<PatientProfile> patients = seedPatients(CLIENTS);
+
+        Measured run = measure(() -> importService.importSpecificPatient(patients.get(3).getId()));
+
+        assertThat(run.stats().getCreatedCount()).isEqualTo(NOTES_PER_CLIENT);
+        // Пациент по ID, затем заметки одного клиента
+        assertThat(run.statements()).isLessThanOrEqualTo(1
+                + (long) NOTES_PER_CLIENT * STATEMENTS_PER_CREATED_NOTE
+                + (long) NEW_USERS * STATEMENTS_PER_NEW_USER);
+    }
+
+    @Test
+    void shouldStayWithinStatementBudgetForPushedNotes() {
+        seedPatients(CLIENTS);
+        patientLookup.rebuild();
+        List<LegacyNote> events = new ArrayList<>();
+        for (int i = 0; i < CLIENTS; i++) {
+            LegacyNote event = new LegacyNote();
+            event.setGuid("PUSH-" + i);
+            event.setClientGuid(LegacyApiSimulator.clientGuid(i));
+            event.setComments("Pushed note " + i);
+            event.setLoggedUser("nurse1");
+            event.setCreatedDateTime("2024-01-15 10:30:00 CDT");
+            event.setModifiedDateTime("2024-01-15 10:30:00 CDT");
+            events.add(event);
+        }
+
+        Measured push = measure(() -> pushIngestor.apply(events));
+
+        assertThat(push.stats().getCreatedCount()).isEqualTo(CLIENTS);
+        // Пачка - одна транзакция, пациенты берутся из индекса без запросов
+        assertThat(push.statements()).isLessThanOrEqualTo(
+                (long) CLIENTS * STATEMENTS_PER_CREATED_NOTE + STATEMENTS_PER_NEW_USER);
+    }
+
+    private Measured measure(Supplier<ImportStatistics> importRun) {
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+        ImportStatistics stats = importRun.get();
+        assertThat(stats.isHasCriticalError()).isFalse();
+        return new Measured(stats, statistics.getPrepareStatementCount(),
+                statistics.getEntityInsertCount(), statistics.getEntityUpdateCount());
+    }
+
+    private List<PatientProfile> seedPatients(int count) {
+        List<PatientProfile> patients = new ArrayList<>();
+        for (int client = 0; client < count; client++) {
+            patients.add(new PatientProfile(null, "Firstname" + client, "Lastname" + client,
+                    LegacyApiSimulator.clientGuid(client), (short) 200));
+        }
+        return patientRepository.saveAll(patients);
+    }
+
+    private static int batches(int patients) {
+        return (patients + BATCH_SIZE - 1) / BATCH_SIZE;
+    }
+
+    private static LegacyApiSimulator startSimulator() {
+        try {
+            return LegacyApiSimulator.start(
+                    new LegacyApiSimulator.Settings(CLIENTS, NOTES_PER_CLIENT, 10, 0, 0, 0, 0, 100, 1));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -1,9 +1,19 @@
 package com.example.service;
 
+import com.example.archive.LegacyPayloadArchive;
+import com.example.config.ImportConfigProperties;
 import com.example.config.LegacyApiConfig;
-import com.example.dto.LegacyClient;
 import com.example.dto.LegacyNote;
 import com.example.dto.NotesRequest;
+import com.example.model.LegacyClientIndex;
+import com.example.monitoring.ImportMetrics;
+import com.example.monitoring.ImportObservations;
+import com.example.monitoring.ImportPhase;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.observation.tck.TestObservationRegistry;
+import io.micrometer.observation.tck.TestObservationRegistryAssert;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -11,14 +21,21 @@ import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.mock.http.client.MockClientHttpResponse;
 import org.springframework.test.util.ReflectionTestUtils;
 import org.springframework.web.client.HttpClientErrorException;
 import org.springframework.web.client.HttpServerErrorException;
 import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.ResponseExtractor;
 import org.springframework.web.client.RestTemplate;
 
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
 import java.util.List;
 
@@ -36,6 +53,9 @@ class LegacyApiServiceTest {
 
     private LegacyApiService legacyApiService;
     private LegacyApiConfig config;
+    private SimpleMeterRegistry meterRegistry;
+    private TestObservationRegistry observationRegistry;
+    private LegacyApiUsage apiUsage;
 
     @BeforeEach
     void setUp() {
@@ -44,14 +64,24 @@ class LegacyApiServiceTest {
         config.setConnectTimeout(5000);
         config.setReadTimeout(10000);
 
-        legacyApiService = new LegacyApiService(config);
+        ImportConfigProperties importConfig = new ImportConfigProperties();
+        meterRegistry = new SimpleMeterRegistry();
+        observationRegistry = TestObservationRegistry.create();
+        apiUsage = new LegacyApiUsage();
+        ImportMetrics metrics = new ImportMetrics(meterRegistry);
+        legacyApiService = new LegacyApiService(config,
+                new LegacyPayloadArchive(importConfig),
+                new AgencyConcurrencyLimiters(importConfig, metrics),
+                metrics,
+                observationRegistry,
+                apiUsage);
 
         // Inject mocked RestTemplate using reflection
         ReflectionTestUtils.setField(legacyApiService, "restTemplate", restTemplate);
     }
 
     @Test
-    void shouldGetAllClientsSuccessfully() throws Exception {
+    void shouldBuildClientIndexFromClientsResponse() throws Exception {
         // Given
         String responseJson = """
             [
@@ -60,33 +90,111 @@ class LegacyApiServiceTest {
                     "guid": "01588E84-D45A-EB98-F47F-716073A4F1EF",
                     "firstName": "John",
                     "lastName": "Doe",
-                    "status": "ACTIVE",
-                    "dob": "10-15-1999",
-                    "createdDateTime": "2021-11-15 11:51:59"
+                    "address": {"city": "Omsk", "lines": ["a", "b"]},
+                    "dob": "10-15-1999"
+                },
+                {
+                    "guid": "legacy-42",
+                    "agency": "vhh5"
                 }
             ]
             """;
 
-        ResponseEntity<String> responseEntity = new ResponseEntity<>(responseJson, HttpStatus.OK);
-        when(restTemplate.postForEntity(anyString(), any(HttpEntity.class), eq(String.class)))
-                .thenReturn(responseEntity);
+        stubStreamingResponse(responseJson);
 
         // When
-        List<LegacyClient> clients = legacyApiService.getAllClients();
+        LegacyClientIndex index = legacyApiService.getClientIndex(ImportRunContext.NONE);
 
         // Then
-        assertThat(clients).hasSize(1);
-        assertThat(clients.get(0).getGuid()).isEqualTo("01588E84-D45A-EB98-F47F-716073A4F1EF");
-        assertThat(clients.get(0).getAgency()).isEqualTo("vhh4");
-        assertThat(clients.get(0).getFirstName()).isEqualTo("John");
-        assertThat(clients.get(0).getLastName()).isEqualTo("Doe");
-        assertThat(clients.get(0).getStatus()).isEqualTo("ACTIVE");
+        assertThat(index.size()).isEqualTo(2);
+        assertThat(index.getAgency("01588E84-D45A-EB98-F47F-716073A4F1EF")).isEqualTo("vhh4");
+        assertThat(index.getAgency("legacy-42")).isEqualTo("vhh5");
+        verify(restTemplate).execute(eq(URI.create("http://localhost:8080/clients")), eq(HttpMethod.POST), any(), any());
+        verify(restTemplate, never()).postForEntity(anyString(), any(HttpEntity.class), eq(String.class));
+        assertThat(apiUsage.snapshot().bytesReceived()).isEqualTo(responseJson.getBytes(StandardCharsets.UTF_8).length);
+    }
 
-        verify(restTemplate).postForEntity(
-                eq("http://localhost:8080/clients"),
-                any(HttpEntity.class),
-                eq(String.class)
-        );
+    @Test
+    void shouldArchiveStreamedClientsResponseWhenArchiveEnabled() throws Exception {
+        // Given
+        String responseJson = "[{\"guid\": \"legacy-42\", \"agency\": \"vhh5\"}]\n";
+        LegacyPayloadArchive archive = mock(LegacyPayloadArchive.class);
+        when(archive.isEnabled()).thenReturn(true);
+        ImportConfigProperties importConfig = new ImportConfigProperties();
+        ImportMetrics metrics = new ImportMetrics(meterRegistry);
+        LegacyApiService archivingService = new LegacyApiService(config, archive,
+                new AgencyConcurrencyLimiters(importConfig, metrics), metrics, observationRegistry, apiUsage);
+        ReflectionTestUtils.setField(archivingService, "restTemplate", restTemplate);
+        stubStreamingResponse(responseJson);
+
+        // When
+        LegacyClientIndex index = archivingService.getClientIndex(ImportRunContext.NONE);
+
+        // Then
+        assertThat(index.getAgency("legacy-42")).isEqualTo("vhh5");
+        verify(archive).archiveClients(responseJson);
+    }
+
+    @Test
+    void shouldArchiveFixedLengthClientsResponseReadFromConnection() throws Exception {
+        assertClientsArchivedOverHttp(false);
+    }
+
+    @Test
+    void shouldArchiveChunkedClientsResponseReadFromConnection() throws Exception {
+        assertClientsArchivedOverHttp(true);
+    }
+
+    // Настоящий HTTP-сервер: ответ читается из соединения Apache HttpClient, которое закрывается вместе с потоком
+    private void assertClientsArchivedOverHttp(boolean chunked) throws Exception {
+        String responseJson = "[{\"guid\": \"legacy-42\", \"agency\": \"vhh5\", \"address\": {\"lines\": [\"a\"]}}]\n";
+        byte[] body = responseJson.getBytes(StandardCharsets.UTF_8);
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/clients", exchange -> {
+            exchange.getRequestBody().readAllBytes();
+            // Длина 0 - ответ частями (chunked)
+            exchange.sendResponseHeaders(200, chunked ? 0 : body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+        try {
+            config.setBaseUrl("http://127.0.0.1:" + server.getAddress().getPort());
+            LegacyPayloadArchive archive = mock(LegacyPayloadArchive.class);
+            when(archive.isEnabled()).thenReturn(true);
+            ImportConfigProperties importConfig = new ImportConfigProperties();
+            ImportMetrics metrics = new ImportMetrics(meterRegistry);
+            LegacyApiService httpService = new LegacyApiService(config, archive,
+                    new AgencyConcurrencyLimiters(importConfig, metrics), metrics, observationRegistry, apiUsage);
+
+            LegacyClientIndex index = httpService.getClientIndex(ImportRunContext.NONE);
+
+            assertThat(index.getAgency("legacy-42")).isEqualTo("vhh5");
+            verify(archive).archiveClients(responseJson);
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    void shouldReportMalformedClientsResponseAsDecodeError() throws Exception {
+        // Given
+        stubStreamingResponse("{\"guid\": \"legacy-42\"}");
+
+        // When & Then
+        assertThatThrownBy(() -> legacyApiService.getClientIndex(ImportRunContext.NONE))
+                .isInstanceOf(JsonProcessingException.class)
+                .hasMessageContaining("Ожидался JSON-массив клиентов");
+        assertThat(meterRegistry.get("notes_import_phase_duration_seconds")
+                .tags("phase", ImportPhase.JSON_DECODE.getTagValue(), "status", "failure").timer().count())
+                .isEqualTo(1);
+    }
+
+    private void stubStreamingResponse(String responseJson) {
+        when(restTemplate.execute(any(URI.class), eq(HttpMethod.POST), any(), any()))
+                .thenAnswer(invocation -> invocation.<ResponseExtractor<?>>getArgument(3).extractData(
+                        new MockClientHttpResponse(responseJson.getBytes(StandardCharsets.UTF_8), HttpStatus.OK)));
     }
 
     @Test
@@ -144,77 +252,147 @@ class LegacyApiServiceTest {
         assertThat(request.getDateTo()).isEqualTo("2021-12-31");
     }
 
+    @Test
+    void shouldRecordApiCallAndJsonDecodeTimers() throws Exception {
+        when(restTemplate.postForEntity(anyString(), any(HttpEntity.class), eq(String.class)))
+                .thenReturn(new ResponseEntity<>("[]", HttpStatus.OK))
+                .thenReturn(new ResponseEntity<>("{ invalid json }", HttpStatus.OK));
+
+        legacyApiService.getClientNotes("vhh4", "test-guid", LocalDate.of(2021, 1, 1), LocalDate.of(2021, 12, 31));
+        assertThatThrownBy(() -> legacyApiService.getClientNotes("vhh4", "test-guid",
+                LocalDate.of(2021, 1, 1), LocalDate.of(2021, 12, 31)))
+                .isInstanceOf(Exception.class);
+
+        assertThat(meterRegistry.get("notes_import_api_call_duration_seconds")
+                .tags("operation", "notes", "status", "success").timer().count()).isEqualTo(2);
+        assertThat(meterRegistry.get("notes_import_phase_duration_seconds")
+                .tags("phase", "json_decode", "status", "success").timer().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("notes_import_phase_duration_seconds")
+                .tags("phase", "json_decode", "status", "failure").timer().count()).isEqualTo(1);
+
+        LegacyApiUsage.Snapshot usage = apiUsage.snapshot();
+        assertThat(usage.calls()).isEqualTo(2);
+        assertThat(usage.bytesReceived()).isEqualTo("[]".length() + "{ invalid json }".length());
+        assertThat(usage.decodeNanos()).isPositive();
+    }
+
+    @Test
+    void shouldChargeApiUsageToOwningRun() throws Exception {
+        when(restTemplate.postForEntity(anyString(), any(HttpEntity.class), eq(String.class)))
+                .thenReturn(new ResponseEntity<>("[]", HttpStatus.OK));
+        LegacyApiUsage.Meter bulkRun = new LegacyApiUsage.Meter();
+        LegacyApiUsage.Meter onDemandRun = new LegacyApiUsage.Meter();
+        ImportRunContext bulk = new ImportRunContext(ImportRunContext.NONE, bulkRun);
+        ImportRunContext onDemand = new ImportRunContext(ImportDeadline.after(60_000), onDemandRun);
+
+        legacyApiService.getClientNotes("vhh4", "guid-1", LocalDate.of(2021, 1, 1), LocalDate.of(2021, 12, 31), bulk);
+        legacyApiService.getClientNotes("vhh4", "guid-2", LocalDate.of(2021, 1, 1), LocalDate.of(2021, 12, 31), bulk);
+        legacyApiService.getClientNotes("vhh4", "guid-3", LocalDate.of(2021, 1, 1), LocalDate.of(2021, 12, 31), onDemand);
+        legacyApiService.getClientNotes("vhh4", "guid-4", LocalDate.of(2021, 1, 1), LocalDate.of(2021, 12, 31));
+
+        // Вызов импорта отдельного пациента не попадает в счетчики планового запуска, общие счетчики видят все
+        assertThat(bulkRun.snapshot().calls()).isEqualTo(2);
+        assertThat(bulkRun.snapshot().bytesReceived()).isEqualTo(2 * "[]".length());
+        assertThat(onDemandRun.snapshot().calls()).isEqualTo(1);
+        assertThat(onDemandRun.snapshot().decodeNanos()).isPositive();
+        assertThat(apiUsage.snapshot().calls()).isEqualTo(4);
+    }
+
+    @Test
+    void shouldObserveNotesCallWithClientNoteCountAndSize() throws Exception {
+        String responseJson = "[{\"guid\": \"n1\", \"comments\": \"c1\"}, {\"guid\": \"n2\", \"comments\": \"c2\"}]";
+        when(restTemplate.postForEntity(anyString(), any(HttpEntity.class), eq(String.class)))
+                .thenReturn(new ResponseEntity<>(responseJson, HttpStatus.OK));
+
+        legacyApiService.getClientNotes("vhh4", "test-guid", LocalDate.of(2021, 1, 1), LocalDate.of(2021, 12, 31));
+
+        TestObservationRegistryAssert.assertThat(observationRegistry)
+                .hasObservationWithNameEqualTo(ImportObservations.LEGACY_CALL).that()
+                .hasLowCardinalityKeyValue(ImportObservations.OPERATION, "notes")
+                .hasHighCardinalityKeyValue(ImportObservations.CLIENT_GUID, "test-guid")
+                .hasHighCardinalityKeyValue(ImportObservations.NOTE_COUNT, "2")
+                .hasHighCardinalityKeyValue(ImportObservations.RESPONSE_BYTES, String.valueOf(responseJson.length()))
+                .hasBeenStopped();
+    }
+
     @Test
     void shouldThrowExceptionWhenApiUnavailable() {
         // Given
-        when(restTemplate.postForEntity(anyString(), any(HttpEntity.class), eq(String.class)))
+        when(restTemplate.execute(any(URI.class), eq(HttpMethod.POST), any(), any()))
                 .thenThrow(new ResourceAccessException("Connection timeout"));
 
         // When & Then
-        assertThatThrownBy(() -> legacyApiService.getAllClients())
-                .isInstanceOf(Exception.class)
-                .hasMessageContaining("Ошибка получения клиентов из старой системы");
+        assertThatThrownBy(() -> legacyApiService.getClientIndex(ImportRunContext.NONE))
+                .isInstanceOf(ResourceAccessException.class)
+                .hasMessageContaining("Connection timeout");
     }
 
     @Test
     void shouldHandleInvalidJsonResponse() {
         // Given
-        String invalidJson = "{ invalid json }";
-        ResponseEntity<String> responseEntity = new ResponseEntity<>(invalidJson, HttpStatus.OK);
-        when(restTemplate.postForEntity(anyString(), any(HttpEntity.class), eq(String.class)))
-                .thenReturn(responseEntity);
+        stubStreamingResponse("{ invalid json }");
 
         // When & Then
-        assertThatThrownBy(() -> legacyApiService.getAllClients())
-                .isInstanceOf(Exception.class);
+        assertThatThrownBy(() -> legacyApiService.getClientIndex(ImportRunContext.NONE))
+                .isInstanceOf(JsonProcessingException.class);
     }
 
     @Test
     void shouldHandleEmptyResponse() throws Exception {
         // Given
-        String emptyResponse = "[]";
-        ResponseEntity<String> responseEntity = new ResponseEntity<>(emptyResponse, HttpStatus.OK);
-        when(restTemplate.postForEntity(anyString(), any(HttpEntity.class), eq(String.class)))
-                .thenReturn(responseEntity);
+        stubStreamingResponse("[]");
 
         // When
-        List<LegacyClient> clients = legacyApiService.getAllClients();
+        LegacyClientIndex index = legacyApiService.getClientIndex(ImportRunContext.NONE);
 
         // Then
-        assertThat(clients).isEmpty();
+        assertThat(index.size()).isZero();
     }
 
     @Test
     void shouldHandle404Response() {
         // Given
-        when(restTemplate.postForEntity(anyString(), any(HttpEntity.class), eq(String.class)))
+        when(restTemplate.execute(any(URI.class), eq(HttpMethod.POST), any(), any()))
                 .thenThrow(new HttpClientErrorException(HttpStatus.NOT_FOUND));
 
         // When & Then
-        assertThatThrownBy(() -> legacyApiService.getAllClients())
-                .isInstanceOf(Exception.class);
+        assertThatThrownBy(() -> legacyApiService.getClientIndex(ImportRunContext.NONE))
+                .isInstanceOf(HttpClientErrorException.class);
     }
 
     @Test
     void shouldHandle500Response() {
         // Given
-        when(restTemplate.postForEntity(anyString(), any(HttpEntity.class), eq(String.class)))
+        when(restTemplate.execute(any(URI.class), eq(HttpMethod.POST), any(), any()))
                 .thenThrow(new HttpServerErrorException(HttpStatus.INTERNAL_SERVER_ERROR));
 
         // When & Then
-        assertThatThrownBy(() -> legacyApiService.getAllClients())
-                .isInstanceOf(Exception.class);
+        assertThatThrownBy(() -> legacyApiService.getClientIndex(ImportRunContext.NONE))
+                .isInstanceOf(HttpServerErrorException.class);
     }
 
     @Test
     void shouldHandleNullResponse() {
         // Given
-        when(restTemplate.postForEntity(anyString(), any(HttpEntity.class), eq(String.class)))
-                .thenReturn(new ResponseEntity<>(null, HttpStatus.OK));
+        stubStreamingResponse("");
 
         // When & Then
-        assertThatThrownBy(() -> legacyApiService.getAllClients())
-                .isInstanceOf(Exception.class);
+        assertThatThrownBy(() -> legacyApiService.getClientIndex(ImportRunContext.NONE))
+                .isInstanceOf(JsonProcessingException.class)
+                .hasMessageContaining("Пустой ответ");
+    }
+
+    @Test
+    void shouldNotCallApiWhenImportDeadlineExpired() throws Exception {
+        // Given
+        ImportRunContext run = new ImportRunContext(ImportDeadline.after(1), null);
+        Thread.sleep(5);
+
+        // When & Then
+        assertThatThrownBy(() -> legacyApiService.getClientNotes("agency", "guid",
+                LocalDate.of(2023, 1, 1), LocalDate.of(2023, 1, 31), run))
+                .isInstanceOf(ImportDeadlineExceededException.class);
+        verifyNoInteractions(restTemplate);
     }
 
     @Test
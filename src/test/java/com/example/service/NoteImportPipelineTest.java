@@ -0,0 +1,116 @@
+package com.example.service;
+
+import com.example.config.ImportConfigProperties;
+import com.example.dto.LegacyNote;
+import com.example.entity.CompanyUser;
+import com.example.model.NoteVersion;
+import com.example.monitoring.ImportMetrics;
+import com.example.repository.CompanyUserRepository;
+import com.example.repository.PatientNoteRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class NoteImportPipelineTest {
+
+    private ImportConfigProperties config;
+    private PatientNoteRepository noteRepository;
+    private CompanyUserRepository userRepository;
+    private SimpleMeterRegistry meterRegistry;
+    private AgencyLaneScheduler laneScheduler;
+    private NoteImportPipeline pipeline;
+
+    @BeforeEach
+    void setUp() {
+        config = new ImportConfigProperties();
+        noteRepository = mock(PatientNoteRepository.class);
+        userRepository = mock(CompanyUserRepository.class);
+        PlatformTransactionManager transactionManager = mock(PlatformTransactionManager.class);
+        when(transactionManager.getTransaction(any())).thenReturn(new SimpleTransactionStatus());
+        meterRegistry = new SimpleMeterRegistry();
+
+        ImportMetrics metrics = new ImportMetrics(meterRegistry);
+        laneScheduler = new AgencyLaneScheduler(config, new AgencyConcurrencyLimiters(config, metrics), metrics);
+        pipeline = new NoteImportPipeline(config, noteRepository, userRepository, laneScheduler, transactionManager, metrics);
+    }
+
+    @AfterEach
+    void tearDown() {
+        pipeline.shutdown();
+        laneScheduler.shutdown();
+    }
+
+    @Test
+    void shouldResolveNoteVersionsAndAuthorsOfClient() throws Exception {
+        LocalDateTime modified = LocalDateTime.of(2024, 1, 15, 10, 30);
+        when(noteRepository.findVersionsByLegacyNoteGuids(anyCollection()))
+                .thenReturn(List.of(new NoteVersion("NOTE-1", 7L, modified.minusDays(1), modified)));
+        CompanyUser nurse = new CompanyUser("nurse1");
+        nurse.setId(3L);
+        when(userRepository.findByLoginIn(anyCollection())).thenReturn(List.of(nurse));
+
+        List<LegacyNote> notes = List.of(note("NOTE-1", " nurse1 "), note("NOTE-2", "nurse2"));
+        NoteImportPipeline.ResolvedNotes resolved = pipeline
+                .afterFetch(CompletableFuture.completedFuture(notes), true)
+                .get(5, TimeUnit.SECONDS);
+
+        assertThat(resolved.isResolved()).isTrue();
+        assertThat(resolved.notes()).isSameAs(notes);
+        assertThat(resolved.existing()).containsOnlyKeys("NOTE-1");
+        assertThat(resolved.existing().get("NOTE-1").id()).isEqualTo(7L);
+        assertThat(resolved.userIds()).containsEntry("nurse1", 3L).doesNotContainKey("nurse2");
+    }
+
+    @Test
+    void shouldPassSharedClientNotesWithoutResolving() throws Exception {
+        List<LegacyNote> notes = List.of(note("NOTE-1", "nurse1"));
+
+        NoteImportPipeline.ResolvedNotes resolved = pipeline
+                .afterFetch(CompletableFuture.completedFuture(notes), false)
+                .get(5, TimeUnit.SECONDS);
+
+        assertThat(resolved.isResolved()).isFalse();
+        assertThat(resolved.notes()).isSameAs(notes);
+    }
+
+    @Test
+    void shouldCancelPendingFetchWhenResultIsCancelled() {
+        CompletableFuture<List<LegacyNote>> fetched = new CompletableFuture<>();
+
+        pipeline.afterFetch(fetched, true).cancel(false);
+
+        assertThat(fetched).isCancelled();
+    }
+
+    @Test
+    void shouldExposeQueueAndUtilizationPerStage() {
+        for (String stage : List.of("fetch", "resolve", "write")) {
+            assertThat(meterRegistry.get("notes_import_pipeline_queue_size").tag("stage", stage).gauge().value())
+                    .isZero();
+            assertThat(meterRegistry.get("notes_import_pipeline_stage_utilization").tag("stage", stage).gauge().value())
+                    .isBetween(0.0, 1.0);
+        }
+    }
+
+    private static LegacyNote note(String guid, String loggedUser) {
+        LegacyNote note = new LegacyNote();
+        note.setGuid(guid);
+        note.setLoggedUser(loggedUser);
+        note.setComments("Note " + guid);
+        return note;
+    }
+}
@@ -0,0 +1,55 @@
+package com.example.service;
+
+import com.example.config.ImportConfigProperties;
+import com.example.monitoring.ImportMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.YearMonth;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class NotePartitionMaintenanceTest {
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @Test
+    void shouldSelectOnlyMonthlyPartitionsBeforeCutoff() {
+        List<String> partitions = List.of("patient_note_default", "patient_note_p202403", "patient_note_p202312",
+                "patient_note_p202404", "patient_note_archive");
+
+        assertThat(NotePartitionMaintenance.expiredPartitions(partitions, YearMonth.of(2024, 4)))
+                .containsExactly("patient_note_p202312", "patient_note_p202403");
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void shouldSkipMaintenanceOutsidePostgresql() {
+        when(jdbcTemplate.execute(any(ConnectionCallback.class))).thenReturn("H2");
+        NotePartitionMaintenance maintenance = new NotePartitionMaintenance(jdbcTemplate, new ImportConfigProperties(),
+                new ImportMetrics(new SimpleMeterRegistry()), transactionManager);
+
+        NotePartitionMaintenance.Result first = maintenance.maintain();
+        NotePartitionMaintenance.Result second = maintenance.maintain();
+
+        assertThat(first.createdPartitions()).isZero();
+        assertThat(second.retiredPartitions()).isEmpty();
+        // Тип базы проверяется один раз
+        verify(jdbcTemplate, times(1)).execute(any(ConnectionCallback.class));
+        verifyNoMoreInteractions(jdbcTemplate);
+    }
+}
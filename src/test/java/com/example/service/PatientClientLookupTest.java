@@ -0,0 +1,92 @@
+package com.example.service;
+
+import com.example.config.ImportConfigProperties;
+import com.example.entity.PatientProfile;
+import com.example.repository.PatientProfileRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class PatientClientLookupTest {
+
+    @Mock
+    private PatientProfileRepository patientRepository;
+
+    private ImportConfigProperties config;
+    private PatientClientLookup lookup;
+
+    private final PatientProfile indexed = new PatientProfile(1L, "John", "Doe", "CLIENT-1", (short) 200);
+    private final PatientProfile added = new PatientProfile(2L, "Jane", "Doe", "CLIENT-2", (short) 200);
+
+    @BeforeEach
+    void setUp() {
+        config = new ImportConfigProperties();
+        config.setPushLookupMaxFallbacks(2);
+        lookup = new PatientClientLookup(patientRepository, config);
+        when(patientRepository.findActivePatients()).thenReturn(List.of(indexed));
+    }
+
+    @Test
+    void shouldFindIndexedClientWithoutQuery() {
+        // When
+        List<PatientProfile> patients = lookup.findPatients("CLIENT-1");
+
+        // Then
+        assertThat(patients).containsExactly(indexed);
+        verify(patientRepository, never()).findByExactOldClientGuid(anyString());
+    }
+
+    @Test
+    void shouldQueryUnknownClientOnceUntilRebuild() {
+        // Given
+        when(patientRepository.findByExactOldClientGuid("CLIENT-2")).thenReturn(List.of(added));
+
+        // When
+        lookup.findPatients("CLIENT-2");
+        List<PatientProfile> patients = lookup.findPatients("CLIENT-2");
+
+        // Then
+        assertThat(patients).containsExactly(added);
+        verify(patientRepository, times(1)).findByExactOldClientGuid("CLIENT-2");
+    }
+
+    @Test
+    void shouldStopQueryingUnknownClientsAfterFallbackLimit() {
+        // Given
+        when(patientRepository.findByExactOldClientGuid(anyString())).thenReturn(List.of());
+
+        // When
+        for (int i = 0; i < 10; i++) {
+            assertThat(lookup.findPatients("UNKNOWN-" + i)).isEmpty();
+        }
+
+        // Then
+        verify(patientRepository, times(2)).findByExactOldClientGuid(anyString());
+        assertThat(lookup.findPatients("UNKNOWN-0")).isEmpty();
+        verify(patientRepository, times(2)).findByExactOldClientGuid(anyString());
+    }
+
+    @Test
+    void shouldResetFallbackLimitOnRebuild() {
+        // Given
+        when(patientRepository.findByExactOldClientGuid(anyString())).thenReturn(List.of());
+        lookup.findPatients("UNKNOWN-1");
+        lookup.findPatients("UNKNOWN-2");
+
+        // When
+        lookup.rebuild();
+        lookup.findPatients("UNKNOWN-3");
+
+        // Then
+        verify(patientRepository).findByExactOldClientGuid("UNKNOWN-3");
+    }
+}
@@ -0,0 +1,111 @@
+package com.example.service;
+
+import com.example.entity.PatientProfile;
+import com.example.loadtest.LegacyApiSimulator;
+import com.example.model.ImportStatistics;
+import com.example.repository.PatientProfileRepository;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Advisory-блокировки пациентов в PostgreSQL с уменьшенной таблицей блокировок
+// (max_locks_per_transaction * max_connections и служебные процессы - несколько сотен записей):
+// пациентов больше, чем помещается в таблицу, импорт проходит, так как блокировки освобождаются с каждой пачкой.
+@Testcontainers(disabledWithoutDocker = true)
+@SpringBootTest(properties = {
+        "spring.jpa.show-sql=false",
+        "spring.datasource.hikari.maximum-pool-size=5",
+        "notes.import.patient-batch-size=" + PatientImportLocksPostgresTest.BATCH_SIZE,
+        "logging.level.com.example=WARN"
+})
+class PatientImportLocksPostgresTest {
+
+    static final int BATCH_SIZE = 100;
+
+    private static final int PATIENTS = 1500;
+    private static final int MAX_CONNECTIONS = 20;
+    private static final int MAX_LOCKS_PER_TRANSACTION = 10;
+
+    @Container
+    static final PostgreSQLContainer<?> POSTGRES = new PostgreSQLContainer<>("postgres:16-alpine")
+            .withCommand("postgres",
+                    "-c", "max_connections=" + MAX_CONNECTIONS,
+                    "-c", "max_locks_per_transaction=" + MAX_LOCKS_PER_TRANSACTION);
+
+    private static final LegacyApiSimulator SIMULATOR = startSimulator();
+
+    @Autowired
+    private EnhancedImportService importService;
+
+    @Autowired
+    private PatientProfileRepository patientRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @DynamicPropertySource
+    static void properties(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", POSTGRES::getJdbcUrl);
+        registry.add("spring.datasource.username", POSTGRES::getUsername);
+        registry.add("spring.datasource.password", POSTGRES::getPassword);
+        registry.add("legacy.api.base-url", SIMULATOR::getBaseUrl);
+    }
+
+    @AfterAll
+    static void stopSimulator() {
+        SIMULATOR.close();
+    }
+
+    @Test
+    void shouldImportMorePatientsThanLockTableHolds() {
+        Integer maxLocks = jdbcTemplate.queryForObject("SELECT current_setting('max_locks_per_transaction')::int", Integer.class);
+        assertThat(maxLocks).isEqualTo(MAX_LOCKS_PER_TRANSACTION);
+        List<PatientProfile> patients = seedPatients();
+
+        ImportStatistics stats = importService.performImport();
+
+        assertThat(stats.isHasCriticalError()).isFalse();
+        assertThat(stats.getErrorCount()).isZero();
+        assertThat(stats.getProcessedPatients()).isEqualTo(PATIENTS);
+        assertThat(stats.getCreatedCount()).isEqualTo(PATIENTS);
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM pg_locks WHERE locktype = 'advisory'", Long.class))
+                .isZero();
+
+        // Захват уже обработанного пациента снят вместе с пачкой
+        ImportStatistics onDemand = importService.importSpecificPatient(patients.get(0).getId());
+        assertThat(onDemand.isAlreadyRunning()).isFalse();
+        assertThat(onDemand.isHasCriticalError()).isFalse();
+    }
+
+    private List<PatientProfile> seedPatients() {
+        List<PatientProfile> patients = new ArrayList<>(PATIENTS);
+        for (int client = 0; client < PATIENTS; client++) {
+            patients.add(new PatientProfile(null, "Firstname" + client, "Lastname" + client,
+                    LegacyApiSimulator.clientGuid(client), (short) 200));
+        }
+        return patientRepository.saveAll(patients);
+    }
+
+    private static LegacyApiSimulator startSimulator() {
+        try {
+            return LegacyApiSimulator.start(
+                    new LegacyApiSimulator.Settings(PATIENTS, 1, 10, 0, 0, 0, 0, 100, 1));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.example.service;
+
+import com.example.config.ImportConfigProperties;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PatientImportLocksTest {
+
+    private PatientImportLocks locks;
+
+    @BeforeEach
+    void setUp() {
+        ImportConfigProperties config = new ImportConfigProperties();
+        config.setPatientLockStripes(4);
+        config.setEnablePatientAdvisoryLocks(false);
+        locks = new PatientImportLocks(config, null);
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+        TransactionSynchronizationManager.setActualTransactionActive(false);
+        TransactionSynchronizationManager.unbindResourceIfPossible(locks);
+    }
+
+    @Test
+    void shouldHoldTransactionalClaimUntilTransactionCompletes() throws Exception {
+        beginTransaction();
+
+        try (PatientImportLocks.Claim claim = locks.tryClaim(1L, "legacy_api")) {
+            assertThat(claim).isNotNull();
+        }
+        // Повторный захват той же транзакцией
+        assertThat(locks.tryClaim(1L, "legacy_api")).isNotNull();
+        assertThat(claimInOtherThread(1L)).isFalse();
+        // Пациент из той же полосы не занят
+        assertThat(claimInOtherThread(5L)).isTrue();
+
+        completeTransaction();
+
+        assertThat(claimInOtherThread(1L)).isTrue();
+    }
+
+    @Test
+    void shouldReleaseClaimOutsideTransactionOnClose() {
+        try (PatientImportLocks.Claim claim = locks.tryClaim(1L, "on_demand")) {
+            assertThat(claim).isNotNull();
+            assertThat(locks.tryClaim(1L, "legacy_api")).isNull();
+        }
+
+        assertThat(locks.tryClaim(1L, "legacy_api")).isNotNull();
+    }
+
+    @Test
+    void shouldHoldBatchClaimsAcrossBatchTransactionUntilClosed() throws Exception {
+        PatientImportLocks.BatchClaims batch = locks.openBatch("legacy_api");
+        // Захват до загрузки заметок пачки, вне транзакции
+        assertThat(batch.tryClaim(1L)).isTrue();
+        assertThat(claimInOtherThread(1L)).isFalse();
+
+        beginTransaction();
+        assertThat(batch.tryClaim(1L)).isTrue();
+        assertThat(batch.tryClaim(2L)).isTrue();
+        completeTransaction();
+        assertThat(claimInOtherThread(2L)).isFalse();
+
+        batch.close();
+
+        assertThat(claimInOtherThread(1L)).isTrue();
+        assertThat(claimInOtherThread(2L)).isTrue();
+    }
+
+    @Test
+    void shouldSkipPatientClaimedByOtherImportInBatch() {
+        try (PatientImportLocks.Claim claim = locks.tryClaim(1L, "on_demand");
+             PatientImportLocks.BatchClaims batch = locks.openBatch("legacy_api")) {
+            assertThat(claim).isNotNull();
+            assertThat(batch.tryClaim(1L)).isFalse();
+            assertThat(batch.tryClaim(2L)).isTrue();
+        }
+    }
+
+    private boolean claimInOtherThread(Long patientId) throws Exception {
+        return CompletableFuture.supplyAsync(() -> {
+            try (PatientImportLocks.Claim claim = locks.tryClaim(patientId, "on_demand")) {
+                return claim != null;
+            }
+        }).get(5, TimeUnit.SECONDS);
+    }
+
+    private static void beginTransaction() {
+        TransactionSynchronizationManager.initSynchronization();
+        TransactionSynchronizationManager.setActualTransactionActive(true);
+    }
+
+    private static void completeTransaction() {
+        TransactionSynchronizationManager.getSynchronizations()
+                .forEach(sync -> sync.afterCompletion(TransactionSynchronization.STATUS_COMMITTED));
+        TransactionSynchronizationManager.clearSynchronization();
+        TransactionSynchronizationManager.setActualTransactionActive(false);
+    }
+}
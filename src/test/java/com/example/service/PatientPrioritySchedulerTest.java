@@ -0,0 +1,93 @@
+package com.example.service;
+
+import com.example.config.ImportConfigProperties;
+import com.example.entity.PatientProfile;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class PatientPrioritySchedulerTest {
+
+    private PatientPriorityScheduler scheduler;
+    private PatientProfile busy;
+    private PatientProfile idle;
+    private PatientProfile unknown;
+
+    @BeforeEach
+    void setUp() {
+        scheduler = new PatientPriorityScheduler(new ImportConfigProperties());
+        busy = patient(1L);
+        idle = patient(2L);
+        unknown = patient(3L);
+    }
+
+    private static PatientProfile patient(Long id) {
+        return new PatientProfile(id, "First" + id, "Last" + id, "GUID-" + id, (short) 200);
+    }
+
+    private static List<Long> ids(List<PatientProfile> patients) {
+        return patients.stream().map(PatientProfile::getId).toList();
+    }
+
+    @Test
+    void shouldOrderUnknownThenRecentlyChangedPatients() {
+        scheduler.recordImported(idle.getId(), LocalDateTime.now().minusDays(40), false);
+        scheduler.recordImported(busy.getId(), LocalDateTime.now().minusHours(1), true);
+
+        List<PatientProfile> ordered = scheduler.order(List.of(idle, busy, unknown));
+
+        assertThat(ids(ordered)).containsExactly(3L, 1L, 2L);
+    }
+
+    @Test
+    void shouldPutRequestedRefreshFirstUntilImported() {
+        scheduler.recordImported(idle.getId(), LocalDateTime.now().minusDays(40), false);
+        scheduler.recordImported(busy.getId(), LocalDateTime.now().minusHours(1), true);
+        scheduler.requestRefresh(idle.getId());
+
+        assertThat(ids(scheduler.order(List.of(busy, unknown, idle)))).containsExactly(2L, 3L, 1L);
+
+        scheduler.recordImported(idle.getId(), null, false);
+
+        assertThat(scheduler.getRefreshRequests()).isEmpty();
+        assertThat(ids(scheduler.order(List.of(busy, unknown, idle)))).containsExactly(3L, 1L, 2L);
+    }
+
+    @Test
+    void shouldCarryOverPatientsNotProcessedByInterruptedRun() throws InterruptedException {
+        scheduler.recordImported(busy.getId(), LocalDateTime.now().minusHours(1), true);
+        scheduler.recordImported(idle.getId(), LocalDateTime.now().minusDays(40), false);
+        Thread.sleep(10);
+
+        // Запуск успел обработать только пациента с частыми изменениями
+        LocalDateTime runStart = LocalDateTime.now();
+        Thread.sleep(10);
+        scheduler.recordImported(busy.getId(), LocalDateTime.now().minusMinutes(5), true);
+        scheduler.runInterrupted(runStart);
+
+        assertThat(ids(scheduler.order(List.of(busy, idle, unknown)))).containsExactly(3L, 2L, 1L);
+
+        scheduler.runCompleted();
+
+        assertThat(ids(scheduler.order(List.of(busy, idle, unknown)))).containsExactly(3L, 1L, 2L);
+    }
+
+    @Test
+    void shouldSmoothChangeFrequencyAndKeepNewestLegacyChange() {
+        LocalDateTime change = LocalDateTime.now().minusHours(2);
+        scheduler.recordImported(busy.getId(), change, true);
+        scheduler.recordImported(busy.getId(), change.minusDays(1), false);
+
+        PatientPriorityScheduler.Activity activity = scheduler.getActivity(busy.getId());
+
+        assertThat(activity.changeFrequency()).isCloseTo(0.7, within(1e-9));
+        assertThat(activity.lastLegacyChange()).isEqualTo(change);
+        // Половина за 24 часа: через 2 часа вклад давности ~0.94
+        assertThat(scheduler.score(busy.getId(), LocalDateTime.now())).isCloseTo(0.7 + 0.944, within(0.01));
+    }
+}
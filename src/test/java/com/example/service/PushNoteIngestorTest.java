@@ -0,0 +1,172 @@
+package com.example.service;
+
+import com.example.config.ImportConfigProperties;
+import com.example.dto.LegacyNote;
+import com.example.entity.PatientProfile;
+import com.example.model.ImportStatistics;
+import com.example.monitoring.ImportMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class PushNoteIngestorTest {
+
+    @Mock
+    private EnhancedImportService importService;
+
+    @Mock
+    private PatientClientLookup patientLookup;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private ImportConfigProperties config;
+    private SimpleMeterRegistry meterRegistry;
+    private PatientImportLocks patientLocks;
+    private PushNoteIngestor ingestor;
+
+    private final PatientProfile first = new PatientProfile(1L, "John", "Doe", "CLIENT-1", (short) 200);
+    private final PatientProfile second = new PatientProfile(2L, "Jane", "Doe", "CLIENT-1,CLIENT-2", (short) 200);
+
+    @BeforeEach
+    void setUp() {
+        config = new ImportConfigProperties();
+        config.setEnablePushIngestion(false);
+        meterRegistry = new SimpleMeterRegistry();
+        patientLocks = new PatientImportLocks(config, null);
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (ingestor != null) {
+            ingestor.shutdown();
+        }
+    }
+
+    private PushNoteIngestor newIngestor() {
+        ingestor = new PushNoteIngestor(importService, patientLookup, config,
+                new ImportMetrics(meterRegistry), patientLocks, transactionManager);
+        ingestor.start();
+        return ingestor;
+    }
+
+    private static LegacyNote note(String guid, String clientGuid, String modified) {
+        LegacyNote note = new LegacyNote();
+        note.setGuid(guid);
+        note.setClientGuid(clientGuid);
+        note.setComments("Comment " + guid + " " + modified);
+        note.setModifiedDateTime(modified);
+        note.setCreatedDateTime("2024-01-15 10:00:00 CDT");
+        note.setLoggedUser("nurse1");
+        return note;
+    }
+
+    private void countCreated() {
+        doAnswer(invocation -> {
+            invocation.getArgument(2, ImportStatistics.class).incrementCreatedCount();
+            return null;
+        }).when(importService).importSingleNote(any(), any(), any());
+    }
+
+    @Test
+    void shouldApplyLatestVersionToEveryPatientOfClient() {
+        when(patientLookup.findPatients("CLIENT-1")).thenReturn(List.of(first, second));
+        countCreated();
+        LegacyNote older = note("NOTE-1", "CLIENT-1", "2024-01-15 10:30:00 CDT");
+        LegacyNote newer = note("NOTE-1", "CLIENT-1", "2024-01-15 11:30:00 CDT");
+
+        ImportStatistics stats = newIngestor().apply(List.of(newer, older));
+
+        assertThat(stats.getCreatedCount()).isEqualTo(2);
+        verify(importService).importSingleNote(eq(first), eq(newer), any());
+        verify(importService).importSingleNote(eq(second), eq(newer), any());
+        verify(importService, never()).importSingleNote(any(), eq(older), any());
+        verify(transactionManager).commit(any());
+    }
+
+    @Test
+    void shouldCountEventsWithoutActivePatient() {
+        when(patientLookup.findPatients("CLIENT-1")).thenReturn(List.of(first));
+        when(patientLookup.findPatients("UNKNOWN")).thenReturn(List.of());
+        countCreated();
+
+        ImportStatistics stats = newIngestor().apply(List.of(
+                note("NOTE-1", "CLIENT-1", "2024-01-15 10:30:00 CDT"),
+                note("NOTE-2", "UNKNOWN", "2024-01-15 10:30:00 CDT")));
+
+        assertThat(stats.getCreatedCount()).isEqualTo(1);
+        assertThat(meterRegistry.counter("notes_import_push_events_total", "result", "unmatched").count())
+                .isEqualTo(1.0);
+    }
+
+    @Test
+    void shouldApplyEventsIndividuallyWhenBatchFails() {
+        when(patientLookup.findPatients("CLIENT-1")).thenReturn(List.of(first));
+        LegacyNote good = note("NOTE-1", "CLIENT-1", "2024-01-15 10:30:00 CDT");
+        LegacyNote bad = note("NOTE-2", "CLIENT-1", "2024-01-15 10:30:00 CDT");
+        countCreated();
+        doThrow(new IllegalStateException("duplicate key"))
+                .when(importService).importSingleNote(any(), eq(bad), any());
+
+        ImportStatistics stats = newIngestor().apply(List.of(good, bad));
+
+        assertThat(stats.getCreatedCount()).isEqualTo(1);
+        assertThat(stats.getErrorCount()).isEqualTo(1);
+        verify(transactionManager).rollback(any());
+        // Первая попытка в транзакции пачки, вторая - отдельно
+        verify(importService, times(2)).importSingleNote(eq(first), eq(good), any());
+    }
+
+    @Test
+    void shouldRequeueEventUntilPatientIsReleasedByOtherImport() {
+        config.setEnablePushIngestion(true);
+        config.setPushFlushMillis(10);
+        when(patientLookup.findPatients("CLIENT-1")).thenReturn(List.of(first, second));
+        LegacyNote event = note("NOTE-1", "CLIENT-1", "2024-01-15 10:30:00 CDT");
+
+        try (PatientImportLocks.Claim claim = patientLocks.tryClaim(second.getId(), "on_demand")) {
+            assertThat(claim).isNotNull();
+            newIngestor().submit(List.of(event));
+
+            // Событие не применяется ни к одному пациенту, пока один из них занят
+            verify(importService, after(300).never()).importSingleNote(any(), any(), any());
+            assertThat(meterRegistry.find("notes_import_patient_lock_busy_total").tag("source", "push").counter().count())
+                    .isPositive();
+        }
+
+        verify(importService, timeout(5000)).importSingleNote(eq(first), eq(event), any());
+        verify(importService, timeout(5000)).importSingleNote(eq(second), eq(event), any());
+    }
+
+    @Test
+    void shouldQueueValidEventsAndRejectEventsWithoutGuids() {
+        config.setEnablePushIngestion(true);
+        config.setPushFlushMillis(10);
+        when(patientLookup.findPatients("CLIENT-1")).thenReturn(List.of(first));
+        LegacyNote valid = note("NOTE-1", "CLIENT-1", "2024-01-15 10:30:00 CDT");
+
+        PushNoteIngestor.SubmitResult result = newIngestor().submit(List.of(
+                valid,
+                note(null, "CLIENT-1", "2024-01-15 10:30:00 CDT"),
+                note("NOTE-3", " ", "2024-01-15 10:30:00 CDT")));
+
+        assertThat(result.accepted()).isEqualTo(1);
+        assertThat(result.rejected()).isEqualTo(2);
+        assertThat(result.overflow()).isZero();
+        verify(importService, timeout(5000)).importSingleNote(eq(first), argThat(note -> "NOTE-1".equals(note.getGuid())), any());
+    }
+}